@@ -59,6 +59,24 @@ abstract class AbstractIntradayRequestBuilder<T extends RequestResult> extends A
         return eventType;
     }
 
+    OffsetDateTime getStartDateTime() {
+        return startDateTime;
+    }
+
+    OffsetDateTime getEndDateTime() {
+        return endDateTime;
+    }
+
+    /**
+     * @return a copy of this builder, with the same options, for a subset of its date range
+     */
+    abstract AbstractIntradayRequestBuilder<T> withRange(OffsetDateTime startDateTime, OffsetDateTime endDateTime);
+
+    /**
+     * @return a copy of this builder, with the same options and date range, for another security
+     */
+    abstract AbstractIntradayRequestBuilder<T> withTicker(String ticker);
+
     String getTicker() {
         return ticker;
     }
@@ -45,4 +45,16 @@ abstract class AbstractRequestResult implements RequestResult {
     synchronized void addFieldError(String field) {
         fieldErrors.add(field);
     }
+
+    /**
+     * Adds the security and field errors of another result to this result.
+     */
+    void addErrors(AbstractRequestResult other) {
+        Set<String> otherSecurityErrors = other.getSecurityErrors();
+        Set<String> otherFieldErrors = other.getFieldErrors();
+        synchronized (this) {
+            securityErrors.addAll(otherSecurityErrors);
+            fieldErrors.addAll(otherFieldErrors);
+        }
+    }
 }
@@ -16,6 +16,7 @@ import org.slf4j.LoggerFactory;
 import java.time.format.DateTimeFormatter;
 import java.util.Collection;
 import java.util.Locale;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -52,6 +53,16 @@ abstract class AbstractResultParser<T extends AbstractRequestResult> implements
      */
     private final CountDownLatch noMoreMessages = new CountDownLatch(1);
 
+    /**
+     * Set when the request is cancelled - the messages are then discarded.
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * Set when the request fails without a response - thrown by getResult
+     */
+    private volatile BloombergException failure;
+
     /**
      * The result of the parsing operation - guarded by lock
      */
@@ -59,6 +70,7 @@ abstract class AbstractResultParser<T extends AbstractRequestResult> implements
 
     @Override
     public void addMessage(Message msg) {
+        if (cancelled) return;
         if (noMoreMessagesHasRun.get()) {
             throw new IllegalStateException("Can't add messages once noMoreMessages has been called");
         }
@@ -73,6 +85,19 @@ abstract class AbstractResultParser<T extends AbstractRequestResult> implements
         noMoreMessages.countDown();
     }
 
+    @Override
+    public void cancel() {
+        cancelled = true;
+        messages.clear();
+        noMoreMessages.countDown();
+    }
+
+    @Override
+    public void fail(BloombergException cause) {
+        failure = cause;
+        cancel();
+    }
+
     @Override
     public T getResult() throws InterruptedException {
         noMoreMessages.await();
@@ -88,6 +113,8 @@ abstract class AbstractResultParser<T extends AbstractRequestResult> implements
     }
 
     private T setResultIfNull() {
+        if (failure != null) throw failure;
+        if (cancelled) throw new CancellationException("The request was cancelled");
         return result.updateAndGet(r -> {
             if (r == null) {
                 T result = getRequestResult();
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * What a Publisher created by {@link BloombergSession#subscribeAsPublisher(SubscriptionBuilder, Backpressure)} does
+ * with the updates received while its Subscriber has not requested any:
+ * <ul>
+ * <li>{@link #conflate()}: keeps the latest update of each security / field - the Subscriber always gets the last
+ * value of each field, in the order in which the fields first changed</li>
+ * <li>{@link #buffer(int)}: keeps all the updates up to a limit - the subscription fails when the limit is reached</li>
+ * <li>{@link #drop()}: discards the updates - the Subscriber only gets the updates received while it has a demand</li>
+ * </ul>
+ * This class is immutable and thread safe.
+ */
+public final class Backpressure {
+
+    enum Strategy { CONFLATE, BUFFER, DROP }
+
+    private static final Backpressure CONFLATE = new Backpressure(Strategy.CONFLATE, Integer.MAX_VALUE);
+    private static final Backpressure DROP = new Backpressure(Strategy.DROP, 0);
+
+    private final Strategy strategy;
+    private final int maxEvents;
+
+    private Backpressure(Strategy strategy, int maxEvents) {
+        this.strategy = strategy;
+        this.maxEvents = maxEvents;
+    }
+
+    /**
+     * Keeps the latest update of each security / field until it is requested. When an update replaces a pending one,
+     * the old value of the event that is eventually delivered is the old value of the first pending update, so that
+     * the Subscriber sees the whole change.
+     */
+    public static Backpressure conflate() {
+        return CONFLATE;
+    }
+
+    /**
+     * Keeps up to maxEvents updates until they are requested. When the buffer is full, the Subscriber is informed of a
+     * {@link BloombergException} and the subscription is cancelled.
+     *
+     * @throws IllegalArgumentException if maxEvents is not strictly positive
+     */
+    public static Backpressure buffer(int maxEvents) {
+        Preconditions.checkArgument(maxEvents > 0, "maxEvents must be strictly positive but was %s", maxEvents);
+        return new Backpressure(Strategy.BUFFER, maxEvents);
+    }
+
+    /**
+     * Discards the updates that are received when the Subscriber has not requested any.
+     */
+    public static Backpressure drop() {
+        return DROP;
+    }
+
+    Strategy getStrategy() {
+        return strategy;
+    }
+
+    int getMaxEvents() {
+        return maxEvents;
+    }
+
+    @Override
+    public String toString() {
+        return strategy == Strategy.BUFFER ? "BUFFER(" + maxEvents + ")" : strategy.toString();
+    }
+}
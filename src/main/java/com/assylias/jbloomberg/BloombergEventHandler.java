@@ -14,12 +14,15 @@ import com.bloomberglp.blpapi.Session;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
 import java.util.function.Consumer;
 
 import static com.assylias.jbloomberg.BloombergEventHandler.BloombergConnectionState.SESSION_STARTED;
@@ -43,11 +46,25 @@ import static java.util.Objects.requireNonNull;
 final class BloombergEventHandler implements EventHandler {
 
     private final static Logger logger = LoggerFactory.getLogger(BloombergEventHandler.class);
+    private final static Name REQUEST_FAILURE = new Name("RequestFailure");
     private final BlockingQueue<Data> subscriptionDataQueue;
     private final Consumer<SessionState> stateListener;
-    private final Map<CorrelationID, ResultParser<?>> parsers = new ConcurrentHashMap<>();
+    private final SessionMetrics metrics;
+    /**
+     * One real time update in tickSampling is traced (0 = no tracing). The counter is not thread safe but an occasional
+     * lost increment only affects the sampling.
+     */
+    private final int tickSampling;
+    private int tickCounter;
+    /**
+     * The parsers of the requests waiting for their response
+     */
+    private final Map<CorrelationID, Registration> parsers = new ConcurrentHashMap<>();
     private volatile Runnable runOnSessionStarted;
     private volatile Consumer<BloombergException> runOnSessionStartupFailure;
+    private volatile DiagnosticTap diagnosticTap;
+    private volatile SubscribedFields subscribedFields;
+    private volatile DataPool dataPool;
 
     /**
      *
@@ -57,14 +74,40 @@ final class BloombergEventHandler implements EventHandler {
      * @throws NullPointerException if any of the arguments are null.
      */
     public BloombergEventHandler(BlockingQueue<Data> subscriptionDataQueue, Consumer<SessionState> stateListener) {
+        this(subscriptionDataQueue, stateListener, SessionMetrics.NO_OP, 0);
+    }
+
+    /**
+     *
+     * @param subscriptionDataQueue the queue to which subscription data will be posted.
+     * @param stateListener a listener that will be called on each new SESSION_STATUS event.
+     * @param metrics the metrics that will be informed of each event received.
+     * @param tickSampling the latency of one real time update in tickSampling will be recorded at each stage of its
+     *                     processing - 0 to disable tracing.
+     *
+     * @throws NullPointerException if any of the arguments are null.
+     */
+    public BloombergEventHandler(BlockingQueue<Data> subscriptionDataQueue, Consumer<SessionState> stateListener, SessionMetrics metrics, int tickSampling) {
         this.subscriptionDataQueue = requireNonNull(subscriptionDataQueue);
         this.stateListener = requireNonNull(stateListener);
+        this.metrics = requireNonNull(metrics);
+        this.tickSampling = tickSampling;
     }
 
     @Override
     public void processEvent(Event event, Session session) {
         try {
             EventTypeEnum type = EventTypeEnum.get(event);
+            metrics.eventReceived(event.eventType());
+            DiagnosticTap tap = diagnosticTap;
+            if (tap != null) {
+                Event.EventType eventType = event.eventType();
+                long millis = System.currentTimeMillis();
+                for (Message msg : event) tap.capture(eventType, msg, millis);
+            }
+            //checked once per event: the logging calls below are on the hot path and must not format or allocate
+            boolean trace = logger.isTraceEnabled();
+            boolean debug = logger.isDebugEnabled();
             switch (type) {
                 case SESSION_STATUS:
                     for (Message msg : event) {
@@ -77,11 +120,11 @@ final class BloombergEventHandler implements EventHandler {
                     break;
                 case PARTIAL_RESPONSE:
                     for (Message msg : event) {
-                        logger.trace("[{}] {}", type, msg);
+                        if (trace) logger.trace("[{}] {}", type, msg);
                         CorrelationID cId = msg.correlationID();
-                        ResultParser<?> parser = parsers.get(cId);
-                        if (parser != null) {
-                            parser.addMessage(msg);
+                        Registration r = parsers.get(cId);
+                        if (r != null) {
+                            r.parser.addMessage(msg);
                         }
                     }
                     break;
@@ -90,34 +133,59 @@ final class BloombergEventHandler implements EventHandler {
                 case AUTHORIZATION_STATUS:
                     Set<CorrelationID> endOfTransmission = new HashSet<>();
                     for (Message msg : event) {
-                        logger.trace("[{}] {}", type, msg);
+                        if (trace) logger.trace("[{}] {}", type, msg);
                         CorrelationID cId = msg.correlationID();
-                        ResultParser<?> parser = parsers.get(cId);
-                        if (parser != null) {
+                        Registration r = parsers.get(cId);
+                        if (r != null) {
                             endOfTransmission.add(cId);
-                            parser.addMessage(msg);
+                            r.parser.addMessage(msg);
                         }
                     }
                     for (CorrelationID cId : endOfTransmission) {
-                        ResultParser<?> parser = parsers.remove(cId); //remove from the map - not needed any longer.
-                        parser.noMoreMessages();
+                        ResultParser<?> parser = removeParser(cId); //not needed any longer.
+                        if (parser != null) parser.noMoreMessages(); //null if the request has just been cancelled
+                    }
+                    break;
+                case REQUEST_STATUS:
+                case TIMEOUT:
+                    for (Message msg : event) {
+                        if (debug) logger.debug("[{}] {}", type, msg);
+                        if (type == EventTypeEnum.REQUEST_STATUS && !REQUEST_FAILURE.equals(msg.messageType())) continue;
+                        CorrelationID cId = msg.correlationID();
+                        Registration r = cId == null ? null : parsers.remove(cId);
+                        if (r == null) continue;
+                        metrics.pendingResponses(parsers.size());
+                        logger.info("Request {} failed after {} ms: {}", cId, (System.nanoTime() - r.registeredNanos) / 1_000_000, msg);
+                        r.parser.fail(new BloombergException("The request failed (" + type + "): " + msg));
                     }
                     break;
                 case SUBSCRIPTION_DATA:
+                    long receivedNanos = System.nanoTime();
+                    SubscribedFields subscribed = subscribedFields;
+                    DataPool pool = dataPool;
                     for (Message msg : event) {
                         CorrelationID id = msg.correlationID();
-                        int numFields = msg.asElement().numElements();
+                        long[] mask = null;
+                        if (subscribed != null) {
+                            mask = subscribed.get(id);
+                            if (mask == null) continue; //cancelled subscription: nobody's listening
+                        }
+                        Element elements = msg.asElement();
+                        int numFields = elements.numElements();
                         for (int i = 0; i < numFields; ++i) {
-                            Element field = msg.asElement().getElement(i);
+                            Element field = elements.getElement(i);
+                            //skip the fields that have not been subscribed before converting them
+                            if (mask != null && !subscribed.contains(mask, field.name())) continue;
                             if (!field.isNull()) {
-                                Data data = new Data(id, field.name().toString(), BloombergUtils.getSpecificObjectOf(field));
+                                Data data = pool == null ? new Data() : pool.claim();
+                                data.set(id, field.name().toString(), field, receivedNanos, isTraced());
+                                if (trace) logger.trace("[SUBS_DATA] {}", data); //before it is queued: it is recycled once dispatched
                                 try {
                                     subscriptionDataQueue.put(data);
                                 } catch (InterruptedException e) {
                                     Thread.currentThread().interrupt();
                                     return; //ignore the rest
                                 }
-                                logger.trace("[SUBS_DATA] {}", data);
                             }
                         }
                     }
@@ -125,11 +193,10 @@ final class BloombergEventHandler implements EventHandler {
                 case SUBSCRIPTION_STATUS:
                     for (Message msg : event) {
                         CorrelationID id = msg.correlationID();
-                        logger.debug("[{}] id=[{}] {}", type, id, msg);
+                        if (debug) logger.debug("[{}] id=[{}] {}", type, id, msg);
 
                         String msgType = msg.messageType().toString();
                         if (msgType == null || !msgType.startsWith("SubscriptionStarted")) {
-                            logger.debug("[{}] id=[{}] {}", type, id, msg);
                             Element msgElement = msg.asElement();
                             Data data = null;
                             if (msgElement.hasElement("reason")){
@@ -153,7 +220,7 @@ final class BloombergEventHandler implements EventHandler {
                 default:
                     for (Message msg : event) {
                         CorrelationID id = msg.correlationID();
-                        logger.debug("[{}] id=[{}] {}", type, id, msg);
+                        if (debug) logger.debug("[{}] id=[{}] {}", type, id, msg);
                     }
             }
             //catch all - this code will run in one of the Bloomberg API's threads so we have no way to catch exceptions otherwise
@@ -179,8 +246,100 @@ final class BloombergEventHandler implements EventHandler {
         this.runOnSessionStartupFailure = runOnSessionStartupFailure;
     }
 
+    private boolean isTraced() {
+        if (tickSampling == 0 || ++tickCounter < tickSampling) return false;
+        tickCounter = 0;
+        return true;
+    }
+
+    /**
+     *
+     * @param diagnosticTap a tap that will capture all the messages received, or null to stop capturing messages
+     */
+    void setDiagnosticTap(DiagnosticTap diagnosticTap) {
+        this.diagnosticTap = diagnosticTap;
+    }
+
+    /**
+     *
+     * @param subscribedFields the fields of each subscription - the fields of the SUBSCRIPTION_DATA messages that
+     *                         have not been subscribed are skipped. If null (the default), all the fields are queued.
+     */
+    void setSubscribedFields(SubscribedFields subscribedFields) {
+        this.subscribedFields = subscribedFields;
+    }
+
+    /**
+     *
+     * @param dataPool the pool from which the Data of the SUBSCRIPTION_DATA messages are claimed - if null (the
+     *                 default), a new Data is allocated for each field.
+     */
+    void setDataPool(DataPool dataPool) {
+        this.dataPool = dataPool;
+    }
+
     void setParser(CorrelationID requestId, ResultParser<?> parser) {
-        parsers.put(requestId, parser);
+        setParser(requestId, parser, null);
+    }
+
+    /**
+     * @param owner the future of the request: if it completes while the parser is still registered, the parser is
+     *              removed by the next {@link #sweep()} - null if the parser can only be removed by its response or by
+     *              {@link #removeParser(CorrelationID)}
+     */
+    void setParser(CorrelationID requestId, ResultParser<?> parser, Future<?> owner) {
+        parsers.put(requestId, new Registration(parser, owner, System.nanoTime()));
+        metrics.pendingResponses(parsers.size());
+    }
+
+    /**
+     * @return the parser of the request, or null if the response has been fully received or the parser has already
+     *         been removed - the messages received for the request after this call are ignored
+     */
+    ResultParser<?> removeParser(CorrelationID requestId) {
+        Registration r = parsers.remove(requestId);
+        if (r == null) return null;
+        metrics.pendingResponses(parsers.size());
+        return r.parser;
+    }
+
+    /**
+     * Removes and cancels the parsers of the requests that nobody is waiting for any longer (the future of the request
+     * is done but the parser is still registered), so that their messages can be garbage collected.
+     *
+     * @return the correlation ids of the removed parsers - the requests should be cancelled
+     */
+    List<CorrelationID> sweep() {
+        List<CorrelationID> orphans = new ArrayList<>();
+        long now = System.nanoTime();
+        for (Map.Entry<CorrelationID, Registration> e : parsers.entrySet()) {
+            Registration r = e.getValue();
+            if (r.owner == null || !r.owner.isDone() || !parsers.remove(e.getKey(), r)) continue;
+            logger.info("Removing the parser of request {}, abandoned after {} ms", e.getKey(), (now - r.registeredNanos) / 1_000_000);
+            r.parser.cancel();
+            orphans.add(e.getKey());
+        }
+        if (!orphans.isEmpty()) metrics.pendingResponses(parsers.size());
+        return orphans;
+    }
+
+    /**
+     * @return the number of requests waiting for their response
+     */
+    int getPendingResponses() {
+        return parsers.size();
+    }
+
+    private static final class Registration {
+        private final ResultParser<?> parser;
+        private final Future<?> owner;
+        private final long registeredNanos;
+
+        Registration(ResultParser<?> parser, Future<?> owner, long registeredNanos) {
+            this.parser = parser;
+            this.owner = owner;
+            this.registeredNanos = registeredNanos;
+        }
     }
 
     /**
@@ -6,7 +6,14 @@ package com.assylias.jbloomberg;
 
 import com.bloomberglp.blpapi.Identity;
 
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 
 /**
@@ -122,6 +129,54 @@ public interface BloombergSession {
         return submit(request, null);
     }
 
+    /**
+     * Submits a request to the Bloomberg Session using the given Identity and priority, and returns immediately. When
+     * several requests are waiting to be sent, the requests with a higher priority are sent first - see
+     * {@link #submit(RequestBuilder, Identity)} for more details.
+     * <p>
+     * The default implementation ignores the priority.
+     *
+     * @param request  a request to be submitted
+     * @param identity a handle to the user whose privileges are to be used for this request - null if no identity is
+     *                 required
+     * @param priority the priority of the request
+     *
+     * @return a Future that contains the result of the request. The future can be cancelled to cancel a long running
+     *         request.
+     *
+     * @throws IllegalStateException if the start method was not called before this method
+     * @throws NullPointerException  if request or priority is null
+     */
+    default <T extends RequestResult> CompletableFuture<T> submit(RequestBuilder<T> request, Identity identity, RequestPriority priority) {
+        Objects.requireNonNull(priority, "priority cannot be null");
+        return submit(request, identity);
+    }
+
+    /**
+     * Submits a request with a deadline: if the result has not been received within the timeout, including the time
+     * spent waiting to be sent, the returned future completes exceptionally with a {@link TimeoutException} and the
+     * request is cancelled - see {@link #submit(RequestBuilder, Identity, RequestPriority)} for more details.
+     * <p>
+     * The default implementation ignores the timeout.
+     *
+     * @param request  a request to be submitted
+     * @param identity a handle to the user whose privileges are to be used for this request - null if no identity is
+     *                 required
+     * @param priority the priority of the request
+     * @param timeout  the maximum time to wait for the result
+     *
+     * @return a Future that contains the result of the request. The future can be cancelled to cancel a long running
+     *         request.
+     *
+     * @throws IllegalStateException    if the start method was not called before this method
+     * @throws NullPointerException     if request, priority or timeout is null
+     * @throws IllegalArgumentException if the timeout is not positive
+     */
+    default <T extends RequestResult> CompletableFuture<T> submit(RequestBuilder<T> request, Identity identity, RequestPriority priority, Duration timeout) {
+        Objects.requireNonNull(timeout, "timeout cannot be null");
+        return submit(request, identity, priority);
+    }
+
     /**
      * Subscribes to a stream of real time update using the given Identity. The SubscriptionBuilder object is used to specify the securities and
      * fields that need to be monitored. It also specifies the DataChangeListener that will be informed of the updates.
@@ -144,6 +199,126 @@ public interface BloombergSession {
         subscribe(subscription, null);
     }
 
+    /**
+     * Same as {@link #subscribe(SubscriptionBuilder, Identity)} but returns a future that completes once the
+     * subscriptions have been sent to Bloomberg, with the status of each security. This is useful when the rate of the
+     * subscriptions is limited (see {@link SessionConfiguration#subscriptionBatches(int, double)}): the securities are
+     * then sent in the background and the status of each security is available once its list has been sent.
+     * <p>
+     * A security reported as {@link SubscriptionStatus#FAILED} is not subscribed and can be subscribed again. A security
+     * reported as {@link SubscriptionStatus#SUBSCRIBED} may still be rejected by Bloomberg, in which case the
+     * {@link SubscriptionErrorListener} of the subscription is informed.
+     *
+     * @param subscription contains the parameters of the real time data that needs to be monitored.
+     * @param identity     a handle to the user whose privileges are to be used for this request
+     *
+     * @return a future that contains the status of each security of the subscription
+     */
+    default CompletableFuture<Map<String, SubscriptionStatus>> subscribeAsync(SubscriptionBuilder subscription, Identity identity) {
+        subscribe(subscription, identity);
+        Map<String, SubscriptionStatus> statuses = new LinkedHashMap<>();
+        for (String security : subscription.getSecurities()) statuses.put(security, SubscriptionStatus.SUBSCRIBED);
+        return CompletableFuture.completedFuture(Collections.unmodifiableMap(statuses));
+    }
+
+    /**
+     * Same as {@link #subscribeAsync(SubscriptionBuilder, Identity)} without an Identity.
+     */
+    default CompletableFuture<Map<String, SubscriptionStatus>> subscribeAsync(SubscriptionBuilder subscription) {
+        return subscribeAsync(subscription, null);
+    }
+
+    /**
+     * Same as {@link #subscribe(SubscriptionBuilder, Identity)} but returns a handle that reverts the subscription
+     * when it is closed - see {@link SubscriptionHandle}.
+     *
+     * @param subscription contains the parameters of the real time data that needs to be monitored.
+     * @param identity     a handle to the user whose privileges are to be used for this request
+     *
+     * @return a handle on the subscription
+     *
+     * @throws UnsupportedOperationException if the session does not support unsubscribing - the subscription is not
+     *                                       made
+     */
+    default SubscriptionHandle subscribeWithHandle(SubscriptionBuilder subscription, Identity identity) {
+        throw new UnsupportedOperationException("subscribeWithHandle is not supported by " + getClass().getSimpleName());
+    }
+
+    /**
+     * Same as {@link #subscribeWithHandle(SubscriptionBuilder, Identity)} without an Identity.
+     */
+    default SubscriptionHandle subscribeWithHandle(SubscriptionBuilder subscription) {
+        return subscribeWithHandle(subscription, null);
+    }
+
+    /**
+     * Returns a Publisher of the updates of a subscription, which are delivered when its Subscribers request them. Each
+     * Subscriber is subscribed to the securities and fields of the SubscriptionBuilder (and its error listener, if any)
+     * when it subscribes to the Publisher, and unsubscribed when it cancels its subscription. The updates received
+     * while a Subscriber has no demand are kept or discarded according to the backpressure strategy, so that a slow
+     * Subscriber neither accumulates an unbounded number of updates nor delays the other Subscribers.
+     * <p>
+     * The listeners of the SubscriptionBuilder are not used - the Subscribers receive the updates instead.
+     *
+     * @param subscription contains the parameters of the real time data that needs to be monitored.
+     * @param backpressure what to do with the updates that have not been requested yet
+     *
+     * @return a Publisher of the updates of the subscription
+     */
+    default EventFlow.Publisher<DataChangeEvent> subscribeAsPublisher(SubscriptionBuilder subscription, Backpressure backpressure) {
+        return new EventPublisher(this, subscription, backpressure);
+    }
+
+    /**
+     * Same as {@link #subscribeAsPublisher(SubscriptionBuilder, Backpressure)} with {@link Backpressure#conflate()}.
+     */
+    default EventFlow.Publisher<DataChangeEvent> subscribeAsPublisher(SubscriptionBuilder subscription) {
+        return subscribeAsPublisher(subscription, Backpressure.conflate());
+    }
+
+    /**
+     * Reverts a subscription: the listeners of the SubscriptionBuilder stop receiving the updates of its securities
+     * and fields or, if the builder has no listeners, its fields are removed with all their listeners. The fields that
+     * no one listens to any longer are removed from the Bloomberg subscription, which is resubscribed with the remaining
+     * fields, and the securities that are left without fields are unsubscribed. The securities and fields that are not
+     * subscribed are ignored.
+     *
+     * @param subscription the securities, fields and listeners to remove
+     *
+     * @return a future that contains the status of each modified security once the change has been sent to Bloomberg
+     *
+     * @throws UnsupportedOperationException if the session does not support unsubscribing
+     */
+    default CompletableFuture<Map<String, SubscriptionStatus>> unsubscribe(SubscriptionBuilder subscription) {
+        throw new UnsupportedOperationException("unsubscribe is not supported by " + getClass().getSimpleName());
+    }
+
+    /**
+     * Cancels the subscriptions to the given securities: the listeners of these securities are not informed of their
+     * updates any longer. The securities that are not subscribed are ignored.
+     *
+     * @param securities the securities that are no longer needed
+     *
+     * @return a future that contains the status of each subscribed security once its cancellation has been sent to
+     *         Bloomberg
+     *
+     * @throws UnsupportedOperationException if the session does not support unsubscribing
+     */
+    default CompletableFuture<Map<String, SubscriptionStatus>> unsubscribe(Collection<String> securities) {
+        throw new UnsupportedOperationException("unsubscribe is not supported by " + getClass().getSimpleName());
+    }
+
+    /**
+     * Returns the last values received by the real time subscriptions of this session, which can be queried at any
+     * time without registering a listener - see {@link LastValueCache}.
+     *
+     * @throws UnsupportedOperationException if the session does not keep the last values - see
+     *                                       {@link SessionConfiguration#cacheLastValues()}
+     */
+    default LastValueCache getLastValues() {
+        throw new UnsupportedOperationException("getLastValues is not supported by " + getClass().getSimpleName());
+    }
+
     /**
      * Returns the current {@link SessionState} of this Session. Note that there may be a slight delay between a change in
      * the state of the underlying Bloomberg connection and this method reflecting the change.
@@ -0,0 +1,556 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import com.bloomberglp.blpapi.Identity;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A BloombergSession that spreads the load over several underlying sessions, typically connected to different bbcomm /
+ * B-PIPE endpoints (see {@link com.bloomberglp.blpapi.SessionOptions#setServerAddresses}).
+ * <ul>
+ * <li>requests are routed to one of the sessions, either in turn ({@link Routing#ROUND_ROBIN}) or to the session that
+ * has the fewest requests in flight ({@link Routing#LEAST_IN_FLIGHT})</li>
+ * <li>subscriptions are pinned: all the updates of a given security are always received from the same session, and
+ * new securities are subscribed on the session that has the fewest subscriptions</li>
+ * <li>identities are pinned: an identity can only be used with the session that created it, so requests and
+ * subscriptions submitted with an identity returned by {@link #authorise(Authorisation)} are routed to that session</li>
+ * </ul>
+ * Sessions that are not connected (see {@link #getHealth()}) are skipped as long as at least one session is connected.
+ * <p>
+ * The pool owns the sessions: starting or stopping the pool starts or stops all the sessions.
+ * <p>
+ * This implementation is thread safe.
+ */
+public final class BloombergSessionPool implements BloombergSession {
+
+    private final static Logger logger = LoggerFactory.getLogger(BloombergSessionPool.class);
+
+    /**
+     * The strategies that can be used to choose the session to which a request is sent.
+     */
+    public enum Routing {
+        /**
+         * Requests are sent to each session in turn.
+         */
+        ROUND_ROBIN,
+        /**
+         * Requests are sent to the session that has the fewest requests in flight.
+         */
+        LEAST_IN_FLIGHT
+    }
+
+    private final List<Member> members;
+    private final Routing routing;
+    private final AtomicInteger next = new AtomicInteger();
+    /**
+     * The session on which each security has been subscribed - guarded by this
+     */
+    private final Map<String, Member> subscriptions = new HashMap<>();
+    /**
+     * The session that created each identity - guarded by itself
+     */
+    private final Map<Identity, Member> identities = new WeakHashMap<>();
+
+    /**
+     * Creates a pool over the given sessions, which must not be started yet.
+     *
+     * @param sessions the sessions to which the requests and subscriptions will be routed
+     * @param routing  the strategy used to route requests
+     *
+     * @throws NullPointerException     if any of the arguments is null or if sessions contains null
+     * @throws IllegalArgumentException if sessions is empty
+     */
+    public BloombergSessionPool(List<? extends BloombergSession> sessions, Routing routing) {
+        Preconditions.checkArgument(!sessions.isEmpty(), "sessions can't be empty");
+        this.routing = requireNonNull(routing, "routing can't be null");
+        List<Member> list = new ArrayList<>(sessions.size());
+        for (BloombergSession session : sessions) {
+            list.add(new Member(list.size(), requireNonNull(session, "sessions can't contain null")));
+        }
+        this.members = Collections.unmodifiableList(list);
+    }
+
+    @Override
+    public void start() throws BloombergException {
+        start(e -> { /* no-op */ });
+    }
+
+    /**
+     * Starts all the sessions. The onStartupFailure consumer is called for each session that fails to start.
+     *
+     * @throws BloombergException if none of the sessions could be started
+     */
+    @Override
+    public void start(Consumer<BloombergException> onStartupFailure) throws BloombergException {
+        requireNonNull(onStartupFailure);
+        BloombergException failure = null;
+        int failures = 0;
+        for (Member m : members) {
+            try {
+                m.session.start(onStartupFailure);
+            } catch (BloombergException e) {
+                logger.warn("Session #{} of the pool could not be started", m.index, e);
+                if (failure == null) failure = e;
+                failures++;
+            }
+        }
+        if (failures == members.size()) throw failure;
+    }
+
+    @Override
+    public void stop() {
+        for (Member m : members) {
+            m.session.stop();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Identity> authorise(Authorisation authorisation) {
+        Member m = route();
+        return m.session.authorise(authorisation).thenApply(identity -> {
+            synchronized (identities) {
+                identities.put(identity, m);
+            }
+            return identity;
+        });
+    }
+
+    @Override
+    public <T extends RequestResult> CompletableFuture<T> submit(RequestBuilder<T> request, Identity identity) {
+        return submit(request, identity, RequestPriority.NORMAL);
+    }
+
+    @Override
+    public <T extends RequestResult> CompletableFuture<T> submit(RequestBuilder<T> request, Identity identity, RequestPriority priority) {
+        requireNonNull(request, "request cannot be null");
+        requireNonNull(priority, "priority cannot be null");
+        return submit(identity, s -> s.submit(request, identity, priority));
+    }
+
+    @Override
+    public <T extends RequestResult> CompletableFuture<T> submit(RequestBuilder<T> request, Identity identity, RequestPriority priority, Duration timeout) {
+        requireNonNull(request, "request cannot be null");
+        requireNonNull(priority, "priority cannot be null");
+        requireNonNull(timeout, "timeout cannot be null");
+        return submit(identity, s -> s.submit(request, identity, priority, timeout));
+    }
+
+    private <T extends RequestResult> CompletableFuture<T> submit(Identity identity, Function<BloombergSession, CompletableFuture<T>> submitter) {
+        Member m = identity == null ? route() : memberOf(identity);
+        m.inFlight.incrementAndGet();
+        m.submitted.incrementAndGet();
+        CompletableFuture<T> result;
+        try {
+            result = submitter.apply(m.session);
+        } catch (RuntimeException e) {
+            m.inFlight.decrementAndGet();
+            throw e;
+        }
+        result.whenComplete((r, t) -> {
+            m.inFlight.decrementAndGet();
+            if (t != null) m.failed.incrementAndGet();
+        });
+        return result;
+    }
+
+    /**
+     * If a session fails to subscribe, the securities pinned by this call are released, including those of the
+     * sessions that have not been called yet.
+     */
+    @Override
+    public void subscribe(SubscriptionBuilder subscription, Identity identity) {
+        Map<Member, List<String>> pinned = new LinkedHashMap<>();
+        Map<Member, List<String>> securitiesByMember = route(subscription, identity, pinned);
+        for (Map.Entry<Member, List<String>> e : securitiesByMember.entrySet()) {
+            try {
+                e.getKey().session.subscribe(subscription.withSecurities(e.getValue()), identity);
+            } catch (RuntimeException ex) {
+                releaseFrom(e.getKey(), securitiesByMember.keySet(), pinned);
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * The securities pinned by this call are released if their subscription fails.
+     */
+    @Override
+    public CompletableFuture<Map<String, SubscriptionStatus>> subscribeAsync(SubscriptionBuilder subscription, Identity identity) {
+        Map<Member, List<String>> pinned = new LinkedHashMap<>();
+        Map<Member, List<String>> securitiesByMember = route(subscription, identity, pinned);
+        List<CompletableFuture<Map<String, SubscriptionStatus>>> results = new ArrayList<>();
+        for (Map.Entry<Member, List<String>> e : securitiesByMember.entrySet()) {
+            Member m = e.getKey();
+            List<String> pins = pinned.getOrDefault(m, Collections.emptyList());
+            CompletableFuture<Map<String, SubscriptionStatus>> result;
+            try {
+                result = m.session.subscribeAsync(subscription.withSecurities(e.getValue()), identity);
+            } catch (RuntimeException ex) {
+                releaseFrom(m, securitiesByMember.keySet(), pinned);
+                throw ex;
+            }
+            result.whenComplete((statuses, t) -> {
+                if (t != null) release(m, pins);
+                else release(m, pins.stream().filter(s -> statuses.get(s) == SubscriptionStatus.FAILED).collect(Collectors.toList()));
+            });
+            results.add(result);
+        }
+        return SubscriptionBatcher.merge(results);
+    }
+
+    @Override
+    public SubscriptionHandle subscribeWithHandle(SubscriptionBuilder subscription, Identity identity) {
+        subscribe(subscription, identity);
+        return new UnsubscribingHandle(this, subscription);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, SubscriptionStatus>> unsubscribe(Collection<String> securities) {
+        Map<Member, List<String>> securitiesByMember = new LinkedHashMap<>();
+        synchronized (this) {
+            for (String security : securities) {
+                Member m = subscriptions.remove(security);
+                if (m == null) continue;
+                m.subscriptions.decrementAndGet();
+                securitiesByMember.computeIfAbsent(m, k -> new ArrayList<>()).add(security);
+            }
+        }
+        List<CompletableFuture<Map<String, SubscriptionStatus>>> results = new ArrayList<>();
+        securitiesByMember.forEach((m, list) -> results.add(m.session.unsubscribe(list)));
+        return SubscriptionBatcher.merge(results);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, SubscriptionStatus>> unsubscribe(SubscriptionBuilder subscription) {
+        Map<Member, List<String>> securitiesByMember = new LinkedHashMap<>();
+        synchronized (this) {
+            for (String security : subscription.getSecurities()) {
+                Member m = subscriptions.get(security);
+                if (m != null) securitiesByMember.computeIfAbsent(m, k -> new ArrayList<>()).add(security);
+            }
+        }
+        List<CompletableFuture<Map<String, SubscriptionStatus>>> results = new ArrayList<>();
+        securitiesByMember.forEach((m, securities) -> {
+            CompletableFuture<Map<String, SubscriptionStatus>> result = m.session.unsubscribe(subscription.withSecurities(securities));
+            result.thenAccept(statuses -> unpin(m, statuses));
+            results.add(result);
+        });
+        return SubscriptionBatcher.merge(results);
+    }
+
+    /**
+     * Releases the securities that have been unsubscribed from a session, so that a new subscription can be routed to
+     * any session.
+     */
+    private synchronized void unpin(Member m, Map<String, SubscriptionStatus> statuses) {
+        statuses.forEach((security, status) -> {
+            if (status == SubscriptionStatus.UNSUBSCRIBED && subscriptions.remove(security, m)) m.subscriptions.decrementAndGet();
+        });
+    }
+
+    /**
+     * Releases the securities that could not be subscribed.
+     */
+    private synchronized void release(Member m, Collection<String> securities) {
+        for (String security : securities) {
+            if (subscriptions.remove(security, m)) m.subscriptions.decrementAndGet();
+        }
+    }
+
+    /**
+     * Releases the securities pinned to the failed member and to the members that follow it, which have not been called.
+     */
+    private void releaseFrom(Member failed, Collection<Member> members, Map<Member, List<String>> pinned) {
+        boolean found = false;
+        for (Member m : members) {
+            found |= m == failed;
+            if (found) release(m, pinned.getOrDefault(m, Collections.emptyList()));
+        }
+    }
+
+    /**
+     * Pins each new security of the subscription to the session that has the fewest subscriptions, or to the session
+     * of the identity.
+     *
+     * @param pinned receives the new securities, by session
+     *
+     * @return the securities of the subscription, by session
+     */
+    private Map<Member, List<String>> route(SubscriptionBuilder subscription, Identity identity, Map<Member, List<String>> pinned) {
+        Map<Member, List<String>> securitiesByMember = new LinkedHashMap<>();
+        synchronized (this) {
+            List<Member> candidates = null;
+            for (String security : subscription.getSecurities()) {
+                Member m = subscriptions.get(security);
+                if (m == null) {
+                    if (identity != null) {
+                        m = memberOf(identity);
+                    } else {
+                        if (candidates == null) candidates = connectedMembers();
+                        m = leastSubscribed(candidates);
+                    }
+                    subscriptions.put(security, m);
+                    m.subscriptions.incrementAndGet();
+                    pinned.computeIfAbsent(m, k -> new ArrayList<>()).add(security);
+                }
+                securitiesByMember.computeIfAbsent(m, k -> new ArrayList<>()).add(security);
+            }
+        }
+        return securitiesByMember;
+    }
+
+    /**
+     * @return the last values of the subscriptions of all the sessions - a security is only subscribed on one session so
+     *         its values are read from the first session that has them
+     */
+    @Override
+    public LastValueCache getLastValues() {
+        return new LastValueCache() {
+            @Override
+            public TypedObject get(String security, RealtimeField field) {
+                for (Member m : members) {
+                    TypedObject value = m.session.getLastValues().get(security, field);
+                    if (value != null) return value;
+                }
+                return null;
+            }
+
+            @Override
+            public boolean isStale(String security, RealtimeField field) {
+                for (Member m : members) {
+                    if (m.session.getLastValues().get(security, field) != null) return m.session.getLastValues().isStale(security, field);
+                }
+                return false;
+            }
+
+            @Override
+            public LastValueSnapshot snapshot(List<String> securities, List<RealtimeField> fields) {
+                LastValueSnapshot merged = new LastValueSnapshot(securities, fields);
+                for (Member m : members) {
+                    LastValueSnapshot s = m.session.getLastValues().snapshot(securities, fields);
+                    for (int i = 0; i < securities.size(); i++) {
+                        for (int j = 0; j < fields.size(); j++) {
+                            if (s.hasValue(i, j) && !merged.hasValue(i, j)) merged.set(i, j, s.get(i, j), s.getTimestamp(i, j), s.isStale(i, j));
+                        }
+                    }
+                }
+                return merged;
+            }
+        };
+    }
+
+    /**
+     * @return STARTED if at least one session is started, otherwise the "best" state of the underlying sessions
+     */
+    @Override
+    public SessionState getSessionState() {
+        SessionState best = null;
+        for (Member m : members) {
+            SessionState s = m.getState();
+            if (s == null) continue;
+            if (best == null || rank(s) > rank(best)) best = s;
+        }
+        return best == null ? SessionState.NEW : best;
+    }
+
+    private static int rank(SessionState state) {
+        switch (state) {
+            case STARTED: return 6;
+            case CONNECTION_UP: return 5;
+            case STARTING: return 4;
+            case CONNECTION_DOWN: return 3;
+            case STARTUP_FAILURE: return 2;
+            case TERMINATED: return 1;
+            default: return 0;
+        }
+    }
+
+    /**
+     * @return a snapshot of the health of each underlying session, in the order in which they were provided
+     */
+    public List<SessionHealth> getHealth() {
+        ImmutableList.Builder<SessionHealth> health = ImmutableList.builder();
+        for (Member m : members) {
+            health.add(new SessionHealth(m));
+        }
+        return health.build();
+    }
+
+    private Member memberOf(Identity identity) {
+        Member m;
+        synchronized (identities) {
+            m = identities.get(identity);
+        }
+        return m == null ? route() : m;
+    }
+
+    private Member route() {
+        List<Member> candidates = connectedMembers();
+        int start = Math.floorMod(next.getAndIncrement(), candidates.size());
+        if (routing == Routing.ROUND_ROBIN) return candidates.get(start);
+        Member best = null;
+        for (int i = 0; i < candidates.size(); i++) {
+            Member m = candidates.get((start + i) % candidates.size());
+            if (best == null || m.inFlight.get() < best.inFlight.get()) best = m;
+        }
+        return best;
+    }
+
+    private static Member leastSubscribed(List<Member> candidates) {
+        Member best = null;
+        for (Member m : candidates) {
+            if (best == null || m.subscriptions.get() < best.subscriptions.get()) best = m;
+        }
+        return best;
+    }
+
+    /**
+     * @return the members that are connected, or all the members if none are connected
+     */
+    private List<Member> connectedMembers() {
+        List<Member> connected = new ArrayList<>(members.size());
+        for (Member m : members) {
+            if (m.isConnected()) connected.add(m);
+        }
+        return connected.isEmpty() ? members : connected;
+    }
+
+    @Override
+    public String toString() {
+        return "BloombergSessionPool" + members;
+    }
+
+    private static final class Member {
+        private final int index;
+        private final BloombergSession session;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong submitted = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicInteger subscriptions = new AtomicInteger();
+
+        Member(int index, BloombergSession session) {
+            this.index = index;
+            this.session = session;
+        }
+
+        SessionState getState() {
+            try {
+                return session.getSessionState();
+            } catch (UnsupportedOperationException e) {
+                return null;
+            }
+        }
+
+        boolean isConnected() {
+            SessionState s = getState();
+            return s == null || s == SessionState.STARTED || s == SessionState.CONNECTION_UP;
+        }
+
+        @Override
+        public String toString() {
+            return session.toString();
+        }
+    }
+
+    /**
+     * The health of one of the sessions of a pool, at the time it was created.
+     */
+    public static final class SessionHealth {
+        private final BloombergSession session;
+        private final SessionState state;
+        private final boolean connected;
+        private final int requestsInFlight;
+        private final long requestsSubmitted;
+        private final long requestsFailed;
+        private final int subscriptions;
+
+        private SessionHealth(Member m) {
+            this.session = m.session;
+            this.state = m.getState();
+            this.connected = m.isConnected();
+            this.requestsInFlight = m.inFlight.get();
+            this.requestsSubmitted = m.submitted.get();
+            this.requestsFailed = m.failed.get();
+            this.subscriptions = m.subscriptions.get();
+        }
+
+        /**
+         * @return the underlying session
+         */
+        public BloombergSession getSession() {
+            return session;
+        }
+
+        /**
+         * @return the state of the session, or null if the session does not support {@link BloombergSession#getSessionState()}
+         */
+        public SessionState getState() {
+            return state;
+        }
+
+        /**
+         * @return true if requests and subscriptions can be routed to the session
+         */
+        public boolean isConnected() {
+            return connected;
+        }
+
+        /**
+         * @return the number of requests that have been submitted to the session and are not completed yet
+         */
+        public int getRequestsInFlight() {
+            return requestsInFlight;
+        }
+
+        /**
+         * @return the number of requests that have been submitted to the session
+         */
+        public long getRequestsSubmitted() {
+            return requestsSubmitted;
+        }
+
+        /**
+         * @return the number of requests submitted to the session that have completed exceptionally
+         */
+        public long getRequestsFailed() {
+            return requestsFailed;
+        }
+
+        /**
+         * @return the number of securities subscribed through the session
+         */
+        public int getSubscriptions() {
+            return subscriptions;
+        }
+
+        @Override
+        public String toString() {
+            return session + " [connected=" + connected + ", inFlight=" + requestsInFlight + ", submitted=" + requestsSubmitted
+                    + ", failed=" + requestsFailed + ", subscriptions=" + subscriptions + "]";
+        }
+    }
+}
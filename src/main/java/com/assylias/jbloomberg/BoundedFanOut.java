@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Submits one asynchronous task per key, with at most a given number of tasks running at the same time: a new task is
+ * submitted every time a running task completes.
+ * <p>
+ * The returned future completes once all the tasks have completed. By default, if a task fails, the returned future
+ * completes exceptionally and the tasks that are still running are cancelled - alternatively, the failures can be
+ * reported to a consumer without affecting the other tasks. Cancelling the returned future cancels the tasks that are
+ * still running and no new task is submitted.
+ * <p>
+ * This class is thread safe.
+ */
+final class BoundedFanOut<K, T> {
+
+    private final Iterator<K> keys; //guarded by this
+    private final Function<? super K, CompletableFuture<T>> submitter;
+    private final BiConsumer<? super K, ? super T> onResult;
+    private final BiConsumer<? super K, Throwable> onFailure; //null to fail fast
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+    private final Set<CompletableFuture<T>> running = new HashSet<>(); //guarded by this
+    private int remaining; //guarded by this
+    /**
+     * The number of tasks waiting to be submitted by the thread that is submitting - a task that completes while it is
+     * submitted, for example because the submitter failed, must not submit the next one recursively
+     */
+    private final AtomicInteger toSubmit = new AtomicInteger();
+
+    /**
+     * @param keys           the keys for which a task must be submitted
+     * @param maxConcurrency the maximum number of tasks running at the same time
+     * @param submitter      submits the task of a key
+     * @param onResult       called with the result of each task, as soon as it is available
+     *
+     * @return a future that completes when all the tasks have completed
+     *
+     * @throws IllegalArgumentException if maxConcurrency is not positive
+     */
+    static <K, T> CompletableFuture<Void> run(Collection<K> keys, int maxConcurrency,
+                                              Function<? super K, CompletableFuture<T>> submitter,
+                                              BiConsumer<? super K, ? super T> onResult) {
+        return run(keys, maxConcurrency, submitter, onResult, null);
+    }
+
+    /**
+     * Same as {@link #run(Collection, int, Function, BiConsumer)} but the failed tasks are reported to onFailure, with
+     * the cause of the failure, and the returned future completes normally once all the tasks have completed.
+     */
+    static <K, T> CompletableFuture<Void> run(Collection<K> keys, int maxConcurrency,
+                                              Function<? super K, CompletableFuture<T>> submitter,
+                                              BiConsumer<? super K, ? super T> onResult,
+                                              BiConsumer<? super K, Throwable> onFailure) {
+        Preconditions.checkArgument(maxConcurrency > 0, "maxConcurrency must be > 0 (was %s)", maxConcurrency);
+        BoundedFanOut<K, T> fanOut = new BoundedFanOut<>(keys, submitter, onResult, onFailure);
+        if (keys.isEmpty()) fanOut.done.complete(null);
+        for (int i = 0; i < maxConcurrency; i++) {
+            fanOut.submitNext();
+        }
+        return fanOut.done;
+    }
+
+    private BoundedFanOut(Collection<K> keys, Function<? super K, CompletableFuture<T>> submitter,
+                          BiConsumer<? super K, ? super T> onResult, BiConsumer<? super K, Throwable> onFailure) {
+        this.keys = new ArrayList<>(keys).iterator();
+        this.remaining = keys.size();
+        this.submitter = requireNonNull(submitter);
+        this.onResult = requireNonNull(onResult);
+        this.onFailure = onFailure;
+        done.whenComplete((r, t) -> {
+            if (t != null) cancelRunning();
+        });
+    }
+
+    private void submitNext() {
+        if (toSubmit.getAndIncrement() != 0) return; //the thread that is submitting will submit it
+        int missed = 1;
+        do {
+            for (int i = 0; i < missed; i++) {
+                submitOne();
+            }
+            missed = toSubmit.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void submitOne() {
+        K key;
+        synchronized (this) {
+            if (done.isDone() || !keys.hasNext()) return;
+            key = keys.next();
+        }
+        CompletableFuture<T> task;
+        try {
+            task = submitter.apply(key);
+        } catch (RuntimeException e) {
+            task = new CompletableFuture<>();
+            task.completeExceptionally(e);
+        }
+        synchronized (this) {
+            running.add(task);
+        }
+        if (done.isDone() && !task.isDone()) task.cancel(true); //cancelled while the task was being submitted
+        CompletableFuture<T> submitted = task;
+        submitted.whenComplete((result, error) -> onComplete(key, submitted, result, error));
+    }
+
+    private void onComplete(K key, CompletableFuture<T> task, T result, Throwable error) {
+        boolean last;
+        synchronized (this) {
+            running.remove(task);
+            last = --remaining == 0;
+        }
+        try {
+            if (error == null) {
+                onResult.accept(key, result);
+            } else if (onFailure != null) {
+                onFailure.accept(key, error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            } else {
+                done.completeExceptionally(error);
+                return;
+            }
+        } catch (RuntimeException e) {
+            done.completeExceptionally(e);
+            return;
+        }
+        if (last) done.complete(null);
+        else submitNext();
+    }
+
+    private void cancelRunning() {
+        List<CompletableFuture<T>> tasks;
+        synchronized (this) {
+            tasks = new ArrayList<>(running);
+            running.clear();
+        }
+        for (CompletableFuture<T> task : tasks) {
+            task.cancel(true);
+        }
+    }
+}
@@ -8,90 +8,321 @@ import com.bloomberglp.blpapi.CorrelationID;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Collections;
-import java.util.Set;
-import java.util.concurrent.Callable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import static java.util.Objects.requireNonNull;
 
 /**
  * An EventsManager that skips no-change events. For example, if the same "BID" is received twice for the same security,
  * only the first one will be relayed to the listeners as a change.
  *
+ * The DataChangeListeners are called in the {@link ListenerExecutor} they were registered with, or in the default
+ * executor of the session. The executors are created for the session when they are first used.
+ * The listeners that take more than one second to process an event are reported by a watchdog thread of the session,
+ * started with the first executor that is not inline.
+ *
  * This implementation is thread safe.
  */
 final class ConcurrentConflatedEventsManager implements EventsManager {
 
     private static final Logger logger = LoggerFactory.getLogger(ConcurrentConflatedEventsManager.class);
-    private static final ExecutorService fireListeners = Executors.newFixedThreadPool(10, new ThreadFactory() {
-        private final AtomicInteger number = new AtomicInteger();
-
-        @Override public Thread newThread(Runnable r) {
-            Thread t = new Thread(r, "Bloomberg Listeners Thread #" + number.incrementAndGet());
-            t.setDaemon(true); //daemon to allow JVM exit
-            return t;
-        }
-    });
-    private final ConcurrentMap<EventsKey, Listeners> listenersMap = new ConcurrentHashMap<>();
+    private static final long SLOW_LISTENER_NANOS = TimeUnit.SECONDS.toNanos(1);
+    /**
+     * How often the watchdog checks the listener calls in progress
+     */
+    private static final long WATCHDOG_PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    /**
+     * The listeners of each subscription, by field - the fields of a subscription are resolved with an array index
+     */
+    private final ConcurrentMap<CorrelationID, FieldSlots> subscriptions = new ConcurrentHashMap<>();
+    /**
+     * The view passed to the flyweight listeners, reused for all the updates fired by a thread
+     */
+    private static final ThreadLocal<RealtimeUpdate> UPDATE = ThreadLocal.withInitial(RealtimeUpdate::new);
+    /**
+     * The executor of the listeners called inline, in the thread that fires the events
+     */
+    private static final Executor INLINE = Runnable::run;
     private final ConcurrentMap<CorrelationID, SubscriptionErrorListener> errorListeners = new ConcurrentHashMap<>();
+    private final SessionMetrics metrics;
+    private final ListenerExecutor defaultExecutor;
+    private final String name;
+    /**
+     * The executors of the session, created when they are first used - the first one is named after the session and
+     * the following ones get a suffix
+     */
+    private final ConcurrentMap<ListenerExecutor, Executor> executors = new ConcurrentHashMap<>();
+    private final Watchdog watchdog;
+    /**
+     * Runs the watchdog, started with the first executor that is not inline - guarded by this
+     */
+    private ScheduledExecutorService watchdogTimer;
+    /**
+     * Times the periods of the sampled listeners, created with the first one - guarded by this
+     */
+    private HashedTimerWheel samplingTimer;
+    private boolean stopped; //guarded by this
+
+    ConcurrentConflatedEventsManager() {
+        this(SessionMetrics.NO_OP);
+    }
+
+    /**
+     * @param metrics informed of the time spent in the listeners and of slow listeners
+     */
+    ConcurrentConflatedEventsManager(SessionMetrics metrics) {
+        this(metrics, ListenerExecutor.getDefault(), "Bloomberg Listeners");
+    }
+
+    /**
+     * @param metrics         informed of the time spent in the listeners and of slow listeners
+     * @param defaultExecutor the executor of the listeners registered without one, and of the error listeners
+     * @param name            the name of the session's executors, which prefixes the names of their threads
+     */
+    ConcurrentConflatedEventsManager(SessionMetrics metrics, ListenerExecutor defaultExecutor, String name) {
+        this.metrics = metrics;
+        this.defaultExecutor = requireNonNull(defaultExecutor);
+        this.name = requireNonNull(name);
+        this.watchdog = new Watchdog(metrics);
+    }
 
     @Override
     public void addEventListener(String ticker, CorrelationID id, RealtimeField field, DataChangeListener lst) {
-        logger.debug("addEventListener({}, {}, {}, {})", new Object[]{ticker, id, field, lst});
-        EventsKey key = EventsKey.of(id, field);
-        Listeners listenersInMap = listenersMap.computeIfAbsent(key, k -> new Listeners(ticker));
-        listenersInMap.addListener(lst);
+        addEventListener(ticker, id, field, lst, null);
+    }
+
+    @Override
+    public void addEventListener(String ticker, CorrelationID id, RealtimeField field, DataChangeListener lst, ListenerExecutor executor) {
+        if (logger.isDebugEnabled()) logger.debug("addEventListener({}, {}, {}, {}, {})", ticker, id, field, lst, executor);
+        Executor e = executorOf(executor == null ? defaultExecutor : executor);
+        if (lst instanceof SampledListener) bindSampled((SampledListener) lst, ticker, field, e);
+        subscriptions.compute(id, (k, slots) -> {
+            if (slots == null) slots = new FieldSlots();
+            slots.getOrCreate(field, ticker, metrics, watchdog).addListener(lst, e);
+            return slots;
+        });
+    }
+
+    private Executor executorOf(ListenerExecutor executor) {
+        return executors.computeIfAbsent(executor, e -> {
+            if (e.getKind() == ListenerExecutor.Kind.INLINE) return INLINE;
+            startWatchdog();
+            int number = executors.size();
+            return e.newExecutor(number == 0 ? name : name + "." + number);
+        });
+    }
+
+    /**
+     * The delayed updates of a sampled listener are forwarded by the executor of its subscription, like the others.
+     */
+    private void bindSampled(SampledListener lst, String ticker, RealtimeField field, Executor executor) {
+        HashedTimerWheel timer;
+        synchronized (this) {
+            if (stopped) return;
+            if (samplingTimer == null) samplingTimer = new HashedTimerWheel(10, TimeUnit.MILLISECONDS, 512, name + " Sampling Timer");
+            timer = samplingTimer;
+        }
+        String updates = "the sampled updates of " + ticker + " " + field;
+        lst.bind(ticker, field.toString(), timer, flush -> execute(executor, flush, lst, updates, watchdog));
+    }
+
+    private synchronized void startWatchdog() {
+        if (watchdogTimer != null || stopped) return;
+        watchdogTimer = Executors.newSingleThreadScheduledExecutor(ListenerExecutor.threadFactory(name + " Watchdog"));
+        watchdogTimer.scheduleAtFixedRate(watchdog::check, WATCHDOG_PERIOD_NANOS, WATCHDOG_PERIOD_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Shuts down the executors created by this EventsManager - the listeners are not called any longer.
+     */
+    @Override
+    public void stop() {
+        executors.forEach((spec, executor) -> {
+            if (spec.getKind() != ListenerExecutor.Kind.CUSTOM && executor instanceof ExecutorService) {
+                ((ExecutorService) executor).shutdownNow();
+            }
+        });
+        synchronized (this) {
+            stopped = true;
+            if (watchdogTimer != null) watchdogTimer.shutdownNow();
+            if (samplingTimer != null) samplingTimer.stop();
+        }
+    }
+
+    @Override
+    public void addFlyweightListener(String ticker, CorrelationID id, RealtimeField field, FlyweightListener lst) {
+        if (logger.isDebugEnabled()) logger.debug("addFlyweightListener({}, {}, {}, {})", ticker, id, field, lst);
+        subscriptions.compute(id, (k, slots) -> {
+            if (slots == null) slots = new FieldSlots();
+            slots.getOrCreate(field, ticker, metrics, watchdog).addFlyweight(lst);
+            return slots;
+        });
+    }
+
+    @Override
+    public boolean removeEventListener(CorrelationID id, RealtimeField field, DataChangeListener lst) {
+        if (logger.isDebugEnabled()) logger.debug("removeEventListener({}, {}, {})", id, field, lst);
+        return remove(id, field, listeners -> listeners.removeListener(lst));
+    }
+
+    @Override
+    public boolean removeFlyweightListener(CorrelationID id, RealtimeField field, FlyweightListener lst) {
+        if (logger.isDebugEnabled()) logger.debug("removeFlyweightListener({}, {}, {})", id, field, lst);
+        return remove(id, field, listeners -> listeners.removeFlyweight(lst));
+    }
+
+    /**
+     * @return true if the listener was removed and was the last listener of the field
+     */
+    private boolean remove(CorrelationID id, RealtimeField field, Predicate<Listeners> removal) {
+        boolean[] last = new boolean[1];
+        subscriptions.computeIfPresent(id, (k, slots) -> {
+            Listeners listeners = slots.get(field);
+            if (listeners != null && removal.test(listeners) && listeners.isEmpty()) {
+                slots.remove(field);
+                last[0] = true;
+            }
+            return slots.isEmpty() ? null : slots;
+        });
+        return last[0];
+    }
+
+    @Override
+    public void removeEventListeners(CorrelationID id, Collection<RealtimeField> fields) {
+        if (logger.isDebugEnabled()) logger.debug("removeEventListeners({}, {})", id, fields);
+        subscriptions.computeIfPresent(id, (k, slots) -> {
+            for (RealtimeField field : fields) {
+                slots.remove(field);
+            }
+            return slots.isEmpty() ? null : slots;
+        });
+    }
+
+    @Override
+    public void removeErrorListener(CorrelationID id) {
+        errorListeners.remove(id);
     }
 
     @Override
-    public void fireEvent(CorrelationID id, RealtimeField field, Object value) {
-        final EventsKey key = EventsKey.of(id, field);
-        Listeners lst = listenersMap.get(key);
+    public void clearLastValues(CorrelationID id) {
+        FieldSlots slots = subscriptions.get(id);
+        if (slots == null) return;
+        for (Listeners lst : slots.byOrdinal) {
+            if (lst == null) continue;
+            synchronized (lst) {
+                lst.previous.clear();
+                lst.previousValue = null;
+            }
+        }
+    }
+
+    @Override
+    public void fireEvent(CorrelationID id, RealtimeField field, Object value, long receivedNanos, boolean traced) {
+        fireEvent(id, field, new FieldValue().set(value), receivedNanos, traced, false);
+    }
+
+    @Override
+    public void fireEvent(CorrelationID id, RealtimeField field, FieldValue value, long receivedNanos, boolean traced) {
+        fireEvent(id, field, value, receivedNanos, traced, false);
+    }
+
+    /**
+     * The snapshot is only relayed if no value has been received yet: a real time update received before the snapshot
+     * is more recent.
+     */
+    @Override
+    public void seedEvent(CorrelationID id, RealtimeField field, Object value) {
+        fireEvent(id, field, new FieldValue().set(value), System.nanoTime(), false, true);
+    }
+
+    /**
+     * The value is conflated and passed to the flyweight listeners without being boxed: it is only boxed for the
+     * DataChangeListeners.
+     */
+    private void fireEvent(CorrelationID id, RealtimeField field, FieldValue value, long receivedNanos, boolean traced, boolean seed) {
+        FieldSlots slots = subscriptions.get(id);
+        Listeners lst = slots == null ? null : slots.get(field);
         if (lst == null) {
             return; //skip that event: nobody's listening anyway
         }
         String ticker = lst.ticker;
         DataChangeEvent evt = null;
-        TypedObject newValue = TypedObject.of(value);
+        boolean changed;
         synchronized (lst) {
-            if (!newValue.equals(lst.previousValue)) {
-                evt = new DataChangeEvent(ticker, field.toString(), lst.previousValue, newValue);
-                lst.previousValue = newValue;
+            changed = lst.previous.isEmpty() || !seed && !value.isSame(lst.previous);
+            if (changed) {
+                //the events and their TypedObjects are only created for the DataChangeListeners
+                if (!lst.listeners.isEmpty()) {
+                    TypedObject newValue = TypedObject.of(value.toObject());
+                    evt = new DataChangeEvent(ticker, field.toString(), lst.getPreviousValue(), newValue, receivedNanos, traced);
+                    lst.previousValue = newValue;
+                } else {
+                    lst.previousValue = null;
+                }
+                lst.previous.set(value);
             }
         }
-        if (evt != null) lst.fireEvent(evt);
+        if (changed) {
+            if (traced) metrics.tickLatency(SessionMetrics.TickStage.CONFLATED, System.nanoTime() - receivedNanos);
+            if (evt != null) lst.fireEvent(evt);
+            lst.fireFlyweights(value, receivedNanos, traced);
+        }
     }
 
     @Override
     public void fireError(CorrelationID id, SubscriptionError error) {
         SubscriptionErrorListener lst = errorListeners.get(id);
         if (lst != null) {
-            Future<?> f = fireListeners.submit(() -> lst.onError(error));
-            monitorListenerExecution(f, lst, error);
+            execute(executorOf(defaultExecutor), () -> lst.onError(error), lst, error, watchdog);
         }
     }
 
-    void monitorListenerExecution(Future<?> f, SubscriptionErrorListener lst, SubscriptionError error) {
-        fireListeners.submit(new Callable<Void>() {
-            @Override public Void call() throws Exception {
-                try {
-                    f.get(1, TimeUnit.SECONDS);
-                } catch (TimeoutException e) {
-                    logger.warn("Slow error listener {} has not processed error {} in one second", lst, error);
-                } catch (ExecutionException e) {
-                    logger.error("Listener " + lst + " has thrown exception on error " + error, e.getCause());
-                }
-                return null;
-              }
-        });
+    /**
+     * Calls a listener in the executor - a listener that throws an exception is logged and a listener that takes more
+     * than one second is reported, while it is still running unless it is called inline.
+     *
+     * @param event the event passed to the listener, for logging
+     */
+    private static void execute(Executor executor, Runnable call, Object lst, Object event, Watchdog watchdog) {
+        if (executor == INLINE) {
+            long start = System.nanoTime();
+            run(call, lst, event);
+            if (System.nanoTime() - start > SLOW_LISTENER_NANOS) reportSlow(lst, event, watchdog.metrics);
+            return;
+        }
+        try {
+            executor.execute(() -> watchdog.run(call, lst, event));
+        } catch (RejectedExecutionException e) {
+            logger.debug("Executor of listener {} is stopped, event {} discarded", lst, event);
+        }
+    }
+
+    private static void run(Runnable call, Object lst, Object event) {
+        try {
+            call.run();
+        } catch (RuntimeException e) {
+            logger.error("Listener " + lst + " has thrown exception on " + event, e);
+        }
+    }
+
+    private static void reportSlow(Object lst, Object event, SessionMetrics metrics) {
+        metrics.slowListener();
+        logger.warn("Slow listener {} has not processed {} in one second", lst, event);
     }
 
     @Override
@@ -99,43 +330,220 @@ final class ConcurrentConflatedEventsManager implements EventsManager {
         errorListeners.put(id, lst);
     }
 
+    /**
+     * Reports the listeners that take more than one second to process an event, without a timer per call: each thread
+     * that calls the listeners records when its current call started, and the calls in progress are checked
+     * periodically.
+     */
+    private static final class Watchdog {
+
+        private final SessionMetrics metrics;
+        private final Collection<Worker> workers = new ConcurrentLinkedQueue<>();
+        private final ThreadLocal<Worker> current = ThreadLocal.withInitial(this::register);
+
+        Watchdog(SessionMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        private Worker register() {
+            Worker w = new Worker();
+            workers.add(w);
+            return w;
+        }
+
+        void run(Runnable call, Object lst, Object event) {
+            Worker w = current.get();
+            w.lst = lst;
+            w.event = event;
+            w.startNanos = System.nanoTime();
+            try {
+                ConcurrentConflatedEventsManager.run(call, lst, event);
+            } finally {
+                w.startNanos = 0;
+                w.lst = null;
+                w.event = null;
+            }
+        }
+
+        /**
+         * Reports the calls in progress that started more than one second ago, once per call, and forgets the threads
+         * that have terminated. Called by a single thread.
+         */
+        void check() {
+            long now = System.nanoTime();
+            for (Iterator<Worker> it = workers.iterator(); it.hasNext(); ) {
+                Worker w = it.next();
+                long start = w.startNanos;
+                if (start == 0) {
+                    if (!w.thread.isAlive()) it.remove();
+                    continue;
+                }
+                if (start == w.reportedNanos || now - start <= SLOW_LISTENER_NANOS) continue;
+                Object lst = w.lst, event = w.event;
+                if (w.startNanos != start || lst == null) continue; //the call has completed in the meantime
+                w.reportedNanos = start;
+                reportSlow(lst, event, metrics);
+            }
+        }
+    }
+
+    /**
+     * The listener call in progress in a thread
+     */
+    private static final class Worker {
+
+        private final Thread thread = Thread.currentThread();
+        /**
+         * When the current call started, or 0 between two calls
+         */
+        private volatile long startNanos;
+        private volatile Object lst;
+        private volatile Object event;
+        /**
+         * The start of the last call that was reported - only used by the thread that checks the calls
+         */
+        private long reportedNanos;
+    }
+
+    /**
+     * The listeners of the fields of a subscription, in an array indexed by the ordinal of the fields. The array only
+     * extends to the highest subscribed ordinal and is copied on write, so that the dispatch threads can read it
+     * without locking - the fields of a subscription rarely change.
+     * <p>
+     * The writes are made in the compute methods of the subscriptions map, which serialises them.
+     */
+    private static final class FieldSlots {
+
+        private volatile Listeners[] byOrdinal = new Listeners[0];
+        private int size;
+
+        Listeners get(RealtimeField field) {
+            Listeners[] slots = byOrdinal;
+            int ordinal = field.ordinal();
+            return ordinal < slots.length ? slots[ordinal] : null;
+        }
+
+        Listeners getOrCreate(RealtimeField field, String ticker, SessionMetrics metrics, Watchdog watchdog) {
+            Listeners listeners = get(field);
+            if (listeners == null) {
+                listeners = new Listeners(ticker, field, metrics, watchdog);
+                Listeners[] slots = Arrays.copyOf(byOrdinal, Math.max(byOrdinal.length, field.ordinal() + 1));
+                slots[field.ordinal()] = listeners;
+                byOrdinal = slots;
+                size++;
+            }
+            return listeners;
+        }
+
+        void remove(RealtimeField field) {
+            if (get(field) == null) return;
+            Listeners[] slots = byOrdinal.clone();
+            slots[field.ordinal()] = null;
+            byOrdinal = slots;
+            size--;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+    }
+
     private static class Listeners {
 
         private final String ticker;
-        //Using a set so that a listener that registers twice is only called once
-        private final Set<DataChangeListener> listeners = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        private final RealtimeField field;
+        private final SessionMetrics metrics;
+        private final Watchdog watchdog;
+        //Using a map so that a listener that registers twice is only called once, in the executor it registered last with
+        private final ConcurrentMap<DataChangeListener, Executor> listeners = new ConcurrentHashMap<>();
+        /**
+         * Copied on write and iterated without allocating - the writes are serialised by the subscriptions map
+         */
+        private volatile FlyweightListener[] flyweights = new FlyweightListener[0];
+        /**
+         * The last value received, and the same value as a TypedObject once it has been sent to the DataChangeListeners
+         * (null until then)
+         */
+        private final FieldValue previous = new FieldValue();
         private TypedObject previousValue;
 
-        Listeners(String ticker) {
+        Listeners(String ticker, RealtimeField field, SessionMetrics metrics, Watchdog watchdog) {
             this.ticker = ticker;
+            this.field = field;
+            this.metrics = metrics;
+            this.watchdog = watchdog;
         }
 
-        void addListener(DataChangeListener lst) {
-            listeners.add(lst);
+        void addListener(DataChangeListener lst, Executor executor) {
+            listeners.put(lst, executor);
         }
 
-        void fireEvent(DataChangeEvent evt) {
-            for (DataChangeListener lst : listeners) {
-                //(i)  if a listener gets stuck, the others can still make progress
-                //(ii) if a listener throws an exception, a new thread will be created
-                Future<?> f = fireListeners.submit(() -> lst.dataChanged(evt));
-                monitorListenerExecution(f, lst, evt);
+        boolean removeListener(DataChangeListener lst) {
+            return listeners.remove(lst) != null;
+        }
+
+        void addFlyweight(FlyweightListener lst) {
+            if (Arrays.asList(flyweights).contains(lst)) return;
+            FlyweightListener[] copy = Arrays.copyOf(flyweights, flyweights.length + 1);
+            copy[flyweights.length] = lst;
+            flyweights = copy;
+        }
+
+        boolean removeFlyweight(FlyweightListener lst) {
+            List<FlyweightListener> copy = new ArrayList<>(Arrays.asList(flyweights));
+            if (!copy.remove(lst)) return false;
+            flyweights = copy.toArray(new FlyweightListener[0]);
+            return true;
+        }
+
+        boolean isEmpty() {
+            return listeners.isEmpty() && flyweights.length == 0;
+        }
+
+        /**
+         * @return the previous value as a TypedObject - created lazily if the previous value was only seen by flyweight
+         *         listeners. Must be called while holding the lock of this object.
+         */
+        TypedObject getPreviousValue() {
+            if (previous.isEmpty()) return null;
+            if (previousValue == null) previousValue = TypedObject.of(previous.toObject());
+            return previousValue;
+        }
+
+        /**
+         * Calls the flyweight listeners in the current thread with the update view of that thread.
+         */
+        void fireFlyweights(FieldValue value, long receivedNanos, boolean traced) {
+            FlyweightListener[] lsts = flyweights;
+            if (lsts.length == 0) return;
+            RealtimeUpdate update = UPDATE.get().set(ticker, field, value, receivedNanos);
+            for (FlyweightListener lst : lsts) {
+                long start = System.nanoTime();
+                if (traced) metrics.tickLatency(SessionMetrics.TickStage.LISTENER_STARTED, start - receivedNanos);
+                try {
+                    lst.onUpdate(update);
+                } catch (RuntimeException e) {
+                    logger.error("Listener " + lst + " has thrown exception on update " + update, e);
+                } finally {
+                    metrics.listenerExecuted(System.nanoTime() - start);
+                }
             }
         }
 
-        void monitorListenerExecution(Future<?> f, DataChangeListener lst, DataChangeEvent evt) {
-            fireListeners.submit(new Callable<Void>() {
-                @Override public Void call() throws Exception {
+        void fireEvent(DataChangeEvent evt) {
+            for (Map.Entry<DataChangeListener, Executor> e : listeners.entrySet()) {
+                DataChangeListener lst = e.getKey();
+                //unless the listener is called inline, if a listener gets stuck, the others can still make progress
+                execute(e.getValue(), () -> {
+                    long start = System.nanoTime();
+                    if (evt.isTraced()) metrics.tickLatency(SessionMetrics.TickStage.LISTENER_STARTED, start - evt.getReceivedNanos());
                     try {
-                        f.get(1, TimeUnit.SECONDS);
-                    } catch (TimeoutException e) {
-                        logger.warn("Slow listener {} has not processed event {} in one second", lst, evt);
-                    } catch (ExecutionException e) {
-                        logger.error("Listener " + lst + " has thrown exception on event " + evt, e.getCause());
+                        lst.dataChanged(evt);
+                    } finally {
+                        metrics.listenerExecuted(System.nanoTime() - start);
                     }
-                    return null;
-                  }
-            });
+                }, lst, evt, watchdog);
+            }
         }
     }
 }
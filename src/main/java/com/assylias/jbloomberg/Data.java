@@ -5,20 +5,85 @@
 package com.assylias.jbloomberg;
 
 import com.bloomberglp.blpapi.CorrelationID;
+import com.bloomberglp.blpapi.Element;
 
 /**
  *
  * This class is use to hold the data returned by subscriptions.
+ * <p>
+ * The Data of the real time updates are recycled once they have been dispatched, see {@link DataPool}: they must not be
+ * used after they have been released.
  */
 final class Data {
-    private final CorrelationID correlationId;
-    private final String field;
-    private final Object value;
+    private CorrelationID correlationId;
+    private String field;
+    private final FieldValue value = new FieldValue();
+    /**
+     * The System.nanoTime() at which the data was received from Bloomberg
+     */
+    private long receivedNanos;
+    /**
+     * Whether the latency of this data should be recorded at each stage of its processing
+     */
+    private boolean traced;
+    /**
+     * Whether the value comes from a snapshot of the field rather than from a real time update
+     */
+    private boolean seed;
+
+    /**
+     * An empty Data, to be filled by {@link #set(CorrelationID, String, Element, long, boolean)}
+     */
+    Data() {
+    }
 
     Data(CorrelationID correlationId, String field, Object value) {
+        this(correlationId, field, value, System.nanoTime(), false);
+    }
+
+    Data(CorrelationID correlationId, String field, Object value, long receivedNanos, boolean traced) {
+        this(correlationId, field, value, receivedNanos, traced, false);
+    }
+
+    private Data(CorrelationID correlationId, String field, Object value, long receivedNanos, boolean traced, boolean seed) {
+        this.correlationId = correlationId;
+        this.field = field;
+        this.value.set(value);
+        this.receivedNanos = receivedNanos;
+        this.traced = traced;
+        this.seed = seed;
+    }
+
+    /**
+     * @return the value of a field obtained from a snapshot, to be dispatched like the real time updates so that the
+     *         listeners are always called by the dispatching thread
+     */
+    static Data seed(CorrelationID correlationId, String field, Object value) {
+        return new Data(correlationId, field, value, System.nanoTime(), false, true);
+    }
+
+    /**
+     * Fills this Data with a real time update, without boxing the numbers.
+     *
+     * @return this Data
+     */
+    Data set(CorrelationID correlationId, String field, Element value, long receivedNanos, boolean traced) {
         this.correlationId = correlationId;
         this.field = field;
-        this.value = value;
+        this.value.set(value);
+        this.receivedNanos = receivedNanos;
+        this.traced = traced;
+        this.seed = false;
+        return this;
+    }
+
+    /**
+     * Forgets the content of this Data, once it has been dispatched.
+     */
+    void clear() {
+        correlationId = null;
+        field = null;
+        value.clear();
     }
 
     public CorrelationID getCorrelationId() {
@@ -29,10 +94,29 @@ final class Data {
         return field;
     }
 
+    /**
+     * @return the value, boxed if it is a number - see {@link #value()} to read it without allocating
+     */
     public Object getValue() {
+        return value.toObject();
+    }
+
+    FieldValue value() {
         return value;
     }
 
+    long getReceivedNanos() {
+        return receivedNanos;
+    }
+
+    boolean isTraced() {
+        return traced;
+    }
+
+    boolean isSeed() {
+        return seed;
+    }
+
     @Override
     public String toString() {
         return "{id=" + correlationId + ", " + field + "=" + value + '}';
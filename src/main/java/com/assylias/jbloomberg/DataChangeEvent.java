@@ -41,9 +41,17 @@ public final class DataChangeEvent {
      * @serial
      */
     private final TypedObject oldValue;
+    /**
+     * The System.nanoTime() at which the new value was received from Bloomberg.
+     */
+    private final long receivedNanos;
+    /**
+     * Whether the latency of this event should be recorded when it reaches the listeners.
+     */
+    private final boolean traced;
 
     /**
-     * Constructs a new DataChangeEvent.
+     * Constructs a new DataChangeEvent. The time of reception is the time of construction.
      * <p>
      * @param source   The ID of the security that fired the event.
      * @param dataName The programmatic name of the data that was changed.
@@ -51,10 +59,16 @@ public final class DataChangeEvent {
      * @param newValue The new value of the property.
      */
     public DataChangeEvent(String source, String dataName, TypedObject oldValue, TypedObject newValue) {
+        this(source, dataName, oldValue, newValue, System.nanoTime(), false);
+    }
+
+    DataChangeEvent(String source, String dataName, TypedObject oldValue, TypedObject newValue, long receivedNanos, boolean traced) {
         this.sourceString = source;
         this.dataName = dataName;
         this.newValue = newValue;
         this.oldValue = oldValue;
+        this.receivedNanos = receivedNanos;
+        this.traced = traced;
     }
 
     /**
@@ -90,6 +104,20 @@ public final class DataChangeEvent {
         return oldValue;
     }
 
+    /**
+     * The time at which the new value was received from Bloomberg, as given by {@link System#nanoTime()}. This can be
+     * used to measure the time it took for the event to reach a listener: {@code System.nanoTime() - evt.getReceivedNanos()}.
+     * <p>
+     * @return the System.nanoTime() at which the new value was received from Bloomberg.
+     */
+    public long getReceivedNanos() {
+        return receivedNanos;
+    }
+
+    boolean isTraced() {
+        return traced;
+    }
+
     /**
      *
      * @return A description of the DataChangeEvent in the form: {@code IBM US Equity,LAST_PRICE: 50.10==>50.15}
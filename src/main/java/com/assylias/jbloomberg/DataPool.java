@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * The Data of the real time updates, claimed by the event handlers and released by the SubscriptionManager once they
+ * have been dispatched, so that the updates do not allocate. The pool is bounded: a Data is allocated when the pool is
+ * empty and dropped when the pool is full.
+ * <p>
+ * This class is thread safe.
+ */
+final class DataPool {
+
+    private final BlockingQueue<Data> free;
+
+    /**
+     * @param capacity the maximum number of Data kept for reuse - typically the capacity of the subscription queue
+     */
+    DataPool(int capacity) {
+        this.free = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * @return a Data to fill, recycled if possible
+     */
+    Data claim() {
+        Data data = free.poll();
+        return data == null ? new Data() : data;
+    }
+
+    /**
+     * Recycles a Data that has been dispatched - it must not be used by the caller any longer.
+     */
+    void release(Data data) {
+        data.clear();
+        free.offer(data);
+    }
+}
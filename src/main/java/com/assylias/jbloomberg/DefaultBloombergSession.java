@@ -19,26 +19,31 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.EnumSet;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
-import java.util.function.Supplier;
 
+import static com.assylias.jbloomberg.SessionState.CONNECTION_DOWN;
+import static com.assylias.jbloomberg.SessionState.CONNECTION_UP;
 import static com.assylias.jbloomberg.SessionState.NEW;
 import static com.assylias.jbloomberg.SessionState.STARTED;
 import static com.assylias.jbloomberg.SessionState.STARTING;
@@ -74,6 +79,11 @@ public class DefaultBloombergSession implements BloombergSession {
      * The underlying Bloomberg session object
      */
     private final Session session;
+    /**
+     * The Bloomberg session used for the subscriptions - the same object as session unless the subscriptions are
+     * isolated (see {@link SessionConfiguration#isolateSubscriptions()})
+     */
+    private final Session subscriptionSession;
     /**
      * This session's unique ID - used for logging essentially (in toString)
      */
@@ -89,18 +99,37 @@ public class DefaultBloombergSession implements BloombergSession {
      */
     private final AtomicReference<SessionState> state = new AtomicReference<>(SessionState.NEW);
     /**
-     * The queue that is used to transfer subscription data from Bloomberg to the interested parties
+     * The capacity of the subscription queue - when it is full, the Bloomberg event threads wait for the dispatching
+     * thread and the events are buffered by the Bloomberg API, which reports a slow consumer
+     */
+    private static final int SUBSCRIPTION_QUEUE_CAPACITY = 1 << 16;
+    /**
+     * The queue that is used to transfer subscription data from Bloomberg to the interested parties - an array, so that
+     * queuing an update does not allocate
      */
-    private final BlockingQueue<Data> subscriptionDataQueue = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Data> subscriptionDataQueue = new ArrayBlockingQueue<>(SUBSCRIPTION_QUEUE_CAPACITY);
     /**
      * The event handler used by this session to process results asynchronously
      */
     private final BloombergEventHandler eventHandler;
+    /**
+     * The event handler of the subscription session - the same object as eventHandler unless the subscriptions are
+     * isolated
+     */
+    private final BloombergEventHandler subscriptionEventHandler;
     /**
      * Collection that keeps track of services that have been asynchronously started. They might not be started yet.
      */
     private final Set<BloombergServiceType> openingServices = EnumSet.noneOf(BloombergServiceType.class);
-    private final ExecutorService executor = Executors.newFixedThreadPool(10, new ThreadFactory() {
+    /**
+     * The number of requests that can be processed concurrently
+     */
+    private static final int REQUEST_THREADS = 10;
+    /**
+     * How often the parsers of the abandoned requests are removed
+     */
+    private static final long PARSER_SWEEP_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private final ExecutorService executor = Executors.newFixedThreadPool(REQUEST_THREADS, new ThreadFactory() {
         private final AtomicInteger threadId = new AtomicInteger();
 
         @Override
@@ -108,9 +137,24 @@ public class DefaultBloombergSession implements BloombergSession {
             return new Thread(r, "Bloomberg Session # " + sessionId + " - " + threadId.incrementAndGet());
         }
     });
-    private final EventsManager eventsManager = new ConcurrentConflatedEventsManager();
-    private final SubscriptionManager subscriptionManager = new SubscriptionManager(subscriptionDataQueue,
-            eventsManager);
+    /**
+     * Receives the measurements of this session
+     */
+    private final SessionMetrics metrics;
+    /**
+     * Captures the raw messages for debugging - null if not configured
+     */
+    private final DiagnosticTap diagnosticTap;
+    private final EventsManager eventsManager;
+    private final SubscriptionManager subscriptionManager;
+    /**
+     * Queues the requests until their limits allow them to be sent
+     */
+    private final RequestScheduler requestScheduler;
+    /**
+     * The deadline applied to the requests submitted without a timeout - 0 for no deadline
+     */
+    private final long requestTimeout;
 
 
     /**
@@ -143,10 +187,68 @@ public class DefaultBloombergSession implements BloombergSession {
      * @throws NullPointerException if any of the arguments are null.
      */
     public DefaultBloombergSession(SessionOptions sessionOptions, Consumer<SessionState> sessionStateListener) {
+        this(sessionOptions, sessionStateListener, new SessionConfiguration());
+    }
+
+    /**
+     * Creates a new BloombergSession using the provided SessionOptions, SessionState listener and jBloomberg specific
+     * configuration. See {@link #DefaultBloombergSession(SessionOptions, Consumer)} for more details.
+     *
+     * @param sessionOptions       a non null {@link SessionOptions}.
+     * @param sessionStateListener a listener that will be called every time the {@link SessionState} of this BloombergSession changes.
+     * @param configuration        a non null {@link SessionConfiguration}.
+     *
+     * @throws NullPointerException if any of the arguments are null.
+     */
+    public DefaultBloombergSession(SessionOptions sessionOptions, Consumer<SessionState> sessionStateListener, SessionConfiguration configuration) {
         this.sessionOptions = requireNonNull(sessionOptions);
         this.sessionStateListener = requireNonNull(sessionStateListener);
-        this.eventHandler = new BloombergEventHandler(subscriptionDataQueue, sessionStateListener);
+        this.metrics = configuration.getMetrics();
+        this.eventsManager = new ConcurrentConflatedEventsManager(metrics, configuration.getListenerExecutor(), "Bloomberg Listeners #" + sessionId);
+        SubscribedFields subscribedFields = new SubscribedFields();
+        DataPool dataPool = new DataPool(SUBSCRIPTION_QUEUE_CAPACITY);
+        this.subscriptionManager = new SubscriptionManager(subscriptionDataQueue, eventsManager, metrics,
+                new SubscriptionBatcher(configuration.getSubscriptionBatchSize(), configuration.getSubscriptionBatchesPerSecond(),
+                                        "Bloomberg Subscriptions #" + sessionId), subscribedFields);
+        subscriptionManager.waitStrategy(configuration.getDispatchWaitStrategy());
+        subscriptionManager.recycleData(dataPool);
+        if (configuration.isLastValuesCached()) subscriptionManager.cacheLastValues();
+        if (configuration.isRecoveringSubscriptions()) {
+            subscriptionManager.recoverSubscriptions(new SubscriptionBatcher(configuration.getRecoveryBatchSize(),
+                    configuration.getRecoveryBatchesPerSecond(), "Bloomberg Subscriptions Recovery #" + sessionId));
+        }
+        //the subscription manager follows the connection of both sessions: the subscriptions made with an identity
+        //live on the request session
+        Consumer<SessionState> stateListener = s -> {
+            subscriptionManager.connectionStateChanged(getBloombergSession(), s);
+            this.sessionStateListener.accept(s);
+        };
+        this.eventHandler = new BloombergEventHandler(subscriptionDataQueue, stateListener, metrics, configuration.getTickSampling());
+        eventHandler.setSubscribedFields(subscribedFields);
+        eventHandler.setDataPool(dataPool);
+        this.diagnosticTap = configuration.newDiagnosticTap("Bloomberg Diagnostic Tap #" + sessionId);
+        int maxBulkRequests = Math.max(1, (int) (REQUEST_THREADS * configuration.getBulkRequestShare()));
+        this.requestScheduler = new RequestScheduler(REQUEST_THREADS, maxBulkRequests, configuration.getServiceLimits(), configuration.getRequestTypeLimits(),
+                executor, metrics, System::nanoTime, "Bloomberg Request Scheduler #" + sessionId);
+        Duration timeout = configuration.getRequestTimeout();
+        this.requestTimeout = timeout == null ? 0 : timeout.toNanos();
+        eventHandler.setDiagnosticTap(diagnosticTap);
         session = new Session(sessionOptions, eventHandler);
+        if (configuration.isSubscriptionsIsolated()) {
+            //the lifecycle of this session follows the request session: only forward the connection changes
+            Consumer<SessionState> connectionListener = s -> {
+                subscriptionManager.connectionStateChanged(getBloombergSubscriptionSession(null), s);
+                if (s == CONNECTION_UP || s == CONNECTION_DOWN) this.sessionStateListener.accept(s);
+            };
+            this.subscriptionEventHandler = new BloombergEventHandler(subscriptionDataQueue, connectionListener, metrics, configuration.getTickSampling());
+            subscriptionEventHandler.setDiagnosticTap(diagnosticTap);
+            subscriptionEventHandler.setSubscribedFields(subscribedFields);
+            subscriptionEventHandler.setDataPool(dataPool);
+            subscriptionSession = new Session(sessionOptions, subscriptionEventHandler);
+        } else {
+            this.subscriptionEventHandler = eventHandler;
+            subscriptionSession = session;
+        }
         updateStateListener();
     }
 
@@ -175,21 +277,31 @@ public class DefaultBloombergSession implements BloombergSession {
         }
         logger.info("Starting Bloomberg session #{} with options: {}", sessionId, getOptions());
         try {
-            eventHandler.onSessionStarted(() -> {
+            AtomicInteger pendingStartups = new AtomicInteger(isolated() ? 2 : 1);
+            Runnable onStarted = () -> {
+                if (pendingStartups.decrementAndGet() > 0) return; //wait for the other session
                 subscriptionManager.start(DefaultBloombergSession.this); //needs to be before the countdown (see subscribe method)
-                state.set(STARTED);
-                sessionStartup.countDown();
-            });
-            eventHandler.onSessionStartupFailure((BloombergException e) -> {
-                state.set(STARTUP_FAILURE);
+                if (state.compareAndSet(STARTING, STARTED)) sessionStartup.countDown();
+            };
+            Consumer<BloombergException> onFailure = e -> {
+                if (state.getAndSet(STARTUP_FAILURE) == STARTUP_FAILURE) return; //the other session has already failed
                 sessionStartup.countDown();
                 onStartupFailure.accept(e);
-            });
+            };
+            eventHandler.onSessionStarted(onStarted);
+            eventHandler.onSessionStartupFailure(onFailure);
+            if (isolated()) {
+                subscriptionEventHandler.onSessionStarted(onStarted);
+                subscriptionEventHandler.onSessionStartupFailure(onFailure);
+            }
             if (!state.compareAndSet(NEW, STARTING)) {
                 throw new AssertionError("State was expected to be NEW but found " + state.get());
             }
             updateStateListener();
+            if (diagnosticTap != null) diagnosticTap.start();
             session.startAsync();
+            if (isolated()) subscriptionSession.startAsync();
+            requestScheduler.scheduleAtFixedRate(this::sweepParsers, PARSER_SWEEP_PERIOD_NANOS);
             logger.info("Session #{} started asynchronously", sessionId);
         } catch (IOException | IllegalStateException e) {
             throw new BloombergException("Failed to start session", e);
@@ -200,6 +312,19 @@ public class DefaultBloombergSession implements BloombergSession {
         return session;
     }
 
+    /**
+     * @return the Bloomberg session on which the subscriptions made with the given identity must be sent. An identity
+     *         can only be used with the session that created it (the request session), so the subscriptions made with
+     *         an identity are not isolated.
+     */
+    Session getBloombergSubscriptionSession(Identity identity) {
+        return identity == null ? subscriptionSession : session;
+    }
+
+    private boolean isolated() {
+        return subscriptionSession != session;
+    }
+
     /**
      * Closes the session. If the session has not been started yet, does nothing. This call will block until the session
      * is actually stopped.<br>
@@ -217,9 +342,13 @@ public class DefaultBloombergSession implements BloombergSession {
             logger.info("Stopping Bloomberg session #{}", sessionId);
             boolean started = sessionStartup.await(1, TimeUnit.SECONDS); //with 3.6.1.0, if the session is not started yet, the call to stop can block
             if (!started) logger.info("I waited for 1 second but Bloomberg session #{} is still not started...", sessionId);
+            requestScheduler.stop();
             executor.shutdownNow();
             subscriptionManager.stop(this);
+            eventsManager.stop();
             session.stop();//started ? SYNC : ASYNC); //if not started, something's wrong, don't spend too much time here...
+            if (isolated()) subscriptionSession.stop();
+            if (diagnosticTap != null) diagnosticTap.stop();
             state.set(TERMINATED);
             logger.info("Stopped Bloomberg session #{}", sessionId);
         } catch (InterruptedException e) {
@@ -257,7 +386,7 @@ public class DefaultBloombergSession implements BloombergSession {
         } catch (IOException | InvalidRequestException | RequestQueueOverflowException | DuplicateCorrelationIDException | IllegalStateException e) {
             throw new BloombergException("Could not process the authorisation request", e);
         } catch (InterruptedException e) {
-            session.cancel(cId);
+            abandon(cId);
             throw new CancellationException("The authorisation request was cancelled");
         }
     }
@@ -278,35 +407,120 @@ public class DefaultBloombergSession implements BloombergSession {
         } catch (IOException | InvalidRequestException | RequestQueueOverflowException | DuplicateCorrelationIDException | IllegalStateException e) {
             throw new BloombergException("Could not process the token request", e);
         } catch (InterruptedException e) {
-            session.cancel(cId);
+            abandon(cId);
             throw new CancellationException("The token request was cancelled");
         }
     }
 
     @Override
     public <T extends RequestResult> CompletableFuture<T> submit(RequestBuilder<T> request, Identity identity) {
+        return submit(request, identity, RequestPriority.NORMAL);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The requests wait in a queue, ordered by priority, when all the request threads are busy or when the limits of
+     * the {@link SessionConfiguration} do not allow them to be sent yet.
+     */
+    @Override
+    public <T extends RequestResult> CompletableFuture<T> submit(RequestBuilder<T> request, Identity identity, RequestPriority priority) {
+        return submit(request, identity, priority, requestTimeout);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Cancelling the returned future, or reaching the timeout, cancels the request on the Bloomberg side and releases
+     * the part of the response that has already been received.
+     */
+    @Override
+    public <T extends RequestResult> CompletableFuture<T> submit(RequestBuilder<T> request, Identity identity, RequestPriority priority, Duration timeout) {
+        requireNonNull(timeout, "timeout cannot be null");
+        if (timeout.isNegative() || timeout.isZero()) throw new IllegalArgumentException("timeout must be positive (was " + timeout + ")");
+        return submit(request, identity, priority, timeout.toNanos());
+    }
+
+    /**
+     * @param timeoutNanos the deadline of the request, or 0 if the request has no deadline
+     */
+    private <T extends RequestResult> CompletableFuture<T> submit(RequestBuilder<T> request, Identity identity, RequestPriority priority, long timeoutNanos) {
         requireNonNull(request, "request cannot be null");
+        requireNonNull(priority, "priority cannot be null");
         if (state.get() == NEW) {
             throw new IllegalStateException("A request can't be submitted before the session is started");
         }
         logger.debug("Submitting request {}", request);
-        Supplier<T> task = () -> {
-            BloombergServiceType serviceType = request.getServiceType();
-            CorrelationID cId = getNextCorrelationId();
+        BloombergServiceType serviceType = request.getServiceType();
+        CorrelationID cId = getNextCorrelationId();
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Runnable task = () -> {
+            if (future.isDone()) return; //cancelled or timed out while waiting to be sent
+            long start = 0;
+            boolean started = false, success = false;
             try {
                 openService(serviceType);
                 ResultParser<T> parser = request.getResultParser();
-                eventHandler.setParser(cId, parser);
+                eventHandler.setParser(cId, parser, future);
+                metrics.requestStarted(serviceType, request.getRequestType());
+                started = true;
+                start = System.nanoTime();
                 sendRequest(request, cId, identity);
-                return parser.getResult();
+                if (future.isDone()) { //cancelled while the request was being sent
+                    abandon(cId);
+                    session.cancel(cId); //abandon may have run before the request was sent, and found nothing to cancel
+                }
+                T result = parser.getResult();
+                success = true;
+                future.complete(result);
+            } catch (CancellationException e) {
+                //the future has been cancelled or has timed out - nothing left to do
             } catch (IOException | InvalidRequestException | RequestQueueOverflowException | DuplicateCorrelationIDException | IllegalStateException e) {
-                throw new BloombergException("Could not process the request", e);
+                future.completeExceptionally(new BloombergException("Could not process the request", e));
             } catch (InterruptedException e) {
-                session.cancel(cId);
-                throw new CancellationException("The request was cancelled");
+                future.completeExceptionally(new CancellationException("The request was cancelled"));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            } finally {
+                if (started) metrics.requestCompleted(serviceType, request.getRequestType(), System.nanoTime() - start, success);
             }
         };
-        return CompletableFuture.supplyAsync(task, executor);
+        future.whenComplete((r, t) -> {
+            if (t != null) abandon(cId);
+        });
+        requestScheduler.submit(serviceType, request.getRequestType(), priority, task, future);
+        if (timeoutNanos > 0) {
+            ScheduledFuture<?> deadline = requestScheduler.schedule(() -> future.completeExceptionally(
+                    new TimeoutException("The request did not complete within " + Duration.ofNanos(timeoutNanos))), timeoutNanos);
+            future.whenComplete((r, t) -> deadline.cancel(false));
+        }
+        return future;
+    }
+
+    /**
+     * Removes the parsers of the requests that nobody is waiting for and cancels the requests.
+     */
+    private void sweepParsers() {
+        try {
+            for (CorrelationID cId : eventHandler.sweep()) {
+                session.cancel(cId);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Could not sweep the abandoned requests", e); //must not kill the periodic task
+        }
+    }
+
+    /**
+     * Stops a request that has been cancelled, has timed out or has failed: Bloomberg is asked to stop sending the
+     * response and the messages received so far are released. Does nothing if the request has not been sent or if its
+     * response has been fully received.
+     */
+    private void abandon(CorrelationID cId) {
+        ResultParser<?> parser = eventHandler.removeParser(cId);
+        if (parser == null) return;
+        logger.debug("Cancelling request {}", cId);
+        session.cancel(cId);
+        parser.cancel();
     }
 
     /**
@@ -350,22 +564,97 @@ public class DefaultBloombergSession implements BloombergSession {
 
     @Override
     public void subscribe(SubscriptionBuilder subscription, Identity identity) {
-        if (state.get() == SessionState.NEW) {
-            throw new IllegalStateException("A request can't be submitted before the session is started");
-        }
+        subscribeAsync(subscription, identity);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, SubscriptionStatus>> subscribeAsync(SubscriptionBuilder subscription, Identity identity) {
         try {
-            sessionStartup.await(); //once the latch counts down, we know that the session has been set.
-            if (state.get() != SessionState.STARTED) {
-                throw new BloombergException("The Bloomberg session could not be started");
-            }
-            subscriptionManager.subscribe(subscription, identity);
+            awaitStarted();
+            CompletableFuture<Map<String, SubscriptionStatus>> statuses = subscriptionManager.subscribe(subscription, identity);
+            if (subscription.isSnapshotFirst()) requestSnapshot(subscription, identity);
+            return statuses;
         } catch (IOException e) {
             throw new BloombergException("Could not complete subscription request", e);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
+            CompletableFuture<Map<String, SubscriptionStatus>> interrupted = new CompletableFuture<>();
+            interrupted.completeExceptionally(e);
+            return interrupted;
         }
     }
 
+    @Override
+    public SubscriptionHandle subscribeWithHandle(SubscriptionBuilder subscription, Identity identity) {
+        subscribe(subscription, identity);
+        return new UnsubscribingHandle(this, subscription);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, SubscriptionStatus>> unsubscribe(Collection<String> securities) {
+        requireNonNull(securities, "securities can't be null");
+        try {
+            awaitStarted();
+            return subscriptionManager.unsubscribe(securities);
+        } catch (IOException e) {
+            throw new BloombergException("Could not complete unsubscription request", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            CompletableFuture<Map<String, SubscriptionStatus>> interrupted = new CompletableFuture<>();
+            interrupted.completeExceptionally(e);
+            return interrupted;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Map<String, SubscriptionStatus>> unsubscribe(SubscriptionBuilder subscription) {
+        requireNonNull(subscription, "subscription can't be null");
+        try {
+            awaitStarted();
+            return subscriptionManager.unsubscribe(subscription);
+        } catch (IOException e) {
+            throw new BloombergException("Could not complete unsubscription request", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            CompletableFuture<Map<String, SubscriptionStatus>> interrupted = new CompletableFuture<>();
+            interrupted.completeExceptionally(e);
+            return interrupted;
+        }
+    }
+
+    @Override
+    public LastValueCache getLastValues() {
+        return subscriptionManager.getLastValues();
+    }
+
+    private void awaitStarted() throws InterruptedException {
+        if (state.get() == SessionState.NEW) {
+            throw new IllegalStateException("A request can't be submitted before the session is started");
+        }
+        sessionStartup.await(); //once the latch counts down, we know that the session has been set.
+        if (state.get() != SessionState.STARTED) {
+            throw new BloombergException("The Bloomberg session could not be started");
+        }
+    }
+
+    /**
+     * Requests the current values of the fields of a subscription and sends them to its listeners - see
+     * {@link SubscriptionBuilder#snapshotFirst()}.
+     */
+    private void requestSnapshot(SubscriptionBuilder subscription, Identity identity) {
+        Set<String> securities = subscription.getSecurities();
+        Set<String> fields = subscription.getFieldsAsString();
+        if (securities.isEmpty() || fields.isEmpty()) return;
+        submit(new ReferenceRequestBuilder(securities, fields), identity, RequestPriority.INTERACTIVE).whenComplete((snapshot, error) -> {
+            if (error != null) {
+                logger.warn("Could not retrieve the initial values of the subscription to {}", securities, error);
+            } else {
+                if (snapshot.hasErrors()) logger.info("Snapshot errors: securities {}, fields {}", snapshot.getSecurityErrors(), snapshot.getFieldErrors());
+                subscriptionManager.seed(snapshot);
+            }
+        });
+    }
+
     @Override public SessionState getSessionState() {
         return state.get();
     }
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import com.bloomberglp.blpapi.Event;
+import com.bloomberglp.blpapi.Message;
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A diagnostic tap captures the raw messages received from Bloomberg and formats them in a background thread, so that
+ * the messages can be inspected without slowing down the Bloomberg API threads.
+ * <p>
+ * The messages are stored in a ring buffer of fixed capacity: capturing a message never blocks and never formats the
+ * message. If the background thread falls behind, the oldest messages are overwritten and counted as dropped. The
+ * background thread sleeps while there is nothing to format and is woken up by the next message captured.
+ * <p>
+ * This class is thread safe.
+ */
+final class DiagnosticTap {
+
+    private final static Logger logger = LoggerFactory.getLogger(DiagnosticTap.class);
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final int mask;
+    private final Consumer<String> sink;
+    private final String name;
+    /**
+     * The sequence number of the next message to be captured
+     */
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    /**
+     * The sequence number of the next message to be formatted - only accessed by the background thread
+     */
+    private long tail;
+    private volatile Thread thread;
+    /**
+     * True when the background thread is parked, or about to park, and must be woken up by the next message
+     */
+    private volatile boolean idle;
+    private volatile boolean stopped;
+
+    /**
+     * @param capacity the capacity of the ring buffer, rounded up to the next power of 2
+     * @param sink     the consumer of the formatted messages, called from the background thread
+     * @param name     the name of the background thread
+     *
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    DiagnosticTap(int capacity, Consumer<String> sink, String name) {
+        Preconditions.checkArgument(capacity > 0 && capacity <= 1 << 30, "capacity must be between 1 and 2^30 (was %s)", capacity);
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(Math.max(size, 1));
+        this.mask = slots.length() - 1;
+        this.sink = requireNonNull(sink);
+        this.name = requireNonNull(name);
+    }
+
+    /**
+     * Captures a message - this method does not block. The messages received once the tap has been stopped are ignored.
+     *
+     * @param millis when the message was received, in milliseconds since the epoch - read once for all the messages
+     *               of an event
+     */
+    void capture(Event.EventType type, Message msg, long millis) {
+        if (stopped) return;
+        long seq = head.getAndIncrement();
+        slots.lazySet((int) (seq & mask), new Entry(seq, millis, type, msg));
+        if (idle) {
+            idle = false;
+            LockSupport.unpark(thread);
+        }
+    }
+
+    synchronized void start() {
+        if (thread != null) return;
+        Thread t = new Thread(this::run, name);
+        t.setDaemon(true);
+        thread = t;
+        t.start();
+    }
+
+    /**
+     * Stops the background thread once the captured messages have been formatted.
+     */
+    synchronized void stop() {
+        stopped = true;
+        Thread t = thread;
+        if (t == null) return;
+        thread = null;
+        LockSupport.unpark(t);
+        try {
+            t.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the number of messages that have been overwritten before being formatted
+     */
+    long getDropped() {
+        return dropped.get();
+    }
+
+    private void run() {
+        while (thread != null) {
+            if (drain() > 0) continue;
+            idle = true;
+            //checked after idle is set: a message captured from now on wakes the thread up
+            if (head.get() == tail) {
+                if (thread != null) LockSupport.park(this);
+            } else {
+                Thread.yield(); //a message is being captured
+            }
+            idle = false;
+        }
+        drain();
+        if (dropped.get() > 0) logger.info("Diagnostic tap {} dropped {} messages", name, dropped.get());
+    }
+
+    /**
+     * Formats the messages captured and releases their slots, so that the ring buffer does not retain the messages.
+     *
+     * @return the number of messages sent to the sink
+     */
+    int drain() {
+        long h = head.get();
+        int capacity = slots.length();
+        if (h - tail > capacity) { //the producers have lapped us
+            dropped.addAndGet(h - capacity - tail);
+            tail = h - capacity;
+        }
+        int sent = 0;
+        while (tail < h) {
+            Entry e = slots.get((int) (tail & mask));
+            if (e == null || e.seq < tail) break; //claimed but not published yet
+            if (e.seq > tail) { //overwritten since we read head
+                dropped.incrementAndGet();
+            } else {
+                try {
+                    sink.accept(e.toString());
+                } catch (RuntimeException ex) {
+                    logger.warn("Diagnostic tap sink has thrown an exception", ex);
+                }
+                slots.compareAndSet((int) (tail & mask), e, null); //unless a producer has lapped us in the meantime
+                sent++;
+            }
+            tail++;
+        }
+        return sent;
+    }
+
+    private static final class Entry {
+        private final long seq;
+        private final long millis;
+        private final Event.EventType type;
+        private final Message msg;
+
+        Entry(long seq, long millis, Event.EventType type, Message msg) {
+            this.seq = seq;
+            this.millis = millis;
+            this.type = type;
+            this.msg = msg;
+        }
+
+        @Override
+        public String toString() {
+            return Instant.ofEpochMilli(millis) + " [" + type + "] id=[" + msg.correlationID() + "] " + msg;
+        }
+    }
+}
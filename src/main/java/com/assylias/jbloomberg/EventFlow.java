@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+/**
+ * The interfaces of a demand-driven stream of events, returned by
+ * {@link BloombergSession#subscribeAsPublisher(SubscriptionBuilder, Backpressure)}.
+ * <p>
+ * They have the same methods and contracts as the interfaces of {@code java.util.concurrent.Flow} (and of Reactive
+ * Streams), which are not available in Java 8: a Publisher can be adapted to a Flow.Publisher with a one line wrapper
+ * per interface.
+ */
+public final class EventFlow {
+
+    private EventFlow() {}
+
+    /**
+     * A producer of items that are received by the Subscribers that have requested them.
+     */
+    @FunctionalInterface
+    public interface Publisher<T> {
+
+        /**
+         * Adds a Subscriber: its {@link Subscriber#onSubscribe(Subscription)} method is called before any other method.
+         */
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    /**
+     * A receiver of items. The methods of a Subscriber are never called concurrently.
+     */
+    public interface Subscriber<T> {
+
+        /**
+         * Invoked once, before any other method, with the Subscription used to request items.
+         */
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * Invoked with the next item, if it has been requested.
+         */
+        void onNext(T item);
+
+        /**
+         * Invoked when the Subscription fails - no other method is called afterwards.
+         */
+        void onError(Throwable throwable);
+
+        /**
+         * Invoked when no more items will be sent - no other method is called afterwards.
+         */
+        void onComplete();
+    }
+
+    /**
+     * The link between a Publisher and one of its Subscribers.
+     */
+    public interface Subscription {
+
+        /**
+         * Adds n items to the demand of the Subscriber. A non positive n fails the subscription with an
+         * IllegalArgumentException.
+         */
+        void request(long n);
+
+        /**
+         * Stops sending items to the Subscriber, possibly after a few items that were already in flight.
+         */
+        void cancel();
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * A Publisher of the updates of a subscription. Each Subscriber gets its own Bloomberg subscription, made when it
+ * subscribes and reverted when it cancels, and its own buffer of pending updates, so that a slow Subscriber does not
+ * hold the updates of the others.
+ * <p>
+ * The updates are queued by the thread that dispatches the updates of the session, in the order they were received, and
+ * delivered to each Subscriber by a thread of its own, which is started when there are updates to deliver and stops
+ * after a while without updates - or by the thread that requests them if they were pending. A Subscriber that blocks
+ * in onNext therefore only holds its own updates.
+ * <p>
+ * This class is thread safe.
+ */
+final class EventPublisher implements EventFlow.Publisher<DataChangeEvent> {
+
+    private final static Logger logger = LoggerFactory.getLogger(EventPublisher.class);
+
+    private final BloombergSession session;
+    private final SubscriptionBuilder subscription;
+    private final Backpressure backpressure;
+    /**
+     * Creates the executor that delivers the updates of a Subscriber - it must run the tasks one at a time
+     */
+    private final Supplier<Executor> deliveryExecutors;
+
+    EventPublisher(BloombergSession session, SubscriptionBuilder subscription, Backpressure backpressure) {
+        this(session, subscription, backpressure, EventPublisher::newDeliveryExecutor);
+    }
+
+    EventPublisher(BloombergSession session, SubscriptionBuilder subscription, Backpressure backpressure,
+                   Supplier<Executor> deliveryExecutors) {
+        this.session = Objects.requireNonNull(session);
+        this.subscription = Objects.requireNonNull(subscription);
+        this.backpressure = Objects.requireNonNull(backpressure);
+        this.deliveryExecutors = Objects.requireNonNull(deliveryExecutors);
+    }
+
+    /**
+     * A single thread, which stops after a second without updates
+     */
+    private static ExecutorService newDeliveryExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                                                             ListenerExecutor.threadFactory("Bloomberg Publisher"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @Override
+    public void subscribe(EventFlow.Subscriber<? super DataChangeEvent> subscriber) {
+        Link link = new Link(subscriber, backpressure, deliveryExecutors.get());
+        subscriber.onSubscribe(link);
+        if (link.isCancelled()) return;
+        try {
+            //inline: the listener only queues the update and must see the updates in the order they were received
+            SubscriptionBuilder builder = subscription.withListener(link).listenerExecutor(ListenerExecutor.inline());
+            link.setHandle(session.subscribeWithHandle(builder));
+        } catch (RuntimeException e) {
+            link.fail(e);
+        }
+    }
+
+    /**
+     * The subscription of a Subscriber, which receives the updates of its Bloomberg subscription as a listener and
+     * hands their delivery off to its executor.
+     */
+    static final class Link implements EventFlow.Subscription, DataChangeListener {
+
+        private static final SubscriptionHandle CLOSED = () -> { };
+
+        private final EventFlow.Subscriber<? super DataChangeEvent> subscriber;
+        private final Backpressure backpressure;
+        private final Executor executor;
+        /**
+         * The pending updates of the CONFLATE strategy, by security and field
+         */
+        private final Map<Map.Entry<String, String>, DataChangeEvent> latest = new LinkedHashMap<>();
+        /**
+         * The pending updates of the BUFFER and DROP strategies
+         */
+        private final Queue<DataChangeEvent> queue = new ArrayDeque<>();
+        private final AtomicLong requested = new AtomicLong();
+        /**
+         * Ensures that only one thread at a time calls the Subscriber
+         */
+        private final AtomicInteger wip = new AtomicInteger();
+        /**
+         * The Bloomberg subscription, null until it is made and CLOSED once it has been reverted
+         */
+        private final AtomicReference<SubscriptionHandle> handle = new AtomicReference<>();
+        private volatile boolean cancelled;
+        private volatile Throwable error;
+
+        Link(EventFlow.Subscriber<? super DataChangeEvent> subscriber, Backpressure backpressure, Executor executor) {
+            this.subscriber = Objects.requireNonNull(subscriber);
+            this.backpressure = backpressure;
+            this.executor = executor;
+        }
+
+        @Override
+        public void dataChanged(DataChangeEvent e) {
+            if (cancelled) return;
+            synchronized (this) {
+                switch (backpressure.getStrategy()) {
+                    case CONFLATE:
+                        latest.merge(new SimpleImmutableEntry<>(e.getSource(), e.getDataName()), e, Link::conflate);
+                        break;
+                    case BUFFER:
+                        if (queue.size() >= backpressure.getMaxEvents()) {
+                            error = new BloombergException("More than " + backpressure.getMaxEvents() + " updates are pending");
+                        } else {
+                            queue.add(e);
+                        }
+                        break;
+                    case DROP:
+                        if (queue.size() < requested.get()) queue.add(e);
+                        break;
+                }
+            }
+            if (wip.getAndIncrement() != 0) return; //the thread that is delivering will see the update
+            try {
+                executor.execute(this::deliver);
+            } catch (RejectedExecutionException ex) {
+                //cancelled in the meantime: the executor has been shut down
+            }
+        }
+
+        private static DataChangeEvent conflate(DataChangeEvent pending, DataChangeEvent e) {
+            return new DataChangeEvent(e.getSource(), e.getDataName(), pending.getOldValue(), e.getNewValue(),
+                                       e.getReceivedNanos(), e.isTraced());
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("The number of requested updates must be strictly positive but was " + n);
+            } else {
+                requested.accumulateAndGet(n, (r, m) -> r + m < 0 ? Long.MAX_VALUE : r + m); //capped on overflow
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            SubscriptionHandle h = handle.getAndSet(CLOSED);
+            if (h != null && h != CLOSED) {
+                try {
+                    h.close();
+                } catch (RuntimeException e) {
+                    logger.warn("Could not cancel the subscription", e);
+                }
+            }
+            if (executor instanceof ExecutorService) ((ExecutorService) executor).shutdown();
+            drain(); //clears the pending updates
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        void setHandle(SubscriptionHandle h) {
+            if (!handle.compareAndSet(null, h)) h.close(); //cancelled while subscribing
+        }
+
+        void fail(Throwable t) {
+            error = t;
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() == 0) deliver();
+        }
+
+        /**
+         * Delivers the pending updates, once the caller has moved wip from 0 to 1.
+         */
+        private void deliver() {
+            int missed = 1;
+            do {
+                long r = requested.get();
+                long emitted = 0;
+                while (!terminated()) {
+                    if (emitted == r) break;
+                    DataChangeEvent e = poll();
+                    if (e == null) break;
+                    try {
+                        subscriber.onNext(e);
+                    } catch (RuntimeException ex) {
+                        logger.warn("Subscriber {} threw an exception in onNext - cancelling its subscription", subscriber, ex);
+                        cancel();
+                    }
+                    emitted++;
+                }
+                if (emitted != 0 && r != Long.MAX_VALUE) requested.addAndGet(-emitted);
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        /**
+         * @return true if the Subscriber must not receive any more updates, in which case the pending updates are
+         *         discarded and the Subscriber informed of the error, if any
+         */
+        private boolean terminated() {
+            if (cancelled) {
+                clear();
+                return true;
+            }
+            Throwable t = error;
+            if (t != null) {
+                cancel();
+                clear();
+                subscriber.onError(t);
+                return true;
+            }
+            return false;
+        }
+
+        private synchronized DataChangeEvent poll() {
+            if (backpressure.getStrategy() != Backpressure.Strategy.CONFLATE) return queue.poll();
+            Iterator<DataChangeEvent> it = latest.values().iterator();
+            if (!it.hasNext()) return null;
+            DataChangeEvent e = it.next();
+            it.remove();
+            return e;
+        }
+
+        private synchronized void clear() {
+            latest.clear();
+            queue.clear();
+        }
+    }
+}
@@ -6,6 +6,8 @@ package com.assylias.jbloomberg;
 
 import com.bloomberglp.blpapi.CorrelationID;
 
+import java.util.Collection;
+
 /**
  * An interface defining the API for classes that receive subscription data and inform listeners. Several approaches can
  * be used. Typically it can be desirable that the implementation does not inform listeners about events they are not
@@ -19,10 +21,82 @@ interface EventsManager {
      */
     void addEventListener(String ticker, CorrelationID id, RealtimeField field, DataChangeListener lst);
 
+    /**
+     * Same as {@link #addEventListener(String, CorrelationID, RealtimeField, DataChangeListener)} with the executor in
+     * which the listener is called, or null for the default executor. The default implementation ignores the executor.
+     */
+    default void addEventListener(String ticker, CorrelationID id, RealtimeField field, DataChangeListener lst, ListenerExecutor executor) {
+        addEventListener(ticker, id, field, lst);
+    }
+
+    /**
+     * Adds a listener that will be informed of data changes for the specific correlation id and field, in the thread
+     * that fires the event and without allocating an event.
+     */
+    default void addFlyweightListener(String ticker, CorrelationID id, RealtimeField field, FlyweightListener lst) { /* no-op */ }
+
+    /**
+     * Removes a flyweight listener of the given correlation id and field.
+     *
+     * @return true if the field had listeners and the removed listener was the last one
+     */
+    default boolean removeFlyweightListener(CorrelationID id, RealtimeField field, FlyweightListener lst) { return false; }
+
     /**
      * Informs the EventsManager that a new value has been received for the given correlation id and field
      */
-    void fireEvent(CorrelationID id, RealtimeField rtField, Object value);
+    default void fireEvent(CorrelationID id, RealtimeField rtField, Object value) {
+        fireEvent(id, rtField, value, System.nanoTime(), false);
+    }
+
+    /**
+     * Informs the EventsManager that a new value has been received for the given correlation id and field, at the given
+     * System.nanoTime(). If traced is true, the latency of the event is recorded when it is conflated and when it
+     * reaches the listeners.
+     */
+    void fireEvent(CorrelationID id, RealtimeField rtField, Object value, long receivedNanos, boolean traced);
+
+    /**
+     * Same as {@link #fireEvent(CorrelationID, RealtimeField, Object, long, boolean)} with a value that holds the
+     * numbers as primitives, which is only valid during the call. The default implementation boxes the value.
+     */
+    default void fireEvent(CorrelationID id, RealtimeField rtField, FieldValue value, long receivedNanos, boolean traced) {
+        fireEvent(id, rtField, value.toObject(), receivedNanos, traced);
+    }
+
+    /**
+     * Informs the EventsManager of the value of the given correlation id and field obtained from a snapshot, before
+     * any real time update has been received. Implementations that keep track of the last value should only relay
+     * the snapshot if no value has been received for that field yet. The default implementation relays it like a
+     * real time update. Must be called by the thread that fires the real time updates.
+     */
+    default void seedEvent(CorrelationID id, RealtimeField rtField, Object value) {
+        fireEvent(id, rtField, value);
+    }
+
+    /**
+     * Removes a listener of the given correlation id and field.
+     *
+     * @return true if the field had listeners and the removed listener was the last one
+     */
+    default boolean removeEventListener(CorrelationID id, RealtimeField field, DataChangeListener lst) { return false; }
+
+    /**
+     * Removes all the listeners of the given correlation id and fields, typically once the fields have been removed
+     * from the subscription.
+     */
+    default void removeEventListeners(CorrelationID id, Collection<RealtimeField> fields) { /* no-op */ }
+
+    /**
+     * Removes the error listener of the given correlation id once the subscription has been cancelled.
+     */
+    default void removeErrorListener(CorrelationID id) { /* no-op */ }
+
+    /**
+     * Forgets the last value of every field of the given correlation id, typically because the connection to Bloomberg
+     * has been lost: the next update of each field is relayed even if its value has not changed.
+     */
+    default void clearLastValues(CorrelationID id) { /* no-op */ }
 
     /**
      * Sets the listener that will be informed of subscription errors for the specific correlation id.
@@ -33,4 +107,9 @@ interface EventsManager {
      * Informs the EventsManager that an error has been received for the given correlation id and field
      */
     default void fireError(CorrelationID id, SubscriptionError error) { /* no-op */ }
+
+    /**
+     * Releases the resources of the EventsManager, such as its threads, once the session has been stopped.
+     */
+    default void stop() { /* no-op */ }
 }
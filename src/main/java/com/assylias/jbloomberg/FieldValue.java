@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import com.bloomberglp.blpapi.Element;
+import com.bloomberglp.blpapi.Schema;
+
+import java.util.Objects;
+
+/**
+ * The value of a field of a real time update, reused from one update to the next. The numbers received as FLOAT64,
+ * INT64 or INT32 are kept as primitives, so that an update can be queued, conflated and passed to the flyweight
+ * listeners without boxing it: the value is only boxed by {@link #toObject()}, for the consumers that need an Object.
+ * <p>
+ * <strong>This class is not thread safe.</strong>
+ */
+final class FieldValue {
+
+    enum Kind { DOUBLE, LONG, INT, OBJECT }
+
+    /**
+     * null if there is no value
+     */
+    private Kind kind;
+    /**
+     * The number, for the primitive kinds - the doubles are stored with {@link Double#doubleToLongBits(double)}, so
+     * that two values are the same if and only if their boxed values are equal
+     */
+    private long bits;
+    private Object object;
+
+    /**
+     * Stores the value of the element, as {@link BloombergUtils#getSpecificObjectOf(Element)} would return it.
+     */
+    FieldValue set(Element field) {
+        Schema.Datatype datatype = field.datatype();
+        if (datatype == Schema.Datatype.FLOAT64) return set(field.getValueAsFloat64());
+        if (datatype == Schema.Datatype.INT64) return set(field.getValueAsInt64());
+        if (datatype == Schema.Datatype.INT32) return set(field.getValueAsInt32());
+        return set(BloombergUtils.getSpecificObjectOf(field));
+    }
+
+    FieldValue set(double value) {
+        return set(Kind.DOUBLE, Double.doubleToLongBits(value), null);
+    }
+
+    FieldValue set(long value) {
+        return set(Kind.LONG, value, null);
+    }
+
+    FieldValue set(int value) {
+        return set(Kind.INT, value, null);
+    }
+
+    /**
+     * Stores a value - the Doubles, Longs and Integers are unboxed, like the values received from Bloomberg.
+     */
+    FieldValue set(Object value) {
+        if (value instanceof Double) return set((double) (Double) value);
+        if (value instanceof Long) return set((long) (Long) value);
+        if (value instanceof Integer) return set((int) (Integer) value);
+        return set(value == null ? null : Kind.OBJECT, 0, value);
+    }
+
+    FieldValue set(FieldValue value) {
+        return set(value.kind, value.bits, value.object);
+    }
+
+    /**
+     * Restores a value from its state, as returned by {@link #kind()}, {@link #bits()} and {@link #object()} - for the
+     * classes that copy the state to their own fields, typically to publish it to other threads.
+     */
+    FieldValue set(Kind kind, long bits, Object object) {
+        this.kind = kind;
+        this.bits = bits;
+        this.object = object;
+        return this;
+    }
+
+    Kind kind() {
+        return kind;
+    }
+
+    long bits() {
+        return bits;
+    }
+
+    Object object() {
+        return object;
+    }
+
+    FieldValue clear() {
+        return set((Object) null);
+    }
+
+    boolean isEmpty() {
+        return kind == null;
+    }
+
+    /**
+     * @return true if both values are equal once boxed, without boxing them
+     */
+    boolean isSame(FieldValue other) {
+        return kind == other.kind && (kind == Kind.OBJECT ? object.equals(other.object) : bits == other.bits);
+    }
+
+    boolean isNumber() {
+        return kind != null && (kind != Kind.OBJECT || object instanceof Number);
+    }
+
+    /**
+     * @throws ClassCastException if the value is not a number
+     */
+    double asDouble() {
+        if (kind == Kind.DOUBLE) return Double.longBitsToDouble(bits);
+        if (kind == Kind.LONG || kind == Kind.INT) return bits;
+        return ((Number) object).doubleValue();
+    }
+
+    /**
+     * @throws ClassCastException if the value is not a number
+     */
+    long asLong() {
+        if (kind == Kind.DOUBLE) return (long) Double.longBitsToDouble(bits);
+        if (kind == Kind.LONG || kind == Kind.INT) return bits;
+        return ((Number) object).longValue();
+    }
+
+    /**
+     * @return the value, boxed if it is a number - null if there is no value
+     */
+    Object toObject() {
+        if (kind == null) return null;
+        switch (kind) {
+            case DOUBLE: return Double.longBitsToDouble(bits);
+            case LONG: return bits;
+            case INT: return (int) bits;
+            default: return object;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toString(toObject());
+    }
+}
@@ -0,0 +1,24 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+/**
+ * A FlyweightListener is informed of the real time changes of a subscription without any allocation: instead of a new
+ * DataChangeEvent, it receives a {@link RealtimeUpdate} that is reused for all the updates and is only valid during
+ * the call - see {@link SubscriptionBuilder#addFlyweightListener(FlyweightListener)}.
+ * <p>
+ * The listener is called by the thread that dispatches the updates of the session, one update at a time: it must
+ * return quickly, as it holds up all the other updates of the session while it runs.
+ */
+@FunctionalInterface
+public interface FlyweightListener {
+
+    /**
+     * Invoked when a change occurs in the DataFeed.
+     *
+     * @param update a view of the change - it must not be used after this method returns
+     */
+    void onUpdate(RealtimeUpdate update);
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A timer for large numbers of short tasks, such as one per security and field, that are often cancelled before they
+ * expire. The timeouts are hashed into a circular array of buckets by their deadline, rounded to a tick, and the
+ * timer thread only visits the bucket of the current tick: scheduling and cancelling a timeout cost O(1) and tens of
+ * thousands of pending timeouts cost a few linked list nodes, where a ScheduledExecutorService would maintain a heap
+ * and a Future per task.
+ * <p>
+ * The tasks run in the timer thread, at most one tick after their deadline, and must be quick: a slow task delays all
+ * the others. The thread is a daemon thread, started when the timer is created.
+ * <p>
+ * This class is thread safe.
+ */
+final class HashedTimerWheel {
+
+    private final static Logger logger = LoggerFactory.getLogger(HashedTimerWheel.class);
+
+    private final long tickNanos;
+    private final int mask;
+    /**
+     * The timeouts of each bucket, as doubly linked lists - only accessed by the timer thread
+     */
+    private final Timeout[] buckets;
+    private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final long startNanos = System.nanoTime();
+    private final Thread thread;
+    private volatile boolean stopped;
+    private long tick;
+
+    /**
+     * @param tick          the resolution of the timer
+     * @param unit          the unit of tick
+     * @param ticksPerWheel the number of buckets, rounded up to a power of two - the timeouts whose deadline is more
+     *                      than one turn of the wheel away wait in their bucket for the right turn
+     * @param name          the name of the timer thread
+     *
+     * @throws IllegalArgumentException if tick or ticksPerWheel is not positive
+     */
+    HashedTimerWheel(long tick, TimeUnit unit, int ticksPerWheel, String name) {
+        Preconditions.checkArgument(tick > 0, "tick must be > 0 (was %s)", tick);
+        Preconditions.checkArgument(ticksPerWheel > 0 && ticksPerWheel <= 1 << 20, "ticksPerWheel must be between 1 and 2^20 (was %s)", ticksPerWheel);
+        this.tickNanos = unit.toNanos(tick);
+        int size = Integer.highestOneBit(ticksPerWheel - 1) << 1;
+        this.buckets = new Timeout[Math.max(size, 1)];
+        this.mask = buckets.length - 1;
+        this.thread = new Thread(this::run, requireNonNull(name));
+        thread.setDaemon(true); //daemon to allow JVM exit
+        thread.start();
+    }
+
+    /**
+     * Schedules a task to run once the delay has elapsed.
+     *
+     * @return the timeout of the task, which can be cancelled
+     */
+    Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        Timeout t = new Timeout(this, requireNonNull(task), System.nanoTime() + Math.max(unit.toNanos(delay), 0));
+        scheduled.add(t);
+        return t;
+    }
+
+    /**
+     * Stops the timer thread - the pending timeouts never expire.
+     */
+    void stop() {
+        stopped = true;
+        thread.interrupt();
+    }
+
+    private void run() {
+        while (!stopped) {
+            long deadline = startNanos + (tick + 1) * tickNanos;
+            for (long wait = deadline - System.nanoTime(); wait > 0 && !stopped; wait = deadline - System.nanoTime()) {
+                LockSupport.parkNanos(this, wait);
+            }
+            if (stopped) return;
+            removeCancelled();
+            addScheduled();
+            expire(buckets[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    private void addScheduled() {
+        for (Timeout t = scheduled.poll(); t != null; t = scheduled.poll()) {
+            if (t.state != Timeout.PENDING) continue;
+            long ticks = Math.max((t.deadlineNanos - startNanos + tickNanos - 1) / tickNanos - 1, tick); //no bucket in the past
+            t.rounds = (ticks - tick) / buckets.length;
+            int index = (int) (ticks & mask);
+            t.next = buckets[index];
+            if (t.next != null) t.next.previous = t;
+            buckets[index] = t;
+            t.bucket = index;
+        }
+    }
+
+    private void removeCancelled() {
+        for (Timeout t = cancelled.poll(); t != null; t = cancelled.poll()) {
+            if (t.bucket >= 0) unlink(t);
+        }
+    }
+
+    private void expire(Timeout t) {
+        while (t != null) {
+            Timeout next = t.next;
+            if (t.rounds > 0) {
+                t.rounds--;
+            } else {
+                unlink(t);
+                if (t.expire()) {
+                    try {
+                        t.task.run();
+                    } catch (RuntimeException e) {
+                        logger.error("Timer task " + t.task + " has thrown an exception", e);
+                    }
+                }
+            }
+            t = next;
+        }
+    }
+
+    private void unlink(Timeout t) {
+        if (t.previous == null) buckets[t.bucket] = t.next;
+        else t.previous.next = t.next;
+        if (t.next != null) t.next.previous = t.previous;
+        t.next = t.previous = null;
+        t.bucket = -1;
+    }
+
+    /**
+     * A task waiting for its deadline.
+     */
+    static final class Timeout {
+        private static final int PENDING = 0, EXPIRED = 1, CANCELLED = 2;
+
+        private final HashedTimerWheel wheel;
+        private final Runnable task;
+        private final long deadlineNanos;
+        private volatile int state = PENDING;
+        //accessed by the timer thread only
+        private long rounds;
+        private int bucket = -1;
+        private Timeout next, previous;
+
+        private Timeout(HashedTimerWheel wheel, Runnable task, long deadlineNanos) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * Prevents the task from running, if it has not started yet.
+         *
+         * @return true if the task will not run, false if it has already expired
+         */
+        boolean cancel() {
+            synchronized (this) {
+                if (state != PENDING) return state == CANCELLED;
+                state = CANCELLED;
+            }
+            wheel.cancelled.add(this);
+            return true;
+        }
+
+        private synchronized boolean expire() {
+            if (state != PENDING) return false;
+            state = EXPIRED;
+            return true;
+        }
+    }
+}
@@ -83,6 +83,20 @@ public class IntradayBarData extends AbstractRequestResult {
         }
     }
 
+    /**
+     * Adds the bars of another result to this result, with their errors.
+     *
+     * @param before only the bars that start strictly before that date are added - null to add all the bars
+     */
+    synchronized void addAll(IntradayBarData other, OffsetDateTime before) {
+        addErrors(other);
+        synchronized (other) {
+            for (Table.Cell<OffsetDateTime, IntradayBarField, TypedObject> c : other.data.cellSet()) {
+                if (before == null || c.getRowKey().isBefore(before)) data.put(c.getRowKey(), c.getColumnKey(), c.getValue());
+            }
+        }
+    }
+
     /**
      *
      * @return the security for which the intraday data has been retrieved
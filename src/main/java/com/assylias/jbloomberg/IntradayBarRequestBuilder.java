@@ -65,6 +65,17 @@ public final class IntradayBarRequestBuilder extends AbstractIntradayRequestBuil
         super(ticker, eventType.toString(), startDateTime, endDateTime);
     }
 
+    private IntradayBarRequestBuilder(IntradayBarRequestBuilder source, String ticker, OffsetDateTime startDateTime, OffsetDateTime endDateTime) {
+        super(ticker, source.getEventType(), startDateTime, endDateTime);
+        this.period = source.period;
+        //only the first bar of the original range can be filled: the following bars are not empty or are omitted
+        this.fillInitialBar = source.fillInitialBar && startDateTime.isEqual(source.getStartDateTime());
+        this.adjustNormal = source.adjustNormal;
+        this.adjustAbnormal = source.adjustAbnormal;
+        this.adjustSplit = source.adjustSplit;
+        this.usePricingDefaults = source.usePricingDefaults;
+    }
+
     /**
      * @param period   Determine the period of the output. Sets the length of each time bar in the response. Once
      *                 rounded, it needs to represent a duration between 1 and 1440 in minutes. If omitted, the request will default
@@ -150,6 +161,23 @@ public final class IntradayBarRequestBuilder extends AbstractIntradayRequestBuil
                 + ", usePricingDefaults=" + usePricingDefaults + '}';
     }
 
+    @Override
+    IntradayBarRequestBuilder withRange(OffsetDateTime startDateTime, OffsetDateTime endDateTime) {
+        return new IntradayBarRequestBuilder(this, getTicker(), startDateTime, endDateTime);
+    }
+
+    @Override
+    IntradayBarRequestBuilder withTicker(String ticker) {
+        return new IntradayBarRequestBuilder(this, ticker, getStartDateTime(), getEndDateTime());
+    }
+
+    /**
+     * @return the length of the bars, in minutes
+     */
+    int getPeriod() {
+        return period;
+    }
+
     @Override
     protected void buildRequest(Request request) {
         super.buildRequest(request);
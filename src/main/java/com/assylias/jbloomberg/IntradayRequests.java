@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Utility methods to retrieve large amounts of intraday data.
+ * <p>
+ * A long intraday request (for example a month of ticks for a liquid security) returns one very large response that is
+ * only available once it has been fully received. The methods of this class split the date range of such a request into
+ * windows, submit one request per window, up to a maximum number of requests at the same time, and stitch the results
+ * into a single result, in time order.
+ * <p>
+ * The windows do not overlap: each window excludes its end date, which belongs to the next window (except for the last
+ * window, which includes the end date of the original request). A tick or a bar is therefore never returned twice, and
+ * the ticks that have the same date are kept in the order in which Bloomberg returned them.
+ * <p>
+ * Bloomberg intraday requests only accept one security: the {@code submitAll} methods submit the same request for
+ * several securities, up to a maximum number of requests at the same time, and report the result of each security as
+ * soon as it is available.
+ */
+public final class IntradayRequests {
+
+    private final static Logger logger = LoggerFactory.getLogger(IntradayRequests.class);
+
+    private IntradayRequests() { }
+
+    /**
+     * Submits the same tick request for several securities - see {@link #submitAll(BloombergSession,
+     * IntradayTickRequestBuilder, Collection, int, ResultListener)}.
+     */
+    public static CompletableFuture<Map<String, IntradayTickData>> submitAll(BloombergSession session, IntradayTickRequestBuilder template,
+                                                                             Collection<String> securities, int maxConcurrency) {
+        return submitAll(session, template, securities, maxConcurrency, (s, r, e) -> { });
+    }
+
+    /**
+     * Submits the same tick request for several securities, with at most maxConcurrency requests submitted at the
+     * same time.
+     *
+     * @param session        the session used to submit the requests
+     * @param template       the request to submit for each security - its date range and options are used for all the
+     *                       securities and its own security is ignored
+     * @param securities     the securities for which the data is required
+     * @param maxConcurrency the maximum number of requests submitted at the same time
+     * @param listener       called with the result (or the failure) of each security as soon as it is available
+     *
+     * @return a future that contains the result of each security, in the order of the securities - the securities for
+     *         which the request failed are not included. Cancelling the future cancels the requests that have not
+     *         completed.
+     *
+     * @throws NullPointerException     if any of the arguments is null
+     * @throws IllegalArgumentException if maxConcurrency is not positive
+     */
+    public static CompletableFuture<Map<String, IntradayTickData>> submitAll(BloombergSession session, IntradayTickRequestBuilder template,
+                                                                             Collection<String> securities, int maxConcurrency,
+                                                                             ResultListener<? super IntradayTickData> listener) {
+        return submitAll(session, (AbstractIntradayRequestBuilder<IntradayTickData>) template, securities, maxConcurrency, listener);
+    }
+
+    /**
+     * Submits the same bar request for several securities - see {@link #submitAll(BloombergSession,
+     * IntradayBarRequestBuilder, Collection, int, ResultListener)}.
+     */
+    public static CompletableFuture<Map<String, IntradayBarData>> submitAll(BloombergSession session, IntradayBarRequestBuilder template,
+                                                                            Collection<String> securities, int maxConcurrency) {
+        return submitAll(session, template, securities, maxConcurrency, (s, r, e) -> { });
+    }
+
+    /**
+     * Submits the same bar request for several securities, with at most maxConcurrency requests submitted at the
+     * same time.
+     *
+     * @param session        the session used to submit the requests
+     * @param template       the request to submit for each security - its date range and options are used for all the
+     *                       securities and its own security is ignored
+     * @param securities     the securities for which the data is required
+     * @param maxConcurrency the maximum number of requests submitted at the same time
+     * @param listener       called with the result (or the failure) of each security as soon as it is available
+     *
+     * @return a future that contains the result of each security, in the order of the securities - the securities for
+     *         which the request failed are not included. Cancelling the future cancels the requests that have not
+     *         completed.
+     *
+     * @throws NullPointerException     if any of the arguments is null
+     * @throws IllegalArgumentException if maxConcurrency is not positive
+     */
+    public static CompletableFuture<Map<String, IntradayBarData>> submitAll(BloombergSession session, IntradayBarRequestBuilder template,
+                                                                            Collection<String> securities, int maxConcurrency,
+                                                                            ResultListener<? super IntradayBarData> listener) {
+        return submitAll(session, (AbstractIntradayRequestBuilder<IntradayBarData>) template, securities, maxConcurrency, listener);
+    }
+
+    private static <T extends RequestResult> CompletableFuture<Map<String, T>> submitAll(BloombergSession session, AbstractIntradayRequestBuilder<T> template,
+                                                                                         Collection<String> securities, int maxConcurrency,
+                                                                                         ResultListener<? super T> listener) {
+        requireNonNull(session, "session can't be null");
+        requireNonNull(template, "template can't be null");
+        requireNonNull(listener, "listener can't be null");
+        List<String> list = new ArrayList<>(new LinkedHashSet<>(securities));
+        Map<String, T> results = new ConcurrentHashMap<>();
+        CompletableFuture<Void> all = BoundedFanOut.run(list, maxConcurrency, s -> session.submit(template.withTicker(s)),
+                (s, result) -> {
+                    results.put(s, result);
+                    notify(listener, s, result, null);
+                },
+                (s, error) -> notify(listener, s, null, error));
+        CompletableFuture<Map<String, T>> map = all.thenApply(v -> {
+            Map<String, T> ordered = new LinkedHashMap<>();
+            for (String s : list) {
+                T result = results.get(s);
+                if (result != null) ordered.put(s, result);
+            }
+            return Collections.unmodifiableMap(ordered);
+        });
+        map.whenComplete((r, t) -> {
+            if (t instanceof CancellationException) all.cancel(true);
+        });
+        return map;
+    }
+
+    private static <T> void notify(ResultListener<T> listener, String security, T result, Throwable error) {
+        try {
+            listener.onResult(security, result, error);
+        } catch (RuntimeException e) {
+            logger.warn("ResultListener has thrown an exception for {}", security, e);
+        }
+    }
+
+    /**
+     * Submits a tick request in chunks - see the documentation of the class.
+     *
+     * @param session        the session used to submit the requests
+     * @param request        the request to split
+     * @param window         the maximum duration covered by each request
+     * @param maxConcurrency the maximum number of requests submitted at the same time
+     *
+     * @return a future that contains the ticks of the whole date range - if one of the requests fails, the future
+     *         completes exceptionally. Cancelling the future cancels the requests that have not completed.
+     *
+     * @throws NullPointerException     if any of the arguments is null
+     * @throws IllegalArgumentException if the window or maxConcurrency is not positive
+     */
+    public static CompletableFuture<IntradayTickData> submitChunked(BloombergSession session, IntradayTickRequestBuilder request,
+                                                                    Duration window, int maxConcurrency) {
+        return submitChunked(session, request, window, maxConcurrency, () -> new IntradayTickData(request.getTicker()),
+                             IntradayTickData::addAll);
+    }
+
+    /**
+     * Submits a bar request in chunks - see the documentation of the class. The window is rounded up to a multiple of
+     * the period of the bars so that the bars of the chunks start at the same dates as the bars of the original request.
+     *
+     * @param session        the session used to submit the requests
+     * @param request        the request to split
+     * @param window         the maximum duration covered by each request
+     * @param maxConcurrency the maximum number of requests submitted at the same time
+     *
+     * @return a future that contains the bars of the whole date range - if one of the requests fails, the future
+     *         completes exceptionally. Cancelling the future cancels the requests that have not completed.
+     *
+     * @throws NullPointerException     if any of the arguments is null
+     * @throws IllegalArgumentException if the window or maxConcurrency is not positive
+     */
+    public static CompletableFuture<IntradayBarData> submitChunked(BloombergSession session, IntradayBarRequestBuilder request,
+                                                                   Duration window, int maxConcurrency) {
+        Preconditions.checkArgument(!window.isNegative() && !window.isZero(), "window must be positive (was %s)", window);
+        long periodSeconds = request.getPeriod() * 60L;
+        long periods = (window.getSeconds() + periodSeconds - 1) / periodSeconds;
+        Duration aligned = Duration.ofSeconds(Math.max(1, periods) * periodSeconds);
+        return submitChunked(session, request, aligned, maxConcurrency, () -> new IntradayBarData(request.getTicker()),
+                             IntradayBarData::addAll);
+    }
+
+    private static <T extends RequestResult> CompletableFuture<T> submitChunked(BloombergSession session, AbstractIntradayRequestBuilder<T> request,
+                                                                                Duration window, int maxConcurrency,
+                                                                                Supplier<T> emptyResult, Stitcher<T> stitcher) {
+        requireNonNull(session, "session can't be null");
+        requireNonNull(request, "request can't be null");
+        Preconditions.checkArgument(!window.isNegative() && !window.isZero(), "window must be positive (was %s)", window);
+        Preconditions.checkArgument(maxConcurrency > 0, "maxConcurrency must be > 0 (was %s)", maxConcurrency);
+
+        List<OffsetDateTime> starts = split(request.getStartDateTime(), request.getEndDateTime(), window);
+        if (starts.size() == 1) return session.submit(request);
+
+        int chunks = starts.size();
+        AtomicReferenceArray<T> results = new AtomicReferenceArray<>(chunks);
+        List<Integer> indices = IntStream.range(0, chunks).boxed().collect(Collectors.toList());
+        CompletableFuture<Void> all = BoundedFanOut.run(indices, maxConcurrency, i -> {
+            OffsetDateTime end = i == chunks - 1 ? request.getEndDateTime() : starts.get(i + 1);
+            return session.submit(request.withRange(starts.get(i), end));
+        }, results::set);
+        CompletableFuture<T> stitched = all.thenApply(v -> {
+            T result = emptyResult.get();
+            for (int i = 0; i < chunks; i++) {
+                stitcher.stitch(result, results.get(i), i == chunks - 1 ? null : starts.get(i + 1));
+            }
+            return result;
+        });
+        stitched.whenComplete((r, t) -> {
+            if (t instanceof CancellationException) all.cancel(true);
+        });
+        return stitched;
+    }
+
+    /**
+     * @return the start dates of the windows covering [start, end] - there is at least one window
+     */
+    static List<OffsetDateTime> split(OffsetDateTime start, OffsetDateTime end, Duration window) {
+        if (!start.isBefore(end)) return Collections.singletonList(start);
+        List<OffsetDateTime> starts = new ArrayList<>();
+        for (OffsetDateTime t = start; t.isBefore(end); t = t.plus(window)) {
+            starts.add(t);
+        }
+        return starts;
+    }
+
+    /**
+     * A listener that is informed of the result of the request of each security.
+     */
+    @FunctionalInterface
+    public interface ResultListener<T> {
+        /**
+         * Called once for each security, as soon as its request completes - this method may be called concurrently
+         * for different securities.
+         *
+         * @param security the security
+         * @param result   the result of the request, or null if it failed
+         * @param error    the cause of the failure, or null if the request succeeded
+         */
+        void onResult(String security, T result, Throwable error);
+    }
+
+    @FunctionalInterface
+    private interface Stitcher<T> {
+        /**
+         * Adds the data of chunk that is strictly before the given date (or all the data if the date is null) to result.
+         */
+        void stitch(T result, T chunk, OffsetDateTime before);
+    }
+}
@@ -79,24 +79,47 @@ public class IntradayTickData extends AbstractRequestResult {
      */
     synchronized void add(OffsetDateTime date, String field, Object value) {
         try {
-            IntradayTickField f = IntradayTickField.of(field);
-            TypedObject previousValue = data.get(date, f);
-            TypedObject newValue = TypedObject.of(value);
-            if (previousValue == null) { //new value, just add it
-                data.put(date, f, newValue);
-            } else if (previousValue.isList()) { //already several values in a list - add the new value to the list
-                previousValue.asList().add(newValue);
-            } else { //already one value: create a list of values
-                List<TypedObject> list = new ArrayList<> ();
-                list.add(previousValue);
-                list.add(newValue);
-                data.put(date, f, TypedObject.of(list));
-            }
+            add(date, IntradayTickField.of(field), TypedObject.of(value));
         } catch (IllegalArgumentException e) {
             logger.debug("{} - {}", e.getMessage(), value);
         }
     }
 
+    private void add(OffsetDateTime date, IntradayTickField f, TypedObject newValue) {
+        TypedObject previousValue = data.get(date, f);
+        if (previousValue == null) { //new value, just add it
+            data.put(date, f, newValue);
+        } else if (previousValue.isList()) { //already several values in a list - add the new value to the list
+            previousValue.asList().add(newValue);
+        } else { //already one value: create a list of values
+            List<TypedObject> list = new ArrayList<> ();
+            list.add(previousValue);
+            list.add(newValue);
+            data.put(date, f, TypedObject.of(list));
+        }
+    }
+
+    /**
+     * Adds the ticks of another result to this result, with their errors. The ticks that have the same date as ticks
+     * already in this result are added after them, in their original order.
+     *
+     * @param before only the ticks strictly before that date are added - null to add all the ticks
+     */
+    synchronized void addAll(IntradayTickData other, OffsetDateTime before) {
+        addErrors(other);
+        synchronized (other) {
+            for (Table.Cell<OffsetDateTime, IntradayTickField, TypedObject> c : other.data.cellSet()) {
+                if (before != null && !c.getRowKey().isBefore(before)) continue;
+                TypedObject v = c.getValue();
+                if (v.isList()) {
+                    for (TypedObject value : v.asList()) add(c.getRowKey(), c.getColumnKey(), value);
+                } else {
+                    add(c.getRowKey(), c.getColumnKey(), v);
+                }
+            }
+        }
+    }
+
     /**
      *
      * @return the security for which the intraday data has been retrieved
@@ -63,6 +63,16 @@ public class IntradayTickRequestBuilder extends AbstractIntradayRequestBuilder<I
         super(ticker, eventType.toString(), startDateTime, endDateTime);
     }
 
+    private IntradayTickRequestBuilder(IntradayTickRequestBuilder source, String ticker, OffsetDateTime startDateTime, OffsetDateTime endDateTime) {
+        super(ticker, source.getEventType(), startDateTime, endDateTime);
+        this.includeConditionCodes = source.includeConditionCodes;
+        this.includeNonPlottableEvents = source.includeNonPlottableEvents;
+        this.includeExchangeCodes = source.includeExchangeCodes;
+        this.includeBrokerCodes = source.includeBrokerCodes;
+        this.includeRpsCodes = source.includeRpsCodes;
+        this.includeBicMicCodes = source.includeBicMicCodes;
+    }
+
     /**
      * Include any condition codes that may be associated to a tick. Condition codes identify extraordinary trading and
      * quoting circumstances. Condition codes are returned as a comma delimited list of exchange condition codes
@@ -123,6 +133,16 @@ public class IntradayTickRequestBuilder extends AbstractIntradayRequestBuilder<I
         return this;
     }
 
+    @Override
+    IntradayTickRequestBuilder withRange(OffsetDateTime startDateTime, OffsetDateTime endDateTime) {
+        return new IntradayTickRequestBuilder(this, getTicker(), startDateTime, endDateTime);
+    }
+
+    @Override
+    IntradayTickRequestBuilder withTicker(String ticker) {
+        return new IntradayTickRequestBuilder(this, ticker, getStartDateTime(), getEndDateTime());
+    }
+
     @Override
     protected void buildRequest(Request request) {
         super.buildRequest(request);
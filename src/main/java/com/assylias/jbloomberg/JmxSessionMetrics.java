@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import com.bloomberglp.blpapi.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A {@link SessionMetrics} that keeps the measurements in memory and exposes them as a JMX MBean (see
+ * {@link SessionMetricsMXBean} for the list of attributes). Typical use:
+ * <pre>{@code
+ * JmxSessionMetrics metrics = JmxSessionMetrics.register("prices");
+ * BloombergSession session = new DefaultBloombergSession(new SessionOptions(), s -> {},
+ *                                                        new SessionConfiguration().metrics(metrics));
+ * }</pre>
+ * The MBean is registered in the platform MBean server under {@code com.assylias.jbloomberg:type=SessionMetrics,name=prices}.
+ * <p>
+ * This class is thread safe.
+ */
+public final class JmxSessionMetrics implements SessionMetrics, SessionMetricsMXBean {
+
+    private final static Logger logger = LoggerFactory.getLogger(JmxSessionMetrics.class);
+    private static final BloombergRequestType[] REQUEST_TYPES = BloombergRequestType.values();
+    private static final BloombergServiceType[] SERVICE_TYPES = BloombergServiceType.values();
+    private static final TickStage[] TICK_STAGES = TickStage.values();
+
+    private final LatencyHistogram[] requestLatencies = new LatencyHistogram[REQUEST_TYPES.length];
+    private final LongAdder[] failedRequests = new LongAdder[REQUEST_TYPES.length];
+    private final AtomicIntegerArray requestsInFlight = new AtomicIntegerArray(SERVICE_TYPES.length);
+    private final LatencyHistogram[] requestQueueWaits = new LatencyHistogram[REQUEST_TYPES.length];
+    private volatile int requestQueueDepth;
+    private volatile int pendingResponses;
+    private volatile int subscriptionQueueDepth;
+    private final LongAccumulator maxSubscriptionQueueDepth = new LongAccumulator(Math::max, 0);
+    private final ConcurrentMap<Event.EventType, LongAdder> eventCounts = new ConcurrentHashMap<>();
+    private final LatencyHistogram[] tickLatencies = new LatencyHistogram[TICK_STAGES.length];
+    private final LatencyHistogram listenerExecutionTimes = new LatencyHistogram();
+    private final LongAdder slowListeners = new LongAdder();
+    private final LatencyHistogram downtimes = new LatencyHistogram();
+    private final LatencyHistogram recoveryTimes = new LatencyHistogram();
+    private final LongAdder failedResubscriptions = new LongAdder();
+    /**
+     * Used to compute the event rates - guarded by this.
+     */
+    private Map<String, Long> previousEventCounts = new TreeMap<>();
+    private long previousEventRatesNanos = System.nanoTime();
+    private Map<String, Double> eventRates = new TreeMap<>();
+    private volatile ObjectName objectName;
+
+    /**
+     * Creates a new JmxSessionMetrics that is not registered in the MBean server.
+     */
+    public JmxSessionMetrics() {
+        for (int i = 0; i < REQUEST_TYPES.length; i++) {
+            requestLatencies[i] = new LatencyHistogram();
+            failedRequests[i] = new LongAdder();
+            requestQueueWaits[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < TICK_STAGES.length; i++) {
+            tickLatencies[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Creates a new JmxSessionMetrics and registers it in the platform MBean server under
+     * {@code com.assylias.jbloomberg:type=SessionMetrics,name=<name>}.
+     *
+     * @param name the name used to identify the session in the MBean server
+     *
+     * @return the registered JmxSessionMetrics
+     *
+     * @throws NullPointerException     if name is null
+     * @throws IllegalArgumentException if the name is not a valid ObjectName value or if an MBean is already
+     *                                  registered with that name
+     */
+    public static JmxSessionMetrics register(String name) {
+        requireNonNull(name, "name can't be null");
+        JmxSessionMetrics metrics = new JmxSessionMetrics();
+        try {
+            ObjectName objectName = new ObjectName("com.assylias.jbloomberg:type=SessionMetrics,name=" + name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName);
+            metrics.objectName = objectName;
+            logger.debug("Registered session metrics MBean {}", objectName);
+            return metrics;
+        } catch (JMException e) {
+            throw new IllegalArgumentException("Could not register the session metrics MBean with name " + name, e);
+        }
+    }
+
+    /**
+     * Removes this MBean from the platform MBean server. Does nothing if it is not registered.
+     */
+    public synchronized void unregister() {
+        if (objectName == null) return;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) server.unregisterMBean(objectName);
+        } catch (JMException e) {
+            logger.warn("Could not unregister session metrics MBean {}", objectName, e);
+        }
+        objectName = null;
+    }
+
+    @Override
+    public void requestStarted(BloombergServiceType service, BloombergRequestType requestType) {
+        requestsInFlight.incrementAndGet(service.ordinal());
+    }
+
+    @Override
+    public void requestCompleted(BloombergServiceType service, BloombergRequestType requestType, long latencyNanos, boolean success) {
+        requestsInFlight.decrementAndGet(service.ordinal());
+        requestLatencies[requestType.ordinal()].record(latencyNanos);
+        if (!success) failedRequests[requestType.ordinal()].increment();
+    }
+
+    @Override
+    public void requestAdmitted(BloombergServiceType service, BloombergRequestType requestType, long waitNanos) {
+        requestQueueWaits[requestType.ordinal()].record(waitNanos);
+    }
+
+    @Override
+    public void requestQueueDepth(int depth) {
+        requestQueueDepth = depth;
+    }
+
+    @Override
+    public void pendingResponses(int count) {
+        pendingResponses = count;
+    }
+
+    @Override
+    public void eventReceived(Event.EventType type) {
+        LongAdder count = eventCounts.get(type);
+        if (count == null) count = eventCounts.computeIfAbsent(type, t -> new LongAdder());
+        count.increment();
+    }
+
+    @Override
+    public void subscriptionQueueDepth(int depth) {
+        subscriptionQueueDepth = depth;
+        maxSubscriptionQueueDepth.accumulate(depth);
+    }
+
+    @Override
+    public void listenerExecuted(long nanos) {
+        listenerExecutionTimes.record(nanos);
+    }
+
+    @Override
+    public void slowListener() {
+        slowListeners.increment();
+    }
+
+    @Override
+    public void tickLatency(TickStage stage, long nanos) {
+        tickLatencies[stage.ordinal()].record(nanos);
+    }
+
+    @Override
+    public void subscriptionsRecovered(int subscriptions, int failed, long downtimeNanos, long recoveryNanos) {
+        downtimes.record(downtimeNanos);
+        recoveryTimes.record(recoveryNanos);
+        failedResubscriptions.add(failed);
+    }
+
+    @Override
+    public Map<String, Latency> getRequestLatencies() {
+        Map<String, Latency> latencies = new TreeMap<>();
+        for (BloombergRequestType type : REQUEST_TYPES) {
+            LatencyHistogram h = requestLatencies[type.ordinal()];
+            if (h.getCount() > 0) latencies.put(type.name(), new Latency(h));
+        }
+        return latencies;
+    }
+
+    @Override
+    public Map<String, Long> getFailedRequests() {
+        Map<String, Long> failed = new TreeMap<>();
+        for (BloombergRequestType type : REQUEST_TYPES) {
+            long n = failedRequests[type.ordinal()].sum();
+            if (n > 0) failed.put(type.name(), n);
+        }
+        return failed;
+    }
+
+    @Override
+    public Map<String, Integer> getRequestsInFlight() {
+        Map<String, Integer> inFlight = new TreeMap<>();
+        for (BloombergServiceType service : SERVICE_TYPES) {
+            int n = requestsInFlight.get(service.ordinal());
+            if (n > 0) inFlight.put(service.name(), n);
+        }
+        return inFlight;
+    }
+
+    @Override
+    public Map<String, Latency> getRequestQueueWaits() {
+        Map<String, Latency> waits = new TreeMap<>();
+        for (BloombergRequestType type : REQUEST_TYPES) {
+            LatencyHistogram h = requestQueueWaits[type.ordinal()];
+            if (h.getCount() > 0) waits.put(type.name(), new Latency(h));
+        }
+        return waits;
+    }
+
+    @Override
+    public int getRequestQueueDepth() {
+        return requestQueueDepth;
+    }
+
+    @Override
+    public int getPendingResponses() {
+        return pendingResponses;
+    }
+
+    @Override
+    public int getSubscriptionQueueDepth() {
+        return subscriptionQueueDepth;
+    }
+
+    @Override
+    public int getMaxSubscriptionQueueDepth() {
+        return (int) maxSubscriptionQueueDepth.get();
+    }
+
+    @Override
+    public Map<String, Long> getEventCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        eventCounts.forEach((type, count) -> counts.put(type.toString(), count.sum()));
+        return counts;
+    }
+
+    @Override
+    public synchronized Map<String, Double> getEventRates() {
+        long now = System.nanoTime();
+        long elapsed = now - previousEventRatesNanos;
+        if (elapsed >= TimeUnit.SECONDS.toNanos(1)) {
+            Map<String, Long> counts = getEventCounts();
+            Map<String, Double> rates = new TreeMap<>();
+            counts.forEach((type, count) -> rates.put(type, (count - previousEventCounts.getOrDefault(type, 0L)) * 1e9 / elapsed));
+            previousEventCounts = counts;
+            previousEventRatesNanos = now;
+            eventRates = rates;
+        }
+        return new TreeMap<>(eventRates);
+    }
+
+    @Override
+    public Map<String, Latency> getTickLatencies() {
+        Map<String, Latency> latencies = new TreeMap<>();
+        for (TickStage stage : TICK_STAGES) {
+            LatencyHistogram h = tickLatencies[stage.ordinal()];
+            if (h.getCount() > 0) latencies.put(stage.name(), new Latency(h));
+        }
+        return latencies;
+    }
+
+    @Override
+    public Latency getListenerExecutionTimes() {
+        return new Latency(listenerExecutionTimes);
+    }
+
+    @Override
+    public long getSlowListeners() {
+        return slowListeners.sum();
+    }
+
+    @Override
+    public Latency getDowntimes() {
+        return new Latency(downtimes);
+    }
+
+    @Override
+    public Latency getRecoveryTimes() {
+        return new Latency(recoveryTimes);
+    }
+
+    @Override
+    public long getFailedResubscriptions() {
+        return failedResubscriptions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "JmxSessionMetrics" + (objectName == null ? "" : " [" + objectName + "]");
+    }
+}
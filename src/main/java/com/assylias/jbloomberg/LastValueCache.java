@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import java.util.List;
+
+/**
+ * The last value received for each field of the real time subscriptions of a session, which can be queried at any time
+ * without registering a listener. The cache contains the subscribed securities and fields, whether they have
+ * listeners or not, and a security is removed from the cache when it is unsubscribed. A session only keeps the last
+ * values if it has been configured to, with {@link SessionConfiguration#cacheLastValues()}.
+ * <p>
+ * The reads do not lock and do not block the processing of the real time updates.
+ * <p>
+ * Implementations are thread safe.
+ */
+public interface LastValueCache {
+
+    /**
+     * @return the last value received for the field of the security, or null if the security is not subscribed or no
+     *         value has been received for that field yet
+     */
+    TypedObject get(String security, RealtimeField field);
+
+    /**
+     * @return true if the last value of the field of the security was received before the connection to Bloomberg was
+     *         lost and has not been updated since - the value may not reflect the market any longer. The default
+     *         implementation returns false.
+     */
+    default boolean isStale(String security, RealtimeField field) {
+        return false;
+    }
+
+    /**
+     * Returns the last values of the given securities and fields. Each value is consistent with its timestamp but the
+     * snapshot as a whole is not atomic: the values that are updated while the snapshot is taken can be the previous
+     * or the new value.
+     *
+     * @param securities the securities to include, in the order of the rows of the snapshot
+     * @param fields     the fields to include, in the order of the columns of the snapshot
+     *
+     * @return a snapshot of the last values - the cells of the securities and fields that have not received a value
+     *         are empty
+     */
+    LastValueSnapshot snapshot(List<String> securities, List<RealtimeField> fields);
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A point in time copy of the last values of some securities and fields - see {@link LastValueCache#snapshot(List,
+ * List)}. The values are held in a matrix of doubles, with one row per security and one column per field, so that a
+ * snapshot of many securities can be processed without unboxing each value.
+ * <p>
+ * The non numeric values (for example a date or a status) are stored as NaN, as well as the cells that have not
+ * received a value - {@link #hasValue(int, int)} and {@link #getTimestamp(int, int)} tell them apart. The values
+ * received before the connection to Bloomberg was lost, and not updated since, are flagged as
+ * {@link #isStale(int, int) stale}.
+ * <p>
+ * This class is immutable and thread safe.
+ */
+public final class LastValueSnapshot {
+
+    private final List<String> securities;
+    private final List<RealtimeField> fields;
+    private final double[] values; //row-major
+    private final long[] timestamps; //epoch millis, 0 for no value
+    private final BitSet stale;
+
+    LastValueSnapshot(List<String> securities, List<RealtimeField> fields) {
+        this.securities = ImmutableList.copyOf(securities);
+        this.fields = ImmutableList.copyOf(fields);
+        this.values = new double[securities.size() * fields.size()];
+        this.timestamps = new long[values.length];
+        this.stale = new BitSet(values.length);
+        Arrays.fill(values, Double.NaN);
+    }
+
+    /**
+     * Only used while the snapshot is being built.
+     */
+    void set(int security, int field, double value, long timestamp, boolean stale) {
+        int i = index(security, field);
+        values[i] = value;
+        timestamps[i] = timestamp;
+        this.stale.set(i, stale);
+    }
+
+    /**
+     * @return the securities of the snapshot, in the order of the rows
+     */
+    public List<String> getSecurities() {
+        return securities;
+    }
+
+    /**
+     * @return the fields of the snapshot, in the order of the columns
+     */
+    public List<RealtimeField> getFields() {
+        return fields;
+    }
+
+    /**
+     * @return the value of the given row and column, or NaN if the cell has no numeric value
+     *
+     * @throws IndexOutOfBoundsException if the row or the column is out of bounds
+     */
+    public double get(int security, int field) {
+        return values[index(security, field)];
+    }
+
+    /**
+     * @return the value of the given security and field, or NaN if the cell has no numeric value
+     *
+     * @throws IllegalArgumentException if the security or the field is not part of the snapshot
+     */
+    public double get(String security, RealtimeField field) {
+        return get(row(security), column(field));
+    }
+
+    /**
+     * @return true if a value had been received for the given row and column when the snapshot was taken
+     *
+     * @throws IndexOutOfBoundsException if the row or the column is out of bounds
+     */
+    public boolean hasValue(int security, int field) {
+        return timestamps[index(security, field)] != 0;
+    }
+
+    /**
+     * @return the time at which the value of the given row and column was received, in milliseconds since the epoch, or
+     *         0 if no value had been received when the snapshot was taken
+     *
+     * @throws IndexOutOfBoundsException if the row or the column is out of bounds
+     */
+    public long getTimestamp(int security, int field) {
+        return timestamps[index(security, field)];
+    }
+
+    /**
+     * @return true if the value of the given row and column was received before the connection to Bloomberg was lost
+     *         and had not been updated since when the snapshot was taken
+     *
+     * @throws IndexOutOfBoundsException if the row or the column is out of bounds
+     */
+    public boolean isStale(int security, int field) {
+        return stale.get(index(security, field));
+    }
+
+    /**
+     * @return a copy of the values, as an array of rows
+     */
+    public double[][] toMatrix() {
+        double[][] matrix = new double[securities.size()][];
+        for (int i = 0; i < matrix.length; i++) {
+            matrix[i] = Arrays.copyOfRange(values, i * fields.size(), (i + 1) * fields.size());
+        }
+        return matrix;
+    }
+
+    private int row(String security) {
+        int row = securities.indexOf(security);
+        Preconditions.checkArgument(row >= 0, "%s is not part of the snapshot", security);
+        return row;
+    }
+
+    private int column(RealtimeField field) {
+        int column = fields.indexOf(field);
+        Preconditions.checkArgument(column >= 0, "%s is not part of the snapshot", field);
+        return column;
+    }
+
+    private int index(int security, int field) {
+        Preconditions.checkElementIndex(security, securities.size());
+        Preconditions.checkElementIndex(field, fields.size());
+        return security * fields.size() + field;
+    }
+
+    @Override
+    public String toString() {
+        return "LastValueSnapshot[securities=" + securities.size() + ", fields=" + fields + "]";
+    }
+}
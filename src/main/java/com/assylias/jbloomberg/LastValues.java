@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The LastValueCache of a session, fed by the SubscriptionManager.
+ * <p>
+ * Each subscribed security has a row of cells indexed by the ordinal of the fields. A cell is created with the first
+ * value of its field and then overwritten in place, so that an update does not allocate: each cell is a seqlock whose
+ * version is odd while it is being written, and a reader retries until it has read the cell between two writes, so
+ * that it always sees a value with its own timestamp, without locking. The rows are only written by the thread that
+ * dispatches the updates (and occasionally by the snapshot of a new subscription or the loss of the connection),
+ * which synchronize on the row.
+ * <p>
+ * This class is thread safe.
+ */
+final class LastValues implements LastValueCache {
+
+    private final ConcurrentMap<String, Row> rows = new ConcurrentHashMap<>();
+
+    /**
+     * @return the row of the security, created if the security has no row yet
+     */
+    Row add(String security) {
+        return rows.computeIfAbsent(security, s -> new Row());
+    }
+
+    void remove(String security) {
+        rows.remove(security);
+    }
+
+    @Override
+    public TypedObject get(String security, RealtimeField field) {
+        Row row = rows.get(security);
+        Cell cell = row == null ? null : row.get(field);
+        if (cell == null) return null;
+        FieldValue value = new FieldValue();
+        long version;
+        do {
+            version = cell.version;
+            value.set(cell.kind, cell.bits, cell.object);
+        } while ((version & 1) != 0 || version != cell.version);
+        return TypedObject.of(value.toObject());
+    }
+
+    @Override
+    public boolean isStale(String security, RealtimeField field) {
+        Row row = rows.get(security);
+        Cell cell = row == null ? null : row.get(field);
+        return cell != null && cell.stale;
+    }
+
+    @Override
+    public LastValueSnapshot snapshot(List<String> securities, List<RealtimeField> fields) {
+        LastValueSnapshot snapshot = new LastValueSnapshot(securities, fields);
+        //the cells are timestamped with System.nanoTime(): converted to wall clock time once per snapshot
+        long nowMillis = System.currentTimeMillis();
+        long nowNanos = System.nanoTime();
+        FieldValue value = new FieldValue();
+        for (int i = 0; i < securities.size(); i++) {
+            Row row = rows.get(securities.get(i));
+            if (row == null) continue;
+            for (int j = 0; j < fields.size(); j++) {
+                Cell cell = row.get(fields.get(j));
+                if (cell == null) continue;
+                long version;
+                long receivedNanos;
+                boolean stale;
+                do {
+                    version = cell.version;
+                    value.set(cell.kind, cell.bits, cell.object);
+                    receivedNanos = cell.receivedNanos;
+                    stale = cell.stale;
+                } while ((version & 1) != 0 || version != cell.version);
+                double number = value.isNumber() ? value.asDouble() : Double.NaN;
+                snapshot.set(i, j, number, nowMillis - (nowNanos - receivedNanos) / 1_000_000, stale);
+            }
+        }
+        return snapshot;
+    }
+
+    static final class Row {
+        /**
+         * Only extends to the highest ordinal received so far - replaced by a larger copy when needed
+         */
+        private volatile AtomicReferenceArray<Cell> cells = new AtomicReferenceArray<>(0);
+
+        Cell get(RealtimeField field) {
+            AtomicReferenceArray<Cell> c = cells;
+            int ordinal = field.ordinal();
+            return ordinal < c.length() ? c.get(ordinal) : null;
+        }
+
+        /**
+         * Stores a real time update.
+         */
+        synchronized void update(RealtimeField field, FieldValue value, long receivedNanos) {
+            write(field, value, receivedNanos);
+        }
+
+        /**
+         * Stores the value of a snapshot, unless a real time update has been received since the connection was last
+         * established.
+         */
+        synchronized void seed(RealtimeField field, FieldValue value, long receivedNanos) {
+            Cell cell = get(field);
+            if (cell == null || cell.stale) write(field, value, receivedNanos);
+        }
+
+        /**
+         * Flags the values of the row as stale, once the connection that delivers them has been lost - they are
+         * replaced by the next updates.
+         */
+        synchronized void markStale() {
+            AtomicReferenceArray<Cell> c = cells;
+            for (int i = 0; i < c.length(); i++) {
+                Cell cell = c.get(i);
+                if (cell != null && !cell.stale) cell.markStale();
+            }
+        }
+
+        /**
+         * Overwrites the cell of the field, or creates it with the first value of the field.
+         */
+        private void write(RealtimeField field, FieldValue value, long receivedNanos) {
+            AtomicReferenceArray<Cell> c = cellsFor(field);
+            Cell cell = c.get(field.ordinal());
+            if (cell != null) {
+                cell.write(value, receivedNanos, false);
+            } else {
+                cell = new Cell();
+                cell.write(value, receivedNanos, false);
+                c.set(field.ordinal(), cell); //only published once written
+            }
+        }
+
+        private AtomicReferenceArray<Cell> cellsFor(RealtimeField field) {
+            AtomicReferenceArray<Cell> c = cells;
+            if (field.ordinal() < c.length()) return c;
+            AtomicReferenceArray<Cell> larger = new AtomicReferenceArray<>(field.ordinal() + 1);
+            for (int i = 0; i < c.length(); i++) {
+                larger.set(i, c.get(i));
+            }
+            cells = larger;
+            return larger;
+        }
+    }
+
+    /**
+     * The fields are volatile so that a reader that sees the same even version before and after reading them has read
+     * the values of that version. A cell is only published once it has been written.
+     */
+    private static final class Cell {
+        /**
+         * Odd while the cell is being written
+         */
+        private volatile long version;
+        /**
+         * The state of the value, see {@link FieldValue#set(FieldValue.Kind, long, Object)} - the numbers are not boxed
+         */
+        private volatile FieldValue.Kind kind;
+        private volatile long bits;
+        private volatile Object object;
+        private volatile long receivedNanos;
+        /**
+         * Whether the value was received before the connection was lost
+         */
+        private volatile boolean stale;
+
+        /**
+         * Must be called while holding the lock of the row.
+         */
+        void write(FieldValue value, long receivedNanos, boolean stale) {
+            long v = version;
+            version = v + 1;
+            this.kind = value.kind();
+            this.bits = value.bits();
+            this.object = value.object();
+            this.receivedNanos = receivedNanos;
+            this.stale = stale;
+            version = v + 2;
+        }
+
+        /**
+         * Must be called while holding the lock of the row.
+         */
+        void markStale() {
+            long v = version;
+            version = v + 1;
+            stale = true;
+            version = v + 2;
+        }
+    }
+}
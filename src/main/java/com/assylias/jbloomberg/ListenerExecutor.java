@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Where the {@link DataChangeListener}s of a session are called, set for the whole session with
+ * {@link SessionConfiguration#listenerExecutor(ListenerExecutor)} and for the listeners of a subscription with
+ * {@link SubscriptionBuilder#listenerExecutor(ListenerExecutor)}:
+ * <ul>
+ * <li>{@link #inline()}: in the thread that dispatches the updates of the session, for the lowest latency</li>
+ * <li>{@link #pooled(int)}: in a pool of threads of the session - the default, with 10 threads</li>
+ * <li>{@link #dedicated()}: in a single thread of the session, in the order of the updates</li>
+ * <li>{@link #virtualThreads()}: in a new virtual thread per event</li>
+ * <li>{@link #of(Executor)}: in an executor provided by the application</li>
+ * </ul>
+ * The threads are created by each session when they are first needed, are named after the session (for example
+ * "Bloomberg Listeners #1 - 3") and are stopped with the session. The subscriptions that use the same
+ * ListenerExecutor instance share the same threads, whereas two instances created separately, for example with two
+ * calls to {@link #dedicated()} or to {@link #pooled(int)}, have their own threads.
+ * <p>
+ * This class is immutable and thread safe.
+ */
+public final class ListenerExecutor {
+
+    private final static Logger logger = LoggerFactory.getLogger(ListenerExecutor.class);
+
+    enum Kind { INLINE, POOLED, DEDICATED, VIRTUAL_THREADS, CUSTOM }
+
+    private static final ListenerExecutor INLINE = new ListenerExecutor(Kind.INLINE, 0, null);
+    private static final ListenerExecutor DEFAULT = new ListenerExecutor(Kind.POOLED, 10, null);
+
+    private final Kind kind;
+    private final int threads;
+    private final Executor executor;
+
+    private ListenerExecutor(Kind kind, int threads, Executor executor) {
+        this.kind = kind;
+        this.threads = threads;
+        this.executor = executor;
+    }
+
+    /**
+     * Calls the listeners in the thread that dispatches the updates of the session, without any hand-off. The updates
+     * of all the subscriptions of the session are dispatched by the same thread: a slow listener delays all the other
+     * updates and a listener must never block.
+     */
+    public static ListenerExecutor inline() {
+        return INLINE;
+    }
+
+    /**
+     * Calls the listeners in a pool of threads, so that a slow listener does not delay the others - two updates of the
+     * same field can reach a listener in any order. Each call returns a new instance, with a pool of its own - even
+     * with the same number of threads as the default pool of the session.
+     *
+     * @throws IllegalArgumentException if threads is not strictly positive
+     */
+    public static ListenerExecutor pooled(int threads) {
+        Preconditions.checkArgument(threads > 0, "threads must be > 0 (was %s)", threads);
+        return new ListenerExecutor(Kind.POOLED, threads, null);
+    }
+
+    /**
+     * Calls the listeners in a single thread, in the order of the updates, isolated from the listeners of the other
+     * subscriptions.
+     */
+    public static ListenerExecutor dedicated() {
+        return new ListenerExecutor(Kind.DEDICATED, 1, null);
+    }
+
+    /**
+     * Calls each listener in a new virtual thread. Virtual threads need Java 21: on older versions, the listeners are
+     * called in a cached pool of platform threads instead.
+     */
+    public static ListenerExecutor virtualThreads() {
+        return new ListenerExecutor(Kind.VIRTUAL_THREADS, 0, null);
+    }
+
+    /**
+     * Calls the listeners in the given executor, which is not shut down when the session is stopped.
+     *
+     * @throws NullPointerException if executor is null
+     */
+    public static ListenerExecutor of(Executor executor) {
+        return new ListenerExecutor(Kind.CUSTOM, 0, requireNonNull(executor, "executor can't be null"));
+    }
+
+    /**
+     * @return the executor of the session when none has been configured: a pool of 10 threads
+     */
+    static ListenerExecutor getDefault() {
+        return DEFAULT;
+    }
+
+    Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @param name the name of the executor, which prefixes the names of its threads
+     *
+     * @return a new executor for a session, or the executor of the application - an ExecutorService created by this
+     *         method must be shut down by the session, unless this ListenerExecutor is {@link Kind#CUSTOM}
+     */
+    Executor newExecutor(String name) {
+        switch (kind) {
+            case INLINE: return Runnable::run;
+            case POOLED:
+            case DEDICATED: return Executors.newFixedThreadPool(threads, threadFactory(name));
+            case VIRTUAL_THREADS: return newVirtualThreadExecutor(name);
+            default: return executor;
+        }
+    }
+
+    /**
+     * Looked up by reflection so that the library still runs on Java 8.
+     */
+    private static ExecutorService newVirtualThreadExecutor(String name) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Method setName = builderClass.getMethod("name", String.class, long.class);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(setName.invoke(builder, name + " - ", 1L));
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.info("Virtual threads are not available in this JVM, {} uses a cached pool of platform threads instead", name);
+            return Executors.newCachedThreadPool(threadFactory(name));
+        }
+    }
+
+    static ThreadFactory threadFactory(String name) {
+        return new ThreadFactory() {
+            private final AtomicInteger number = new AtomicInteger();
+
+            @Override public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name + " - " + number.incrementAndGet());
+                t.setDaemon(true); //daemon to allow JVM exit
+                return t;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return kind == Kind.POOLED ? "POOLED(" + threads + ")" : kind.toString();
+    }
+}
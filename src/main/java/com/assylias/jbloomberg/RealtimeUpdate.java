@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+/**
+ * A real time change received by a {@link FlyweightListener}. The same instance is reused for all the updates that a
+ * thread dispatches: it is only valid during the call to the listener and must be copied if the listener needs to
+ * keep its values. The numbers are not boxed: {@link #getDouble()} and {@link #getLong()} read them without allocating.
+ * <p>
+ * <strong>This class is not thread safe.</strong>
+ */
+public final class RealtimeUpdate {
+
+    private String security;
+    private RealtimeField field;
+    private FieldValue value;
+    private long receivedNanos;
+
+    RealtimeUpdate set(String security, RealtimeField field, FieldValue value, long receivedNanos) {
+        this.security = security;
+        this.field = field;
+        this.value = value;
+        this.receivedNanos = receivedNanos;
+        return this;
+    }
+
+    /**
+     * @return the ID of the security that changed
+     */
+    public String getSecurity() {
+        return security;
+    }
+
+    /**
+     * @return the field that changed
+     */
+    public RealtimeField getField() {
+        return field;
+    }
+
+    /**
+     * @return true if the new value is a number
+     */
+    public boolean isNumber() {
+        return value.isNumber();
+    }
+
+    /**
+     * @return the new value as a double
+     *
+     * @throws ClassCastException if the value is not a number
+     */
+    public double getDouble() {
+        return value.asDouble();
+    }
+
+    /**
+     * @return the new value as a long
+     *
+     * @throws ClassCastException if the value is not a number
+     */
+    public long getLong() {
+        return value.asLong();
+    }
+
+    /**
+     * @return the new value, as received from Bloomberg (typically a Double, a Long, a String or a date) - the numbers
+     *         are boxed by this method
+     */
+    public Object getObject() {
+        return value.toObject();
+    }
+
+    /**
+     * The time at which the new value was received from Bloomberg, as given by {@link System#nanoTime()}.
+     *
+     * @return the System.nanoTime() at which the new value was received from Bloomberg.
+     */
+    public long getReceivedNanos() {
+        return receivedNanos;
+    }
+
+    /**
+     * @return a description of the update in the form: {@code IBM US Equity,LAST_PRICE: 50.15}
+     */
+    @Override
+    public String toString() {
+        return "RealtimeUpdate{" + security + "," + field + ": " + value + "}";
+    }
+}
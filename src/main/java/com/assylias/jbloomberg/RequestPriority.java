@@ -0,0 +1,29 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+/**
+ * The priority classes of the requests submitted to a {@link BloombergSession}. When requests have to wait to be sent
+ * (because all the request threads are busy or because of the limits configured with
+ * {@link SessionConfiguration#limitRequests(BloombergServiceType, int, double)}), the requests with a higher priority
+ * are sent first.
+ */
+public enum RequestPriority {
+    /**
+     * Latency sensitive requests, typically small requests made on behalf of a user waiting for the result: they are
+     * sent before any other waiting request.
+     */
+    INTERACTIVE,
+    /**
+     * The priority of the requests submitted without a priority.
+     */
+    NORMAL,
+    /**
+     * Large or background requests, for example long intraday tick downloads: they are sent after the other waiting
+     * requests and they can only use a share of the request threads (see
+     * {@link SessionConfiguration#bulkRequestShare(double)}), so that they never hold up all the other requests.
+     */
+    BULK
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The admission control of the requests of a session: the requests are queued and only handed to the executor when the
+ * limits of their service and request type allow it (see
+ * {@link SessionConfiguration#limitRequests(BloombergServiceType, int, double)}). A request that can't be sent yet
+ * does not hold up the requests of other types - within the requests that can be sent, the ones with the highest
+ * {@link RequestPriority} are sent first, and the ones with the same priority in the order in which they were
+ * submitted.
+ * <p>
+ * The number of requests running concurrently is also capped so that the requests wait in this scheduler, and not in
+ * the queue of the executor, when all the threads are busy. {@link RequestPriority#BULK} requests are capped further,
+ * to leave threads available for the other requests.
+ * <p>
+ * A request whose future completes while it is queued, because it was cancelled or timed out, leaves the queue without
+ * using its limits. The requests still queued when the scheduler is stopped fail with a {@link BloombergException}.
+ * <p>
+ * This class is thread safe.
+ */
+final class RequestScheduler {
+
+    private final static Logger logger = LoggerFactory.getLogger(RequestScheduler.class);
+
+    private final Executor executor;
+    private final SessionMetrics metrics;
+    private final LongSupplier nanoTime;
+    private final String name;
+    private final Limit concurrency;
+    private final Limit bulkConcurrency;
+    private final Map<BloombergServiceType, Limit> serviceLimits = new EnumMap<>(BloombergServiceType.class);
+    private final Map<BloombergRequestType, Limit> requestTypeLimits = new EnumMap<>(BloombergRequestType.class);
+    /**
+     * The requests waiting to be admitted, by the limits that apply to them - the requests of a lane are admitted in
+     * order, so only the first request of each lane needs to be checked - guarded by this
+     */
+    private final Map<List<Limit>, Lane> lanes = new HashMap<>();
+    private int queueDepth;
+    private long sequence;
+    private boolean stopped;
+    /**
+     * Used to wait for the rate limits to allow more requests and for the deadlines of the requests - created on first
+     * use - guarded by this
+     */
+    private ScheduledExecutorService timer;
+    private ScheduledFuture<?> wakeUp;
+    private long wakeUpNanos;
+
+    /**
+     * @param maxConcurrency    the maximum number of requests that can run at the same time, typically the number of
+     *                          threads of the executor
+     * @param maxBulkConcurrency the maximum number of BULK requests that can run at the same time
+     * @param serviceLimits     the limits applied to each service - the limits are copied
+     * @param requestTypeLimits the limits applied to each type of request - the limits are copied
+     * @param executor          the executor that runs the admitted requests
+     * @param metrics           informed of the time spent in the queue by each request
+     * @param nanoTime          the time source used for the rate limits
+     * @param name              the name of the timer thread
+     */
+    RequestScheduler(int maxConcurrency, int maxBulkConcurrency, Map<BloombergServiceType, Limit> serviceLimits,
+                     Map<BloombergRequestType, Limit> requestTypeLimits, Executor executor, SessionMetrics metrics,
+                     LongSupplier nanoTime, String name) {
+        this.concurrency = new Limit(maxConcurrency, Double.POSITIVE_INFINITY);
+        this.bulkConcurrency = new Limit(Math.min(maxBulkConcurrency, maxConcurrency), Double.POSITIVE_INFINITY);
+        serviceLimits.forEach((k, v) -> this.serviceLimits.put(k, v.copy()));
+        requestTypeLimits.forEach((k, v) -> this.requestTypeLimits.put(k, v.copy()));
+        this.executor = requireNonNull(executor);
+        this.metrics = requireNonNull(metrics);
+        this.nanoTime = requireNonNull(nanoTime);
+        this.name = requireNonNull(name);
+    }
+
+    /**
+     * Queues a request - this method does not block.
+     *
+     * @param priority the priority of the request
+     * @param task     the task that sends the request and waits for the response
+     * @param future   the result of the request - the request leaves the queue if it completes before being admitted,
+     *                 and fails if the scheduler is stopped before it is admitted
+     *
+     * @throws RejectedExecutionException if the scheduler has been stopped
+     */
+    void submit(BloombergServiceType service, BloombergRequestType requestType, RequestPriority priority, Runnable task,
+                CompletableFuture<?> future) {
+        Pending p;
+        synchronized (this) {
+            if (stopped) throw new RejectedExecutionException("The session has been stopped");
+            Limit priorityLimit = priority == RequestPriority.BULK ? bulkConcurrency : null;
+            List<Limit> limits = Arrays.asList(serviceLimits.get(service), requestTypeLimits.get(requestType), priorityLimit);
+            Lane lane = lanes.computeIfAbsent(limits, Lane::new);
+            p = new Pending(service, requestType, priority, sequence++, nanoTime.getAsLong(), task, future, lane);
+            lane.queue.add(p);
+            queueDepth++;
+        }
+        future.whenComplete((r, t) -> remove(p));
+        dispatch();
+    }
+
+    private synchronized void remove(Pending p) {
+        if (p.lane.queue.remove(p)) {
+            queueDepth--;
+            metrics.requestQueueDepth(queueDepth);
+        }
+    }
+
+    /**
+     * Runs a task on the timer thread of this scheduler after the given delay - the task must not block.
+     *
+     * @throws RejectedExecutionException if the scheduler has been stopped
+     */
+    synchronized ScheduledFuture<?> schedule(Runnable task, long delayNanos) {
+        if (stopped) throw new RejectedExecutionException("The session has been stopped");
+        return timer().schedule(task, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Runs a task periodically on the timer thread of this scheduler, until the scheduler is stopped - the task must
+     * not block.
+     *
+     * @throws RejectedExecutionException if the scheduler has been stopped
+     */
+    synchronized ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long periodNanos) {
+        if (stopped) throw new RejectedExecutionException("The session has been stopped");
+        return timer().scheduleAtFixedRate(task, periodNanos, periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Discards the requests that have not been admitted yet - their futures fail with a BloombergException.
+     */
+    void stop() {
+        List<Pending> discarded = new ArrayList<>();
+        synchronized (this) {
+            stopped = true;
+            for (Lane lane : lanes.values()) {
+                discarded.addAll(lane.queue);
+                lane.queue.clear();
+            }
+            queueDepth = 0;
+            if (timer != null) timer.shutdownNow();
+        }
+        if (!discarded.isEmpty()) logger.info("Discarding {} requests that were waiting to be sent", discarded.size());
+        for (Pending p : discarded) {
+            p.future.completeExceptionally(new BloombergException("The session was stopped before the request was sent"));
+        }
+    }
+
+    /**
+     * @return the number of requests waiting to be admitted
+     */
+    synchronized int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * Hands the requests that the limits allow to the executor, the first request of the lanes that can be sent at
+     * each step.
+     */
+    void dispatch() {
+        List<Pending> admitted = new ArrayList<>();
+        long now;
+        synchronized (this) {
+            if (stopped) return;
+            now = nanoTime.getAsLong();
+            long nextWakeUp = Long.MAX_VALUE; //only complete once no lane can be sent
+            while (concurrency.inFlight < concurrency.maxInFlight) {
+                Lane next = null;
+                nextWakeUp = Long.MAX_VALUE;
+                for (Lane lane : lanes.values()) {
+                    if (lane.queue.isEmpty()) continue;
+                    if (next != null && lane.queue.first().compareTo(next.queue.first()) > 0) continue; //can't go first
+                    long wait = lane.waitNanos(now);
+                    if (wait == 0) next = lane;
+                    else nextWakeUp = Math.min(nextWakeUp, wait);
+                }
+                if (next == null) break;
+                next.acquire();
+                acquire(concurrency);
+                admitted.add(next.queue.pollFirst());
+                queueDepth--;
+            }
+            //when all the threads are busy, the next completion dispatches the requests
+            boolean saturated = concurrency.inFlight >= concurrency.maxInFlight;
+            if (!saturated && nextWakeUp != Long.MAX_VALUE) scheduleWakeUp(now, nextWakeUp);
+            metrics.requestQueueDepth(queueDepth);
+        }
+        for (Pending p : admitted) {
+            metrics.requestAdmitted(p.service, p.requestType, now - p.queuedNanos);
+            try {
+                executor.execute(() -> run(p));
+            } catch (RejectedExecutionException e) {
+                logger.debug("Request rejected by the executor, the session is probably being stopped");
+                release(p);
+                p.future.completeExceptionally(new BloombergException("The session was stopped before the request was sent", e));
+            }
+        }
+    }
+
+    private void run(Pending p) {
+        try {
+            p.task.run();
+        } finally {
+            release(p);
+            dispatch();
+        }
+    }
+
+    private synchronized void release(Pending p) {
+        for (Limit limit : p.lane.limits) {
+            release(limit);
+        }
+        release(concurrency);
+    }
+
+    /**
+     * @return 0 if a request can be sent now, the time until the rate limit allows it, or Long.MAX_VALUE if too many
+     *         requests are in flight
+     */
+    private static long waitNanos(Limit limit, long now) {
+        if (limit == null) return 0;
+        if (limit.inFlight >= limit.maxInFlight) return Long.MAX_VALUE;
+        if (!limit.isRateLimited()) return 0;
+        limit.refill(now);
+        if (limit.tokens >= 1) return 0;
+        return (long) Math.ceil((1 - limit.tokens) * 1e9 / limit.requestsPerSecond);
+    }
+
+    private static void acquire(Limit limit) {
+        if (limit == null) return;
+        limit.inFlight++;
+        if (limit.isRateLimited()) limit.tokens--;
+    }
+
+    private static void release(Limit limit) {
+        if (limit != null) limit.inFlight--;
+    }
+
+    private void scheduleWakeUp(long now, long delay) {
+        if (wakeUp != null && !wakeUp.isDone() && wakeUpNanos - (now + delay) <= 0) return; //a wake up is already due
+        if (wakeUp != null) wakeUp.cancel(false);
+        wakeUpNanos = now + delay;
+        wakeUp = timer().schedule(this::dispatch, delay, TimeUnit.NANOSECONDS);
+    }
+
+    private ScheduledExecutorService timer() {
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return timer;
+    }
+
+    /**
+     * The limits applied to a group of requests, combining a maximum number of requests in flight and a token bucket.
+     * The bucket holds up to one second's worth of requests (and at least one request). The state of the limit is
+     * guarded by the RequestScheduler that owns it.
+     */
+    static final class Limit {
+        private final int maxInFlight;
+        private final double requestsPerSecond;
+        private final double burst;
+        private int inFlight;
+        private double tokens;
+        private long lastRefillNanos;
+        private boolean initialised;
+
+        /**
+         * @param maxInFlight       the maximum number of requests in flight - Integer.MAX_VALUE for no limit
+         * @param requestsPerSecond the maximum rate at which requests are sent - Double.POSITIVE_INFINITY for no limit
+         *
+         * @throws IllegalArgumentException if any of the arguments is not positive
+         */
+        Limit(int maxInFlight, double requestsPerSecond) {
+            Preconditions.checkArgument(maxInFlight > 0, "maxInFlight must be > 0 (was %s)", maxInFlight);
+            Preconditions.checkArgument(requestsPerSecond > 0, "requestsPerSecond must be > 0 (was %s)", requestsPerSecond);
+            this.maxInFlight = maxInFlight;
+            this.requestsPerSecond = requestsPerSecond;
+            this.burst = Math.max(1, requestsPerSecond);
+            this.tokens = burst;
+        }
+
+        Limit copy() {
+            return new Limit(maxInFlight, requestsPerSecond);
+        }
+
+        boolean isRateLimited() {
+            return requestsPerSecond != Double.POSITIVE_INFINITY;
+        }
+
+        private void refill(long now) {
+            if (initialised) {
+                tokens = Math.min(burst, tokens + (now - lastRefillNanos) * requestsPerSecond / 1e9);
+            }
+            initialised = true;
+            lastRefillNanos = now;
+        }
+
+        @Override
+        public String toString() {
+            return "maxInFlight=" + maxInFlight + ", requestsPerSecond=" + requestsPerSecond;
+        }
+    }
+
+    /**
+     * The queued requests that share the same limits: the service limit, the request type limit and the cap of the
+     * BULK requests, each of which may be null.
+     */
+    private static final class Lane {
+        private final List<Limit> limits;
+        private final NavigableSet<Pending> queue = new TreeSet<>();
+
+        Lane(List<Limit> limits) {
+            this.limits = limits;
+        }
+
+        long waitNanos(long now) {
+            long wait = 0;
+            for (Limit limit : limits) {
+                wait = Math.max(wait, RequestScheduler.waitNanos(limit, now));
+            }
+            return wait;
+        }
+
+        void acquire() {
+            for (Limit limit : limits) {
+                RequestScheduler.acquire(limit);
+            }
+        }
+    }
+
+    private static final class Pending implements Comparable<Pending> {
+        private final BloombergServiceType service;
+        private final BloombergRequestType requestType;
+        private final RequestPriority priority;
+        private final long sequence;
+        private final long queuedNanos;
+        private final Runnable task;
+        private final CompletableFuture<?> future;
+        private final Lane lane;
+
+        Pending(BloombergServiceType service, BloombergRequestType requestType, RequestPriority priority, long sequence,
+                long queuedNanos, Runnable task, CompletableFuture<?> future, Lane lane) {
+            this.service = service;
+            this.requestType = requestType;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.queuedNanos = queuedNanos;
+            this.task = task;
+            this.future = future;
+            this.lane = lane;
+        }
+
+        @Override
+        public int compareTo(Pending o) {
+            int c = priority.compareTo(o.priority);
+            return c != 0 ? c : Long.compare(sequence, o.sequence);
+        }
+    }
+}
@@ -6,6 +6,7 @@ package com.assylias.jbloomberg;
 
 import com.bloomberglp.blpapi.InvalidRequestException;
 import com.bloomberglp.blpapi.Message;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -28,6 +29,8 @@ public interface ResultParser<T extends RequestResult> {
      * @throws InvalidRequestException if the response returned by Bloomberg reports an error - this can typically
      *                                 happen if
      *                                 the request was malformed (which should not happen if this API is used properly) or the service is down.
+     * @throws CancellationException   if the parser has been cancelled
+     * @throws BloombergException      if the request has failed without a response
      */
     T getResult() throws InterruptedException;
 
@@ -44,6 +47,8 @@ public interface ResultParser<T extends RequestResult> {
      *                                 happen if
      *                                 the request was malformed (which should not happen if this API is used properly) or the service is down.
      * @throws TimeoutException        if the specified waiting time elapses before the result could be computed
+     * @throws CancellationException   if the parser has been cancelled
+     * @throws BloombergException      if the request has failed without a response
      */
     T getResult(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException;
 
@@ -60,4 +65,23 @@ public interface ResultParser<T extends RequestResult> {
      * @throws IllegalStateException if called more than once
      */
     void noMoreMessages();
+
+    /**
+     * Signals that the request has been cancelled: the messages received so far can be discarded, the messages received
+     * from now on are ignored and the threads waiting for the result are released. The default implementation does
+     * nothing.
+     */
+    default void cancel() {
+    }
+
+    /**
+     * Signals that the request has failed without a response (for example because Bloomberg reported a request failure
+     * or a timeout): the messages received so far can be discarded and the threads waiting for the result are
+     * released - {@link #getResult()} then throws the cause. The default implementation calls {@link #cancel()}.
+     *
+     * @param cause the reason of the failure
+     */
+    default void fail(BloombergException cause) {
+        cancel();
+    }
 }
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A listener that forwards at most one update per security and field and per sampling period to the listener it
+ * wraps, so that a slow consumer can share a Bloomberg subscription with fast ones without throttling it.
+ * <p>
+ * The first update of a field is forwarded immediately. The updates received during the following period are
+ * conflated and the latest one is forwarded at the end of the period (with the old value of the first one, so that the
+ * listener sees the whole change) - a field that stops updating always ends up with its last value.
+ * <p>
+ * Each field is bound by the session that dispatches its updates to the session's hashed timer wheel, which times the
+ * ends of the periods so that tens of thousands of fields cost a few objects each, and to the executor of the
+ * subscription, which forwards the delayed updates like the others, one at a time for a given field - see
+ * {@link #bind(String, String, HashedTimerWheel, Executor)}. The updates of a field that has not been bound are all
+ * forwarded immediately.
+ * <p>
+ * This class is thread safe.
+ */
+final class SampledListener implements DataChangeListener {
+
+    private final DataChangeListener listener;
+    private final long periodNanos;
+    /**
+     * The state of each field, by security and field name
+     */
+    private final ConcurrentMap<String, ConcurrentMap<String, Slot>> slots = new ConcurrentHashMap<>();
+
+    SampledListener(DataChangeListener listener, long periodNanos) {
+        this.listener = requireNonNull(listener);
+        this.periodNanos = periodNanos;
+    }
+
+    /**
+     * Called when the listener is registered for a field: the ends of its periods are timed by the wheel and its delayed
+     * updates are forwarded by the executor - which runs them in the thread of the wheel if it is inline.
+     *
+     * @param security the security, as in the {@link DataChangeEvent#getSource() events}
+     * @param field    the field, as in the {@link DataChangeEvent#getDataName() events}
+     */
+    void bind(String security, String field, HashedTimerWheel wheel, Executor executor) {
+        Slot slot = slot(security, field);
+        synchronized (slot) {
+            slot.wheel = requireNonNull(wheel);
+            slot.executor = requireNonNull(executor);
+        }
+    }
+
+    private Slot slot(String security, String field) {
+        return slots.computeIfAbsent(security, s -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(field, f -> new Slot(System.nanoTime() - periodNanos));
+    }
+
+    @Override
+    public void dataChanged(DataChangeEvent e) {
+        Slot slot = slot(e.getSource(), e.getDataName());
+        synchronized (slot) {
+            long now = System.nanoTime();
+            if (slot.wheel == null || !slot.scheduled && now - slot.lastNanos >= periodNanos) {
+                slot.lastNanos = now;
+            } else {
+                slot.pending = slot.pending == null ? e : new DataChangeEvent(e.getSource(), e.getDataName(),
+                        slot.pending.getOldValue(), e.getNewValue(), e.getReceivedNanos(), e.isTraced());
+                if (!slot.scheduled) schedule(slot, now);
+                return;
+            }
+        }
+        listener.dataChanged(e);
+    }
+
+    /**
+     * Must be called while holding the lock of the slot.
+     */
+    private void schedule(Slot slot, long now) {
+        slot.scheduled = true;
+        Executor executor = slot.executor;
+        slot.wheel.schedule(() -> executor.execute(() -> flush(slot)), slot.lastNanos + periodNanos - now, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Forwards the pending update of a field at the end of its period. The slot stays scheduled until the listener
+     * returns, so that the updates received in the meantime wait for the next period. The exceptions thrown by the
+     * listener are left to the executor.
+     */
+    private void flush(Slot slot) {
+        DataChangeEvent e;
+        synchronized (slot) {
+            e = slot.pending;
+            slot.pending = null;
+            slot.lastNanos = System.nanoTime();
+        }
+        try {
+            listener.dataChanged(e);
+        } finally {
+            synchronized (slot) {
+                if (slot.pending == null) slot.scheduled = false;
+                else schedule(slot, System.nanoTime());
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SampledListener{" + listener + " every " + TimeUnit.NANOSECONDS.toMillis(periodNanos) + "ms}";
+    }
+
+    private static final class Slot {
+        private long lastNanos;
+        private boolean scheduled;
+        private DataChangeEvent pending;
+        private HashedTimerWheel wheel;
+        private Executor executor;
+
+        Slot(long lastNanos) {
+            this.lastNanos = lastNanos;
+        }
+    }
+}
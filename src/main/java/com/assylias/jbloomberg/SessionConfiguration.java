@@ -0,0 +1,343 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import com.google.common.base.Preconditions;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A SessionConfiguration holds the settings of a {@link DefaultBloombergSession} that are specific to jBloomberg - the
+ * settings of the underlying Bloomberg session are held in a {@link com.bloomberglp.blpapi.SessionOptions}.
+ * <p>
+ * The configuration is read when the session is created: modifying it afterwards has no effect on the session.
+ * <p>
+ * <strong>This class is not thread safe.</strong>
+ */
+public final class SessionConfiguration {
+
+    private SessionMetrics metrics = SessionMetrics.NO_OP;
+    private int tickSampling = 0;
+    private ListenerExecutor listenerExecutor = ListenerExecutor.getDefault();
+    private WaitStrategy dispatchWaitStrategy = WaitStrategy.blocking();
+    private int diagnosticTapCapacity = 0;
+    private Consumer<String> diagnosticTapSink;
+    private boolean subscriptionsIsolated = false;
+    private boolean lastValuesCached = false;
+    private double bulkRequestShare = 0.5;
+    private Duration requestTimeout;
+    private int subscriptionBatchSize = Integer.MAX_VALUE;
+    private double subscriptionBatchesPerSecond = Double.POSITIVE_INFINITY;
+    private int recoveryBatchSize = 0;
+    private double recoveryBatchesPerSecond;
+    private final Map<BloombergServiceType, RequestScheduler.Limit> serviceLimits = new EnumMap<>(BloombergServiceType.class);
+    private final Map<BloombergRequestType, RequestScheduler.Limit> requestTypeLimits = new EnumMap<>(BloombergRequestType.class);
+
+    /**
+     * Sets the SessionMetrics that will receive the measurements of the session (request latencies, queue depths
+     * etc.). By default, the measurements are ignored.
+     *
+     * @param metrics the metrics that will receive the measurements, for example a {@link JmxSessionMetrics}
+     *
+     * @throws NullPointerException if metrics is null
+     */
+    public SessionConfiguration metrics(SessionMetrics metrics) {
+        this.metrics = requireNonNull(metrics, "metrics can't be null");
+        return this;
+    }
+
+    /**
+     * Sets the executor in which the {@link DataChangeListener}s and {@link SubscriptionErrorListener}s of the session
+     * are called, unless a subscription sets its own with {@link SubscriptionBuilder#listenerExecutor(ListenerExecutor)}.
+     * The threads are owned by the session and named after it. By default, the listeners are called in a pool of 10
+     * threads.
+     *
+     * @throws NullPointerException if executor is null
+     */
+    public SessionConfiguration listenerExecutor(ListenerExecutor executor) {
+        this.listenerExecutor = requireNonNull(executor, "executor can't be null");
+        return this;
+    }
+
+    /**
+     * Sets how the thread that dispatches the real time updates to the listeners waits for the next update. A spinning
+     * strategy, combined with listeners that are called {@link ListenerExecutor#inline() inline}, brings the time from
+     * the reception of an update to its listeners down to a few microseconds, at the cost of a busy core. By default,
+     * the thread blocks.
+     *
+     * @throws NullPointerException if waitStrategy is null
+     */
+    public SessionConfiguration dispatchWaitStrategy(WaitStrategy waitStrategy) {
+        this.dispatchWaitStrategy = requireNonNull(waitStrategy, "waitStrategy can't be null");
+        return this;
+    }
+
+    /**
+     * Records the latency of real time updates at each stage of their processing, from their reception from Bloomberg
+     * to the DataChangeListeners (see {@link SessionMetrics.TickStage}). The measurements are sent to the
+     * {@link #metrics(SessionMetrics) SessionMetrics}. By default, the updates are not traced.
+     *
+     * @param sampling the latency of one real time update in sampling is recorded: 1 to trace all the updates, 0 to
+     *                 disable tracing.
+     *
+     * @throws IllegalArgumentException if sampling is negative
+     */
+    public SessionConfiguration traceTicks(int sampling) {
+        Preconditions.checkArgument(sampling >= 0, "sampling must be >= 0 (was %s)", sampling);
+        this.tickSampling = sampling;
+        return this;
+    }
+
+    /**
+     * Captures all the raw messages received from Bloomberg and sends them, formatted, to the sink. The messages are
+     * formatted and sent in a background thread so that the Bloomberg API threads are not slowed down: they are kept
+     * in a ring buffer until then, and the oldest messages are dropped if the sink can't keep up. By default, the
+     * messages are not captured.
+     * <p>
+     * This is meant to be used for debugging, typically with {@code diagnosticTap(1 << 16, logger::info)}.
+     *
+     * @param capacity the number of messages that can be waiting to be formatted
+     * @param sink     a consumer of the formatted messages - it is always called from the same thread
+     *
+     * @throws IllegalArgumentException if capacity is not positive
+     * @throws NullPointerException     if sink is null
+     */
+    public SessionConfiguration diagnosticTap(int capacity, Consumer<String> sink) {
+        Preconditions.checkArgument(capacity > 0, "capacity must be > 0 (was %s)", capacity);
+        this.diagnosticTapSink = requireNonNull(sink, "sink can't be null");
+        this.diagnosticTapCapacity = capacity;
+        return this;
+    }
+
+    /**
+     * Uses two Bloomberg sessions, each with its own event dispatching thread: one for the requests and one for the
+     * subscriptions. Large responses (for example a long historical or intraday request) are then parsed without
+     * delaying the real time updates. By default, a single Bloomberg session is used.
+     * <p>
+     * The two sessions use the same SessionOptions and are started and stopped together. Note that subscriptions made
+     * with an {@link com.bloomberglp.blpapi.Identity} are sent on the request session because an identity can only be
+     * used with the session that created it.
+     */
+    public SessionConfiguration isolateSubscriptions() {
+        this.subscriptionsIsolated = true;
+        return this;
+    }
+
+    /**
+     * Keeps the last value of each subscribed field, which can then be queried with
+     * {@link BloombergSession#getLastValues()}. The cache is written on every real time update, whether it is read or
+     * not, so it is disabled by default.
+     */
+    public SessionConfiguration cacheLastValues() {
+        this.lastValuesCached = true;
+        return this;
+    }
+
+    /**
+     * Limits the requests sent to a service: at most maxInFlight requests can be waiting for their response and at
+     * most requestsPerSecond requests are sent per second, with bursts of up to one second's worth of requests. The
+     * requests that exceed the limits wait in a queue until they can be sent, instead of failing with a
+     * {@link com.bloomberglp.blpapi.RequestQueueOverflowException} when too many requests are sent at once. A request
+     * that waits does not hold up the requests to which other limits apply. By default, the requests are not limited.
+     * <p>
+     * The time spent in the queue is reported to the {@link #metrics(SessionMetrics) SessionMetrics}.
+     *
+     * @param service           the service to which the limits apply
+     * @param maxInFlight       the maximum number of requests in flight - Integer.MAX_VALUE for no limit
+     * @param requestsPerSecond the maximum rate at which requests are sent - Double.POSITIVE_INFINITY for no limit
+     *
+     * @throws NullPointerException     if service is null
+     * @throws IllegalArgumentException if maxInFlight or requestsPerSecond is not positive
+     */
+    public SessionConfiguration limitRequests(BloombergServiceType service, int maxInFlight, double requestsPerSecond) {
+        requireNonNull(service, "service can't be null");
+        serviceLimits.put(service, new RequestScheduler.Limit(maxInFlight, requestsPerSecond));
+        return this;
+    }
+
+    /**
+     * Limits the requests of a given type. A request must satisfy both the limits of its type and the limits of its
+     * service (see {@link #limitRequests(BloombergServiceType, int, double)}).
+     *
+     * @param requestType       the type of requests to which the limits apply
+     * @param maxInFlight       the maximum number of requests in flight - Integer.MAX_VALUE for no limit
+     * @param requestsPerSecond the maximum rate at which requests are sent - Double.POSITIVE_INFINITY for no limit
+     *
+     * @throws NullPointerException     if requestType is null
+     * @throws IllegalArgumentException if maxInFlight or requestsPerSecond is not positive
+     */
+    public SessionConfiguration limitRequests(BloombergRequestType requestType, int maxInFlight, double requestsPerSecond) {
+        requireNonNull(requestType, "requestType can't be null");
+        requestTypeLimits.put(requestType, new RequestScheduler.Limit(maxInFlight, requestsPerSecond));
+        return this;
+    }
+
+    /**
+     * Sets the share of the request threads that can be used by {@link RequestPriority#BULK} requests, so that bulk
+     * requests can't delay the other requests by using all the threads. By default, bulk requests can use half of the
+     * threads. At least one bulk request can always run.
+     *
+     * @param share the share of the request threads that bulk requests can use, between 0 (excluded) and 1
+     *
+     * @throws IllegalArgumentException if share is not in ]0, 1]
+     */
+    public SessionConfiguration bulkRequestShare(double share) {
+        Preconditions.checkArgument(share > 0 && share <= 1, "share must be in ]0, 1] (was %s)", share);
+        this.bulkRequestShare = share;
+        return this;
+    }
+
+    /**
+     * Sets the deadline of the requests submitted without a timeout: a request that has not completed within the
+     * timeout, including the time spent waiting to be sent, fails with a {@link java.util.concurrent.TimeoutException}
+     * and is cancelled on the Bloomberg side. By default, the requests have no deadline.
+     *
+     * @param timeout the maximum time to wait for the result of a request
+     *
+     * @throws NullPointerException     if timeout is null
+     * @throws IllegalArgumentException if timeout is not positive
+     */
+    public SessionConfiguration requestTimeout(Duration timeout) {
+        requireNonNull(timeout, "timeout can't be null");
+        Preconditions.checkArgument(!timeout.isNegative() && !timeout.isZero(), "timeout must be positive (was %s)", timeout);
+        this.requestTimeout = timeout;
+        return this;
+    }
+
+    /**
+     * Limits the rate at which subscriptions are sent to Bloomberg: the securities of a subscription, or of a call to
+     * {@link BloombergSession#unsubscribe(java.util.Collection)}, are sent in lists of at most maxBatchSize securities,
+     * and at most batchesPerSecond lists are sent per second, so that changing a large universe of subscriptions does
+     * not flood the Bloomberg service. The lists are then sent by a background thread and the progress can be followed
+     * with {@link BloombergSession#subscribeAsync(SubscriptionBuilder, com.bloomberglp.blpapi.Identity)}.
+     * By default, all the securities are sent at once, in the calling thread.
+     *
+     * @param maxBatchSize     the maximum number of securities sent at once
+     * @param batchesPerSecond the maximum number of lists sent per second - Double.POSITIVE_INFINITY for no limit
+     *
+     * @throws IllegalArgumentException if maxBatchSize or batchesPerSecond is not positive
+     */
+    public SessionConfiguration subscriptionBatches(int maxBatchSize, double batchesPerSecond) {
+        Preconditions.checkArgument(maxBatchSize > 0, "maxBatchSize must be > 0 (was %s)", maxBatchSize);
+        Preconditions.checkArgument(batchesPerSecond > 0, "batchesPerSecond must be > 0 (was %s)", batchesPerSecond);
+        this.subscriptionBatchSize = maxBatchSize;
+        this.subscriptionBatchesPerSecond = batchesPerSecond;
+        return this;
+    }
+
+    /**
+     * Resubscribes explicitly to all the subscriptions of the session when the connection to Bloomberg is recovered
+     * after having been lost (see {@link SessionState#CONNECTION_DOWN}), instead of relying on the Bloomberg API alone.
+     * The securities are sent by a background thread, in the order of their
+     * {@link SubscriptionBuilder#recoveryPriority(int) recovery priority}, in lists of at most maxBatchSize securities
+     * and at most batchesPerSecond lists per second, so that the recovery of a large universe does not flood the
+     * Bloomberg service. While the connection is down, the last values of the fields are forgotten, so that the first
+     * update of each field after the recovery reaches the listeners even if the value has not changed. The downtime and
+     * the duration of the recovery are sent to {@link SessionMetrics#subscriptionsRecovered(int, int, long, long)}.
+     * <p>
+     * By default, the subscriptions are left to the Bloomberg API.
+     *
+     * @param maxBatchSize     the maximum number of securities resubscribed at once
+     * @param batchesPerSecond the maximum number of lists resubscribed per second
+     *
+     * @throws IllegalArgumentException if maxBatchSize or batchesPerSecond is not positive or if batchesPerSecond is
+     *                                  infinite
+     */
+    public SessionConfiguration recoverSubscriptions(int maxBatchSize, double batchesPerSecond) {
+        Preconditions.checkArgument(maxBatchSize > 0, "maxBatchSize must be > 0 (was %s)", maxBatchSize);
+        Preconditions.checkArgument(batchesPerSecond > 0 && batchesPerSecond != Double.POSITIVE_INFINITY,
+                                    "batchesPerSecond must be > 0 and finite (was %s)", batchesPerSecond);
+        this.recoveryBatchSize = maxBatchSize;
+        this.recoveryBatchesPerSecond = batchesPerSecond;
+        return this;
+    }
+
+    SessionMetrics getMetrics() {
+        return metrics;
+    }
+
+    ListenerExecutor getListenerExecutor() {
+        return listenerExecutor;
+    }
+
+    WaitStrategy getDispatchWaitStrategy() {
+        return dispatchWaitStrategy;
+    }
+
+    int getTickSampling() {
+        return tickSampling;
+    }
+
+    boolean isSubscriptionsIsolated() {
+        return subscriptionsIsolated;
+    }
+
+    boolean isLastValuesCached() {
+        return lastValuesCached;
+    }
+
+    double getBulkRequestShare() {
+        return bulkRequestShare;
+    }
+
+    /**
+     * @return the deadline of the requests submitted without a timeout, or null if they have no deadline
+     */
+    Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    int getSubscriptionBatchSize() {
+        return subscriptionBatchSize;
+    }
+
+    double getSubscriptionBatchesPerSecond() {
+        return subscriptionBatchesPerSecond;
+    }
+
+    /**
+     * @return true if the subscriptions must be resubscribed when the connection is recovered
+     */
+    boolean isRecoveringSubscriptions() {
+        return recoveryBatchSize > 0;
+    }
+
+    int getRecoveryBatchSize() {
+        return recoveryBatchSize;
+    }
+
+    double getRecoveryBatchesPerSecond() {
+        return recoveryBatchesPerSecond;
+    }
+
+    Map<BloombergServiceType, RequestScheduler.Limit> getServiceLimits() {
+        return Collections.unmodifiableMap(serviceLimits);
+    }
+
+    Map<BloombergRequestType, RequestScheduler.Limit> getRequestTypeLimits() {
+        return Collections.unmodifiableMap(requestTypeLimits);
+    }
+
+    /**
+     * @return a new DiagnosticTap with the given name, or null if no tap has been configured
+     */
+    DiagnosticTap newDiagnosticTap(String name) {
+        return diagnosticTapSink == null ? null : new DiagnosticTap(diagnosticTapCapacity, diagnosticTapSink, name);
+    }
+
+    @Override
+    public String toString() {
+        return "metrics=" + metrics + ", listenerExecutor=" + listenerExecutor + ", dispatchWaitStrategy=" + dispatchWaitStrategy + ", tickSampling=" + tickSampling + ", diagnosticTapCapacity=" + diagnosticTapCapacity
+                + ", subscriptionsIsolated=" + subscriptionsIsolated + ", bulkRequestShare=" + bulkRequestShare + ", serviceLimits=" + serviceLimits
+                + ", requestTypeLimits=" + requestTypeLimits + ", requestTimeout=" + requestTimeout
+                + ", subscriptionBatchSize=" + subscriptionBatchSize + ", subscriptionBatchesPerSecond=" + subscriptionBatchesPerSecond;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import com.bloomberglp.blpapi.Event;
+
+/**
+ * A SessionMetrics receives measurements from a {@link DefaultBloombergSession}: request latencies, number of requests
+ * in flight, subscription queue depth, number of events received from Bloomberg and listener execution times.
+ * <p>
+ * All the methods have a no-op default implementation so that implementations only need to override the measurements
+ * they are interested in. {@link JmxSessionMetrics} provides an implementation that exposes the metrics as a JMX MBean.
+ * <p>
+ * <strong>Implementations must be thread safe and return promptly:</strong> most of the methods are called from the
+ * Bloomberg API threads or the subscription dispatching thread, for every request or real time update.
+ */
+public interface SessionMetrics {
+
+    /**
+     * A SessionMetrics that ignores all the measurements - this is the default used by the sessions.
+     */
+    SessionMetrics NO_OP = new SessionMetrics() {};
+
+    /**
+     * Called when a request is sent to Bloomberg.
+     *
+     * @param service     the service to which the request is sent
+     * @param requestType the type of request
+     */
+    default void requestStarted(BloombergServiceType service, BloombergRequestType requestType) { /* no-op */ }
+
+    /**
+     * Called when a request that had been sent to Bloomberg is completed, either successfully or not.
+     *
+     * @param service      the service to which the request had been sent
+     * @param requestType  the type of request
+     * @param latencyNanos the time elapsed between sending the request and receiving the end of the response, in
+     *                     nanoseconds
+     * @param success      false if the request failed or was cancelled
+     */
+    default void requestCompleted(BloombergServiceType service, BloombergRequestType requestType, long latencyNanos, boolean success) { /* no-op */ }
+
+    /**
+     * Called when a submitted request is allowed to be sent by the admission control of the session (see
+     * {@link SessionConfiguration#limitRequests(BloombergServiceType, int, double)}).
+     *
+     * @param service     the service to which the request will be sent
+     * @param requestType the type of request
+     * @param waitNanos   the time spent by the request in the queue, in nanoseconds
+     */
+    default void requestAdmitted(BloombergServiceType service, BloombergRequestType requestType, long waitNanos) { /* no-op */ }
+
+    /**
+     * Called every time a request is queued or admitted.
+     *
+     * @param depth the number of requests waiting to be admitted
+     */
+    default void requestQueueDepth(int depth) { /* no-op */ }
+
+    /**
+     * Called every time a request starts or stops waiting for its response.
+     *
+     * @param count the number of requests that have been sent and are waiting for their response
+     */
+    default void pendingResponses(int count) { /* no-op */ }
+
+    /**
+     * Called every time the session receives an event from Bloomberg.
+     *
+     * @param type the type of event
+     */
+    default void eventReceived(Event.EventType type) { /* no-op */ }
+
+    /**
+     * Called every time a real time update is taken from the subscription queue.
+     *
+     * @param depth the number of updates remaining in the queue
+     */
+    default void subscriptionQueueDepth(int depth) { /* no-op */ }
+
+    /**
+     * Called every time a DataChangeListener returns.
+     *
+     * @param nanos the time spent in the listener, in nanoseconds
+     */
+    default void listenerExecuted(long nanos) { /* no-op */ }
+
+    /**
+     * Called when a listener has not returned within one second.
+     */
+    default void slowListener() { /* no-op */ }
+
+    /**
+     * Called when a traced real time update reaches a stage of its processing - real time updates are only traced if
+     * tick tracing has been enabled with {@link SessionConfiguration#traceTicks(int)}.
+     *
+     * @param stage the stage reached by the update
+     * @param nanos the time elapsed since the update was received from Bloomberg, in nanoseconds
+     */
+    default void tickLatency(TickStage stage, long nanos) { /* no-op */ }
+
+    /**
+     * Called when the subscriptions have been resubscribed after the connection to Bloomberg was lost and recovered -
+     * see {@link SessionConfiguration#recoverSubscriptions(int, double)}.
+     *
+     * @param subscriptions the number of securities that have been resubscribed
+     * @param failed        the number of securities that could not be resubscribed
+     * @param downtimeNanos the time during which the connection was down, in nanoseconds
+     * @param recoveryNanos the time from the recovery of the connection until the last security had been resubscribed,
+     *                      in nanoseconds
+     */
+    default void subscriptionsRecovered(int subscriptions, int failed, long downtimeNanos, long recoveryNanos) { /* no-op */ }
+
+    /**
+     * The stages of the processing of a real time update, from its reception from Bloomberg to a DataChangeListener.
+     */
+    enum TickStage {
+        /**
+         * The update has been taken from the subscription queue by the dispatching thread.
+         */
+        DEQUEUED,
+        /**
+         * The update has been compared to the previous value and a DataChangeEvent has been created.
+         */
+        CONFLATED,
+        /**
+         * A DataChangeListener is about to be called with the DataChangeEvent.
+         */
+        LISTENER_STARTED
+    }
+}
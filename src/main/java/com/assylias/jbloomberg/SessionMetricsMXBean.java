@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import java.util.Map;
+
+/**
+ * The management interface of {@link JmxSessionMetrics}. All durations are expressed in microseconds.
+ */
+public interface SessionMetricsMXBean {
+
+    /**
+     * @return the latency distribution of the completed requests, by request type (for example "HISTORICAL_DATA")
+     */
+    Map<String, Latency> getRequestLatencies();
+
+    /**
+     * @return the number of requests that failed or were cancelled, by request type
+     */
+    Map<String, Long> getFailedRequests();
+
+    /**
+     * @return the number of requests that have been sent but are not completed yet, by service (for example
+     *         "REFERENCE_DATA")
+     */
+    Map<String, Integer> getRequestsInFlight();
+
+    /**
+     * @return the distribution of the time spent by the requests waiting to be admitted, by request type - see
+     *         {@link SessionConfiguration#limitRequests(BloombergServiceType, int, double)}
+     */
+    Map<String, Latency> getRequestQueueWaits();
+
+    /**
+     * @return the number of requests waiting to be admitted, as last observed
+     */
+    int getRequestQueueDepth();
+
+    /**
+     * @return the number of requests that have been sent and are waiting for their response, as last observed
+     */
+    int getPendingResponses();
+
+    /**
+     * @return the number of real time updates waiting to be dispatched to the listeners, as last observed
+     */
+    int getSubscriptionQueueDepth();
+
+    /**
+     * @return the largest number of real time updates that have been waiting to be dispatched to the listeners
+     */
+    int getMaxSubscriptionQueueDepth();
+
+    /**
+     * @return the number of events received from Bloomberg, by event type (for example "SUBSCRIPTION_DATA")
+     */
+    Map<String, Long> getEventCounts();
+
+    /**
+     * @return the number of events received from Bloomberg per second, by event type, measured between the current
+     *         and the previous call to this method (or over the last second if this method is called more often)
+     */
+    Map<String, Double> getEventRates();
+
+    /**
+     * @return the latency distribution of the traced real time updates, from their reception to each stage of their
+     *         processing (for example "LISTENER_STARTED") - see {@link SessionConfiguration#traceTicks(int)}
+     */
+    Map<String, Latency> getTickLatencies();
+
+    /**
+     * @return the distribution of the time spent in the DataChangeListeners
+     */
+    Latency getListenerExecutionTimes();
+
+    /**
+     * @return the number of times a listener has not returned within one second
+     */
+    long getSlowListeners();
+
+    /**
+     * @return the distribution of the time during which the connection to Bloomberg was down, for the connections that
+     *         have been recovered - see {@link SessionConfiguration#recoverSubscriptions(int, double)}
+     */
+    Latency getDowntimes();
+
+    /**
+     * @return the distribution of the time it took to resubscribe all the subscriptions once the connection to
+     *         Bloomberg was recovered
+     */
+    Latency getRecoveryTimes();
+
+    /**
+     * @return the number of securities that could not be resubscribed after a recovery of the connection
+     */
+    long getFailedResubscriptions();
+
+    /**
+     * A summary of a {@link LatencyHistogram}, in microseconds.
+     */
+    final class Latency {
+        private final long count;
+        private final double mean;
+        private final double p50;
+        private final double p90;
+        private final double p99;
+        private final double p999;
+        private final double max;
+
+        Latency(LatencyHistogram histogram) {
+            this.count = histogram.getCount();
+            this.mean = histogram.getMean() / 1000;
+            this.p50 = histogram.getValueAtPercentile(50) / 1000d;
+            this.p90 = histogram.getValueAtPercentile(90) / 1000d;
+            this.p99 = histogram.getValueAtPercentile(99) / 1000d;
+            this.p999 = histogram.getValueAtPercentile(99.9) / 1000d;
+            this.max = histogram.getMax() / 1000d;
+        }
+
+        public long getCount() { return count; }
+        public double getMean() { return mean; }
+        public double getP50() { return p50; }
+        public double getP90() { return p90; }
+        public double getP99() { return p99; }
+        public double getP999() { return p999; }
+        public double getMax() { return max; }
+
+        @Override
+        public String toString() {
+            return "count=" + count + ", mean=" + mean + ", p50=" + p50 + ", p90=" + p90 + ", p99=" + p99 + ", p99.9=" + p999 + ", max=" + max;
+        }
+    }
+}
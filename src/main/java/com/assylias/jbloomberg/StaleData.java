@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import java.time.Duration;
+
+/**
+ * A security, or a field of a security, that has not been updated for longer than its threshold.
+ * <p>
+ * This class is immutable and thread safe.
+ */
+public final class StaleData {
+
+    private final String security;
+    private final RealtimeField field;
+    private final Duration threshold;
+    private final Duration silence;
+
+    StaleData(String security, RealtimeField field, Duration threshold, Duration silence) {
+        this.security = security;
+        this.field = field;
+        this.threshold = threshold;
+        this.silence = silence;
+    }
+
+    /**
+     * @return the security that is stale
+     */
+    public String getSecurity() {
+        return security;
+    }
+
+    /**
+     * @return the field that is stale, or null if none of the fields of the security has been updated
+     */
+    public RealtimeField getField() {
+        return field;
+    }
+
+    /**
+     * @return the threshold that has been crossed
+     */
+    public Duration getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @return the time elapsed since the last update, or since the subscription if no update has been received, when
+     *         the data was found stale
+     */
+    public Duration getSilence() {
+        return silence;
+    }
+
+    @Override
+    public String toString() {
+        return "StaleData{" + security + (field == null ? "" : "," + field) + ": no update for " + silence + "}";
+    }
+}
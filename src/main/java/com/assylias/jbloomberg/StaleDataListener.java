@@ -0,0 +1,20 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+/**
+ * A StaleDataListener is passed to a BloombergSession to be informed when a subscribed security or field stops
+ * updating, which Bloomberg does not always report with a {@link SubscriptionError} - see
+ * {@link SubscriptionBuilder#onStale(StaleDataListener, java.time.Duration)}.
+ */
+public interface StaleDataListener {
+
+    /**
+     * Invoked when a security or a field has not been updated for longer than its threshold. The listener is not
+     * invoked again for that security or field until it has received a new update.
+     * @param e the details of the stale data.
+     */
+    void onStale(StaleData e);
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Detects the subscriptions that stop updating. Each monitored security, or field, has a watch that records the time
+ * of its last update and a timeout in a {@link HashedTimerWheel}, which checks the watch when its threshold may have
+ * been crossed: an update only records its time, without rescheduling the timeout, so that monitoring tens of thousands
+ * of subscriptions costs one store per update and a few timeouts per second.
+ * <p>
+ * The timer and the thread that informs the listeners are started when the first watch is created.
+ * <p>
+ * This class is thread safe.
+ */
+final class StalenessMonitor {
+
+    private final static Logger logger = LoggerFactory.getLogger(StalenessMonitor.class);
+    static final Watches NONE = new Watches(null, new Watch[0]);
+
+    private final String name;
+    /**
+     * Created on first use - guarded by this
+     */
+    private HashedTimerWheel wheel;
+    private ExecutorService listeners;
+    private boolean stopped;
+
+    /**
+     * @param name the prefix of the names of the threads of the monitor
+     */
+    StalenessMonitor(String name) {
+        this.name = requireNonNull(name);
+    }
+
+    /**
+     * Starts monitoring a subscription: the security is stale if none of its fields is updated within threshold and
+     * each field of fieldThresholds is stale if it is not updated within its own threshold. The time of the first update
+     * is measured from now.
+     *
+     * @param threshold       the threshold of the security, or null to only monitor the fields
+     * @param fieldThresholds the thresholds of the fields, which must all be subscribed
+     */
+    synchronized Watches watch(String ticker, StaleDataListener listener, Duration threshold, Map<RealtimeField, Duration> fieldThresholds) {
+        if (stopped) return NONE;
+        if (wheel == null) {
+            wheel = new HashedTimerWheel(50, TimeUnit.MILLISECONDS, 2048, name + " Timer");
+            listeners = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, name + " Listeners");
+                t.setDaemon(true); //daemon to allow JVM exit
+                return t;
+            });
+        }
+        long now = System.nanoTime();
+        Watch security = threshold == null ? null : new Watch(this, ticker, null, threshold, listener, now);
+        Watch[] byOrdinal = new Watch[fieldThresholds.keySet().stream().mapToInt(Enum::ordinal).max().orElse(-1) + 1];
+        fieldThresholds.forEach((field, t) -> byOrdinal[field.ordinal()] = new Watch(this, ticker, field, t, listener, now));
+        if (security != null) security.schedule(security.thresholdNanos);
+        for (Watch w : byOrdinal) {
+            if (w != null) w.schedule(w.thresholdNanos);
+        }
+        return new Watches(security, byOrdinal);
+    }
+
+    synchronized void stop() {
+        stopped = true;
+        if (wheel != null) {
+            wheel.stop();
+            listeners.shutdownNow();
+        }
+    }
+
+    private synchronized void fire(Watch w, StaleData data) {
+        if (stopped) return;
+        listeners.execute(() -> {
+            try {
+                w.listener.onStale(data);
+            } catch (RuntimeException e) {
+                logger.error("Listener " + w.listener + " has thrown exception on " + data, e);
+            }
+        });
+    }
+
+    /**
+     * The watches of a subscription.
+     */
+    static final class Watches {
+        private final Watch security;
+        private final Watch[] byOrdinal;
+
+        private Watches(Watch security, Watch[] byOrdinal) {
+            this.security = security;
+            this.byOrdinal = byOrdinal;
+        }
+
+        /**
+         * Records an update of a field - called for every update, in the dispatching thread.
+         */
+        void updated(RealtimeField field, long receivedNanos) {
+            if (security != null) security.lastNanos = receivedNanos;
+            int ordinal = field.ordinal();
+            if (ordinal < byOrdinal.length && byOrdinal[ordinal] != null) byOrdinal[ordinal].lastNanos = receivedNanos;
+        }
+
+        /**
+         * @return the watches without the given fields, which are no longer monitored
+         */
+        Watches without(Set<RealtimeField> fields) {
+            Watch[] remaining = byOrdinal.clone();
+            for (RealtimeField field : fields) {
+                if (field.ordinal() < remaining.length && remaining[field.ordinal()] != null) {
+                    remaining[field.ordinal()].cancel();
+                    remaining[field.ordinal()] = null;
+                }
+            }
+            return new Watches(security, remaining);
+        }
+
+        /**
+         * Stops monitoring the subscription.
+         */
+        void cancel() {
+            if (security != null) security.cancel();
+            for (Watch w : byOrdinal) {
+                if (w != null) w.cancel();
+            }
+        }
+    }
+
+    private static final class Watch {
+        private final StalenessMonitor monitor;
+        private final HashedTimerWheel wheel;
+        private final String ticker;
+        private final RealtimeField field;
+        private final long thresholdNanos;
+        private final StaleDataListener listener;
+        private volatile long lastNanos;
+        private volatile boolean cancelled;
+        private volatile HashedTimerWheel.Timeout timeout;
+        /**
+         * Whether the listener has been informed, and the time of the last update at that point - only accessed by the
+         * timer thread
+         */
+        private boolean stale;
+        private long staleSinceNanos;
+
+        Watch(StalenessMonitor monitor, String ticker, RealtimeField field, Duration threshold, StaleDataListener listener, long now) {
+            this.monitor = monitor;
+            this.wheel = monitor.wheel;
+            this.ticker = ticker;
+            this.field = field;
+            this.thresholdNanos = threshold.toNanos();
+            this.listener = listener;
+            this.lastNanos = now;
+        }
+
+        private void schedule(long delayNanos) {
+            timeout = wheel.schedule(this::check, delayNanos, TimeUnit.NANOSECONDS);
+        }
+
+        private void check() {
+            if (cancelled) return;
+            long last = lastNanos;
+            long silence = System.nanoTime() - last;
+            if (silence < thresholdNanos) {
+                stale = false;
+                schedule(thresholdNanos - silence);
+                return;
+            }
+            if (!stale || last != staleSinceNanos) { //updated and stopped again between two checks
+                stale = true;
+                staleSinceNanos = last;
+                monitor.fire(this, new StaleData(ticker, field, Duration.ofNanos(thresholdNanos), Duration.ofNanos(silence)));
+            }
+            schedule(thresholdNanos);
+        }
+
+        void cancel() {
+            cancelled = true;
+            HashedTimerWheel.Timeout t = timeout;
+            if (t != null) t.cancel();
+        }
+    }
+}
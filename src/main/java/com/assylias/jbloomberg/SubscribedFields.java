@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import com.bloomberglp.blpapi.CorrelationID;
+import com.bloomberglp.blpapi.Name;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The fields of each subscription, as bitmasks of RealtimeField ordinals, so that the event handler can skip the
+ * elements of a SUBSCRIPTION_DATA message that have not been subscribed before converting them. Bloomberg sends many
+ * more fields than requested in each update and most of them would otherwise be converted and queued only to be
+ * discarded by the SubscriptionManager.
+ * <p>
+ * The masks are maintained by the SubscriptionManager and replaced as a whole when the fields of a subscription change,
+ * so that the event handler can read them without locking.
+ * <p>
+ * This class is thread safe.
+ */
+final class SubscribedFields {
+
+    private static final int UNKNOWN = -1;
+    private static final int MASK_LENGTH = (RealtimeField.values().length + 63) >>> 6;
+
+    private final Map<CorrelationID, long[]> masks = new ConcurrentHashMap<>();
+    /**
+     * The ordinal of the RealtimeField of each element name received so far, or UNKNOWN - element names are interned
+     * by the Bloomberg API so the lookup does not need to convert them to Strings
+     */
+    private final Map<Name, Integer> ordinals = new ConcurrentHashMap<>();
+
+    /**
+     * Sets the fields of a subscription - must be called before the subscription is sent to Bloomberg.
+     */
+    void update(CorrelationID id, Set<RealtimeField> fields) {
+        long[] mask = new long[MASK_LENGTH];
+        for (RealtimeField field : fields) {
+            mask[field.ordinal() >>> 6] |= 1L << field.ordinal();
+        }
+        masks.put(id, mask);
+    }
+
+    /**
+     * Forgets a subscription that has been cancelled - its updates are skipped from then on.
+     */
+    void remove(CorrelationID id) {
+        masks.remove(id);
+    }
+
+    /**
+     * @return the mask of the fields of the subscription, or null if the correlation id is not a subscription
+     */
+    long[] get(CorrelationID id) {
+        return id == null ? null : masks.get(id);
+    }
+
+    /**
+     * @return true if the element name is a RealtimeField that belongs to the mask
+     */
+    boolean contains(long[] mask, Name element) {
+        int ordinal = ordinal(element);
+        return ordinal != UNKNOWN && (mask[ordinal >>> 6] & (1L << ordinal)) != 0;
+    }
+
+    private int ordinal(Name element) {
+        Integer ordinal = ordinals.get(element);
+        if (ordinal == null) {
+            String name = element.toString();
+            ordinal = RealtimeField.containsIgnoreCase(name) ? RealtimeField.valueOfIgnoreCase(name).ordinal() : UNKNOWN;
+            ordinals.put(element, ordinal);
+        }
+        return ordinal;
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import com.bloomberglp.blpapi.Identity;
+import com.bloomberglp.blpapi.Session;
+import com.bloomberglp.blpapi.Subscription;
+import com.bloomberglp.blpapi.SubscriptionList;
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Sends the subscription changes of a session to Bloomberg, in SubscriptionLists of at most maxBatchSize
+ * subscriptions. If the rate is not limited, the lists are sent immediately, in the calling thread. Otherwise they are
+ * sent by a background thread, in the order in which they were submitted, at most batchesPerSecond lists per second,
+ * so that a large change of the subscribed universe does not flood bbcomm.
+ * <p>
+ * This class is thread safe.
+ */
+final class SubscriptionBatcher {
+
+    private final static Logger logger = LoggerFactory.getLogger(SubscriptionBatcher.class);
+
+    enum Operation {
+        SUBSCRIBE, RESUBSCRIBE, UNSUBSCRIBE
+    }
+
+    private final int maxBatchSize;
+    /**
+     * The minimum time between two lists - 0 if the rate is not limited
+     */
+    private final long intervalNanos;
+    private final String name;
+    /**
+     * The lists waiting to be sent - guarded by this
+     */
+    private final Deque<Batch> pending = new ArrayDeque<>();
+    /**
+     * Created on first use - guarded by this
+     */
+    private ScheduledExecutorService executor;
+    private boolean draining;
+    private boolean stopped;
+    private long nextSendNanos;
+
+    /**
+     * @param maxBatchSize     the maximum number of subscriptions per list - Integer.MAX_VALUE for no limit
+     * @param batchesPerSecond the maximum number of lists sent per second - Double.POSITIVE_INFINITY for no limit
+     * @param name             the name of the background thread
+     *
+     * @throws IllegalArgumentException if maxBatchSize or batchesPerSecond is not positive
+     */
+    SubscriptionBatcher(int maxBatchSize, double batchesPerSecond, String name) {
+        Preconditions.checkArgument(maxBatchSize > 0, "maxBatchSize must be > 0 (was %s)", maxBatchSize);
+        Preconditions.checkArgument(batchesPerSecond > 0, "batchesPerSecond must be > 0 (was %s)", batchesPerSecond);
+        this.maxBatchSize = maxBatchSize;
+        this.intervalNanos = batchesPerSecond == Double.POSITIVE_INFINITY ? 0 : (long) (1e9 / batchesPerSecond);
+        this.name = requireNonNull(name);
+    }
+
+    /**
+     * @param session       the session that owns the subscriptions
+     * @param operation     the change to send
+     * @param identity      the identity used for new subscriptions - ignored by the other operations
+     * @param subscriptions the subscriptions to send, by security, in the order in which they must be sent
+     *
+     * @return a future that completes with the status of each security once all the subscriptions have been sent
+     *
+     * @throws SendException if the rate is not limited and a list could not be sent - the lists that follow are not
+     *                       sent and, like the list that failed, are reported as FAILED
+     */
+    CompletableFuture<Map<String, SubscriptionStatus>> send(Session session, Operation operation, Identity identity,
+                                                            Map<String, Subscription> subscriptions) throws SendException {
+        List<Batch> batches = new ArrayList<>();
+        Map<String, Subscription> batch = new LinkedHashMap<>();
+        for (Map.Entry<String, Subscription> e : subscriptions.entrySet()) {
+            batch.put(e.getKey(), e.getValue());
+            if (batch.size() == maxBatchSize) {
+                batches.add(new Batch(session, operation, identity, batch));
+                batch = new LinkedHashMap<>();
+            }
+        }
+        if (!batch.isEmpty()) batches.add(new Batch(session, operation, identity, batch));
+
+        List<CompletableFuture<Map<String, SubscriptionStatus>>> results = new ArrayList<>();
+        for (Batch b : batches) results.add(b.result);
+        if (intervalNanos == 0) {
+            for (int i = 0; i < batches.size(); i++) {
+                try {
+                    batches.get(i).send();
+                } catch (IOException | RuntimeException e) {
+                    for (Batch b : batches.subList(i, batches.size())) b.fail();
+                    throw new SendException(e, merge(results).join());
+                }
+            }
+        } else {
+            synchronized (this) {
+                if (stopped) throw new IllegalStateException("The session has been stopped");
+                pending.addAll(batches);
+                if (!draining) {
+                    draining = true;
+                    schedule(nextSendNanos - System.nanoTime());
+                }
+            }
+        }
+        return merge(results);
+    }
+
+    /**
+     * Discards the lists that have not been sent yet - their securities are reported as FAILED.
+     */
+    void stop() {
+        List<Batch> discarded;
+        synchronized (this) {
+            stopped = true;
+            discarded = new ArrayList<>(pending);
+            pending.clear();
+            if (executor != null) executor.shutdownNow();
+        }
+        if (!discarded.isEmpty()) logger.info("Discarding {} subscription lists that were waiting to be sent", discarded.size());
+        for (Batch b : discarded) b.fail();
+    }
+
+    private void sendNext() {
+        Batch b;
+        synchronized (this) {
+            b = pending.poll();
+            if (b == null) {
+                draining = false;
+                return;
+            }
+        }
+        try {
+            b.send();
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not send {} subscriptions ({})", b.subscriptions.size(), b.operation, e);
+            b.fail();
+        }
+        synchronized (this) {
+            nextSendNanos = System.nanoTime() + intervalNanos;
+            if (pending.isEmpty()) draining = false;
+            else if (!stopped) schedule(intervalNanos);
+        }
+    }
+
+    private void schedule(long delayNanos) {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        executor.schedule(this::sendNext, Math.max(0, delayNanos), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return a future that completes with the statuses of all the futures once they have all completed
+     */
+    static CompletableFuture<Map<String, SubscriptionStatus>> merge(List<CompletableFuture<Map<String, SubscriptionStatus>>> results) {
+        if (results.size() == 1) return results.get(0);
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            Map<String, SubscriptionStatus> statuses = new LinkedHashMap<>();
+            for (CompletableFuture<Map<String, SubscriptionStatus>> r : results) statuses.putAll(r.join());
+            return Collections.unmodifiableMap(statuses);
+        });
+    }
+
+    /**
+     * Thrown when a list could not be sent without rate limit.
+     */
+    static final class SendException extends IOException {
+        private static final long serialVersionUID = 1L;
+        private final Map<String, SubscriptionStatus> statuses;
+
+        SendException(Exception cause, Map<String, SubscriptionStatus> statuses) {
+            super("Could not send the subscriptions", cause);
+            this.statuses = statuses;
+        }
+
+        /**
+         * @return the status of each security: FAILED for the securities of the list that failed and of the lists that
+         *         were not sent
+         */
+        Map<String, SubscriptionStatus> getStatuses() {
+            return statuses;
+        }
+    }
+
+    private static final class Batch {
+        private final Session session;
+        private final Operation operation;
+        private final Identity identity;
+        private final Map<String, Subscription> subscriptions;
+        private final CompletableFuture<Map<String, SubscriptionStatus>> result = new CompletableFuture<>();
+
+        Batch(Session session, Operation operation, Identity identity, Map<String, Subscription> subscriptions) {
+            this.session = session;
+            this.operation = operation;
+            this.identity = identity;
+            this.subscriptions = subscriptions;
+        }
+
+        void send() throws IOException {
+            SubscriptionList list = new SubscriptionList();
+            list.addAll(subscriptions.values());
+            switch (operation) {
+                case SUBSCRIBE: session.subscribe(list, identity); break;
+                case RESUBSCRIBE: session.resubscribe(list); break;
+                case UNSUBSCRIBE: session.unsubscribe(list); break;
+                default: throw new AssertionError(operation);
+            }
+            complete(operation == Operation.UNSUBSCRIBE ? SubscriptionStatus.UNSUBSCRIBED : SubscriptionStatus.SUBSCRIBED);
+        }
+
+        void fail() {
+            complete(SubscriptionStatus.FAILED);
+        }
+
+        private void complete(SubscriptionStatus status) {
+            Map<String, SubscriptionStatus> statuses = new LinkedHashMap<>();
+            for (String security : subscriptions.keySet()) statuses.put(security, status);
+            result.complete(Collections.unmodifiableMap(statuses));
+        }
+    }
+}
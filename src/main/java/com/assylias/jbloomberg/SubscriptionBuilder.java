@@ -7,10 +7,14 @@ package com.assylias.jbloomberg;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.Map;
 import static java.util.Objects.requireNonNull;
 import java.util.Set;
 
@@ -22,10 +26,17 @@ import java.util.Set;
 public final class SubscriptionBuilder {
 
     private final Set<DataChangeListener> dataListeners = new HashSet<>();
+    private final Set<FlyweightListener> flyweightListeners = new HashSet<>();
     private final Set<String> securities = new HashSet<> ();
     private final Set<RealtimeField> fields = EnumSet.noneOf(RealtimeField.class);
     private SubscriptionErrorListener errorListener = e-> { /* no-op */ };
     private double throttle = 0;
+    private boolean snapshotFirst = false;
+    private int recoveryPriority = 0;
+    private ListenerExecutor listenerExecutor;
+    private StaleDataListener staleListener;
+    private Duration staleThreshold;
+    private final Map<RealtimeField, Duration> staleThresholds = new EnumMap<>(RealtimeField.class);
 
     BloombergServiceType getServiceType() {
         return BloombergServiceType.MARKET_DATA;
@@ -43,6 +54,48 @@ public final class SubscriptionBuilder {
         return this;
     }
 
+    /**
+     * Adds a listener that will be informed of at most one change per security and field and per sampling period: the
+     * first change of a field is sent immediately and the changes received during the following period are conflated
+     * into one event, sent at the end of the period with the latest value. Unlike {@link #throttle(double)}, which
+     * applies to the Bloomberg subscription and therefore to all its listeners, the sampling only applies to this
+     * listener, so that a slow consumer can share a subscription with fast ones.
+     * <p>
+     * The periods are timed by a thread of the session, with a resolution of 10 milliseconds, and the delayed events are
+     * sent in the {@link #listenerExecutor(ListenerExecutor) executor} of the subscription like the others - in the
+     * timer thread if it is inline. The listener is wrapped: it can only be removed by unsubscribing this builder.
+     *
+     * @param lst            a listener
+     * @param samplingPeriod the minimum time between two events of a given security and field
+     *
+     * @throws NullPointerException     if lst or samplingPeriod is null
+     * @throws IllegalArgumentException if samplingPeriod is not strictly positive
+     */
+    public SubscriptionBuilder addListener(DataChangeListener lst, Duration samplingPeriod) {
+        requireNonNull(lst, "lst can't be null");
+        requireNonNull(samplingPeriod, "samplingPeriod can't be null");
+        Preconditions.checkArgument(!samplingPeriod.isNegative() && !samplingPeriod.isZero(), "samplingPeriod must be > 0 (was %s)", samplingPeriod);
+        dataListeners.add(new SampledListener(lst, samplingPeriod.toNanos()));
+        return this;
+    }
+
+    /**
+     * Adds a listener that will be informed of any changes to the registered fields / securities without allocating
+     * an event per change: the listener receives a {@link RealtimeUpdate} that is reused for every change. This is
+     * useful for high frequency consumers, for which the DataChangeEvents are the main source of garbage.
+     * <p>
+     * Unlike the DataChangeListeners, which run in a thread pool, the listener is called by the thread that dispatches
+     * the updates of the session and must return quickly.
+     *
+     * @param lst a listener
+     * @throws NullPointerException if lst is null
+     */
+    public SubscriptionBuilder addFlyweightListener(FlyweightListener lst) {
+        requireNonNull(lst, "lst can't be null");
+        flyweightListeners.add(lst);
+        return this;
+    }
+
     /**
      * Adds a listener that will be informed of any errors received after the subscription has started.
      *
@@ -122,6 +175,96 @@ public final class SubscriptionBuilder {
         return this;
     }
 
+    /**
+     * Requests the current values of the fields with a reference data request when the subscription is made, and sends
+     * them to the listeners as the first events. The listeners are then populated in one round trip, instead of
+     * waiting for the first real time update of each field, which may never come for illiquid securities.
+     * <p>
+     * The values of the snapshot are only sent for the fields that have not received a real time update yet, so that a
+     * more recent value is not overwritten. The snapshot uses the field mnemonics of the {@link RealtimeField}s: the
+     * fields that are not available as reference data only receive real time updates.
+     */
+    public SubscriptionBuilder snapshotFirst() {
+        snapshotFirst = true;
+        return this;
+    }
+
+    /**
+     * Sets the priority of the securities when they are resubscribed after the connection to Bloomberg has been lost
+     * and recovered (see {@link SessionConfiguration#recoverSubscriptions(int, double)}): the securities with a higher
+     * priority are resubscribed first. A security that belongs to several subscriptions has the highest of their
+     * priorities. The default priority is 0.
+     *
+     * @param priority the priority of the securities of this subscription - can be negative
+     */
+    public SubscriptionBuilder recoveryPriority(int priority) {
+        recoveryPriority = priority;
+        return this;
+    }
+
+    /**
+     * Sets the executor in which the {@link DataChangeListener}s of this subscription are called, instead of the
+     * executor of the session (see {@link SessionConfiguration#listenerExecutor(ListenerExecutor)}) - for example
+     * {@link ListenerExecutor#inline()} for the listeners that need the lowest latency and never block, or
+     * {@link ListenerExecutor#dedicated()} to isolate slow listeners from the other subscriptions. A listener that is
+     * added to several subscriptions is called in the executor of the last one.
+     * <p>
+     * The {@link FlyweightListener}s are always called inline.
+     *
+     * @throws NullPointerException if executor is null
+     */
+    public SubscriptionBuilder listenerExecutor(ListenerExecutor executor) {
+        listenerExecutor = requireNonNull(executor, "executor can't be null");
+        return this;
+    }
+
+    /**
+     * Informs the listener when one of the securities has not received any update for longer than the threshold, for
+     * example because the security has stopped trading or because the subscription is silently broken - Bloomberg does
+     * not always send a {@link SubscriptionError}. The time is measured from the subscription until the first update.
+     * The listener is informed once per interruption: it is informed again if the security updates and stops again.
+     * <p>
+     * The thresholds are checked with a resolution of 50 milliseconds, by a timer of the session: the cost does not
+     * depend on the number of monitored securities. Listeners that only care about market hours can ignore the stale
+     * data they receive outside of those hours.
+     *
+     * @param lst       a listener
+     * @param threshold the maximum time between two updates of a security, whichever the field
+     *
+     * @throws NullPointerException     if lst or threshold is null
+     * @throws IllegalArgumentException if threshold is not strictly positive
+     */
+    public SubscriptionBuilder onStale(StaleDataListener lst, Duration threshold) {
+        requireNonNull(threshold, "threshold can't be null");
+        Preconditions.checkArgument(!threshold.isNegative() && !threshold.isZero(), "threshold must be > 0 (was %s)", threshold);
+        staleListener = requireNonNull(lst, "lst can't be null");
+        staleThreshold = threshold;
+        return this;
+    }
+
+    /**
+     * Same as {@link #onStale(StaleDataListener, Duration)} with a threshold per field: the listener is informed when
+     * one of the fields of a security has not been updated for longer than its own threshold. The fields must also be
+     * added to this builder.
+     *
+     * @param lst        a listener
+     * @param thresholds the maximum time between two updates of each field
+     *
+     * @throws NullPointerException     if lst or thresholds is null or contains null
+     * @throws IllegalArgumentException if a threshold is not strictly positive
+     */
+    public SubscriptionBuilder onStale(StaleDataListener lst, Map<RealtimeField, Duration> thresholds) {
+        requireNonNull(thresholds, "thresholds can't be null");
+        for (Map.Entry<RealtimeField, Duration> e : thresholds.entrySet()) {
+            requireNonNull(e.getKey(), "thresholds can't contain null fields");
+            requireNonNull(e.getValue(), "thresholds can't contain null thresholds");
+            Preconditions.checkArgument(!e.getValue().isNegative() && !e.getValue().isZero(), "threshold of %s must be > 0 (was %s)", e.getKey(), e.getValue());
+        }
+        staleListener = requireNonNull(lst, "lst can't be null");
+        staleThresholds.putAll(thresholds);
+        return this;
+    }
+
     /**
      * Returns a non-null set of listeners that have been registered using {@link #addListener(DataChangeListener)}.
      * The set can be empty.
@@ -131,6 +274,15 @@ public final class SubscriptionBuilder {
         return ImmutableSet.copyOf(dataListeners);
     }
 
+    /**
+     * Returns a non-null set of listeners that have been registered using
+     * {@link #addFlyweightListener(FlyweightListener)}. The set can be empty.
+     * @return a non-null set of listeners
+     */
+    public Set<FlyweightListener> getFlyweightListeners() {
+        return ImmutableSet.copyOf(flyweightListeners);
+    }
+
     /**
      * Returns a non-null SubscriptionErrorListener that has been registered using {@link #onError(SubscriptionErrorListener)}.
      * If no error listener has been registered, returns a no-op listener.
@@ -174,4 +326,76 @@ public final class SubscriptionBuilder {
     public double getThrottle() {
         return throttle;
     }
+
+    /**
+     * @return true if the current values of the fields must be requested when the subscription is made - see
+     *         {@link #snapshotFirst()}
+     */
+    boolean isSnapshotFirst() {
+        return snapshotFirst;
+    }
+
+    int getRecoveryPriority() {
+        return recoveryPriority;
+    }
+
+    /**
+     * @return the executor of the listeners, or null if they are called in the executor of the session
+     */
+    ListenerExecutor getListenerExecutor() {
+        return listenerExecutor;
+    }
+
+    /**
+     * @return the listener of the stale data, or null if the subscription is not monitored
+     */
+    StaleDataListener getStaleListener() {
+        return staleListener;
+    }
+
+    /**
+     * @return the maximum time between two updates of a security, or null if the securities are not monitored
+     */
+    Duration getStaleThreshold() {
+        return staleThreshold;
+    }
+
+    /**
+     * @return the maximum time between two updates of each monitored field
+     */
+    Map<RealtimeField, Duration> getStaleThresholds() {
+        return Collections.unmodifiableMap(staleThresholds);
+    }
+
+    /**
+     * @return a copy of this builder for a subset of its securities - all the other settings are the same.
+     */
+    SubscriptionBuilder withSecurities(Collection<String> securities) {
+        SubscriptionBuilder copy = copy(securities, dataListeners);
+        copy.flyweightListeners.addAll(flyweightListeners);
+        return copy;
+    }
+
+    /**
+     * @return a copy of this builder whose only listener is lst - all the other settings are the same.
+     */
+    SubscriptionBuilder withListener(DataChangeListener lst) {
+        return copy(securities, Collections.singleton(lst));
+    }
+
+    private SubscriptionBuilder copy(Collection<String> securities, Collection<DataChangeListener> listeners) {
+        SubscriptionBuilder copy = new SubscriptionBuilder();
+        copy.dataListeners.addAll(listeners);
+        copy.securities.addAll(securities);
+        copy.fields.addAll(fields);
+        copy.errorListener = errorListener;
+        copy.throttle = throttle;
+        copy.snapshotFirst = snapshotFirst;
+        copy.recoveryPriority = recoveryPriority;
+        copy.listenerExecutor = listenerExecutor;
+        copy.staleListener = staleListener;
+        copy.staleThreshold = staleThreshold;
+        copy.staleThresholds.putAll(staleThresholds);
+        return copy;
+    }
 }
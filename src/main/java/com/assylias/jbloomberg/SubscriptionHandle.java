@@ -0,0 +1,23 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+/**
+ * A handle on a subscription, returned by {@link BloombergSession#subscribeWithHandle(SubscriptionBuilder)}. Closing
+ * the handle reverts the subscription, as if {@link BloombergSession#unsubscribe(SubscriptionBuilder)} was called with
+ * the SubscriptionBuilder of the subscription: its listeners stop receiving updates and the fields, or the securities,
+ * that no one listens to any longer are removed from the Bloomberg subscription.
+ * <p>
+ * The SubscriptionBuilder should not be modified once it has been subscribed.
+ */
+@FunctionalInterface
+public interface SubscriptionHandle extends AutoCloseable {
+
+    /**
+     * Reverts the subscription - closing a handle more than once has no effect.
+     */
+    @Override
+    void close();
+}
@@ -6,23 +6,30 @@ package com.assylias.jbloomberg;
 
 import com.bloomberglp.blpapi.CorrelationID;
 import com.bloomberglp.blpapi.Identity;
+import com.bloomberglp.blpapi.Session;
 import com.bloomberglp.blpapi.Subscription;
-import com.bloomberglp.blpapi.SubscriptionList;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Table;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
@@ -69,10 +76,62 @@ final class SubscriptionManager {
      * The Events manager that will forward events to the listeners
      */
     private final EventsManager eventsManager;
+    /**
+     * Informed of the depth of the queue every time an update is dispatched
+     */
+    private final SessionMetrics metrics;
+    /**
+     * Sends the subscription changes to Bloomberg
+     */
+    private final SubscriptionBatcher batcher;
+    /**
+     * The fields of each subscription, used by the event handlers to skip the fields that have not been subscribed
+     */
+    private final SubscribedFields subscribedFields;
+    /**
+     * The last value of each subscribed field - null unless the cache has been enabled
+     */
+    private LastValues lastValues;
+    /**
+     * Informs the listeners of the subscriptions that stop updating
+     */
+    private final StalenessMonitor staleness = new StalenessMonitor("Bloomberg Staleness");
+    /**
+     * Resubscribes to all the subscriptions when the connection is recovered - null to leave the subscriptions to the
+     * Bloomberg API
+     */
+    private SubscriptionBatcher recoveryBatcher;
+    /**
+     * Where the Data are recycled once dispatched - null if they are not recycled. Set before the dispatching thread
+     * is started.
+     */
+    private DataPool dataPool;
+    /**
+     * How the dispatching thread waits for the next update
+     */
+    private WaitStrategy waitStrategy = WaitStrategy.blocking();
+    /**
+     * The System.nanoTime() at which the connection of each Bloomberg session was lost - the sessions whose connection
+     * is up are not in the map
+     */
+    private final Map<Session, Long> connectionDownNanos = new IdentityHashMap<>();
 
     public SubscriptionManager(BlockingQueue<Data> subscriptionDataQueue, EventsManager eventsManager) {
+        this(subscriptionDataQueue, eventsManager, SessionMetrics.NO_OP);
+    }
+
+    public SubscriptionManager(BlockingQueue<Data> subscriptionDataQueue, EventsManager eventsManager, SessionMetrics metrics) {
+        this(subscriptionDataQueue, eventsManager, metrics, new SubscriptionBatcher(Integer.MAX_VALUE, Double.POSITIVE_INFINITY, "Bloomberg Subscriptions"),
+             new SubscribedFields());
+    }
+
+    SubscriptionManager(BlockingQueue<Data> subscriptionDataQueue, EventsManager eventsManager, SessionMetrics metrics, SubscriptionBatcher batcher,
+                        SubscribedFields subscribedFields) {
         this.subscriptionDataQueue = subscriptionDataQueue;
         this.eventsManager = eventsManager;
+        this.metrics = metrics;
+        this.batcher = batcher;
+        this.subscribedFields = subscribedFields;
     }
 
     /**
@@ -97,32 +156,132 @@ final class SubscriptionManager {
                     + " [stop]" + stoppingSession);
         }
         edt.shutdownNow();
+        batcher.stop();
+        staleness.stop();
+        if (recoveryBatcher != null) recoveryBatcher.stop();
+    }
+
+    /**
+     * Resubscribes explicitly to all the subscriptions when the connection to Bloomberg is recovered - must be called
+     * before the manager is started.
+     *
+     * @param recoveryBatcher sends the resubscriptions, typically at a limited rate
+     */
+    synchronized void recoverSubscriptions(SubscriptionBatcher recoveryBatcher) {
+        this.recoveryBatcher = recoveryBatcher;
+    }
+
+    /**
+     * Keeps the last value of each subscribed field, returned by {@link #getLastValues()} - must be called before the
+     * manager is started.
+     */
+    synchronized void cacheLastValues() {
+        if (lastValues == null) lastValues = new LastValues();
+    }
+
+    /**
+     * Recycles the Data of the updates once they have been dispatched, so that the event handlers can claim them from
+     * the pool - must be called before the manager is started.
+     */
+    synchronized void recycleData(DataPool dataPool) {
+        this.dataPool = Preconditions.checkNotNull(dataPool, "dataPool can't be null");
+    }
+
+    /**
+     * Sets how the dispatching thread waits for the next update - must be called before the manager is started.
+     */
+    synchronized void waitStrategy(WaitStrategy waitStrategy) {
+        this.waitStrategy = Preconditions.checkNotNull(waitStrategy, "waitStrategy can't be null");
+    }
+
+    /**
+     * Informs the manager of a change of the state of the connection of a Bloomberg session: when the connection is
+     * lost, the last values of the subscriptions of that session are flagged as stale (and forgotten by the
+     * EventsManager if the recovery is enabled), and the subscriptions are resubscribed when it is recovered, if the
+     * recovery is enabled.
+     *
+     * @param bloombergSession the Bloomberg session whose connection has changed
+     */
+    void connectionStateChanged(Session bloombergSession, SessionState state) {
+        if (state == SessionState.CONNECTION_DOWN) {
+            connectionDown(bloombergSession);
+        } else if (state == SessionState.CONNECTION_UP) {
+            try {
+                recover(bloombergSession);
+            } catch (IOException | RuntimeException e) {
+                logger.error("Could not resubscribe after the recovery of the connection", e);
+            }
+        }
+    }
+
+    private synchronized void connectionDown(Session bloombergSession) {
+        if (session == null || connectionDownNanos.containsKey(bloombergSession)) return;
+        connectionDownNanos.put(bloombergSession, System.nanoTime());
+        int lost = 0;
+        for (SubscriptionHolder sh : subscriptionsById.values()) {
+            if (sh.session != bloombergSession) continue;
+            lost++;
+            if (sh.lastValues != null) sh.lastValues.markStale();
+            if (recoveryBatcher != null) eventsManager.clearLastValues(sh.id);
+        }
+        if (recoveryBatcher != null) logger.warn("Connection lost: {} subscriptions will be resubscribed when it is recovered", lost);
+        else logger.warn("Connection lost: the last values of {} subscriptions are stale", lost);
+    }
+
+    /**
+     * Resubscribes to the subscriptions of all the Bloomberg sessions whose connection had been lost.
+     *
+     * @return a future that completes with the status of each security once it has been resubscribed
+     */
+    synchronized CompletableFuture<Map<String, SubscriptionStatus>> recover() throws IOException {
+        List<CompletableFuture<Map<String, SubscriptionStatus>>> results = new ArrayList<>();
+        for (Session s : new ArrayList<>(connectionDownNanos.keySet())) {
+            results.add(recover(s));
+        }
+        return SubscriptionBatcher.merge(results);
+    }
+
+    /**
+     * Resubscribes to the subscriptions of the Bloomberg session, by decreasing recovery priority, if its connection had
+     * been lost and the recovery is enabled.
+     *
+     * @return a future that completes with the status of each security once it has been resubscribed
+     */
+    synchronized CompletableFuture<Map<String, SubscriptionStatus>> recover(Session bloombergSession) throws IOException {
+        Long downNanos = connectionDownNanos.remove(bloombergSession);
+        if (downNanos == null || recoveryBatcher == null) return CompletableFuture.completedFuture(Collections.emptyMap());
+        long upNanos = System.nanoTime();
+        long downtimeNanos = upNanos - downNanos;
+        Map<String, Subscription> resubscriptions = new LinkedHashMap<>();
+        subscriptionsByTicker.entrySet().stream()
+                .filter(e -> e.getValue().session == bloombergSession)
+                .sorted((e1, e2) -> Integer.compare(e2.getValue().recoveryPriority, e1.getValue().recoveryPriority))
+                .forEach(e -> resubscriptions.put(e.getKey(), getSubscription(e.getKey(), e.getValue())));
+        logger.info("Connection recovered after {} ms: resubscribing {} securities", downtimeNanos / 1_000_000, resubscriptions.size());
+        CompletableFuture<Map<String, SubscriptionStatus>> result = resubscriptions.isEmpty()
+                ? CompletableFuture.completedFuture(Collections.emptyMap())
+                : recoveryBatcher.send(bloombergSession, SubscriptionBatcher.Operation.RESUBSCRIBE, null, resubscriptions);
+        result.thenAccept(statuses -> {
+            int failed = (int) statuses.values().stream().filter(s -> s == SubscriptionStatus.FAILED).count();
+            long recoveryNanos = System.nanoTime() - upNanos;
+            if (failed > 0) logger.warn("{} securities could not be resubscribed", failed);
+            logger.info("Resubscribed {} securities in {} ms", statuses.size() - failed, recoveryNanos / 1_000_000);
+            metrics.subscriptionsRecovered(statuses.size() - failed, failed, downtimeNanos, recoveryNanos);
+        });
+        return result;
     }
 
     private void startDispatching() {
+        WaitStrategy waitStrategy = this.waitStrategy;
+        logger.info("Dispatching the subscription data with the {} wait strategy", waitStrategy);
         Runnable r = new Runnable() {
             @Override
             public void run() {
                 try {
                     while (!Thread.currentThread().isInterrupted()) {
-                        Data data = subscriptionDataQueue.take();
-                        CorrelationID id = data.getCorrelationId();
-                        if (RealtimeField.containsIgnoreCase(data.getField())) {
-                            RealtimeField field = RealtimeField.valueOfIgnoreCase(data.getField());
-                            eventsManager.fireEvent(id, field, data.getValue());
-                        } else if (data.getValue() instanceof SubscriptionError) {
-                            SubscriptionError error = (SubscriptionError) data.getValue();
-                            logger.info("Subscription error [{}]: {}", error.getTopic(), error.getDescription());
-                            if ("SubscriptionFailure".equals(error.getType())) {
-                                //we need to remove the subscription from our maps otherwise a resubscribe could throw an exception.
-                                String ticker = error.getTopic();
-                                subscriptionsByTicker.remove(ticker);
-                                subscriptionsById.remove(id);
-                            }
-                            eventsManager.fireError(id, error);
-                        } else {
-                            logger.trace("Unknown RT Field: {}", data.getField());
-                        }
+                        Data data = waitStrategy.take(subscriptionDataQueue);
+                        metrics.subscriptionQueueDepth(subscriptionDataQueue.size());
+                        dispatch(data);
                     }
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
@@ -135,74 +294,288 @@ final class SubscriptionManager {
         }
     }
 
+    /**
+     * Relays an update taken from the queue to the last values and to the listeners, then recycles its Data. The
+     * numbers are relayed without being boxed. Called by the dispatching thread.
+     */
+    void dispatch(Data data) {
+        if (data.isTraced()) metrics.tickLatency(SessionMetrics.TickStage.DEQUEUED, System.nanoTime() - data.getReceivedNanos());
+        CorrelationID id = data.getCorrelationId();
+        if (RealtimeField.containsIgnoreCase(data.getField())) {
+            RealtimeField field = RealtimeField.valueOfIgnoreCase(data.getField());
+            SubscriptionHolder sh = subscriptionsById.get(id);
+            if (data.isSeed()) {
+                if (sh != null && sh.lastValues != null) sh.lastValues.seed(field, data.value(), data.getReceivedNanos());
+                eventsManager.seedEvent(id, field, data.getValue());
+            } else {
+                if (sh != null) {
+                    if (sh.lastValues != null) sh.lastValues.update(field, data.value(), data.getReceivedNanos()); //before the listeners see it
+                    sh.staleness.updated(field, data.getReceivedNanos());
+                }
+                eventsManager.fireEvent(id, field, data.value(), data.getReceivedNanos(), data.isTraced());
+            }
+        } else if (data.getValue() instanceof SubscriptionError) {
+            SubscriptionError error = (SubscriptionError) data.getValue();
+            logger.info("Subscription error [{}]: {}", error.getTopic(), error.getDescription());
+            eventsManager.fireError(id, error);
+            if ("SubscriptionFailure".equals(error.getType())) {
+                //we need to remove the subscription from our maps otherwise a resubscribe could throw an exception.
+                forgetRejected(error.getTopic(), id);
+            }
+        } else {
+            logger.trace("Unknown RT Field: {}", data.getField());
+        }
+        if (dataPool != null) dataPool.release(data);
+    }
+
     /**
      * Updates the Bloomberg session to subscribe to the securities and fields specified in the builder.
      *
      * @param subscriptionBuilder the builder containing the details of the securities and fields to subscribe
      * @param identity a handle to the user whose privileges are to be used for this request
      *
+     * @return a future that completes with the status of each security once its subscription has been sent
+     *
      * @throws IllegalStateException if a started session has not been set before this method is called
      * @throws IOException           if there is a communication error on subscribe
      */
-    synchronized void subscribe(SubscriptionBuilder subscriptionBuilder, Identity identity) throws IOException {
+    synchronized CompletableFuture<Map<String, SubscriptionStatus>> subscribe(SubscriptionBuilder subscriptionBuilder, Identity identity) throws IOException {
         if (session == null) {
             throw new IllegalStateException("Can't subscribe to a session before it is started");
         }
+        List<CompletableFuture<Map<String, SubscriptionStatus>>> results = new ArrayList<>();
 
-        SubscriptionList list;
+        //a subscription must be modified on the session that created it
+        for (Map.Entry<Session, Map<String, Subscription>> e : getReSubscriptions(subscriptionBuilder).entrySet()) {
+            results.add(batcher.send(e.getKey(), SubscriptionBatcher.Operation.RESUBSCRIBE, null, e.getValue()));
+        }
+
+        Session target = session.getBloombergSubscriptionSession(identity);
+        Map<String, Subscription> subscriptions = getNewSubscriptions(subscriptionBuilder, target);
+        if (!subscriptions.isEmpty()) {
+            CompletableFuture<Map<String, SubscriptionStatus>> result;
+            try {
+                result = batcher.send(target, SubscriptionBatcher.Operation.SUBSCRIBE, identity, subscriptions);
+            } catch (SubscriptionBatcher.SendException e) {
+                forgetFailed(subscriptions, e.getStatuses()); //else a retry would resubscribe what was never sent
+                throw e;
+            }
+            result.thenAccept(statuses -> forgetFailed(subscriptions, statuses));
+            results.add(result);
+        }
+        return SubscriptionBatcher.merge(results);
+    }
+
+    synchronized CompletableFuture<Map<String, SubscriptionStatus>> subscribe(SubscriptionBuilder subscriptionBuilder) throws IOException {
+      return subscribe(subscriptionBuilder, null);
+    }
+
+    /**
+     * Cancels the subscriptions to the given securities: their listeners are not informed of their updates any longer
+     * and a new subscription to one of these securities is a new Bloomberg subscription. The securities that are not
+     * subscribed are ignored.
+     *
+     * @return a future that completes with the status of each subscribed security once its cancellation has been sent
+     *
+     * @throws IllegalStateException if a started session has not been set before this method is called
+     * @throws IOException           if there is a communication error on unsubscribe
+     */
+    synchronized CompletableFuture<Map<String, SubscriptionStatus>> unsubscribe(Collection<String> tickers) throws IOException {
+        if (session == null) {
+            throw new IllegalStateException("Can't unsubscribe from a session before it is started");
+        }
+        Map<Session, Map<String, Subscription>> unsubscriptions = new LinkedHashMap<>();
+        for (String ticker : tickers) {
+            SubscriptionHolder sh = subscriptionsByTicker.get(ticker);
+            if (sh == null) continue;
+            unsubscriptions.computeIfAbsent(sh.session, s -> new LinkedHashMap<>()).put(ticker, getSubscription(ticker, sh));
+            forget(ticker, sh);
+        }
+        return send(Collections.emptyMap(), unsubscriptions);
+    }
+
+    /**
+     * Reverts a subscription: removes the listeners of the builder from its securities and fields or, if the builder
+     * has no listeners, removes its fields with all their listeners. The fields that are left without listeners are
+     * removed from the Bloomberg subscription, which is resubscribed with the remaining fields - the securities that are
+     * left without fields are unsubscribed. The securities and fields that are not subscribed are ignored.
+     *
+     * @return a future that completes with the status of each modified security once the change has been sent
+     *
+     * @throws IllegalStateException if a started session has not been set before this method is called
+     * @throws IOException           if there is a communication error on resubscribe or unsubscribe
+     */
+    synchronized CompletableFuture<Map<String, SubscriptionStatus>> unsubscribe(SubscriptionBuilder subscriptionBuilder) throws IOException {
+        if (session == null) {
+            throw new IllegalStateException("Can't unsubscribe from a session before it is started");
+        }
+        Set<DataChangeListener> listeners = subscriptionBuilder.getListeners();
+        Set<FlyweightListener> flyweights = subscriptionBuilder.getFlyweightListeners();
+        Map<Session, Map<String, Subscription>> resubscriptions = new LinkedHashMap<>();
+        Map<Session, Map<String, Subscription>> unsubscriptions = new LinkedHashMap<>();
+        for (String ticker : subscriptionBuilder.getSecurities()) {
+            SubscriptionHolder sh = subscriptionsByTicker.get(ticker);
+            if (sh == null) continue;
+            Set<RealtimeField> removed = EnumSet.noneOf(RealtimeField.class);
+            for (String name : subscriptionBuilder.getFieldsAsString()) {
+                RealtimeField field = RealtimeField.valueOfIgnoreCase(name);
+                if (!sh.fields.contains(field)) continue;
+                if (listeners.isEmpty() && flyweights.isEmpty()) {
+                    removed.add(field);
+                }
+                for (DataChangeListener lst : listeners) {
+                    if (eventsManager.removeEventListener(sh.id, field, lst)) removed.add(field);
+                }
+                for (FlyweightListener lst : flyweights) {
+                    if (eventsManager.removeFlyweightListener(sh.id, field, lst)) removed.add(field);
+                }
+            }
+            if (removed.isEmpty()) continue;
+            if (removed.containsAll(sh.fields)) {
+                unsubscriptions.computeIfAbsent(sh.session, s -> new LinkedHashMap<>()).put(ticker, getSubscription(ticker, sh));
+                forget(ticker, sh);
+            } else {
+                logger.debug("Removing fields {} from the subscription to {}", removed, ticker);
+                sh.fields.removeAll(removed);
+                sh.staleness = sh.staleness.without(removed);
+                subscribedFields.update(sh.id, sh.fields);
+                eventsManager.removeEventListeners(sh.id, removed);
+                resubscriptions.computeIfAbsent(sh.session, s -> new LinkedHashMap<>()).put(ticker, getSubscription(ticker, sh));
+            }
+        }
+        return send(resubscriptions, unsubscriptions);
+    }
 
-        list = getReSubscriptionsList(subscriptionBuilder);
-        if (!list.isEmpty()) {
-            session.getBloombergSession().resubscribe(list);
+    private CompletableFuture<Map<String, SubscriptionStatus>> send(Map<Session, Map<String, Subscription>> resubscriptions,
+                                                                    Map<Session, Map<String, Subscription>> unsubscriptions) throws IOException {
+        List<CompletableFuture<Map<String, SubscriptionStatus>>> results = new ArrayList<>();
+        for (Map.Entry<Session, Map<String, Subscription>> e : resubscriptions.entrySet()) {
+            results.add(batcher.send(e.getKey(), SubscriptionBatcher.Operation.RESUBSCRIBE, null, e.getValue()));
         }
+        for (Map.Entry<Session, Map<String, Subscription>> e : unsubscriptions.entrySet()) {
+            results.add(batcher.send(e.getKey(), SubscriptionBatcher.Operation.UNSUBSCRIBE, null, e.getValue()));
+        }
+        return SubscriptionBatcher.merge(results);
+    }
+
+    /**
+     * Forgets the new subscriptions that could not be sent, so that they can be subscribed again.
+     */
+    private synchronized void forgetFailed(Map<String, Subscription> subscriptions, Map<String, SubscriptionStatus> statuses) {
+        statuses.forEach((ticker, status) -> {
+            if (status == SubscriptionStatus.FAILED) forgetRejected(ticker, subscriptions.get(ticker).correlationID());
+        });
+    }
 
-        list = getNewSubscriptionsList(subscriptionBuilder);
-        if (!list.isEmpty()) {
-            session.getBloombergSession().subscribe(list, identity);
+    /**
+     * Forgets a subscription that Bloomberg has rejected or that could not be sent.
+     */
+    private synchronized void forgetRejected(String ticker, CorrelationID id) {
+        SubscriptionHolder sh = subscriptionsByTicker.get(ticker);
+        if (sh != null && sh.id.equals(id)) forget(ticker, sh); //else unsubscribed in the meantime
+    }
+
+    /**
+     * Removes a subscription from the maps and its listeners from the events manager.
+     */
+    private void forget(String ticker, SubscriptionHolder sh) {
+        subscriptionsByTicker.remove(ticker);
+        subscriptionsById.remove(sh.id);
+        subscribedFields.remove(sh.id);
+        if (lastValues != null) lastValues.remove(ticker);
+        sh.staleness.cancel();
+        eventsManager.removeEventListeners(sh.id, sh.fields);
+        eventsManager.removeErrorListener(sh.id);
+    }
+
+    /**
+     * Sends the values of a snapshot of the subscribed securities to the listeners, for the fields that have not
+     * received a real time update yet. The values are queued with the real time updates, so that the listeners are
+     * only called by the dispatching thread and a snapshot can't overwrite a real time update that it has raced with.
+     *
+     * @param snapshot the current values of the fields, as returned by a reference data request
+     */
+    synchronized void seed(ReferenceData snapshot) {
+        for (Table.Cell<String, String, TypedObject> cell : snapshot.get().cellSet()) {
+            SubscriptionHolder sh = subscriptionsByTicker.get(cell.getRowKey());
+            if (sh == null || !RealtimeField.containsIgnoreCase(cell.getColumnKey())) continue;
+            RealtimeField field = RealtimeField.valueOfIgnoreCase(cell.getColumnKey());
+            if (!sh.fields.contains(field)) continue;
+            if (!subscriptionDataQueue.offer(Data.seed(sh.id, field.toString(), cell.getValue().get()))) {
+                //the queue is full: the next real time update will be relayed instead
+                logger.warn("The subscription queue is full: the snapshot of {} {} is dropped", cell.getRowKey(), field);
+            }
         }
     }
 
-    synchronized void subscribe(SubscriptionBuilder subscriptionBuilder) throws IOException {
-      subscribe(subscriptionBuilder, null);
+    /**
+     * @return the last values of the subscribed fields
+     *
+     * @throws UnsupportedOperationException if the cache has not been enabled
+     */
+    synchronized LastValueCache getLastValues() {
+        if (lastValues == null) throw new UnsupportedOperationException("The last values are not cached: see SessionConfiguration#cacheLastValues()");
+        return lastValues;
     }
 
-    private SubscriptionList getNewSubscriptionsList(SubscriptionBuilder builder) {
-        SubscriptionList list = new SubscriptionList();
+    private Map<String, Subscription> getNewSubscriptions(SubscriptionBuilder builder, Session target) {
+        Map<String, Subscription> subscriptions = new LinkedHashMap<>();
         for (String ticker : builder.getSecurities()) {
             if (!subscriptionsByTicker.containsKey(ticker)) { //only include tickers that had no previous subscriptions
-                list.add(getSubscription(ticker, builder));
+                subscriptions.put(ticker, getSubscription(ticker, builder, target));
             }
         }
-        return list;
+        return subscriptions;
     }
 
-    private Subscription getSubscription(String ticker, SubscriptionBuilder builder) {
+    private Subscription getSubscription(String ticker, SubscriptionBuilder builder, Session target) {
         CorrelationID id = session.getNextCorrelationId();
-        SubscriptionHolder sh = new SubscriptionHolder(id);
+        SubscriptionHolder sh = new SubscriptionHolder(id, target, lastValues == null ? null : lastValues.add(ticker));
         logger.debug("Correlation id for {}: {}", ticker, sh.id);
         sh.update(builder);
+        subscribedFields.update(sh.id, sh.fields);
         addListenersToEventsManager(builder, ticker, sh.id);
+        watch(ticker, builder, sh);
         subscriptionsByTicker.put(ticker, sh);
         subscriptionsById.put(sh.id, sh); //THIS IS THE ONLY PLACE WHERE WE WRITE TO THAT MAP
 
         return new Subscription(ticker, sh.getFieldsAsList(), getSubscriptionOptions(sh), sh.id);
     }
 
-    private SubscriptionList getReSubscriptionsList(SubscriptionBuilder builder) {
-        SubscriptionList list = new SubscriptionList();
+    private Map<Session, Map<String, Subscription>> getReSubscriptions(SubscriptionBuilder builder) {
+        Map<Session, Map<String, Subscription>> subscriptions = new LinkedHashMap<>();
         for (String ticker : builder.getSecurities()) {
-            if (subscriptionsByTicker.containsKey(ticker)) { //only include tickers that have previously been subscribed
-                list.add(getReSubscription(ticker, builder));
+            SubscriptionHolder sh = subscriptionsByTicker.get(ticker);
+            if (sh != null) { //only include tickers that have previously been subscribed
+                subscriptions.computeIfAbsent(sh.session, s -> new LinkedHashMap<>()).put(ticker, getReSubscription(ticker, builder, sh));
             }
         }
-        return list;
+        return subscriptions;
     }
 
-    private Subscription getReSubscription(String ticker, SubscriptionBuilder builder) {
-        SubscriptionHolder sh = subscriptionsByTicker.get(ticker);
+    private Subscription getReSubscription(String ticker, SubscriptionBuilder builder, SubscriptionHolder sh) {
         sh.update(builder);
+        subscribedFields.update(sh.id, sh.fields);
         addListenersToEventsManager(builder, ticker, sh.id);
+        watch(ticker, builder, sh);
+
+        return getSubscription(ticker, sh);
+    }
+
+    /**
+     * Starts monitoring the staleness of a subscription if the builder has a StaleDataListener - the thresholds of a
+     * previous builder are replaced.
+     */
+    private void watch(String ticker, SubscriptionBuilder builder, SubscriptionHolder sh) {
+        if (builder.getStaleListener() == null) return;
+        Map<RealtimeField, Duration> thresholds = new EnumMap<>(RealtimeField.class);
+        thresholds.putAll(builder.getStaleThresholds());
+        thresholds.keySet().retainAll(sh.fields);
+        sh.staleness.cancel();
+        sh.staleness = staleness.watch(ticker, builder.getStaleListener(), builder.getStaleThreshold(), thresholds);
+    }
 
+    private Subscription getSubscription(String ticker, SubscriptionHolder sh) {
         return new Subscription(ticker, sh.getFieldsAsList(), getSubscriptionOptions(sh), sh.id);
     }
 
@@ -212,9 +585,14 @@ final class SubscriptionManager {
     }
 
     private void addListenersToEventsManager(SubscriptionBuilder builder, String ticker, CorrelationID id) {
+        ListenerExecutor executor = builder.getListenerExecutor();
         for (RealtimeField field : builder.getFields()) {
             for (DataChangeListener lst : builder.getListeners()) {
-                eventsManager.addEventListener(ticker, id, field, lst);
+                if (executor == null) eventsManager.addEventListener(ticker, id, field, lst);
+                else eventsManager.addEventListener(ticker, id, field, lst, executor);
+            }
+            for (FlyweightListener lst : builder.getFlyweightListeners()) {
+                eventsManager.addFlyweightListener(ticker, id, field, lst);
             }
         }
         eventsManager.onError(id, builder.getErrorListener());
@@ -223,12 +601,30 @@ final class SubscriptionManager {
     private static class SubscriptionHolder {
 
         private final CorrelationID id;
+        /**
+         * The Bloomberg session on which the subscription has been made
+         */
+        private final Session session;
+        /**
+         * Null unless the last values are cached
+         */
+        private final LastValues.Row lastValues;
         private final Set<RealtimeField> fields = EnumSet.noneOf(RealtimeField.class);
         private final Set<DataChangeListener> listeners = new HashSet<>();
         private double throttle = 0;
+        /**
+         * The highest priority of the builders of the subscription
+         */
+        private int recoveryPriority = Integer.MIN_VALUE;
+        /**
+         * Replaced when the thresholds or the fields change - read by the dispatching thread
+         */
+        private volatile StalenessMonitor.Watches staleness = StalenessMonitor.NONE;
 
-        public SubscriptionHolder(CorrelationID id) {
+        public SubscriptionHolder(CorrelationID id, Session session, LastValues.Row lastValues) {
             this.id = id;
+            this.session = session;
+            this.lastValues = lastValues;
         }
 
         List<String> getFieldsAsList() {
@@ -247,6 +643,7 @@ final class SubscriptionManager {
             fields.addAll(builder.getFields());
             listeners.addAll(builder.getListeners());
             throttle = builder.getThrottle();
+            recoveryPriority = Math.max(recoveryPriority, builder.getRecoveryPriority());
         }
     }
 }
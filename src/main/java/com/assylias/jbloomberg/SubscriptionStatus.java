@@ -0,0 +1,26 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+/**
+ * The status of the subscription of a security, as reported by {@link BloombergSession#subscribeAsync(SubscriptionBuilder,
+ * com.bloomberglp.blpapi.Identity)} and {@link BloombergSession#unsubscribe(java.util.Collection)}.
+ */
+public enum SubscriptionStatus {
+    /**
+     * The subscription has been sent to Bloomberg - if Bloomberg rejects it later (for example because the security
+     * is unknown), the error is reported to the {@link SubscriptionErrorListener} of the subscription.
+     */
+    SUBSCRIBED,
+    /**
+     * The cancellation of the subscription has been sent to Bloomberg and the listeners are not informed of the
+     * updates of the security any longer.
+     */
+    UNSUBSCRIBED,
+    /**
+     * The subscription, or its cancellation, could not be sent to Bloomberg.
+     */
+    FAILED
+}
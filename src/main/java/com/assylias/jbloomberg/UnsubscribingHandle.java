@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The handle of the sessions that support {@link BloombergSession#unsubscribe(SubscriptionBuilder)}: closing it
+ * unsubscribes the SubscriptionBuilder, once.
+ */
+final class UnsubscribingHandle implements SubscriptionHandle {
+
+    private final BloombergSession session;
+    private final SubscriptionBuilder subscription;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    UnsubscribingHandle(BloombergSession session, SubscriptionBuilder subscription) {
+        this.session = requireNonNull(session, "session can't be null");
+        this.subscription = requireNonNull(subscription, "subscription can't be null");
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) session.unsubscribe(subscription);
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import com.google.common.base.Preconditions;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * How the thread that dispatches the real time updates of a session waits for the next update, set with
+ * {@link SessionConfiguration#dispatchWaitStrategy(WaitStrategy)}. The strategies trade CPU for latency:
+ * <ul>
+ * <li>{@link #blocking()}: the thread sleeps until an update arrives and is woken up by the thread that receives it,
+ * which costs tens of microseconds per wake-up but no CPU while the session is idle - the default</li>
+ * <li>{@link #sleeping(Duration)}: the thread polls for updates and sleeps for a short pause between two polls</li>
+ * <li>{@link #yielding()}: the thread polls for updates and yields its core to the other threads between two polls</li>
+ * <li>{@link #busySpin(Duration)}: the thread polls for updates without pausing and keeps a core busy, for the
+ * lowest latency, and blocks once the session has been idle for a while</li>
+ * </ul>
+ * The polling strategies only pay off if the dispatching thread has a core of its own: on a machine with fewer cores
+ * than busy threads, the thread that receives the updates waits for the polling thread to be descheduled and the
+ * latency is far worse than with the blocking strategy.
+ * <p>
+ * The latency to the listeners also depends on where they are called: see {@link ListenerExecutor#inline()} and
+ * {@link FlyweightListener}.
+ * <p>
+ * This class is immutable and thread safe.
+ */
+public final class WaitStrategy {
+
+    enum Kind { BLOCKING, SLEEPING, YIELDING, BUSY_SPIN }
+
+    private static final WaitStrategy BLOCKING = new WaitStrategy(Kind.BLOCKING, 0);
+    private static final WaitStrategy YIELDING = new WaitStrategy(Kind.YIELDING, 0);
+    /**
+     * The number of polls before a yielding strategy starts yielding, and between two checks of the time and of the
+     * interrupted flag of a spinning strategy
+     */
+    private static final int SPINS = 100;
+    /**
+     * Thread.onSpinWait(), a hint to the processor that the thread is spinning - a no-op before Java 9
+     */
+    private static final MethodHandle ON_SPIN_WAIT = onSpinWait();
+
+    private final Kind kind;
+    private final long nanos;
+
+    private WaitStrategy(Kind kind, long nanos) {
+        this.kind = kind;
+        this.nanos = nanos;
+    }
+
+    /**
+     * Blocks until an update is available.
+     */
+    public static WaitStrategy blocking() {
+        return BLOCKING;
+    }
+
+    /**
+     * Polls for updates and sleeps for the given pause when there is none. The latency is at least the pause, which is
+     * in practice rounded up by the operating system to tens of microseconds.
+     *
+     * @throws NullPointerException     if pause is null
+     * @throws IllegalArgumentException if pause is not strictly positive
+     */
+    public static WaitStrategy sleeping(Duration pause) {
+        requireNonNull(pause, "pause can't be null");
+        Preconditions.checkArgument(!pause.isNegative() && !pause.isZero(), "pause must be > 0 (was %s)", pause);
+        return new WaitStrategy(Kind.SLEEPING, pause.toNanos());
+    }
+
+    /**
+     * Polls for updates and yields to the other threads when there is none: the thread uses a whole core unless other
+     * threads need it.
+     */
+    public static WaitStrategy yielding() {
+        return YIELDING;
+    }
+
+    /**
+     * Polls for updates without pausing while updates keep arriving: the thread uses a whole core. Once no update has
+     * been received for longer than maxIdle, the thread backs off and blocks until the next update, then spins again.
+     *
+     * @param maxIdle how long the thread spins without receiving an update before it blocks - for example a few
+     *                seconds, to only spin while the market is active, or a very long time to never block
+     *
+     * @throws NullPointerException     if maxIdle is null
+     * @throws IllegalArgumentException if maxIdle is not strictly positive
+     */
+    public static WaitStrategy busySpin(Duration maxIdle) {
+        requireNonNull(maxIdle, "maxIdle can't be null");
+        Preconditions.checkArgument(!maxIdle.isNegative() && !maxIdle.isZero(), "maxIdle must be > 0 (was %s)", maxIdle);
+        long nanos;
+        try {
+            nanos = maxIdle.toNanos();
+        } catch (ArithmeticException e) {
+            nanos = Long.MAX_VALUE;
+        }
+        return new WaitStrategy(Kind.BUSY_SPIN, nanos);
+    }
+
+    Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Waits for the next element of the queue.
+     *
+     * @return the head of the queue, which is removed
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    <T> T take(BlockingQueue<T> queue) throws InterruptedException {
+        switch (kind) {
+            case SLEEPING: return pollOrSleep(queue);
+            case YIELDING: return pollOrYield(queue);
+            case BUSY_SPIN: return pollOrSpin(queue);
+            default: return queue.take();
+        }
+    }
+
+    private <T> T pollOrSleep(BlockingQueue<T> queue) throws InterruptedException {
+        for (T t = queue.poll(); ; t = queue.poll()) {
+            if (t != null) return t;
+            LockSupport.parkNanos(this, nanos);
+            if (Thread.interrupted()) throw new InterruptedException();
+        }
+    }
+
+    private static <T> T pollOrYield(BlockingQueue<T> queue) throws InterruptedException {
+        for (int i = 0; ; i++) {
+            T t = queue.poll();
+            if (t != null) return t;
+            if (i < SPINS) {
+                spinWait();
+            } else {
+                Thread.yield();
+                if (Thread.interrupted()) throw new InterruptedException();
+            }
+        }
+    }
+
+    private <T> T pollOrSpin(BlockingQueue<T> queue) throws InterruptedException {
+        long start = 0;
+        for (int i = 1; ; i++) {
+            T t = queue.poll();
+            if (t != null) return t;
+            spinWait();
+            if (i % SPINS == 0) { //only read the clock once in a while
+                if (Thread.interrupted()) throw new InterruptedException();
+                long now = System.nanoTime();
+                if (start == 0) start = now;
+                else if (now - start > nanos) return queue.take(); //back off until the next update
+            }
+        }
+    }
+
+    private static void spinWait() {
+        try {
+            ON_SPIN_WAIT.invokeExact();
+        } catch (Throwable e) {
+            throw new AssertionError(e); //onSpinWait does not throw
+        }
+    }
+
+    private static MethodHandle onSpinWait() {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            return lookup.findStatic(Thread.class, "onSpinWait", MethodType.methodType(void.class));
+        } catch (ReflectiveOperationException e) {
+            return MethodHandles.constant(Object.class, null).asType(MethodType.methodType(void.class));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return kind == Kind.SLEEPING || kind == Kind.BUSY_SPIN ? kind + "(" + Duration.ofNanos(nanos) + ")" : kind.toString();
+    }
+}
@@ -74,5 +74,14 @@ public class AbstractIntradayRequestBuilderTest {
         public ResultParser<IntradayBarData> getResultParser() {
             throw new UnsupportedOperationException("Not supported yet.");
         }
+        @Override
+        Impl withRange(OffsetDateTime startDateTime, OffsetDateTime endDateTime) {
+            return new Impl(getTicker(), getEventType(), startDateTime, endDateTime);
+        }
+
+        @Override
+        Impl withTicker(String ticker) {
+            return new Impl(ticker, getEventType(), getStartDateTime(), getEndDateTime());
+        }
     }
 }
@@ -7,6 +7,9 @@ package com.assylias.jbloomberg;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -58,4 +61,29 @@ public class AbstractResultParserTest {
         parser.noMoreMessages();
         parser.addMessage(null);
     }
+
+    @Test(expectedExceptions = CancellationException.class)
+    public void testCancel_releasesWaitingThread() throws Throwable {
+        CompletableFuture<Object> result = CompletableFuture.supplyAsync(() -> {
+            try {
+                return parser.getResult();
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        });
+        Thread.sleep(20);
+        parser.cancel();
+        try {
+            result.get(1, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Test
+    public void testCancel_messagesIgnored() {
+        parser.cancel();
+        parser.addMessage(null);
+        parser.noMoreMessages();
+    }
 }
@@ -12,12 +12,26 @@ import mockit.Mocked;
 import mockit.Verifications;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
+import static com.assylias.jbloomberg.SyntheticElement.float64;
+import static com.assylias.jbloomberg.SyntheticElement.int64;
+import static com.assylias.jbloomberg.SyntheticElement.string;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 @Test(groups = "unit")
 public class BloombergEventHandlerTest {
@@ -69,4 +83,135 @@ public class BloombergEventHandlerTest {
             }
         };
     }
+
+    @Test
+    public void testProcessEvent_ResponseAfterRemoveParser(@Mocked final ResultParser<?> parser) throws Exception {
+        final BloombergEventHandler handler = new BloombergEventHandler(new ArrayBlockingQueue<>(1), x -> {});
+        CorrelationID cId = new CorrelationID(1);
+        handler.setParser(cId, parser);
+        assertSame(handler.removeParser(cId), parser);
+        assertNull(handler.removeParser(cId));
+
+        final Message msg = new MockMessage().setMessageType("Message").setToString("Message").setCorrelationID(1);
+        handler.processEvent(new MockEvent(Event.EventType.RESPONSE, Arrays.asList(msg)), null);
+
+        new Verifications() {
+            {
+                parser.addMessage((Message) any); times = 0;
+                parser.noMoreMessages(); times = 0;
+            }
+        };
+    }
+
+    @Test
+    public void testProcessEvent_RequestFailure() throws Exception {
+        JmxSessionMetrics metrics = new JmxSessionMetrics();
+        BloombergEventHandler handler = new BloombergEventHandler(new ArrayBlockingQueue<>(1), x -> {}, metrics, 0);
+        AbstractResultParser<?> parser = new StubResultParser<>(() -> null);
+        handler.setParser(new CorrelationID(1), parser);
+        handler.setParser(new CorrelationID(2), new StubResultParser<>(() -> null));
+        assertEquals(metrics.getPendingResponses(), 2);
+
+        Message status = new MockMessage().setMessageType("RequestFailure").setToString("RequestFailure").setCorrelationID(1);
+        handler.processEvent(new MockEvent(Event.EventType.REQUEST_STATUS, Arrays.asList(status)), null);
+
+        assertEquals(metrics.getPendingResponses(), 1);
+        assertNull(handler.removeParser(new CorrelationID(1)));
+        try {
+            parser.getResult(1, TimeUnit.SECONDS);
+            fail("the parser should have failed");
+        } catch (BloombergException expected) {
+            assertTrue(expected.getMessage().contains("RequestFailure"));
+        }
+    }
+
+    @Test
+    public void testSweep() throws Exception {
+        BloombergEventHandler handler = new BloombergEventHandler(new ArrayBlockingQueue<>(1), x -> {});
+        CompletableFuture<Object> abandoned = new CompletableFuture<>();
+        AbstractResultParser<?> orphan = new StubResultParser<>(() -> null);
+        handler.setParser(new CorrelationID(1), orphan, abandoned);
+        handler.setParser(new CorrelationID(2), new StubResultParser<>(() -> null), new CompletableFuture<>());
+        handler.setParser(new CorrelationID(3), new StubResultParser<>(() -> null));
+
+        assertTrue(handler.sweep().isEmpty());
+        abandoned.cancel(true);
+        assertEquals(handler.sweep(), Arrays.asList(new CorrelationID(1)));
+        assertEquals(handler.getPendingResponses(), 2);
+        try {
+            orphan.getResult(1, TimeUnit.SECONDS);
+            fail("the parser should have been cancelled");
+        } catch (CancellationException expected) {
+        }
+    }
+
+    @Test
+    public void testProcessEvent_SubscriptionDataTraced() throws Exception {
+        BlockingQueue<Data> queue = new ArrayBlockingQueue<>(10);
+        final BloombergEventHandler handler = new BloombergEventHandler(queue, x -> {}, SessionMetrics.NO_OP, 2);
+        CorrelationID cId = new CorrelationID(1);
+        Message msg = SyntheticResponses.marketData(cId, float64("BID", 1), float64("ASK", 2), float64("LAST_PRICE", 3), float64("VOLUME", 4));
+        long before = System.nanoTime();
+        handler.processEvent(new MockEvent(Event.EventType.SUBSCRIPTION_DATA, Arrays.asList(msg)), null);
+
+        List<Data> data = new ArrayList<>();
+        queue.drainTo(data);
+        assertEquals(data.size(), 4);
+        assertFalse(data.get(0).isTraced());
+        assertTrue(data.get(1).isTraced());
+        assertFalse(data.get(2).isTraced());
+        assertTrue(data.get(3).isTraced());
+        for (Data d : data) {
+            assertEquals(d.getCorrelationId(), cId);
+            assertTrue(d.getReceivedNanos() - before >= 0);
+            assertEquals(d.getReceivedNanos(), data.get(0).getReceivedNanos());
+        }
+    }
+
+    @Test
+    public void testProcessEvent_SubscriptionDataFiltered() throws Exception {
+        BlockingQueue<Data> queue = new ArrayBlockingQueue<>(10);
+        final BloombergEventHandler handler = new BloombergEventHandler(queue, x -> {});
+        SubscribedFields subscribed = new SubscribedFields();
+        handler.setSubscribedFields(subscribed);
+        CorrelationID cId = new CorrelationID(1);
+        subscribed.update(cId, EnumSet.of(RealtimeField.ASK, RealtimeField.VOLUME));
+        Message msg = SyntheticResponses.marketData(cId, float64("BID", 1), float64("ASK", 2), float64("NOT_A_FIELD", 3), float64("VOLUME", 4));
+        Message unknown = SyntheticResponses.marketData(new CorrelationID(2), float64("ASK", 5));
+        handler.processEvent(new MockEvent(Event.EventType.SUBSCRIPTION_DATA, Arrays.asList(msg, unknown)), null);
+
+        List<Data> data = new ArrayList<>();
+        queue.drainTo(data);
+        assertEquals(data.size(), 2);
+        assertEquals(data.get(0).getField(), "ASK");
+        assertEquals(data.get(1).getField(), "VOLUME");
+
+        subscribed.remove(cId);
+        handler.processEvent(new MockEvent(Event.EventType.SUBSCRIPTION_DATA, Arrays.asList(msg)), null);
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testProcessEvent_SubscriptionDataRecycled() throws Exception {
+        BlockingQueue<Data> queue = new ArrayBlockingQueue<>(10);
+        final BloombergEventHandler handler = new BloombergEventHandler(queue, x -> {});
+        DataPool pool = new DataPool(1);
+        handler.setDataPool(pool);
+        Data recycled = new Data();
+        pool.release(recycled);
+        CorrelationID cId = new CorrelationID(1);
+        Message msg = SyntheticResponses.marketData(cId, float64("BID", 1.5), int64("VOLUME", 100), string("LAST_TRADE_TIME", "10:00"));
+        handler.processEvent(new MockEvent(Event.EventType.SUBSCRIPTION_DATA, Arrays.asList(msg)), null);
+
+        List<Data> data = new ArrayList<>();
+        queue.drainTo(data);
+        assertEquals(data.size(), 3);
+        assertSame(data.get(0), recycled);
+        assertEquals(data.get(0).getField(), "BID");
+        assertEquals(data.get(0).value().asDouble(), 1.5);
+        assertEquals(data.get(0).getValue(), 1.5);
+        assertEquals(data.get(1).value().asLong(), 100);
+        assertEquals(data.get(1).getValue(), 100L);
+        assertEquals(data.get(2).getValue(), "10:00");
+    }
 }
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import com.bloomberglp.blpapi.Identity;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import static com.assylias.jbloomberg.BloombergSessionPool.Routing.LEAST_IN_FLIGHT;
+import static com.assylias.jbloomberg.BloombergSessionPool.Routing.ROUND_ROBIN;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+@Test(groups = "unit")
+public class BloombergSessionPoolTest {
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testEmpty() {
+        new BloombergSessionPool(Collections.emptyList(), ROUND_ROBIN);
+    }
+
+    public void testRoundRobin() {
+        FakeSession s1 = new FakeSession(), s2 = new FakeSession();
+        BloombergSessionPool pool = new BloombergSessionPool(Arrays.asList(s1, s2), ROUND_ROBIN);
+        for (int i = 0; i < 4; i++) pool.submit(request());
+        assertEquals(s1.requests.size(), 2);
+        assertEquals(s2.requests.size(), 2);
+    }
+
+    public void testLeastInFlight() {
+        FakeSession s1 = new FakeSession(), s2 = new FakeSession();
+        BloombergSessionPool pool = new BloombergSessionPool(Arrays.asList(s1, s2), LEAST_IN_FLIGHT);
+        pool.submit(request());
+        pool.submit(request());
+        //one request in flight on each session - complete the one on s2
+        s2.requests.get(0).complete(null);
+        pool.submit(request()); //round robin would send it to s1
+        assertEquals(s1.requests.size(), 1);
+        assertEquals(s2.requests.size(), 2);
+        assertEquals(pool.getHealth().get(0).getRequestsInFlight(), 1);
+        assertEquals(pool.getHealth().get(1).getRequestsInFlight(), 1);
+    }
+
+    public void testPriorityForwarded() {
+        FakeSession s1 = new FakeSession();
+        BloombergSessionPool pool = new BloombergSessionPool(Arrays.asList(s1), ROUND_ROBIN);
+        pool.submit(request());
+        pool.submit(request(), null, RequestPriority.BULK);
+        assertEquals(s1.priorities, Arrays.asList(RequestPriority.NORMAL, RequestPriority.BULK));
+    }
+
+    public void testDisconnectedSessionSkipped() {
+        FakeSession s1 = new FakeSession(), s2 = new FakeSession();
+        s1.state = SessionState.CONNECTION_DOWN;
+        BloombergSessionPool pool = new BloombergSessionPool(Arrays.asList(s1, s2), ROUND_ROBIN);
+        for (int i = 0; i < 4; i++) pool.submit(request());
+        assertEquals(s1.requests.size(), 0);
+        assertEquals(s2.requests.size(), 4);
+        assertFalse(pool.getHealth().get(0).isConnected());
+        assertEquals(pool.getSessionState(), SessionState.STARTED);
+    }
+
+    public void testFailuresTracked() {
+        FakeSession s1 = new FakeSession();
+        BloombergSessionPool pool = new BloombergSessionPool(Arrays.asList(s1), ROUND_ROBIN);
+        pool.submit(request());
+        s1.requests.get(0).completeExceptionally(new BloombergException("failed"));
+        BloombergSessionPool.SessionHealth health = pool.getHealth().get(0);
+        assertEquals(health.getRequestsSubmitted(), 1);
+        assertEquals(health.getRequestsFailed(), 1);
+        assertEquals(health.getRequestsInFlight(), 0);
+    }
+
+    public void testSubscriptionsPinned() {
+        FakeSession s1 = new FakeSession(), s2 = new FakeSession();
+        BloombergSessionPool pool = new BloombergSessionPool(Arrays.asList(s1, s2), ROUND_ROBIN);
+        DataChangeListener lst = e -> {};
+        pool.subscribe(new SubscriptionBuilder().addSecurity("A").addField(RealtimeField.BID).addListener(lst));
+        pool.subscribe(new SubscriptionBuilder().addSecurity("B").addField(RealtimeField.BID));
+        pool.subscribe(new SubscriptionBuilder().addSecurities(Arrays.asList("A", "B", "C")).addField(RealtimeField.ASK).throttle(1));
+
+        assertEquals(s1.subscriptions.size(), 2);
+        assertEquals(s1.subscriptions.get(0).getSecurities(), Collections.singleton("A"));
+        assertEquals(s1.subscriptions.get(0).getListeners(), Collections.singleton(lst));
+        assertEquals(s1.subscriptions.get(1).getSecurities().size(), 2); //A and C (s1 has fewer subscriptions than s2)
+        assertTrue(s1.subscriptions.get(1).getSecurities().contains("C"));
+        assertEquals(s1.subscriptions.get(1).getThrottle(), 1d);
+        assertEquals(s2.subscriptions.size(), 2);
+        assertEquals(s2.subscriptions.get(1).getSecurities(), Collections.singleton("B"));
+        assertEquals(pool.getHealth().get(0).getSubscriptions(), 2);
+        assertEquals(pool.getHealth().get(1).getSubscriptions(), 1);
+    }
+
+    public void testSubscriptionsSpread() {
+        FakeSession s1 = new FakeSession(), s2 = new FakeSession();
+        BloombergSessionPool pool = new BloombergSessionPool(Arrays.asList(s1, s2), ROUND_ROBIN);
+        pool.subscribe(new SubscriptionBuilder().addSecurities(Arrays.asList("A", "B", "C", "D", "E")).addField(RealtimeField.BID));
+        assertEquals(s1.subscriptions.get(0).getSecurities().size() + s2.subscriptions.get(0).getSecurities().size(), 5);
+        assertEquals(pool.getHealth().get(0).getSubscriptions(), 3);
+        assertEquals(pool.getHealth().get(1).getSubscriptions(), 2);
+    }
+
+    public void testSubscribe_FailureReleasesPins() {
+        FakeSession s1 = new FakeSession(), s2 = new FakeSession();
+        s1.failSubscribe = true;
+        BloombergSessionPool pool = new BloombergSessionPool(Arrays.asList(s1, s2), ROUND_ROBIN);
+        try {
+            pool.subscribe(new SubscriptionBuilder().addSecurities(Arrays.asList("A", "B")).addField(RealtimeField.BID));
+            fail("Expected an exception");
+        } catch (BloombergException expected) { }
+        assertEquals(pool.getHealth().get(0).getSubscriptions(), 0);
+        assertEquals(pool.getHealth().get(1).getSubscriptions(), 0); //s2 was not called
+
+        s1.failSubscribe = false;
+        s2.state = SessionState.CONNECTION_DOWN;
+        pool.subscribe(new SubscriptionBuilder().addSecurity("B").addField(RealtimeField.BID));
+        assertEquals(s1.subscriptions.get(0).getSecurities(), Collections.singleton("B")); //routed again
+    }
+
+    public void testSubscribeAsync_FailedStatusReleasesPin() throws Exception {
+        FakeSession s1 = new FakeSession();
+        s1.failedSecurity = "B";
+        BloombergSessionPool pool = new BloombergSessionPool(Collections.singletonList(s1), ROUND_ROBIN);
+        Map<String, SubscriptionStatus> statuses = pool.subscribeAsync(new SubscriptionBuilder()
+                .addSecurities(Arrays.asList("A", "B")).addField(RealtimeField.BID), null).get();
+        assertEquals(statuses.get("B"), SubscriptionStatus.FAILED);
+        assertEquals(pool.getHealth().get(0).getSubscriptions(), 1);
+    }
+
+    public void testSubscribeWithHandle() {
+        FakeSession s1 = new FakeSession();
+        BloombergSessionPool pool = new BloombergSessionPool(Collections.singletonList(s1), ROUND_ROBIN);
+        SubscriptionHandle handle = pool.subscribeWithHandle(new SubscriptionBuilder().addSecurity("A").addField(RealtimeField.BID));
+        assertEquals(pool.getHealth().get(0).getSubscriptions(), 1);
+        handle.close();
+        handle.close();
+        assertEquals(s1.unsubscriptions.size(), 1);
+        assertEquals(s1.unsubscriptions.get(0).getSecurities(), Collections.singleton("A"));
+        assertEquals(pool.getHealth().get(0).getSubscriptions(), 0);
+    }
+
+    public void testSubscribeWithHandle_UnsubscribeNotSupported() {
+        FakeSession s1 = new FakeSession(); //does not override subscribeWithHandle
+        try {
+            s1.subscribeWithHandle(new SubscriptionBuilder().addSecurity("A").addField(RealtimeField.BID));
+            fail("Expected an UnsupportedOperationException");
+        } catch (UnsupportedOperationException expected) { }
+        assertTrue(s1.subscriptions.isEmpty()); //not subscribed: the handle could not have reverted it
+    }
+
+    public void testStartStop() {
+        FakeSession s1 = new FakeSession(), s2 = new FakeSession();
+        s1.failStart = true;
+        BloombergSessionPool pool = new BloombergSessionPool(Arrays.asList(s1, s2), ROUND_ROBIN);
+        pool.start(); //one session is enough
+        assertTrue(s2.started);
+        pool.stop();
+        assertTrue(s1.stopped && s2.stopped);
+    }
+
+    @Test(expectedExceptions = BloombergException.class)
+    public void testStart_AllFail() {
+        FakeSession s1 = new FakeSession();
+        s1.failStart = true;
+        new BloombergSessionPool(Arrays.asList(s1), ROUND_ROBIN).start();
+    }
+
+    private static ReferenceRequestBuilder request() {
+        return new ReferenceRequestBuilder("IBM US Equity", "PX_LAST");
+    }
+
+    private static class FakeSession implements BloombergSession {
+        private final List<CompletableFuture<?>> requests = new ArrayList<>();
+        private final List<SubscriptionBuilder> subscriptions = new ArrayList<>();
+        private final List<SubscriptionBuilder> unsubscriptions = new ArrayList<>();
+        private final List<RequestPriority> priorities = new ArrayList<>();
+        private volatile SessionState state = SessionState.STARTED;
+        private boolean failStart, failSubscribe, started, stopped;
+        private String failedSecurity;
+
+        @Override public void start() { start(e -> {}); }
+        @Override public void start(Consumer<BloombergException> onStartupFailure) {
+            if (failStart) throw new BloombergException("failed");
+            started = true;
+        }
+        @Override public void stop() { stopped = true; }
+        @Override public CompletableFuture<Identity> authorise(Authorisation authorisation) { return new CompletableFuture<>(); }
+        @Override public <T extends RequestResult> CompletableFuture<T> submit(RequestBuilder<T> request, Identity identity) {
+            return submit(request, identity, RequestPriority.NORMAL);
+        }
+        @Override public <T extends RequestResult> CompletableFuture<T> submit(RequestBuilder<T> request, Identity identity, RequestPriority priority) {
+            priorities.add(priority);
+            CompletableFuture<T> f = new CompletableFuture<>();
+            requests.add(f);
+            return f;
+        }
+        @Override public void subscribe(SubscriptionBuilder subscription, Identity identity) {
+            if (failSubscribe) throw new BloombergException("failed");
+            subscriptions.add(subscription);
+        }
+        @Override public CompletableFuture<Map<String, SubscriptionStatus>> subscribeAsync(SubscriptionBuilder subscription, Identity identity) {
+            subscriptions.add(subscription);
+            Map<String, SubscriptionStatus> statuses = new HashMap<>();
+            for (String s : subscription.getSecurities()) {
+                statuses.put(s, s.equals(failedSecurity) ? SubscriptionStatus.FAILED : SubscriptionStatus.SUBSCRIBED);
+            }
+            return CompletableFuture.completedFuture(statuses);
+        }
+        @Override public CompletableFuture<Map<String, SubscriptionStatus>> unsubscribe(SubscriptionBuilder subscription) {
+            unsubscriptions.add(subscription);
+            Map<String, SubscriptionStatus> statuses = new HashMap<>();
+            for (String s : subscription.getSecurities()) statuses.put(s, SubscriptionStatus.UNSUBSCRIBED);
+            return CompletableFuture.completedFuture(statuses);
+        }
+        @Override public SessionState getSessionState() { return state; }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+@Test(groups = "unit")
+public class BoundedFanOutTest {
+
+    private static List<Integer> keys(int n) {
+        return IntStream.range(0, n).boxed().collect(Collectors.toList());
+    }
+
+    public void testMaxConcurrency() throws Exception {
+        List<CompletableFuture<Integer>> tasks = new ArrayList<>();
+        List<Integer> results = new ArrayList<>();
+        CompletableFuture<Void> done = BoundedFanOut.run(keys(5), 2, k -> {
+            CompletableFuture<Integer> task = new CompletableFuture<>();
+            tasks.add(task);
+            return task;
+        }, (k, r) -> results.add(r));
+        assertEquals(tasks.size(), 2);
+        tasks.get(1).complete(1);
+        assertEquals(tasks.size(), 3);
+        tasks.get(0).complete(0);
+        tasks.get(2).complete(2);
+        tasks.get(3).complete(3);
+        assertEquals(tasks.size(), 5);
+        tasks.get(4).complete(4);
+        assertEquals(results, Arrays.asList(1, 0, 2, 3, 4));
+        assertTrue(done.isDone());
+        done.get();
+    }
+
+    public void testCompletedTasks() throws Exception {
+        AtomicInteger results = new AtomicInteger();
+        BoundedFanOut.run(keys(100_000), 1, CompletableFuture::completedFuture, (k, r) -> results.incrementAndGet())
+                .get(5, TimeUnit.SECONDS);
+        assertEquals(results.get(), 100_000);
+    }
+
+    public void testSubmitterAlwaysThrows_NoStackOverflow() throws Exception {
+        AtomicInteger failures = new AtomicInteger();
+        CompletableFuture<Void> done = BoundedFanOut.run(keys(100_000), 2, k -> {
+            throw new IllegalStateException("submitter failed");
+        }, (k, r) -> fail(), (k, t) -> {
+            assertTrue(t instanceof IllegalStateException);
+            failures.incrementAndGet();
+        });
+        done.get(5, TimeUnit.SECONDS);
+        assertEquals(failures.get(), 100_000);
+    }
+
+    public void testSubmitterThrows_FailFast() throws Exception {
+        AtomicInteger submitted = new AtomicInteger();
+        CompletableFuture<Void> done = BoundedFanOut.run(keys(100_000), 1, k -> {
+            submitted.incrementAndGet();
+            throw new IllegalStateException("submitter failed");
+        }, (k, r) -> fail());
+        try {
+            done.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(submitted.get(), 1);
+    }
+}
@@ -71,6 +71,24 @@ public class DefaultBloombergSessionTest {
         };
     }
 
+    @Test(groups = "unit")
+    public void testStart_isolatedSubscriptions(@Mocked final Session s) throws Exception {
+        new MockBloombergUtils(true);
+
+        SessionConfiguration configuration = new SessionConfiguration().isolateSubscriptions();
+        final DefaultBloombergSession session = new DefaultBloombergSession(new SessionOptions(), x -> {}, configuration);
+        session.start();
+        session.stop();
+        new Verifications() {
+            {
+                s.startAsync();
+                times = 2;
+                s.stop();
+                times = 2;
+            }
+        };
+    }
+
     @Test(groups = "requires-bloomberg")
     public void testStart_allGood() throws Exception {
         final DefaultBloombergSession session = new DefaultBloombergSession();
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import com.bloomberglp.blpapi.Event;
+import com.bloomberglp.blpapi.Message;
+import org.testng.annotations.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+@Test(groups = "unit")
+public class DiagnosticTapTest {
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testCapacity_Invalid() {
+        new DiagnosticTap(0, s -> {}, "tap");
+    }
+
+    public void testDrain_InOrder() {
+        List<String> captured = new CopyOnWriteArrayList<>();
+        DiagnosticTap tap = new DiagnosticTap(4, captured::add, "tap");
+        tap.capture(Event.EventType.RESPONSE, message("msg 1"), 0);
+        tap.capture(Event.EventType.RESPONSE, message("msg 2"), 0);
+        assertEquals(tap.drain(), 2);
+        assertEquals(captured.size(), 2);
+        assertTrue(captured.get(0).endsWith("[RESPONSE] id=[null] msg 1"), captured.get(0));
+        assertTrue(captured.get(1).endsWith("msg 2"), captured.get(1));
+        assertEquals(tap.drain(), 0);
+    }
+
+    public void testDrain_OldestMessagesDropped() {
+        List<String> captured = new CopyOnWriteArrayList<>();
+        DiagnosticTap tap = new DiagnosticTap(3, captured::add, "tap"); //rounded to 4
+        for (int i = 0; i < 10; i++) {
+            tap.capture(Event.EventType.SUBSCRIPTION_DATA, message("msg " + i), 0);
+        }
+        assertEquals(tap.drain(), 4);
+        assertEquals(tap.getDropped(), 6);
+        assertTrue(captured.get(0).endsWith("msg 6"), captured.get(0));
+        assertTrue(captured.get(3).endsWith("msg 9"), captured.get(3));
+    }
+
+    public void testSinkException() {
+        DiagnosticTap tap = new DiagnosticTap(4, s -> { throw new RuntimeException(); }, "tap");
+        tap.capture(Event.EventType.RESPONSE, message("msg 1"), 0);
+        tap.capture(Event.EventType.RESPONSE, message("msg 2"), 0);
+        assertEquals(tap.drain(), 2);
+    }
+
+    public void testBackgroundThread() throws Exception {
+        CountDownLatch latch = new CountDownLatch(3);
+        DiagnosticTap tap = new DiagnosticTap(16, s -> latch.countDown(), "tap");
+        BloombergEventHandler handler = new BloombergEventHandler(new ArrayBlockingQueue<>(1), x -> {});
+        handler.setDiagnosticTap(tap);
+        tap.start();
+        try {
+            handler.processEvent(new MockEvent(Event.EventType.ADMIN, Arrays.asList(message("msg 1"), message("msg 2"))), null);
+            handler.processEvent(new MockEvent(Event.EventType.ADMIN, Arrays.asList(message("msg 3"))), null);
+            assertTrue(latch.await(1, TimeUnit.SECONDS));
+        } finally {
+            tap.stop();
+        }
+    }
+
+    public void testDrain_ReleasesMessages() throws Exception {
+        DiagnosticTap tap = new DiagnosticTap(4, s -> { }, "tap");
+        Message msg = message("msg 1");
+        WeakReference<Message> ref = new WeakReference<>(msg);
+        tap.capture(Event.EventType.PARTIAL_RESPONSE, msg, 0);
+        msg = null;
+        assertEquals(tap.drain(), 1);
+        for (int i = 0; i < 10 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(ref.get());
+    }
+
+    public void testStopped_NoCapture() {
+        List<String> captured = new CopyOnWriteArrayList<>();
+        DiagnosticTap tap = new DiagnosticTap(4, captured::add, "tap");
+        tap.start();
+        tap.stop();
+        tap.capture(Event.EventType.RESPONSE, message("msg 1"), 0);
+        assertEquals(tap.drain(), 0);
+        assertTrue(captured.isEmpty());
+    }
+
+    public void testIdle_ParksUntilCaptured() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        DiagnosticTap tap = new DiagnosticTap(16, s -> latch.countDown(), "idle tap");
+        tap.start();
+        try {
+            Thread.sleep(50);
+            Thread t = Thread.getAllStackTraces().keySet().stream().filter(x -> x.getName().equals("idle tap")).findAny().get();
+            assertEquals(t.getState(), Thread.State.WAITING); //parked without a timeout
+            tap.capture(Event.EventType.ADMIN, message("msg 1"), 0);
+            assertTrue(latch.await(1, TimeUnit.SECONDS));
+        } finally {
+            tap.stop();
+        }
+    }
+
+    private static Message message(String s) {
+        return new MockMessage().setMessageType("Message").setToString(s);
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import com.bloomberglp.blpapi.Identity;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+@Test(groups = "unit")
+public class EventPublisherTest {
+
+    private BloombergSession session;
+    private List<SubscriptionBuilder> subscribed;
+    private int closed;
+    private TestSubscriber subscriber;
+
+    @BeforeMethod
+    public void beforeMethod() {
+        subscribed = new ArrayList<>();
+        closed = 0;
+        subscriber = new TestSubscriber();
+        session = new FakeSession();
+    }
+
+    private DataChangeListener subscribe(Backpressure backpressure) {
+        SubscriptionBuilder builder = new SubscriptionBuilder()
+                .addSecurities(Arrays.asList("A", "B"))
+                .addFields(Arrays.asList(RealtimeField.BID, RealtimeField.ASK))
+                .addListener(e -> { });
+        new EventPublisher(session, builder, backpressure, () -> Runnable::run).subscribe(subscriber);
+        assertEquals(subscribed.size(), 1);
+        assertEquals(subscribed.get(0).getSecurities(), builder.getSecurities());
+        assertEquals(subscribed.get(0).getListeners().size(), 1);
+        return subscribed.get(0).getListeners().iterator().next();
+    }
+
+    private static DataChangeEvent event(String security, String field, double oldValue, double newValue) {
+        return new DataChangeEvent(security, field, TypedObject.of(oldValue), TypedObject.of(newValue));
+    }
+
+    public void testListenerInline() {
+        subscribe(Backpressure.conflate());
+        assertEquals(subscribed.get(0).getListenerExecutor().getKind(), ListenerExecutor.Kind.INLINE);
+    }
+
+    public void testDemand() {
+        DataChangeListener lst = subscribe(Backpressure.buffer(10));
+        lst.dataChanged(event("A", "BID", 1, 2));
+        lst.dataChanged(event("A", "BID", 2, 3));
+        assertTrue(subscriber.received.isEmpty());
+        subscriber.subscription.request(1);
+        assertEquals(subscriber.values(), Arrays.asList(2d));
+        lst.dataChanged(event("B", "BID", 1, 2));
+        subscriber.subscription.request(5);
+        assertEquals(subscriber.values(), Arrays.asList(2d, 3d, 2d));
+        lst.dataChanged(event("B", "ASK", 1, 4)); //3 more requested
+        assertEquals(subscriber.values(), Arrays.asList(2d, 3d, 2d, 4d));
+    }
+
+    public void testConflate() {
+        DataChangeListener lst = subscribe(Backpressure.conflate());
+        lst.dataChanged(event("A", "BID", 1, 2));
+        lst.dataChanged(event("B", "BID", 5, 6));
+        lst.dataChanged(event("A", "BID", 2, 3));
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertEquals(subscriber.received.size(), 2);
+        DataChangeEvent first = subscriber.received.get(0);
+        assertEquals(first.getSource(), "A");
+        assertEquals(first.getOldValue().asDouble(), 1d);
+        assertEquals(first.getNewValue().asDouble(), 3d);
+        assertEquals(subscriber.received.get(1).getSource(), "B");
+        lst.dataChanged(event("A", "BID", 3, 4)); //unbounded demand
+        assertEquals(subscriber.values(), Arrays.asList(3d, 6d, 4d));
+    }
+
+    public void testDrop() {
+        DataChangeListener lst = subscribe(Backpressure.drop());
+        lst.dataChanged(event("A", "BID", 1, 2));
+        subscriber.subscription.request(1);
+        assertTrue(subscriber.received.isEmpty());
+        lst.dataChanged(event("A", "BID", 2, 3));
+        lst.dataChanged(event("A", "BID", 3, 4));
+        assertEquals(subscriber.values(), Arrays.asList(3d));
+    }
+
+    public void testBufferOverflow() {
+        DataChangeListener lst = subscribe(Backpressure.buffer(2));
+        lst.dataChanged(event("A", "BID", 1, 2));
+        lst.dataChanged(event("A", "BID", 2, 3));
+        assertNull(subscriber.error);
+        lst.dataChanged(event("A", "BID", 3, 4));
+        assertTrue(subscriber.error instanceof BloombergException);
+        assertEquals(closed, 1);
+        subscriber.subscription.request(10);
+        assertTrue(subscriber.received.isEmpty());
+    }
+
+    public void testCancel() {
+        DataChangeListener lst = subscribe(Backpressure.conflate());
+        lst.dataChanged(event("A", "BID", 1, 2));
+        subscriber.subscription.cancel();
+        subscriber.subscription.cancel();
+        assertEquals(closed, 1);
+        subscriber.subscription.request(10);
+        lst.dataChanged(event("A", "BID", 2, 3));
+        assertTrue(subscriber.received.isEmpty());
+        assertNull(subscriber.error);
+    }
+
+    public void testCancelInOnSubscribe() {
+        subscriber = new TestSubscriber() {
+            @Override public void onSubscribe(EventFlow.Subscription subscription) {
+                subscription.cancel();
+            }
+        };
+        new EventPublisher(session, new SubscriptionBuilder(), Backpressure.drop()).subscribe(subscriber);
+        assertTrue(subscribed.isEmpty());
+    }
+
+    public void testRequest_NotPositive() {
+        subscribe(Backpressure.conflate());
+        subscriber.subscription.request(0);
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+        assertEquals(closed, 1);
+    }
+
+    public void testOnNextThrows_Cancels() {
+        subscriber = new TestSubscriber() {
+            @Override public void onNext(DataChangeEvent item) {
+                throw new RuntimeException();
+            }
+        };
+        DataChangeListener lst = subscribe(Backpressure.conflate());
+        subscriber.subscription.request(Long.MAX_VALUE);
+        lst.dataChanged(event("A", "BID", 1, 2));
+        assertEquals(closed, 1);
+    }
+
+    public void testOrder_ConcurrentDelivery() throws Exception {
+        int n = 20_000;
+        BlockingQueue<Double> received = new LinkedBlockingQueue<>();
+        EventFlow.Subscription[] subscription = new EventFlow.Subscription[1];
+        new EventPublisher(session, new SubscriptionBuilder(), Backpressure.buffer(n)).subscribe(new TestSubscriber() {
+            @Override public void onSubscribe(EventFlow.Subscription s) {
+                subscription[0] = s;
+            }
+            @Override public void onNext(DataChangeEvent item) {
+                received.add(item.getNewValue().asDouble());
+            }
+        });
+        DataChangeListener lst = subscribed.get(0).getListeners().iterator().next();
+        Thread requester = new Thread(() -> {
+            for (int i = 0; i < n; i += 10) subscription[0].request(10); //delivers concurrently with the listener
+        });
+        requester.start();
+        for (int i = 1; i <= n; i++) lst.dataChanged(event("A", "BID", i - 1, i));
+        requester.join();
+        double last = 0;
+        for (int i = 1; i <= n; i++) {
+            Double value = received.poll(5, TimeUnit.SECONDS);
+            assertEquals(value, last + 1, "out of order");
+            last = value;
+        }
+        subscription[0].cancel();
+    }
+
+    public void testBlockedSubscriber_DoesNotHoldTheListener() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingQueue<Double> received = new LinkedBlockingQueue<>();
+        EventFlow.Subscription[] subscription = new EventFlow.Subscription[1];
+        new EventPublisher(session, new SubscriptionBuilder(), Backpressure.conflate()).subscribe(new TestSubscriber() {
+            @Override public void onSubscribe(EventFlow.Subscription s) {
+                subscription[0] = s;
+                s.request(Long.MAX_VALUE);
+            }
+            @Override public void onNext(DataChangeEvent item) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                received.add(item.getNewValue().asDouble());
+            }
+        });
+        DataChangeListener lst = subscribed.get(0).getListeners().iterator().next();
+        lst.dataChanged(event("A", "BID", 1, 2));
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        lst.dataChanged(event("A", "BID", 2, 3)); //returns although the subscriber is blocked
+        lst.dataChanged(event("A", "BID", 3, 4));
+        assertFalse(received.contains(2d));
+        release.countDown();
+        assertEquals(received.poll(5, TimeUnit.SECONDS), 2d);
+        assertEquals(received.poll(5, TimeUnit.SECONDS), 4d); //conflated, in order
+        subscription[0].cancel();
+    }
+
+    private class FakeSession implements BloombergSession {
+        @Override public void start() { }
+        @Override public void start(Consumer<BloombergException> onStartupFailure) { }
+        @Override public void stop() { }
+        @Override public CompletableFuture<Identity> authorise(Authorisation authorisation) {
+            throw new UnsupportedOperationException();
+        }
+        @Override public <T extends RequestResult> CompletableFuture<T> submit(RequestBuilder<T> request, Identity identity) {
+            throw new UnsupportedOperationException();
+        }
+        @Override public void subscribe(SubscriptionBuilder subscription, Identity identity) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override public SubscriptionHandle subscribeWithHandle(SubscriptionBuilder subscription, Identity identity) {
+            subscribed.add(subscription);
+            return () -> closed++;
+        }
+    }
+
+    private static class TestSubscriber implements EventFlow.Subscriber<DataChangeEvent> {
+        private final List<DataChangeEvent> received = new ArrayList<>();
+        private EventFlow.Subscription subscription;
+        private Throwable error;
+
+        @Override public void onSubscribe(EventFlow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override public void onNext(DataChangeEvent item) {
+            received.add(item);
+        }
+
+        @Override public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override public void onComplete() {
+        }
+
+        List<Double> values() {
+            return received.stream().map(e -> e.getNewValue().asDouble()).collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import com.bloomberglp.blpapi.CorrelationID;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of routing a real time update to the state of its subscription and field in the EventsManager:
+ * the dense per-subscription arrays of {@link ConcurrentConflatedEventsManager} against the previous design, which
+ * interned an (id, field) key in a global map and looked up the listeners in a second map keyed by the interned key.
+ * <p>
+ * The updates do not change the value of the fields, so that they are conflated and the listeners are not called:
+ * only the lookup and the conflation are measured.
+ * <p>
+ * Run with: {@code mvn -P jmh test -Djmh.includes=EventsManagerBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-Djdk.attach.allowAttachSelf"})
+@State(Scope.Thread)
+public class EventsManagerBenchmark {
+
+    private static final RealtimeField[] FIELDS = {RealtimeField.BID, RealtimeField.ASK, RealtimeField.LAST_PRICE, RealtimeField.VOLUME};
+    private static final Double VALUE = 123.45;
+
+    @Param({"100", "3000"})
+    public int subscriptions;
+
+    private CorrelationID[] ids;
+    private ConcurrentConflatedEventsManager denseSlots;
+    private MapOfKeys mapOfKeys;
+    private int next;
+
+    @Setup
+    public void setup() {
+        ids = new CorrelationID[subscriptions];
+        denseSlots = new ConcurrentConflatedEventsManager();
+        mapOfKeys = new MapOfKeys();
+        for (int i = 0; i < subscriptions; i++) {
+            ids[i] = new CorrelationID(i);
+            for (RealtimeField field : FIELDS) {
+                denseSlots.addEventListener("SEC" + i, ids[i], field, e -> { });
+                mapOfKeys.addEventListener(ids[i], field);
+                denseSlots.fireEvent(ids[i], field, VALUE);
+                mapOfKeys.fireEvent(ids[i], field, VALUE);
+            }
+        }
+    }
+
+    @Benchmark
+    public void denseSlots() {
+        int i = next++ & Integer.MAX_VALUE;
+        denseSlots.fireEvent(ids[i % subscriptions], FIELDS[i & 3], VALUE, 0, false);
+    }
+
+    @Benchmark
+    public void mapOfKeys() {
+        int i = next++ & Integer.MAX_VALUE;
+        mapOfKeys.fireEvent(ids[i % subscriptions], FIELDS[i & 3], VALUE);
+    }
+
+    /**
+     * The previous design: an interned key per (id, field), allocated for every update, and a map of listeners.
+     */
+    private static final class MapOfKeys {
+        private static final ConcurrentMap<Key, Key> keys = new ConcurrentHashMap<>();
+        private final ConcurrentMap<Key, State> states = new ConcurrentHashMap<>();
+
+        void addEventListener(CorrelationID id, RealtimeField field) {
+            states.computeIfAbsent(Key.of(id, field), k -> new State());
+        }
+
+        void fireEvent(CorrelationID id, RealtimeField field, Object value) {
+            State state = states.get(Key.of(id, field));
+            if (state == null) return;
+            TypedObject newValue = TypedObject.of(value);
+            synchronized (state) {
+                if (!newValue.equals(state.previousValue)) state.previousValue = newValue;
+            }
+        }
+
+        private static final class State {
+            private TypedObject previousValue;
+        }
+
+        private static final class Key {
+            private final CorrelationID id;
+            private final RealtimeField field;
+            private final int hash;
+
+            static Key of(CorrelationID id, RealtimeField field) {
+                return keys.computeIfAbsent(new Key(id, field), k -> k);
+            }
+
+            private Key(CorrelationID id, RealtimeField field) {
+                this.id = id;
+                this.field = field;
+                this.hash = Objects.hash(id, field);
+            }
+
+            @Override public int hashCode() {
+                return hash;
+            }
+
+            @Override public boolean equals(Object obj) {
+                if (!(obj instanceof Key)) return false;
+                Key other = (Key) obj;
+                return id.equals(other.id) && field == other.field;
+            }
+        }
+    }
+}
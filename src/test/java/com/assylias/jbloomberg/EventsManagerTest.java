@@ -8,10 +8,13 @@ import com.bloomberglp.blpapi.CorrelationID;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
@@ -64,6 +67,179 @@ public class EventsManagerTest {
         assertEquals(evt.getNewValue().asInt(), 1234);
     }
 
+    @Test
+    public void testExecutor_Inline() {
+        List<Thread> threads = new CopyOnWriteArrayList<>();
+        em.addEventListener(ticker, id, field, e -> threads.add(Thread.currentThread()), ListenerExecutor.inline());
+        em.fireEvent(id, field, 1234);
+        assertEquals(threads, Collections.singletonList(Thread.currentThread()));
+    }
+
+    @Test
+    public void testExecutor_NamedAfterSession() throws Exception {
+        em = new ConcurrentConflatedEventsManager(SessionMetrics.NO_OP, ListenerExecutor.pooled(2), "Listeners #7");
+        List<String> threads = new CopyOnWriteArrayList<>();
+        CountDownLatch received = new CountDownLatch(2);
+        DataChangeListener lst = e -> {
+            threads.add(Thread.currentThread().getName());
+            received.countDown();
+        };
+        em.addEventListener(ticker, id, field, lst);
+        em.addEventListener(ticker, id, RealtimeField.BID, lst, ListenerExecutor.dedicated());
+        em.fireEvent(id, field, 1234);
+        em.fireEvent(id, RealtimeField.BID, 1234);
+        assertTrue(received.await(1, TimeUnit.SECONDS));
+        assertEquals(new HashSet<>(threads), new HashSet<>(Arrays.asList("Listeners #7 - 1", "Listeners #7.1 - 1")));
+        em.stop();
+    }
+
+    @Test
+    public void testExecutor_SampledListener() throws Exception {
+        em = new ConcurrentConflatedEventsManager(SessionMetrics.NO_OP, ListenerExecutor.pooled(2), "Listeners #9");
+        List<String> threads = new CopyOnWriteArrayList<>();
+        CountDownLatch received = new CountDownLatch(2);
+        DataChangeListener lst = new SampledListener(e -> {
+            threads.add(Thread.currentThread().getName());
+            received.countDown();
+        }, TimeUnit.MILLISECONDS.toNanos(50));
+        em.addEventListener(ticker, id, field, lst, ListenerExecutor.dedicated());
+        em.fireEvent(id, field, 1234);
+        em.fireEvent(id, field, 1235); //trailing update, at the end of the period
+        assertTrue(received.await(1, TimeUnit.SECONDS));
+        assertEquals(threads, Arrays.asList("Listeners #9 - 1", "Listeners #9 - 1")); //dedicated: the first executor of the session
+        em.stop();
+    }
+
+    @Test
+    public void testExecutor_SameInstanceShared() throws Exception {
+        ListenerExecutor dedicated = ListenerExecutor.dedicated();
+        Set<String> threads = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        CountDownLatch received = new CountDownLatch(4);
+        for (RealtimeField f : Arrays.asList(RealtimeField.BID, RealtimeField.ASK)) {
+            em.addEventListener(ticker, id, f, e -> { threads.add(Thread.currentThread().getName()); received.countDown(); }, dedicated);
+            em.addEventListener(ticker, id, f, e -> { threads.add(Thread.currentThread().getName()); received.countDown(); }, ListenerExecutor.dedicated());
+            em.fireEvent(id, f, 1234);
+        }
+        assertTrue(received.await(1, TimeUnit.SECONDS));
+        assertEquals(threads.size(), 3);
+    }
+
+    @Test
+    public void testExecutor_VirtualThreads() throws Exception {
+        DataChangeListener lst = getDataChangeListener(1);
+        em.addEventListener(ticker, id, field, lst, ListenerExecutor.virtualThreads());
+        em.fireEvent(id, field, 1234);
+        assertTrue(latch.await(1, TimeUnit.SECONDS)); //virtual threads or platform threads, depending on the JVM
+    }
+
+    @Test
+    public void testExecutor_Custom_NotStopped() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            DataChangeListener lst = getDataChangeListener(2);
+            em.addEventListener(ticker, id, field, lst, ListenerExecutor.of(executor));
+            em.fireEvent(id, field, 1234);
+            em.stop();
+            assertFalse(executor.isShutdown());
+            em.fireEvent(id, field, 1235);
+            assertTrue(latch.await(1, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testExecutor_SlowListenerReportedWhileRunning() throws Exception {
+        AtomicInteger slow = new AtomicInteger();
+        em = new ConcurrentConflatedEventsManager(new SessionMetrics() {
+            @Override public void slowListener() { slow.incrementAndGet(); }
+        }, ListenerExecutor.pooled(1), "Listeners #8");
+        CountDownLatch returned = new CountDownLatch(1);
+        em.addEventListener(ticker, id, field, e -> {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (slow.get() == 0 && System.nanoTime() < deadline) Thread.yield();
+            returned.countDown();
+        });
+        em.fireEvent(id, field, 1234);
+        assertTrue(returned.await(10, TimeUnit.SECONDS));
+        Thread.sleep(300); //a few more checks of the watchdog
+        assertEquals(slow.get(), 1); //reported once, while it was running
+        em.stop();
+    }
+
+    @Test
+    public void testExecutor_Stopped() throws Exception {
+        DataChangeListener lst = getDataChangeListener(1);
+        em.addEventListener(ticker, id, field, lst, ListenerExecutor.dedicated());
+        em.stop();
+        em.fireEvent(id, field, 1234); //discarded
+        assertFalse(latch.await(50, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testExecutor_Inline_ListenerThrows() {
+        AtomicInteger calls = new AtomicInteger();
+        em.addEventListener(ticker, id, field, e -> { throw new RuntimeException("test"); }, ListenerExecutor.inline());
+        em.addEventListener(ticker, id, field, e -> calls.incrementAndGet(), ListenerExecutor.inline());
+        em.fireEvent(id, field, 1234);
+        em.fireEvent(id, field, 1235);
+        assertEquals(calls.get(), 2);
+    }
+
+    @Test
+    public void testFlyweight_Inline() {
+        List<String> updates = new CopyOnWriteArrayList<>();
+        List<Thread> threads = new CopyOnWriteArrayList<>();
+        em.addFlyweightListener(ticker, id, field, u -> {
+            updates.add(u.getSecurity() + "," + u.getField() + "," + u.getDouble());
+            threads.add(Thread.currentThread());
+        });
+        em.fireEvent(id, field, 1.5);
+        em.fireEvent(id, field, 1.5); //conflated
+        em.fireEvent(id, field, 2.5);
+        assertEquals(updates, Arrays.asList("TICKER,ASK,1.5", "TICKER,ASK,2.5"));
+        assertEquals(threads.get(0), Thread.currentThread());
+    }
+
+    @Test
+    public void testFlyweight_Unboxed() {
+        List<Object> updates = new CopyOnWriteArrayList<>();
+        em.addFlyweightListener(ticker, id, field, u -> updates.add(u.isNumber() ? u.getLong() : u.getObject()));
+        FieldValue value = new FieldValue();
+        em.fireEvent(id, field, value.set(100L), 0, false);
+        em.fireEvent(id, field, 100L); //conflated: the same value once boxed
+        em.fireEvent(id, field, value.set(101L), 0, false);
+        em.fireEvent(id, field, value.set("A"), 0, false);
+        assertEquals(updates, Arrays.asList(100L, 101L, "A"));
+    }
+
+    @Test
+    public void testFlyweight_WithDataChangeListener() throws Exception {
+        AtomicInteger flyweights = new AtomicInteger();
+        FlyweightListener flyweight = u -> flyweights.incrementAndGet();
+        em.addFlyweightListener(ticker, id, field, flyweight);
+        em.fireEvent(id, field, 1234);
+        em.addEventListener(ticker, id, field, getDataChangeListener(1));
+        em.fireEvent(id, field, 1235);
+        assertTrue(latch.await(100, TimeUnit.MILLISECONDS));
+        assertEquals(evt.getOldValue().asInt(), 1234); //the value only seen by the flyweight listener
+        assertEquals(evt.getNewValue().asInt(), 1235);
+        assertEquals(flyweights.get(), 2);
+
+        assertFalse(em.removeFlyweightListener(id, field, flyweight)); //the DataChangeListener is left
+        em.fireEvent(id, field, 1236);
+        assertEquals(flyweights.get(), 2);
+    }
+
+    @Test
+    public void testFlyweight_Remove() {
+        FlyweightListener flyweight = u -> { };
+        em.addFlyweightListener(ticker, id, field, flyweight);
+        em.addFlyweightListener(ticker, id, field, flyweight);
+        assertTrue(em.removeFlyweightListener(id, field, flyweight));
+        assertFalse(em.removeFlyweightListener(id, field, flyweight));
+    }
+
     @Test
     public void testFire_SameValueTwiceSentOnce() throws Exception {
         DataChangeListener lst = getDataChangeListener(2);
@@ -76,6 +252,55 @@ public class EventsManagerTest {
         assertEquals(evt.getNewValue().asInt(), 1234);
     }
 
+    @Test
+    public void testRemoveEventListener() throws Exception {
+        List<DataChangeEvent> first = new CopyOnWriteArrayList<>();
+        CountDownLatch received = new CountDownLatch(2);
+        DataChangeListener lst1 = first::add;
+        DataChangeListener lst2 = e -> received.countDown();
+        em.addEventListener(ticker, id, field, lst1);
+        em.addEventListener(ticker, id, field, lst2);
+
+        assertFalse(em.removeEventListener(id, field, lst1)); //lst2 still listening
+        assertFalse(em.removeEventListener(id, field, lst1)); //already removed
+        em.fireEvent(id, field, 1234);
+        assertTrue(em.removeEventListener(id, field, lst2));
+        em.fireEvent(id, field, 5678);
+        assertFalse(received.await(100, TimeUnit.MILLISECONDS));
+        assertEquals(received.getCount(), 1);
+        assertTrue(first.isEmpty());
+    }
+
+    @Test
+    public void testRemoveEventListeners() throws Exception {
+        DataChangeListener lst = getDataChangeListener(1);
+        em.addEventListener(ticker, id, field, lst);
+        em.removeEventListeners(id, Collections.singleton(field));
+        em.fireEvent(id, field, 1234);
+        assertFalse(latch.await(10, TimeUnit.MILLISECONDS));
+        assertFalse(em.removeEventListener(id, field, lst));
+    }
+
+    @Test
+    public void testSeed_NoValueYet() throws Exception {
+        DataChangeListener lst = getDataChangeListener(1);
+        em.addEventListener(ticker, id, field, lst);
+        em.seedEvent(id, field, 1234);
+        assertTrue(latch.await(100, TimeUnit.MILLISECONDS));
+        assertNull(evt.getOldValue());
+        assertEquals(evt.getNewValue().asInt(), 1234);
+    }
+
+    @Test
+    public void testSeed_AfterRealtimeValue() throws Exception {
+        DataChangeListener lst = getDataChangeListener(2);
+        em.addEventListener(ticker, id, field, lst);
+        em.fireEvent(id, field, 1234);
+        em.seedEvent(id, field, 1000); //older than the real time value: ignored
+        assertFalse(latch.await(50, TimeUnit.MILLISECONDS));
+        assertEquals(evt.getNewValue().asInt(), 1234);
+    }
+
     //TODO: it seems that the order of events is not preserved which could be an issue in case of two successive
     //data points on the same security
     //The problem is that the current setup does not allow to strongly guarantee the order and the solution is probably
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import org.testng.annotations.Test;
+
+import static com.assylias.jbloomberg.SyntheticElement.float64;
+import static com.assylias.jbloomberg.SyntheticElement.int32;
+import static com.assylias.jbloomberg.SyntheticElement.int64;
+import static com.assylias.jbloomberg.SyntheticElement.string;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+@Test(groups = "unit")
+public class FieldValueTest {
+
+    public void testSet_Element() {
+        FieldValue value = new FieldValue();
+        assertEquals(value.set(float64("BID", 1.5)).toObject(), 1.5);
+        assertEquals(value.set(int64("VOLUME", 1L << 40)).toObject(), 1L << 40);
+        assertEquals(value.set(int32("SIZE", 10)).toObject(), 10);
+        assertEquals(value.set(string("TIME", "10:00")).toObject(), "10:00");
+        assertEquals(value.set(float64("BID", 1.5)).toObject(), 1.5); //overwrites the string
+    }
+
+    public void testNumbers() {
+        FieldValue value = new FieldValue();
+        assertTrue(value.set(1.5).isNumber());
+        assertEquals(value.asDouble(), 1.5);
+        assertEquals(value.asLong(), 1);
+        assertEquals(value.set(3).asDouble(), 3d);
+        assertTrue(value.set((Object) 2.5f).isNumber());
+        assertEquals(value.asDouble(), 2.5);
+        assertFalse(value.set("A").isNumber());
+        assertFalse(value.clear().isNumber());
+    }
+
+    @Test(expectedExceptions = ClassCastException.class)
+    public void testNotNumber() {
+        new FieldValue().set("A").asDouble();
+    }
+
+    public void testSet_ObjectUnboxed() {
+        assertTrue(new FieldValue().set((Object) 1.5).isSame(new FieldValue().set(1.5)));
+        assertTrue(new FieldValue().set((Object) 2L).isSame(new FieldValue().set(2L)));
+        assertTrue(new FieldValue().set((Object) 3).isSame(new FieldValue().set(3)));
+    }
+
+    public void testIsSame_LikeEquals() {
+        assertTrue(new FieldValue().set(Double.NaN).isSame(new FieldValue().set(0d / 0d)));
+        assertFalse(new FieldValue().set(0d).isSame(new FieldValue().set(-0d)));
+        assertFalse(new FieldValue().set(1d).isSame(new FieldValue().set(1L))); //a Double is not equal to a Long
+        assertFalse(new FieldValue().set(1L).isSame(new FieldValue().set(1)));
+        assertTrue(new FieldValue().set("A").isSame(new FieldValue().set(new String("A"))));
+        assertFalse(new FieldValue().set("A").isSame(new FieldValue().set("B")));
+    }
+
+    public void testCopy() {
+        FieldValue value = new FieldValue().set(1.5);
+        FieldValue copy = new FieldValue().set(value);
+        value.set(2.5);
+        assertEquals(copy.toObject(), 1.5);
+    }
+
+    public void testEmpty() {
+        FieldValue value = new FieldValue();
+        assertTrue(value.isEmpty());
+        assertNull(value.toObject());
+        assertFalse(value.set(1).isEmpty());
+        assertTrue(value.clear().isEmpty());
+    }
+}
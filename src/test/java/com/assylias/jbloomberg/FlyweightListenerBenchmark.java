@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import com.bloomberglp.blpapi.CorrelationID;
+import com.bloomberglp.blpapi.Event;
+import com.bloomberglp.blpapi.Identity;
+import com.bloomberglp.blpapi.Message;
+import com.bloomberglp.blpapi.Session;
+import com.bloomberglp.blpapi.SubscriptionList;
+import mockit.Mock;
+import mockit.MockUp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the dispatch of a real time update that changes the value of a field, from the EventsManager to a
+ * listener: a {@link FlyweightListener}, which receives a reused {@link RealtimeUpdate} in the dispatching thread,
+ * against a {@link DataChangeListener}, which receives a new DataChangeEvent in the listeners pool. The values are
+ * unboxed, as they are when they reach the EventsManager.
+ * <p>
+ * The end to end mode follows a flyweight update from the event handler that receives the SUBSCRIPTION_DATA event to
+ * the listener: the field is converted and queued by {@link BloombergEventHandler#processEvent}, then taken from the
+ * queue and dispatched by the SubscriptionManager, which updates the last values and the staleness monitor before
+ * calling the listener. The benchmark thread plays the dispatching thread of the manager.
+ * <p>
+ * Run with the GC profiler to see the allocation rate of each mode - the flyweight and end to end modes allocate 0
+ * bytes/op:
+ * {@code mvn -P jmh test -Djmh.includes=FlyweightListenerBenchmark -Djmh.args="-prof gc"}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-Djdk.attach.allowAttachSelf"})
+@State(Scope.Thread)
+public class FlyweightListenerBenchmark {
+
+    private static final FieldValue[] VALUES = {new FieldValue().set(123.45), new FieldValue().set(123.46)};
+    private static final CorrelationID ID = new CorrelationID(0);
+
+    private ConcurrentConflatedEventsManager flyweight;
+    private ConcurrentConflatedEventsManager dataChange;
+    private int next;
+
+    @Setup
+    public void setup(Blackhole bh) {
+        flyweight = new ConcurrentConflatedEventsManager();
+        flyweight.addFlyweightListener("SEC", ID, RealtimeField.BID, u -> bh.consume(u.getDouble()));
+        dataChange = new ConcurrentConflatedEventsManager();
+        dataChange.addEventListener("SEC", ID, RealtimeField.BID, e -> bh.consume(e.getNewValue().asDouble()));
+    }
+
+    @Benchmark
+    public void flyweight() {
+        flyweight.fireEvent(ID, RealtimeField.BID, VALUES[next++ & 1], 0, false);
+    }
+
+    @Benchmark
+    public void dataChangeEvent() {
+        dataChange.fireEvent(ID, RealtimeField.BID, VALUES[next++ & 1], 0, false);
+    }
+
+    @Benchmark
+    public void endToEnd(EndToEnd e) {
+        e.handler.processEvent(e.events[next++ & 1], null);
+        e.manager.dispatch(e.queue.poll());
+    }
+
+    /**
+     * A subscription of a SubscriptionManager with a flyweight listener, and the event handler that feeds it.
+     */
+    @State(Scope.Thread)
+    public static class EndToEnd {
+
+        private DefaultBloombergSession session;
+        private SubscriptionManager manager;
+        private BloombergEventHandler handler;
+        /**
+         * The queue of the event handler - the manager is given another queue, which stays empty
+         */
+        private final BlockingQueue<Data> queue = new ArrayBlockingQueue<>(16);
+        private Event[] events;
+
+        @Setup
+        public void setup(Blackhole bh) throws IOException {
+            Sessions.mockStartedSession();
+            Sessions.resetCounter(); //the subscription gets the first correlation id
+            new MockUp<Session>() {
+                @Mock
+                public void subscribe(SubscriptionList list, Identity identity) { /* sent */ }
+            };
+            SubscribedFields subscribedFields = new SubscribedFields();
+            DataPool pool = new DataPool(16);
+            manager = new SubscriptionManager(new ArrayBlockingQueue<>(1), new ConcurrentConflatedEventsManager(), SessionMetrics.NO_OP,
+                    new SubscriptionBatcher(Integer.MAX_VALUE, Double.POSITIVE_INFINITY, "Benchmark Subscriptions"), subscribedFields);
+            manager.cacheLastValues();
+            manager.recycleData(pool);
+            session = new DefaultBloombergSession();
+            manager.start(session);
+            manager.subscribe(new SubscriptionBuilder().addSecurity("SEC").addField(RealtimeField.BID)
+                    .addFlyweightListener(u -> bh.consume(u.getDouble())));
+            handler = new BloombergEventHandler(queue, s -> { });
+            handler.setSubscribedFields(subscribedFields);
+            handler.setDataPool(pool);
+            events = new Event[] {
+                event(SyntheticResponses.marketData(ID, SyntheticElement.float64("BID", 123.45))),
+                event(SyntheticResponses.marketData(ID, SyntheticElement.float64("BID", 123.46)))
+            };
+        }
+
+        @TearDown
+        public void tearDown() {
+            manager.stop(session);
+        }
+
+        /**
+         * @return a SUBSCRIPTION_DATA event whose iterator is reused - the events are allocated by the Bloomberg API,
+         *         not by the library
+         */
+        private static Event event(Message message) {
+            Replay replay = new Replay(message);
+            return new MockEvent(Event.EventType.SUBSCRIPTION_DATA, Collections.singletonList(message)) {
+                @Override
+                public Iterator<Message> iterator() {
+                    return replay.reset();
+                }
+            };
+        }
+    }
+
+    private static final class Replay implements Iterator<Message> {
+
+        private final Message message;
+        private boolean hasNext;
+
+        Replay(Message message) {
+            this.message = message;
+        }
+
+        Replay reset() {
+            hasNext = true;
+            return this;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return hasNext;
+        }
+
+        @Override
+        public Message next() {
+            if (!hasNext) throw new NoSuchElementException();
+            hasNext = false;
+            return message;
+        }
+    }
+}
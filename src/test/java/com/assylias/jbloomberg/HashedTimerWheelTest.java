@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+@Test(groups = "unit")
+public class HashedTimerWheelTest {
+
+    private HashedTimerWheel wheel;
+
+    @BeforeMethod
+    public void beforeMethod() {
+        wheel = new HashedTimerWheel(1, TimeUnit.MILLISECONDS, 8, "test");
+    }
+
+    @AfterMethod
+    public void afterMethod() {
+        wheel.stop();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testTick_Zero() {
+        new HashedTimerWheel(0, TimeUnit.MILLISECONDS, 8, "test");
+    }
+
+    public void testOrder() throws Exception {
+        List<Integer> expired = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        //30ms is more than one turn of the wheel
+        wheel.schedule(() -> { expired.add(30); done.countDown(); }, 30, TimeUnit.MILLISECONDS);
+        wheel.schedule(() -> { expired.add(5); done.countDown(); }, 5, TimeUnit.MILLISECONDS);
+        wheel.schedule(() -> { expired.add(15); done.countDown(); }, 15, TimeUnit.MILLISECONDS);
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals(expired, Arrays.asList(5, 15, 30));
+    }
+
+    public void testDeadline() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        long start = System.nanoTime();
+        wheel.schedule(done::countDown, 50, TimeUnit.MILLISECONDS);
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    public void testCancel() throws Exception {
+        CountDownLatch cancelled = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        HashedTimerWheel.Timeout t = wheel.schedule(cancelled::countDown, 10, TimeUnit.MILLISECONDS);
+        wheel.schedule(done::countDown, 20, TimeUnit.MILLISECONDS);
+        assertTrue(t.cancel());
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals(cancelled.getCount(), 1);
+        assertTrue(t.cancel());
+    }
+
+    public void testCancel_Expired() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        HashedTimerWheel.Timeout t = wheel.schedule(done::countDown, 1, TimeUnit.MILLISECONDS);
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertFalse(t.cancel());
+    }
+
+    public void testTaskThrows() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        wheel.schedule(() -> { throw new RuntimeException(); }, 1, TimeUnit.MILLISECONDS);
+        wheel.schedule(done::countDown, 5, TimeUnit.MILLISECONDS);
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import com.bloomberglp.blpapi.Identity;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+@Test(groups = "unit")
+public class IntradayRequestsTest {
+
+    private static final OffsetDateTime START = OffsetDateTime.of(2020, 1, 6, 9, 0, 0, 0, ZoneOffset.UTC);
+
+    public void testSplit() {
+        assertEquals(IntradayRequests.split(START, START, Duration.ofHours(1)), Arrays.asList(START));
+        assertEquals(IntradayRequests.split(START, START.plusMinutes(150), Duration.ofHours(1)),
+                     Arrays.asList(START, START.plusHours(1), START.plusHours(2)));
+        assertEquals(IntradayRequests.split(START, START.plusHours(2), Duration.ofHours(1)),
+                     Arrays.asList(START, START.plusHours(1)));
+    }
+
+    public void testSingleWindow() {
+        FakeSession session = new FakeSession();
+        IntradayTickRequestBuilder request = new IntradayTickRequestBuilder("IBM US Equity", START, START.plusMinutes(30));
+        IntradayRequests.submitChunked(session, request, Duration.ofHours(1), 2);
+        assertEquals(session.requests.size(), 1);
+        assertTrue(session.requests.get(0) == request);
+    }
+
+    public void testTicks_ConcurrencyAndStitching() throws Exception {
+        FakeSession session = new FakeSession();
+        IntradayTickRequestBuilder request = new IntradayTickRequestBuilder("IBM US Equity", START, START.plusMinutes(150));
+        CompletableFuture<IntradayTickData> result = IntradayRequests.submitChunked(session, request, Duration.ofHours(1), 2);
+        assertEquals(session.requests.size(), 2);
+
+        IntradayTickData chunk1 = new IntradayTickData("IBM US Equity");
+        chunk1.add(START.plusHours(1), "value", 10); //the end of the first window is inclusive: must not be counted twice
+        chunk1.add(START.plusHours(1), "value", 11);
+        chunk1.add(START.plusHours(1).minusSeconds(1), "value", 9);
+        session.futures.get(1).complete(chunk1);
+        assertEquals(session.requests.size(), 3);
+
+        IntradayTickData chunk0 = new IntradayTickData("IBM US Equity");
+        chunk0.add(START, "value", 1);
+        chunk0.add(START.plusHours(1), "value", 10);
+        chunk0.addSecurityError("IBM US Equity");
+        session.futures.get(0).complete(chunk0);
+        assertFalse(result.isDone());
+
+        IntradayTickData chunk2 = new IntradayTickData("IBM US Equity");
+        chunk2.add(START.plusMinutes(150), "value", 20);
+        session.futures.get(2).complete(chunk2);
+
+        AbstractIntradayRequestBuilder<?> second = (AbstractIntradayRequestBuilder<?>) session.requests.get(1);
+        assertEquals(second.getStartDateTime(), START.plusHours(1));
+        assertEquals(second.getEndDateTime(), START.plusHours(2));
+
+        IntradayTickData ticks = result.get();
+        assertEquals(ticks.getSecurityErrors(), chunk0.getSecurityErrors());
+        List<Integer> values = new ArrayList<>();
+        ticks.forField(IntradayTickField.VALUE).values().forEach(v -> values.add(v.asInt()));
+        assertEquals(values, Arrays.asList(1, 9, 10, 11, 20));
+    }
+
+    public void testBars_WindowAlignedOnPeriod() throws Exception {
+        FakeSession session = new FakeSession();
+        IntradayBarRequestBuilder request = new IntradayBarRequestBuilder("IBM US Equity", START, START.plusHours(2))
+                .period(45, TimeUnit.MINUTES)
+                .fillInitialBar();
+        CompletableFuture<IntradayBarData> result = IntradayRequests.submitChunked(session, request, Duration.ofHours(1), 5);
+        assertEquals(session.requests.size(), 2); //window rounded to 90 minutes
+        AbstractIntradayRequestBuilder<?> second = (AbstractIntradayRequestBuilder<?>) session.requests.get(1);
+        assertEquals(second.getStartDateTime(), START.plusMinutes(90));
+        assertTrue(session.requests.get(0).toString().contains("fillInitialBar=true"));
+        assertTrue(second.toString().contains("fillInitialBar=false"));
+
+        IntradayBarData chunk0 = new IntradayBarData("IBM US Equity");
+        chunk0.add(START, "close", 1d);
+        chunk0.add(START.plusMinutes(45), "close", 2d);
+        chunk0.add(START.plusMinutes(90), "close", 0d); //belongs to the second window
+        IntradayBarData chunk1 = new IntradayBarData("IBM US Equity");
+        chunk1.add(START.plusMinutes(90), "close", 3d);
+        session.futures.get(0).complete(chunk0);
+        session.futures.get(1).complete(chunk1);
+
+        IntradayBarData bars = result.get();
+        assertEquals(bars.forField(IntradayBarField.CLOSE).get().size(), 3);
+        assertEquals(bars.forDate(START.plusMinutes(90)).forField(IntradayBarField.CLOSE).asDouble(), 3d);
+    }
+
+    public void testFailure() throws Exception {
+        FakeSession session = new FakeSession();
+        IntradayTickRequestBuilder request = new IntradayTickRequestBuilder("IBM US Equity", START, START.plusHours(4));
+        CompletableFuture<IntradayTickData> result = IntradayRequests.submitChunked(session, request, Duration.ofHours(1), 2);
+        session.futures.get(0).completeExceptionally(new BloombergException("failed"));
+        assertTrue(result.isCompletedExceptionally());
+        assertTrue(session.futures.get(1).isCancelled());
+        assertEquals(session.requests.size(), 2); //no more requests once one has failed
+        try {
+            result.get();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof BloombergException);
+        }
+    }
+
+    public void testCancel() {
+        FakeSession session = new FakeSession();
+        IntradayTickRequestBuilder request = new IntradayTickRequestBuilder("IBM US Equity", START, START.plusHours(4));
+        CompletableFuture<IntradayTickData> result = IntradayRequests.submitChunked(session, request, Duration.ofHours(1), 2);
+        result.cancel(true);
+        assertTrue(session.futures.get(0).isCancelled());
+        assertTrue(session.futures.get(1).isCancelled());
+        assertEquals(session.requests.size(), 2);
+    }
+
+    public void testSubmitAll() throws Exception {
+        FakeSession session = new FakeSession();
+        IntradayBarRequestBuilder template = new IntradayBarRequestBuilder("ignored", START, START.plusHours(1)).period(5, TimeUnit.MINUTES);
+        List<String> reported = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        CompletableFuture<Map<String, IntradayBarData>> result = IntradayRequests.submitAll(session, template,
+                Arrays.asList("A", "B", "C", "A"), 2, (s, r, e) -> {
+                    reported.add(s);
+                    if (e != null) errors.add(e);
+                });
+        assertEquals(session.requests.size(), 2); //at most 2 at the same time
+
+        session.futures.get(1).completeExceptionally(new BloombergException("failed"));
+        assertEquals(session.requests.size(), 3);
+        session.futures.get(2).complete(new IntradayBarData("C"));
+        assertFalse(result.isDone());
+        session.futures.get(0).complete(new IntradayBarData("A"));
+
+        assertEquals(session.requests.size(), 3); //duplicates are only requested once
+        assertEquals(((AbstractIntradayRequestBuilder<?>) session.requests.get(2)).getTicker(), "C");
+        assertTrue(session.requests.get(2).toString().contains("period=5"));
+        assertEquals(reported, Arrays.asList("B", "C", "A"));
+        assertEquals(errors.size(), 1);
+        assertTrue(errors.get(0) instanceof BloombergException);
+        assertEquals(new ArrayList<>(result.get().keySet()), Arrays.asList("A", "C")); //input order, failures excluded
+    }
+
+    public void testSubmitAll_ListenerException() throws Exception {
+        FakeSession session = new FakeSession();
+        IntradayTickRequestBuilder template = new IntradayTickRequestBuilder("ignored", START, START.plusHours(1));
+        CompletableFuture<Map<String, IntradayTickData>> result = IntradayRequests.submitAll(session, template,
+                Arrays.asList("A", "B"), 1, (s, r, e) -> { throw new RuntimeException(); });
+        session.futures.get(0).complete(new IntradayTickData("A"));
+        session.futures.get(1).complete(new IntradayTickData("B"));
+        assertEquals(result.get().size(), 2);
+    }
+
+    public void testSubmitAll_Cancel() {
+        FakeSession session = new FakeSession();
+        IntradayTickRequestBuilder template = new IntradayTickRequestBuilder("ignored", START, START.plusHours(1));
+        CompletableFuture<Map<String, IntradayTickData>> result = IntradayRequests.submitAll(session, template,
+                Arrays.asList("A", "B", "C"), 2);
+        result.cancel(true);
+        assertTrue(session.futures.get(0).isCancelled());
+        assertTrue(session.futures.get(1).isCancelled());
+        assertEquals(session.requests.size(), 2);
+    }
+
+    private static class FakeSession implements BloombergSession {
+        private final List<RequestBuilder<?>> requests = new ArrayList<>();
+        private final List<CompletableFuture<Object>> futures = new ArrayList<>();
+
+        @Override public void start() { }
+        @Override public void start(Consumer<BloombergException> onStartupFailure) { }
+        @Override public void stop() { }
+        @Override public CompletableFuture<Identity> authorise(Authorisation authorisation) { return new CompletableFuture<>(); }
+        @Override public void subscribe(SubscriptionBuilder subscription, Identity identity) { }
+
+        @SuppressWarnings("unchecked")
+        @Override public <T extends RequestResult> CompletableFuture<T> submit(RequestBuilder<T> request, Identity identity) {
+            CompletableFuture<Object> f = new CompletableFuture<>();
+            requests.add(request);
+            futures.add(f);
+            return (CompletableFuture<T>) (CompletableFuture<?>) f;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import com.bloomberglp.blpapi.CorrelationID;
+import com.bloomberglp.blpapi.Event;
+import org.testng.annotations.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.assylias.jbloomberg.BloombergRequestType.HISTORICAL_DATA;
+import static com.assylias.jbloomberg.BloombergServiceType.REFERENCE_DATA;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+@Test(groups = "unit")
+public class JmxSessionMetricsTest {
+
+    public void testRequests() {
+        JmxSessionMetrics metrics = new JmxSessionMetrics();
+        metrics.requestStarted(REFERENCE_DATA, HISTORICAL_DATA);
+        metrics.requestStarted(REFERENCE_DATA, HISTORICAL_DATA);
+        assertEquals(metrics.getRequestsInFlight(), Collections.singletonMap("REFERENCE_DATA", 2));
+
+        metrics.requestCompleted(REFERENCE_DATA, HISTORICAL_DATA, 2_000_000, true);
+        metrics.requestCompleted(REFERENCE_DATA, HISTORICAL_DATA, 4_000_000, false);
+        assertTrue(metrics.getRequestsInFlight().isEmpty());
+        assertEquals(metrics.getFailedRequests(), Collections.singletonMap("HISTORICAL_DATA", 1L));
+        SessionMetricsMXBean.Latency latency = metrics.getRequestLatencies().get("HISTORICAL_DATA");
+        assertEquals(latency.getCount(), 2);
+        assertEquals(latency.getMean(), 3_000d);
+        assertEquals(latency.getMax(), 4_000d);
+    }
+
+    public void testQueueDepth() {
+        JmxSessionMetrics metrics = new JmxSessionMetrics();
+        metrics.subscriptionQueueDepth(10);
+        metrics.subscriptionQueueDepth(3);
+        assertEquals(metrics.getSubscriptionQueueDepth(), 3);
+        assertEquals(metrics.getMaxSubscriptionQueueDepth(), 10);
+    }
+
+    public void testEventHandler() {
+        JmxSessionMetrics metrics = new JmxSessionMetrics();
+        BloombergEventHandler handler = new BloombergEventHandler(new ArrayBlockingQueue<>(1), x -> {}, metrics, 0);
+        handler.processEvent(new MockEvent(Event.EventType.ADMIN, Collections.emptyList()), null);
+        handler.processEvent(new MockEvent(Event.EventType.ADMIN, Collections.emptyList()), null);
+        handler.processEvent(new MockEvent(Event.EventType.TIMEOUT, Collections.emptyList()), null);
+        assertEquals(metrics.getEventCounts().get("ADMIN"), Long.valueOf(2));
+        assertEquals(metrics.getEventCounts().get("TIMEOUT"), Long.valueOf(1));
+    }
+
+    public void testListeners() throws Exception {
+        JmxSessionMetrics metrics = new JmxSessionMetrics();
+        EventsManager em = new ConcurrentConflatedEventsManager(metrics);
+        CountDownLatch latch = new CountDownLatch(1);
+        CorrelationID id = new CorrelationID(0);
+        em.addEventListener("TICKER", id, RealtimeField.ASK, e -> latch.countDown());
+        em.fireEvent(id, RealtimeField.ASK, 1234);
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        for (int i = 0; i < 100 && metrics.getListenerExecutionTimes().getCount() == 0; i++) {
+            Thread.sleep(10); //the metric is recorded after the listener returns
+        }
+        assertEquals(metrics.getListenerExecutionTimes().getCount(), 1);
+        assertEquals(metrics.getSlowListeners(), 0);
+    }
+
+    public void testTickLatencies() throws Exception {
+        JmxSessionMetrics metrics = new JmxSessionMetrics();
+        EventsManager em = new ConcurrentConflatedEventsManager(metrics);
+        CountDownLatch latch = new CountDownLatch(2);
+        CorrelationID id = new CorrelationID(0);
+        em.addEventListener("TICKER", id, RealtimeField.ASK, e -> latch.countDown());
+        em.fireEvent(id, RealtimeField.ASK, 1234, System.nanoTime(), true);
+        em.fireEvent(id, RealtimeField.ASK, 1235, System.nanoTime(), false);
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        assertEquals(metrics.getTickLatencies().get("CONFLATED").getCount(), 1);
+        assertEquals(metrics.getTickLatencies().get("LISTENER_STARTED").getCount(), 1);
+        assertFalse(metrics.getTickLatencies().containsKey("DEQUEUED"));
+    }
+
+    public void testRegister() throws Exception {
+        JmxSessionMetrics metrics = JmxSessionMetrics.register("JmxSessionMetricsTest");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("com.assylias.jbloomberg:type=SessionMetrics,name=JmxSessionMetricsTest");
+        try {
+            metrics.requestStarted(REFERENCE_DATA, HISTORICAL_DATA);
+            metrics.requestCompleted(REFERENCE_DATA, HISTORICAL_DATA, 1_000, true);
+            assertTrue(server.isRegistered(name));
+            assertEquals(((TabularData) server.getAttribute(name, "RequestLatencies")).size(), 1);
+            assertEquals(((CompositeData) server.getAttribute(name, "ListenerExecutionTimes")).get("count"), 0L);
+        } finally {
+            metrics.unregister();
+        }
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRegister_Twice() {
+        JmxSessionMetrics metrics = JmxSessionMetrics.register("JmxSessionMetricsTest_Twice");
+        try {
+            JmxSessionMetrics.register("JmxSessionMetricsTest_Twice");
+        } finally {
+            metrics.unregister();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+@Test(groups = "unit")
+public class LastValuesTest {
+
+    public void testGet() {
+        LastValues values = new LastValues();
+        assertNull(values.get("ABC", RealtimeField.BID));
+        LastValues.Row row = values.add("ABC");
+        assertNull(values.get("ABC", RealtimeField.BID));
+        row.update(RealtimeField.BID, value(1.5), System.nanoTime());
+        row.update(RealtimeField.ASK, value(2.5), System.nanoTime());
+        row.update(RealtimeField.BID, value(1.6), System.nanoTime());
+        assertEquals(values.get("ABC", RealtimeField.BID).asDouble(), 1.6);
+        assertEquals(values.get("ABC", RealtimeField.ASK).asDouble(), 2.5);
+        assertNull(values.get("ABC", RealtimeField.LAST_PRICE));
+        values.remove("ABC");
+        assertNull(values.get("ABC", RealtimeField.BID));
+    }
+
+    public void testSeed() {
+        LastValues values = new LastValues();
+        LastValues.Row row = values.add("ABC");
+        row.seed(RealtimeField.BID, value(1d), System.nanoTime());
+        assertEquals(values.get("ABC", RealtimeField.BID).asDouble(), 1d);
+        row.update(RealtimeField.ASK, value(2d), System.nanoTime());
+        row.seed(RealtimeField.ASK, value(3d), System.nanoTime()); //older than the real time update
+        assertEquals(values.get("ABC", RealtimeField.ASK).asDouble(), 2d);
+    }
+
+    public void testStale() {
+        LastValues values = new LastValues();
+        LastValues.Row row = values.add("ABC");
+        row.update(RealtimeField.BID, value(1d), System.nanoTime());
+        row.update(RealtimeField.ASK, value(2d), System.nanoTime());
+        row.markStale();
+        assertTrue(values.isStale("ABC", RealtimeField.BID));
+        assertEquals(values.get("ABC", RealtimeField.BID).asDouble(), 1d); //still available
+        assertTrue(values.snapshot(Arrays.asList("ABC"), Arrays.asList(RealtimeField.BID)).isStale(0, 0));
+
+        row.update(RealtimeField.BID, value(1.5), System.nanoTime());
+        row.seed(RealtimeField.ASK, value(2.5), System.nanoTime()); //more recent than the stale value
+        assertFalse(values.isStale("ABC", RealtimeField.BID));
+        assertEquals(values.get("ABC", RealtimeField.ASK).asDouble(), 2.5);
+        assertFalse(values.snapshot(Arrays.asList("ABC"), Arrays.asList(RealtimeField.ASK)).isStale(0, 0));
+    }
+
+    public void testSnapshot() {
+        LastValues values = new LastValues();
+        long before = System.currentTimeMillis();
+        values.add("ABC").update(RealtimeField.BID, value(1.5), System.nanoTime());
+        values.add("ABC").update(RealtimeField.TRADING_DT_REALTIME, value("2020-01-01"), System.nanoTime());
+        values.add("DEF").update(RealtimeField.ASK, value(2), System.nanoTime());
+        LastValueSnapshot snapshot = values.snapshot(Arrays.asList("ABC", "DEF", "XYZ"),
+                Arrays.asList(RealtimeField.BID, RealtimeField.ASK, RealtimeField.TRADING_DT_REALTIME));
+
+        assertEquals(snapshot.get(0, 0), 1.5);
+        assertEquals(snapshot.get("DEF", RealtimeField.ASK), 2d);
+        assertTrue(Double.isNaN(snapshot.get(0, 1)));
+        assertFalse(snapshot.hasValue(0, 1));
+        assertTrue(Double.isNaN(snapshot.get(0, 2))); //not a number
+        assertTrue(snapshot.hasValue(0, 2));
+        assertFalse(snapshot.hasValue(2, 0)); //not subscribed
+        assertEquals(snapshot.getTimestamp(2, 0), 0);
+        assertTrue(snapshot.getTimestamp(0, 0) >= before - 1 && snapshot.getTimestamp(0, 0) <= System.currentTimeMillis() + 1);
+
+        double[][] matrix = snapshot.toMatrix();
+        assertEquals(matrix.length, 3);
+        assertEquals(matrix[1][1], 2d);
+    }
+
+    public void testSnapshot_ConsistentWhileUpdated() throws Exception {
+        LastValues values = new LastValues();
+        LastValues.Row row = values.add("ABC");
+        row.update(RealtimeField.BID, value(0d), 0);
+        Thread writer = new Thread(() -> {
+            //the value is the number of seconds of its timestamp
+            for (long i = 1; i < 1_000_000 && !Thread.currentThread().isInterrupted(); i++) row.update(RealtimeField.BID, value((double) i), i * 1_000_000_000);
+        });
+        writer.start();
+        try {
+            for (int i = 0; i < 10_000 && writer.isAlive(); i++) {
+                long nowMillis = System.currentTimeMillis();
+                long nowNanos = System.nanoTime();
+                LastValueSnapshot snapshot = values.snapshot(Arrays.asList("ABC"), Arrays.asList(RealtimeField.BID));
+                long receivedMillis = snapshot.getTimestamp(0, 0) - nowMillis + nowNanos / 1_000_000;
+                assertTrue(Math.abs(receivedMillis - snapshot.get(0, 0) * 1000) < 100, snapshot.get(0, 0) + " received at " + receivedMillis);
+            }
+        } finally {
+            writer.interrupt();
+            writer.join();
+        }
+    }
+
+    public void testUpdate_CellReused() {
+        LastValues values = new LastValues();
+        LastValues.Row row = values.add("ABC");
+        row.update(RealtimeField.BID, value(1d), System.nanoTime());
+        Object cell = row.get(RealtimeField.BID);
+        row.update(RealtimeField.BID, value(2d), System.nanoTime());
+        row.markStale();
+        assertSame(row.get(RealtimeField.BID), cell);
+        assertEquals(values.get("ABC", RealtimeField.BID).asDouble(), 2d);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testSnapshot_UnknownSecurity() {
+        new LastValues().snapshot(Arrays.asList("ABC"), Arrays.asList(RealtimeField.BID)).get("DEF", RealtimeField.BID);
+    }
+
+    private static FieldValue value(Object value) {
+        return new FieldValue().set(value);
+    }
+}
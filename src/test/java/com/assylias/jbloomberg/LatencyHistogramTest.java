@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+@Test(groups = "unit")
+public class LatencyHistogramTest {
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testPercentile_Invalid() {
+        new LatencyHistogram().getValueAtPercentile(101);
+    }
+
+    public void testEmpty() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(h.getCount(), 0);
+        assertEquals(h.getMean(), 0d);
+        assertEquals(h.getMax(), 0);
+        assertEquals(h.getValueAtPercentile(99), 0);
+    }
+
+    public void testSmallValuesAreExact() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 1; i <= 20; i++) h.record(i);
+        assertEquals(h.getCount(), 20);
+        assertEquals(h.getMean(), 10.5);
+        assertEquals(h.getMax(), 20);
+        assertEquals(h.getValueAtPercentile(50), 10);
+        assertEquals(h.getValueAtPercentile(100), 20);
+    }
+
+    public void testNegativeRecordedAsZero() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(-5);
+        assertEquals(h.getCount(), 1);
+        assertEquals(h.getMax(), 0);
+    }
+
+    public void testRelativeError() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (long i = 1; i <= 100_000; i++) h.record(i * 1_000);
+        assertRelativeError(h.getValueAtPercentile(50), 50_000_000);
+        assertRelativeError(h.getValueAtPercentile(99), 99_000_000);
+        assertRelativeError(h.getValueAtPercentile(99.9), 99_900_000);
+        assertEquals(h.getValueAtPercentile(100), 100_000_000);
+    }
+
+    public void testLargeValues() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(Long.MAX_VALUE);
+        assertEquals(h.getValueAtPercentile(50), Long.MAX_VALUE);
+    }
+
+    public void testBuckets() {
+        for (long v : new long[] {0, 1, 31, 32, 33, 63, 64, 65, 1_000, 123_456_789, Long.MAX_VALUE / 3}) {
+            int index = LatencyHistogram.indexOf(v);
+            assertTrue(LatencyHistogram.highestValueOf(index) >= v, "" + v);
+            assertTrue(index == 0 || LatencyHistogram.highestValueOf(index - 1) < v, "" + v);
+        }
+    }
+
+    private static void assertRelativeError(long actual, long expected) {
+        assertTrue(Math.abs(actual - expected) <= expected * 0.035, "expected " + expected + " but was " + actual);
+    }
+}
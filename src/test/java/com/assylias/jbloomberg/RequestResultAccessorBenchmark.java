@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Table;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.assylias.jbloomberg.ResultParserBenchmark.BARS;
+import static com.assylias.jbloomberg.ResultParserBenchmark.DAYS;
+import static com.assylias.jbloomberg.ResultParserBenchmark.FIELDS;
+import static com.assylias.jbloomberg.ResultParserBenchmark.SECURITIES;
+import static com.assylias.jbloomberg.ResultParserBenchmark.TICKS;
+
+/**
+ * Measures the cost of querying parsed results: the typical access patterns (one security, one field, one cell) on
+ * containers of the same size as the ones used in {@link ResultParserBenchmark}.
+ * <p>
+ * Run with: {@code mvn -P jmh test -Djmh.includes=RequestResultAccessorBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Djdk.attach.allowAttachSelf"})
+@State(Scope.Benchmark)
+public class RequestResultAccessorBenchmark {
+
+    private final String security = SyntheticResponses.security(SECURITIES / 2);
+    private final String field = SyntheticResponses.field(FIELDS / 2);
+    private final LocalDate date = SyntheticResponses.date(DAYS / 2);
+
+    private HistoricalData historical;
+    private ReferenceData reference;
+    private IntradayBarData bars;
+    private IntradayTickData ticks;
+
+    @Setup
+    public void setup() throws InterruptedException {
+        historical = SyntheticResponses.parse(new HistoricalResultParser(), SyntheticResponses.historical(SECURITIES, DAYS, FIELDS));
+        reference = SyntheticResponses.parse(new ReferenceResultParser(), SyntheticResponses.reference(SECURITIES, FIELDS));
+        bars = SyntheticResponses.parse(new IntradayBarResultParser("SEC Equity"), SyntheticResponses.intradayBars(BARS));
+        ticks = SyntheticResponses.parse(new IntradayTickResultParser("SEC Equity"), SyntheticResponses.intradayTicks(TICKS));
+    }
+
+    @Benchmark
+    public Table<LocalDate, String, TypedObject> historical_forSecurity_get() {
+        return historical.forSecurity(security).get();
+    }
+
+    @Benchmark
+    public Table<LocalDate, String, TypedObject> historical_forField_get() {
+        return historical.forField(field).get();
+    }
+
+    @Benchmark
+    public Map<LocalDate, TypedObject> historical_forSecurity_forField_get() {
+        return historical.forSecurity(security).forField(field).get();
+    }
+
+    @Benchmark
+    public TypedObject historical_cell() {
+        return historical.forSecurity(security).forField(field).forDate(date);
+    }
+
+    @Benchmark
+    public Map<String, TypedObject> reference_forSecurity_get() {
+        return reference.forSecurity(security).get();
+    }
+
+    @Benchmark
+    public Map<String, TypedObject> reference_forField_get() {
+        return reference.forField(field).get();
+    }
+
+    @Benchmark
+    public TypedObject reference_cell() {
+        return reference.forSecurity(security).forField(field);
+    }
+
+    @Benchmark
+    public Map<OffsetDateTime, TypedObject> intradayBars_forField_get() {
+        return bars.forField(IntradayBarField.CLOSE).get();
+    }
+
+    @Benchmark
+    public Table<OffsetDateTime, IntradayBarField, TypedObject> intradayBars_get() {
+        return bars.get();
+    }
+
+    @Benchmark
+    public Multimap<OffsetDateTime, TypedObject> intradayTicks_forField() {
+        return ticks.forField(IntradayTickField.VALUE);
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.assylias.jbloomberg.BloombergRequestType.HISTORICAL_DATA;
+import static com.assylias.jbloomberg.BloombergRequestType.INSTRUMENT_LIST;
+import static com.assylias.jbloomberg.BloombergRequestType.INTRADAY_TICK;
+import static com.assylias.jbloomberg.BloombergRequestType.REFERENCE_DATA;
+import static com.assylias.jbloomberg.BloombergServiceType.INSTRUMENTS;
+import static com.assylias.jbloomberg.RequestPriority.BULK;
+import static com.assylias.jbloomberg.RequestPriority.INTERACTIVE;
+import static com.assylias.jbloomberg.RequestPriority.NORMAL;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+@Test(groups = "unit")
+public class RequestSchedulerTest {
+
+    private AtomicLong now;
+    private List<Runnable> executed;
+    private List<String> ran;
+    private JmxSessionMetrics metrics;
+
+    @BeforeMethod
+    public void beforeMethod() {
+        now = new AtomicLong();
+        executed = new ArrayList<>();
+        ran = new ArrayList<>();
+        metrics = new JmxSessionMetrics();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testLimit_Invalid() {
+        new RequestScheduler.Limit(0, 1);
+    }
+
+    public void testUnlimited() {
+        RequestScheduler scheduler = scheduler(10, Collections.emptyMap(), Collections.emptyMap());
+        for (int i = 0; i < 5; i++) submit(scheduler, REFERENCE_DATA, NORMAL, "ref" + i);
+        assertEquals(executed.size(), 5);
+        assertEquals(scheduler.getQueueDepth(), 0);
+    }
+
+    public void testMaxInFlight() {
+        RequestScheduler scheduler = scheduler(10, Collections.emptyMap(), limit(HISTORICAL_DATA, 2, Double.POSITIVE_INFINITY));
+        submit(scheduler, HISTORICAL_DATA, NORMAL, "h1");
+        submit(scheduler, HISTORICAL_DATA, NORMAL, "h2");
+        submit(scheduler, HISTORICAL_DATA, NORMAL, "h3");
+        assertEquals(executed.size(), 2);
+        assertEquals(scheduler.getQueueDepth(), 1);
+        assertEquals(metrics.getRequestQueueDepth(), 1);
+        executed.get(0).run(); //h1 completes
+        assertEquals(executed.size(), 3);
+        executed.get(2).run();
+        assertEquals(ran.get(1), "h3");
+    }
+
+    public void testBlockedTypeDoesNotHoldUpOthers() {
+        RequestScheduler scheduler = scheduler(10, Collections.emptyMap(), limit(HISTORICAL_DATA, 1, Double.POSITIVE_INFINITY));
+        submit(scheduler, HISTORICAL_DATA, NORMAL, "h1");
+        submit(scheduler, HISTORICAL_DATA, NORMAL, "h2");
+        submit(scheduler, REFERENCE_DATA, NORMAL, "r1");
+        assertEquals(executed.size(), 2);
+        executed.get(1).run();
+        assertEquals(ran, Collections.singletonList("r1"));
+    }
+
+    public void testServiceLimit() {
+        Map<BloombergServiceType, RequestScheduler.Limit> limits = new EnumMap<>(BloombergServiceType.class);
+        limits.put(INSTRUMENTS, new RequestScheduler.Limit(1, Double.POSITIVE_INFINITY));
+        RequestScheduler scheduler = scheduler(10, limits, Collections.emptyMap());
+        scheduler.submit(INSTRUMENTS, INSTRUMENT_LIST, NORMAL, () -> {}, new CompletableFuture<>());
+        scheduler.submit(INSTRUMENTS, INSTRUMENT_LIST, NORMAL, () -> {}, new CompletableFuture<>());
+        assertEquals(executed.size(), 1);
+    }
+
+    public void testRateLimit() {
+        RequestScheduler scheduler = scheduler(10, Collections.emptyMap(), limit(REFERENCE_DATA, Integer.MAX_VALUE, 2));
+        for (int i = 0; i < 4; i++) submit(scheduler, REFERENCE_DATA, NORMAL, "r" + i);
+        assertEquals(executed.size(), 2); //burst of 2
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        scheduler.dispatch();
+        assertEquals(executed.size(), 3);
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(400));
+        scheduler.dispatch();
+        assertEquals(executed.size(), 3);
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(110));
+        scheduler.dispatch();
+        assertEquals(executed.size(), 4);
+
+        SessionMetricsMXBean.Latency waits = metrics.getRequestQueueWaits().get("REFERENCE_DATA");
+        assertEquals(waits.getCount(), 4);
+        assertEquals(waits.getMax(), 1_010_000, 1_010_000 * 0.05); //in micros
+        scheduler.stop();
+    }
+
+    public void testPriority() {
+        RequestScheduler scheduler = scheduler(1, Collections.emptyMap(), Collections.emptyMap());
+        submit(scheduler, REFERENCE_DATA, NORMAL, "first");
+        submit(scheduler, REFERENCE_DATA, BULK, "low");
+        submit(scheduler, REFERENCE_DATA, INTERACTIVE, "high");
+        assertEquals(executed.size(), 1);
+        executed.get(0).run();
+        executed.get(1).run();
+        executed.get(2).run();
+        assertEquals(ran, Arrays.asList("first", "high", "low"));
+    }
+
+    public void testBulkCapped() {
+        RequestScheduler scheduler = new RequestScheduler(4, 1, Collections.emptyMap(), Collections.emptyMap(), executed::add, metrics, now::get, "scheduler");
+        submit(scheduler, INTRADAY_TICK, BULK, "bulk1");
+        submit(scheduler, INTRADAY_TICK, BULK, "bulk2");
+        submit(scheduler, REFERENCE_DATA, NORMAL, "normal");
+        submit(scheduler, REFERENCE_DATA, INTERACTIVE, "interactive");
+        assertEquals(executed.size(), 3); //bulk2 waits although a thread is available
+        assertEquals(scheduler.getQueueDepth(), 1);
+        executed.get(0).run();
+        assertEquals(executed.size(), 4);
+    }
+
+    public void testCancelledWhileQueued() {
+        RequestScheduler scheduler = scheduler(10, Collections.emptyMap(), limit(REFERENCE_DATA, Integer.MAX_VALUE, 1));
+        submit(scheduler, REFERENCE_DATA, NORMAL, "r0");
+        CompletableFuture<Void> cancelled = submit(scheduler, REFERENCE_DATA, NORMAL, "r1");
+        submit(scheduler, REFERENCE_DATA, NORMAL, "r2");
+        assertEquals(scheduler.getQueueDepth(), 2);
+        cancelled.cancel(true);
+        assertEquals(scheduler.getQueueDepth(), 1);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        scheduler.dispatch();
+        assertEquals(executed.size(), 2); //r1 did not use the token
+        executed.get(1).run();
+        assertEquals(ran, Collections.singletonList("r2"));
+        scheduler.stop();
+    }
+
+    public void testStop_FailsQueuedRequests() {
+        RequestScheduler scheduler = scheduler(1, Collections.emptyMap(), Collections.emptyMap());
+        CompletableFuture<Void> first = submit(scheduler, REFERENCE_DATA, NORMAL, "first");
+        CompletableFuture<Void> discarded = submit(scheduler, REFERENCE_DATA, NORMAL, "discarded");
+        scheduler.stop();
+        assertFalse(first.isDone()); //admitted: completed by its task
+        assertTrue(discarded.isCompletedExceptionally());
+        try {
+            discarded.join();
+            fail();
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof BloombergException);
+        }
+    }
+
+    public void testExecutorRejects_FailsRequest() {
+        RequestScheduler scheduler = new RequestScheduler(1, 1, Collections.emptyMap(), Collections.emptyMap(), r -> {
+            throw new RejectedExecutionException();
+        }, metrics, now::get, "scheduler");
+        CompletableFuture<Void> rejected = submit(scheduler, REFERENCE_DATA, NORMAL, "rejected");
+        assertTrue(rejected.isCompletedExceptionally());
+        CompletableFuture<Void> next = submit(scheduler, REFERENCE_DATA, NORMAL, "next"); //the slot has been released
+        assertTrue(next.isCompletedExceptionally());
+    }
+
+    @Test(expectedExceptions = RejectedExecutionException.class)
+    public void testStop() {
+        RequestScheduler scheduler = scheduler(1, Collections.emptyMap(), Collections.emptyMap());
+        submit(scheduler, REFERENCE_DATA, NORMAL, "first");
+        submit(scheduler, REFERENCE_DATA, NORMAL, "discarded");
+        scheduler.stop();
+        assertEquals(scheduler.getQueueDepth(), 0);
+        submit(scheduler, REFERENCE_DATA, NORMAL, "rejected");
+    }
+
+    private RequestScheduler scheduler(int maxConcurrency, Map<BloombergServiceType, RequestScheduler.Limit> serviceLimits,
+                                       Map<BloombergRequestType, RequestScheduler.Limit> requestTypeLimits) {
+        return new RequestScheduler(maxConcurrency, maxConcurrency, serviceLimits, requestTypeLimits, executed::add, metrics, now::get, "scheduler");
+    }
+
+    private CompletableFuture<Void> submit(RequestScheduler scheduler, BloombergRequestType type, RequestPriority priority, String name) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        scheduler.submit(BloombergServiceType.REFERENCE_DATA, type, priority, () -> ran.add(name), future);
+        return future;
+    }
+
+    private static Map<BloombergRequestType, RequestScheduler.Limit> limit(BloombergRequestType type, int maxInFlight, double rate) {
+        Map<BloombergRequestType, RequestScheduler.Limit> limits = new EnumMap<>(BloombergRequestType.class);
+        limits.put(type, new RequestScheduler.Limit(maxInFlight, rate));
+        return limits;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import com.bloomberglp.blpapi.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of parsing large responses, from the raw messages to the RequestResult. The score is expressed per
+ * data point (one security / date / field value) - the GC profiler gives the allocation per data point in the
+ * {@code gc.alloc.rate.norm} column.
+ * <p>
+ * Run with: {@code mvn -P jmh test -Djmh.includes=ResultParserBenchmark -Djmh.args="-prof gc"}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Djdk.attach.allowAttachSelf"})
+@State(Scope.Benchmark)
+public class ResultParserBenchmark {
+
+    static final int SECURITIES = 1_000;
+    static final int DAYS = 250;
+    static final int FIELDS = 10;
+    static final int BARS = 100_000;
+    static final int BAR_FIELDS = 6; //open, high, low, close, volume, numEvents
+    static final int TICKS = 500_000;
+    static final int TICK_FIELDS = 3; //type, value, size
+
+    private List<Message> historical;
+    private List<Message> reference;
+    private List<Message> bars;
+    private List<Message> ticks;
+
+    @Setup
+    public void setup() {
+        historical = SyntheticResponses.historical(SECURITIES, DAYS, FIELDS);
+        reference = SyntheticResponses.reference(SECURITIES, FIELDS);
+        bars = SyntheticResponses.intradayBars(BARS);
+        ticks = SyntheticResponses.intradayTicks(TICKS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SECURITIES * DAYS * FIELDS)
+    public HistoricalData historical() throws InterruptedException {
+        return SyntheticResponses.parse(new HistoricalResultParser(), historical);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SECURITIES * FIELDS)
+    public ReferenceData reference() throws InterruptedException {
+        return SyntheticResponses.parse(new ReferenceResultParser(), reference);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BARS * BAR_FIELDS)
+    public IntradayBarData intradayBars() throws InterruptedException {
+        return SyntheticResponses.parse(new IntradayBarResultParser("SEC Equity"), bars);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TICKS * TICK_FIELDS)
+    public IntradayTickData intradayTicks() throws InterruptedException {
+        return SyntheticResponses.parse(new IntradayTickResultParser("SEC Equity"), ticks);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+@Test(groups = "unit")
+public class SampledListenerTest {
+
+    private HashedTimerWheel wheel;
+    private List<DataChangeEvent> received;
+    private SampledListener lst;
+
+    @BeforeMethod
+    public void beforeMethod() {
+        wheel = new HashedTimerWheel(1, TimeUnit.MILLISECONDS, 64, "test");
+        received = new CopyOnWriteArrayList<>();
+        lst = new SampledListener(received::add, TimeUnit.MILLISECONDS.toNanos(100));
+        lst.bind("A", "BID", wheel, Runnable::run);
+        lst.bind("B", "BID", wheel, Runnable::run);
+    }
+
+    @AfterMethod
+    public void afterMethod() {
+        wheel.stop();
+    }
+
+    private static DataChangeEvent event(String security, double oldValue, double newValue) {
+        return new DataChangeEvent(security, "BID", TypedObject.of(oldValue), TypedObject.of(newValue));
+    }
+
+    public void testFirstUpdate_Immediate() {
+        lst.dataChanged(event("A", 1, 2));
+        lst.dataChanged(event("B", 1, 2));
+        assertEquals(received.size(), 2);
+    }
+
+    public void testTrailingUpdate_Conflated() throws Exception {
+        lst.dataChanged(event("A", 1, 2));
+        lst.dataChanged(event("A", 2, 3));
+        lst.dataChanged(event("A", 3, 4));
+        assertEquals(received.size(), 1);
+        Thread.sleep(50);
+        assertEquals(received.size(), 1);
+        Thread.sleep(150);
+        assertEquals(received.size(), 2);
+        DataChangeEvent last = received.get(1);
+        assertEquals(last.getOldValue().asDouble(), 2d);
+        assertEquals(last.getNewValue().asDouble(), 4d);
+    }
+
+    public void testUpdateAfterPeriod_Immediate() throws Exception {
+        lst.dataChanged(event("A", 1, 2));
+        Thread.sleep(150);
+        lst.dataChanged(event("A", 2, 3));
+        assertEquals(received.size(), 2);
+    }
+
+    public void testNotBound_NotSampled() {
+        lst.dataChanged(event("C", 1, 2));
+        lst.dataChanged(event("C", 2, 3));
+        assertEquals(received.size(), 2);
+    }
+
+    public void testTrailingUpdate_InExecutor() throws Exception {
+        List<Runnable> tasks = new CopyOnWriteArrayList<>();
+        lst.bind("A", "BID", wheel, tasks::add);
+        lst.dataChanged(event("A", 1, 2));
+        lst.dataChanged(event("A", 2, 3));
+        Thread.sleep(150);
+        assertEquals(received.size(), 1);
+        assertEquals(tasks.size(), 1);
+        tasks.get(0).run();
+        assertEquals(received.size(), 2);
+    }
+
+    public void testPaced() throws Exception {
+        long start = System.nanoTime();
+        while (System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(550)) {
+            lst.dataChanged(event("A", 1, 2));
+            Thread.sleep(1);
+        }
+        Thread.sleep(150);
+        //first update + one per period
+        int count = received.size();
+        assertTrue(count >= 5 && count <= 7, "received " + count);
+    }
+}
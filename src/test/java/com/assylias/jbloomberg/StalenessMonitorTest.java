@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+@Test(groups = "unit")
+public class StalenessMonitorTest {
+
+    private StalenessMonitor monitor;
+    private List<StaleData> stale;
+
+    @BeforeMethod
+    public void beforeMethod() {
+        monitor = new StalenessMonitor("test");
+        stale = new CopyOnWriteArrayList<>();
+    }
+
+    @AfterMethod
+    public void afterMethod() {
+        monitor.stop();
+    }
+
+    private static Map<RealtimeField, Duration> thresholds(RealtimeField field, long millis) {
+        Map<RealtimeField, Duration> thresholds = new EnumMap<>(RealtimeField.class);
+        thresholds.put(field, Duration.ofMillis(millis));
+        return thresholds;
+    }
+
+    public void testFieldThreshold() throws Exception {
+        StalenessMonitor.Watches watches = monitor.watch("ABC", stale::add, null, thresholds(RealtimeField.ASK, 200));
+        for (int i = 0; i < 8; i++) {
+            watches.updated(RealtimeField.ASK, System.nanoTime());
+            watches.updated(RealtimeField.BID, System.nanoTime());
+            Thread.sleep(50);
+        }
+        assertTrue(stale.isEmpty());
+        for (int i = 0; i < 8; i++) {
+            watches.updated(RealtimeField.BID, System.nanoTime()); //not the monitored field
+            Thread.sleep(50);
+        }
+        assertEquals(stale.size(), 1);
+        assertEquals(stale.get(0).getSecurity(), "ABC");
+        assertEquals(stale.get(0).getField(), RealtimeField.ASK);
+        assertEquals(stale.get(0).getThreshold(), Duration.ofMillis(200));
+    }
+
+    public void testStaleAgainAfterUpdate() throws Exception {
+        StalenessMonitor.Watches watches = monitor.watch("ABC", stale::add, Duration.ofMillis(100), Collections.emptyMap());
+        Thread.sleep(300);
+        assertEquals(stale.size(), 1);
+        watches.updated(RealtimeField.BID, System.nanoTime());
+        Thread.sleep(400);
+        assertEquals(stale.size(), 2);
+    }
+
+    public void testWithout() throws Exception {
+        StalenessMonitor.Watches watches = monitor.watch("ABC", stale::add, null, thresholds(RealtimeField.ASK, 100));
+        watches.without(EnumSet.of(RealtimeField.ASK));
+        Thread.sleep(300);
+        assertTrue(stale.isEmpty());
+    }
+
+    public void testCancel() throws Exception {
+        monitor.watch("ABC", stale::add, Duration.ofMillis(100), thresholds(RealtimeField.ASK, 100)).cancel();
+        Thread.sleep(300);
+        assertTrue(stale.isEmpty());
+    }
+
+    public void testStopped() throws Exception {
+        monitor.stop();
+        assertTrue(monitor.watch("ABC", stale::add, Duration.ofMillis(100), Collections.emptyMap()) == StalenessMonitor.NONE);
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import com.bloomberglp.blpapi.CorrelationID;
+import com.bloomberglp.blpapi.Identity;
+import com.bloomberglp.blpapi.Session;
+import com.bloomberglp.blpapi.Subscription;
+import com.bloomberglp.blpapi.SubscriptionList;
+import mockit.Mock;
+import mockit.MockUp;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+@Test(groups = "unit")
+public class SubscriptionBatcherTest {
+
+    private List<List<String>> sent;
+    private List<Long> sentNanos;
+    private Session session;
+
+    @BeforeMethod
+    public void beforeMethod() {
+        sent = new CopyOnWriteArrayList<>();
+        sentNanos = new CopyOnWriteArrayList<>();
+        new MockUp<Session>() {
+            @Mock
+            public void subscribe(SubscriptionList list, Identity identity) throws IOException {
+                record(list);
+            }
+
+            @Mock
+            public void unsubscribe(SubscriptionList list) throws IOException {
+                record(list);
+                if (Subscriptions.getTicker(list.get(0)).equals("FAIL")) throw new IOException("failed");
+            }
+        };
+        session = new Session(null, null);
+    }
+
+    private void record(SubscriptionList list) {
+        List<String> tickers = new ArrayList<>();
+        for (Subscription s : list) tickers.add(Subscriptions.getTicker(s));
+        sent.add(tickers);
+        sentNanos.add(System.nanoTime());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testBatchSize_Zero() {
+        new SubscriptionBatcher(0, 1, "test");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRate_Zero() {
+        new SubscriptionBatcher(1, 0, "test");
+    }
+
+    public void testUnlimited_SentInline() throws Exception {
+        SubscriptionBatcher batcher = new SubscriptionBatcher(2, Double.POSITIVE_INFINITY, "test");
+        CompletableFuture<Map<String, SubscriptionStatus>> result = batcher.send(session, SubscriptionBatcher.Operation.SUBSCRIBE,
+                null, subscriptions("A", "B", "C", "D", "E"));
+        assertEquals(sent, Arrays.asList(Arrays.asList("A", "B"), Arrays.asList("C", "D"), Collections.singletonList("E")));
+        assertTrue(result.isDone());
+        assertEquals(new ArrayList<>(result.get().keySet()), Arrays.asList("A", "B", "C", "D", "E"));
+        assertTrue(result.get().values().stream().allMatch(s -> s == SubscriptionStatus.SUBSCRIBED));
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testUnlimited_Failure() throws Exception {
+        SubscriptionBatcher batcher = new SubscriptionBatcher(2, Double.POSITIVE_INFINITY, "test");
+        batcher.send(session, SubscriptionBatcher.Operation.UNSUBSCRIBE, null, subscriptions("FAIL"));
+    }
+
+    public void testUnlimited_Failure_NextBatchesFailed() throws Exception {
+        SubscriptionBatcher batcher = new SubscriptionBatcher(1, Double.POSITIVE_INFINITY, "test");
+        try {
+            batcher.send(session, SubscriptionBatcher.Operation.UNSUBSCRIBE, null, subscriptions("A", "FAIL", "C"));
+            fail("expected a SendException");
+        } catch (SubscriptionBatcher.SendException e) {
+            assertEquals(e.getStatuses().get("A"), SubscriptionStatus.UNSUBSCRIBED);
+            assertEquals(e.getStatuses().get("FAIL"), SubscriptionStatus.FAILED);
+            assertEquals(e.getStatuses().get("C"), SubscriptionStatus.FAILED);
+        }
+        assertEquals(sent, Arrays.asList(Collections.singletonList("A"), Collections.singletonList("FAIL")));
+    }
+
+    public void testRateLimited() throws Exception {
+        SubscriptionBatcher batcher = new SubscriptionBatcher(2, 20, "test");
+        try {
+            CompletableFuture<Map<String, SubscriptionStatus>> first = batcher.send(session, SubscriptionBatcher.Operation.SUBSCRIBE,
+                    null, subscriptions("A", "B", "C"));
+            CompletableFuture<Map<String, SubscriptionStatus>> second = batcher.send(session, SubscriptionBatcher.Operation.UNSUBSCRIBE,
+                    null, subscriptions("FAIL", "D", "E"));
+
+            Map<String, SubscriptionStatus> statuses = second.get(2, TimeUnit.SECONDS);
+            assertTrue(first.isDone());
+            assertEquals(first.get().get("C"), SubscriptionStatus.SUBSCRIBED);
+            assertEquals(statuses.get("FAIL"), SubscriptionStatus.FAILED);
+            assertEquals(statuses.get("D"), SubscriptionStatus.FAILED);
+            assertEquals(statuses.get("E"), SubscriptionStatus.UNSUBSCRIBED);
+
+            assertEquals(sent, Arrays.asList(Arrays.asList("A", "B"), Collections.singletonList("C"),
+                                             Arrays.asList("FAIL", "D"), Collections.singletonList("E")));
+            for (int i = 1; i < sentNanos.size(); i++) {
+                assertTrue(sentNanos.get(i) - sentNanos.get(i - 1) >= TimeUnit.MILLISECONDS.toNanos(45), "batches not paced");
+            }
+        } finally {
+            batcher.stop();
+        }
+    }
+
+    public void testStop_FailsPendingBatches() throws Exception {
+        SubscriptionBatcher batcher = new SubscriptionBatcher(1, 1, "test");
+        CompletableFuture<Map<String, SubscriptionStatus>> result = batcher.send(session, SubscriptionBatcher.Operation.SUBSCRIBE,
+                null, subscriptions("A", "B", "C"));
+        Thread.sleep(100); //first batch sent, the next one in 1 second
+        batcher.stop();
+        Map<String, SubscriptionStatus> statuses = result.get(1, TimeUnit.SECONDS);
+        assertEquals(statuses.get("A"), SubscriptionStatus.SUBSCRIBED);
+        assertEquals(statuses.get("B"), SubscriptionStatus.FAILED);
+        assertEquals(statuses.get("C"), SubscriptionStatus.FAILED);
+        assertEquals(sent.size(), 1);
+    }
+
+    private static Map<String, Subscription> subscriptions(String... tickers) {
+        Map<String, Subscription> subscriptions = new LinkedHashMap<>();
+        for (int i = 0; i < tickers.length; i++) {
+            subscriptions.put(tickers[i], new Subscription(tickers[i], Collections.singletonList("BID"),
+                                                           Collections.singletonList("useGMT"), new CorrelationID(i)));
+        }
+        return subscriptions;
+    }
+}
@@ -6,11 +6,14 @@ package com.assylias.jbloomberg;
 
 import org.testng.annotations.Test;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 
@@ -22,6 +25,35 @@ public class SubscriptionBuilderTest {
         new SubscriptionBuilder().addListener(null);
     }
 
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testAddListener_ZeroSamplingPeriod() {
+        new SubscriptionBuilder().addListener(e -> { }, Duration.ZERO);
+    }
+
+    public void testAddListener_Sampled() {
+        DataChangeListener lst = e -> { };
+        SubscriptionBuilder builder = new SubscriptionBuilder().addListener(lst, Duration.ofMillis(250));
+        assertEquals(builder.getListeners().size(), 1);
+        assertTrue(builder.getListeners().iterator().next() instanceof SampledListener);
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void testListenerExecutor_Null() {
+        new SubscriptionBuilder().listenerExecutor(null);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testListenerExecutor_NoThreads() {
+        new SubscriptionBuilder().listenerExecutor(ListenerExecutor.pooled(0));
+    }
+
+    public void testListenerExecutor_Copied() {
+        ListenerExecutor executor = ListenerExecutor.inline();
+        SubscriptionBuilder builder = new SubscriptionBuilder().addSecurity("A").listenerExecutor(executor);
+        assertNull(new SubscriptionBuilder().getListenerExecutor());
+        assertSame(builder.withSecurities(Collections.singleton("A")).getListenerExecutor(), executor);
+    }
+
     @Test(expectedExceptions = NullPointerException.class)
     public void testAddSecurities_NullList() {
         new SubscriptionBuilder().addSecurities((List<String>) null);
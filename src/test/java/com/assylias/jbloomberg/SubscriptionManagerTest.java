@@ -17,13 +17,16 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -32,6 +35,8 @@ import java.util.concurrent.atomic.AtomicInteger;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
@@ -73,8 +78,16 @@ public class SubscriptionManagerTest {
                     subscriptions.replace(s);
                 }
             }
+
+            @Mock
+            public void unsubscribe(SubscriptionList list) {
+                for (Subscription s : list) {
+                    subscriptions.remove(Subscriptions.getTicker(s));
+                }
+            }
         };
         session = new DefaultBloombergSession();
+        sm.cacheLastValues();
         sm.start(session);
     }
 
@@ -105,6 +118,247 @@ public class SubscriptionManagerTest {
         assertTrue(subscriptions.subscriptions.get("ABC").subscriptionString().contains("useGMT"));
     }
 
+    @Test
+    public void testSeed() throws Exception {
+        List<DataChangeEvent> events = new CopyOnWriteArrayList<>();
+        CountDownLatch received = new CountDownLatch(2);
+        sm.subscribe(new SubscriptionBuilder().addSecurity("ABC").addFields(Arrays.asList(RealtimeField.BID, RealtimeField.ASK))
+                .addListener(e -> {
+                    events.add(e);
+                    received.countDown();
+                }));
+        ReferenceData snapshot = new ReferenceData();
+        snapshot.add("ABC", "BID", 1d);
+        snapshot.add("ABC", "ASK", 2d);
+        snapshot.add("ABC", "LAST_PRICE", 3d); //not subscribed
+        snapshot.add("ABC", "NAME", "ABC Corp"); //not a real time field
+        snapshot.add("DEF", "BID", 4d); //not subscribed
+        sm.seed(snapshot);
+
+        assertTrue(received.await(1, TimeUnit.SECONDS));
+        Thread.sleep(20);
+        assertEquals(events.size(), 2);
+        for (DataChangeEvent e : events) {
+            assertEquals(e.getSource(), "ABC");
+            assertEquals(e.getNewValue().asDouble(), e.getDataName().equals("BID") ? 1d : 2d);
+        }
+    }
+
+    @Test
+    public void testSeed_FlyweightInDispatchingThread() throws Exception {
+        List<String> updates = new CopyOnWriteArrayList<>();
+        CountDownLatch received = new CountDownLatch(2);
+        sm.subscribe(new SubscriptionBuilder().addSecurity("ABC").addField(RealtimeField.BID)
+                .addFlyweightListener(u -> {
+                    updates.add(u.getDouble() + " " + Thread.currentThread().getName().startsWith("Bloomberg EDT"));
+                    received.countDown();
+                }));
+        queue.add(new Data(new CorrelationID(0), "BID", 2d));
+        ReferenceData snapshot = new ReferenceData();
+        snapshot.add("ABC", "BID", 1d);
+        sm.seed(snapshot); //older than the real time update: ignored
+        queue.add(new Data(new CorrelationID(0), "BID", 3d));
+
+        assertTrue(received.await(1, TimeUnit.SECONDS));
+        Thread.sleep(20);
+        assertEquals(updates, Arrays.asList("2.0 true", "3.0 true"));
+    }
+
+    @Test
+    public void testSubscribe_Statuses() throws Exception {
+        sm.subscribe(new SubscriptionBuilder().addSecurity("ABC").addField(RealtimeField.BID));
+        CompletableFuture<Map<String, SubscriptionStatus>> result = sm.subscribe(new SubscriptionBuilder()
+                .addSecurities(Arrays.asList("ABC", "DEF")).addField(RealtimeField.ASK));
+        assertTrue(result.isDone());
+        assertEquals(result.get().get("ABC"), SubscriptionStatus.SUBSCRIBED);
+        assertEquals(result.get().get("DEF"), SubscriptionStatus.SUBSCRIBED);
+    }
+
+    @Test
+    public void testSubscribe_FailedBatch_UnsentForgotten() throws Exception {
+        AtomicInteger lists = new AtomicInteger();
+        new MockUp<Session>() {
+            @Mock
+            public void subscribe(SubscriptionList list, Identity identity) throws IOException {
+                if (lists.incrementAndGet() == 2) throw new IOException("failed");
+                for (Subscription s : list) subscriptions.add(s);
+            }
+        };
+        SubscriptionManager sm = new SubscriptionManager(queue, eventsManager, SessionMetrics.NO_OP,
+                new SubscriptionBatcher(1, Double.POSITIVE_INFINITY, "test"), new SubscribedFields());
+        sm.start(session);
+        try {
+            List<String> tickers = Arrays.asList("A", "B", "C");
+            try {
+                sm.subscribe(new SubscriptionBuilder().addSecurities(tickers).addField(RealtimeField.BID));
+                fail("expected an IOException");
+            } catch (IOException expected) {
+            }
+            assertEquals(lists.get(), 2); //the third list was not sent
+            assertEquals(subscriptions.getTickers().size(), 1);
+            String sent = subscriptions.getTickers().get(0);
+
+            CompletableFuture<Map<String, SubscriptionStatus>> result = sm.subscribe(new SubscriptionBuilder()
+                    .addSecurities(tickers).addField(RealtimeField.BID));
+            assertTrue(result.get().values().stream().allMatch(st -> st == SubscriptionStatus.SUBSCRIBED));
+            assertSameContent(subscriptions.getTickers(), tickers);
+            assertEquals(subscriptions.getSubscriptionsReceived(), 3); //the failed and unsent securities are subscribed again
+            assertEquals(subscriptions.resubscribed, Collections.singletonList(sent));
+        } finally {
+            sm.stop(session);
+        }
+    }
+
+    @Test
+    public void testUnsubscribe() throws Exception {
+        DataChangeListener lst = getListener(1);
+        sm.subscribe(new SubscriptionBuilder().addSecurities(Arrays.asList("ABC", "DEF")).addField(RealtimeField.ASK).addListener(lst));
+        CompletableFuture<Map<String, SubscriptionStatus>> result = sm.unsubscribe(Arrays.asList("ABC", "XYZ"));
+        assertTrue(result.isDone());
+        assertEquals(result.get(), Collections.singletonMap("ABC", SubscriptionStatus.UNSUBSCRIBED)); //XYZ not subscribed
+        assertSameContent(subscriptions.getTickers(), Arrays.asList("DEF"));
+
+        queue.add(new Data(new CorrelationID(0), "ASK", 123)); //ABC: no longer dispatched
+        assertFalse(latch.await(100, TimeUnit.MILLISECONDS));
+
+        sm.subscribe(new SubscriptionBuilder().addSecurity("ABC").addField(RealtimeField.ASK).addListener(lst));
+        assertEquals(subscriptions.getSubscriptionsReceived(), 3); //a new subscription, not a resubscription
+        assertEquals(subscriptions.getReSubscriptionsReceived(), 0);
+        assertEquals(subscriptions.getCorrelationId("ABC"), 2L);
+    }
+
+    @Test
+    public void testUnsubscribe_ListenersAndFields() throws Exception {
+        DataChangeListener lst1 = e -> { };
+        DataChangeListener lst2 = e -> { };
+        SubscriptionBuilder first = new SubscriptionBuilder().addSecurity("ABC").addFields(Arrays.asList(RealtimeField.ASK, RealtimeField.BID)).addListener(lst1);
+        SubscriptionBuilder second = new SubscriptionBuilder().addSecurities(Arrays.asList("ABC", "DEF")).addField(RealtimeField.BID).addListener(lst2);
+        sm.subscribe(first);
+        sm.subscribe(second);
+        assertEquals(subscriptions.getReSubscriptionsReceived(), 1);
+
+        //ASK has no listener left: resubscribed with BID only
+        Map<String, SubscriptionStatus> statuses = sm.unsubscribe(first).get();
+        assertEquals(statuses, Collections.singletonMap("ABC", SubscriptionStatus.SUBSCRIBED));
+        assertEquals(subscriptions.getReSubscriptionsReceived(), 2);
+        assertSameContent(subscriptions.getFields("ABC"), Arrays.asList(RealtimeField.BID));
+
+        //field removal: DEF has no field left
+        statuses = sm.unsubscribe(new SubscriptionBuilder().addSecurity("DEF").addField(RealtimeField.BID)).get();
+        assertEquals(statuses, Collections.singletonMap("DEF", SubscriptionStatus.UNSUBSCRIBED));
+        assertSameContent(subscriptions.getTickers(), Arrays.asList("ABC"));
+
+        statuses = sm.unsubscribe(second).get();
+        assertEquals(statuses, Collections.singletonMap("ABC", SubscriptionStatus.UNSUBSCRIBED));
+        assertTrue(subscriptions.getTickers().isEmpty());
+    }
+
+    @Test
+    public void testLastValues() throws Exception {
+        sm.subscribe(new SubscriptionBuilder().addSecurity("ABC").addField(RealtimeField.BID)); //no listener
+        queue.add(new Data(new CorrelationID(0), "BID", 1.5));
+        LastValueCache cache = sm.getLastValues();
+        for (int i = 0; i < 100 && cache.get("ABC", RealtimeField.BID) == null; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(cache.get("ABC", RealtimeField.BID).asDouble(), 1.5);
+        sm.unsubscribe(Arrays.asList("ABC"));
+        assertNull(cache.get("ABC", RealtimeField.BID));
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void testLastValues_NotCached() {
+        new SubscriptionManager(queue, eventsManager).getLastValues();
+    }
+
+    public void testStale() throws Exception {
+        List<StaleData> stale = new CopyOnWriteArrayList<>();
+        sm.subscribe(new SubscriptionBuilder().addSecurity("ABC").addField(RealtimeField.BID).onStale(stale::add, Duration.ofMillis(300)));
+        for (int i = 0; i < 10; i++) {
+            queue.add(new Data(new CorrelationID(0), "BID", 1.5 + i));
+            Thread.sleep(50);
+        }
+        assertTrue(stale.isEmpty());
+        Thread.sleep(600);
+        assertEquals(stale.size(), 1); //only once per interruption
+        assertEquals(stale.get(0).getSecurity(), "ABC");
+        assertNull(stale.get(0).getField());
+        assertTrue(stale.get(0).getSilence().toMillis() >= 300);
+
+        sm.unsubscribe(Arrays.asList("ABC"));
+        queue.add(new Data(new CorrelationID(0), "BID", 1.5));
+        Thread.sleep(600);
+        assertEquals(stale.size(), 1);
+    }
+
+    public void testRecover() throws Exception {
+        List<long[]> recoveries = new CopyOnWriteArrayList<>();
+        SessionMetrics metrics = new SessionMetrics() {
+            @Override public void subscriptionsRecovered(int subscriptions, int failed, long downtimeNanos, long recoveryNanos) {
+                recoveries.add(new long[]{subscriptions, failed, downtimeNanos, recoveryNanos});
+            }
+        };
+        BlockingQueue<Data> queue = new LinkedBlockingQueue<>();
+        SubscriptionManager sm = new SubscriptionManager(queue, eventsManager, metrics,
+                new SubscriptionBatcher(Integer.MAX_VALUE, Double.POSITIVE_INFINITY, "test"), new SubscribedFields());
+        sm.recoverSubscriptions(new SubscriptionBatcher(1, 100, "test recovery"));
+        sm.cacheLastValues();
+        sm.start(session);
+        try {
+            List<DataChangeEvent> events = new CopyOnWriteArrayList<>();
+            sm.subscribe(new SubscriptionBuilder().addSecurity("A").addField(RealtimeField.BID).addListener(events::add));
+            sm.subscribe(new SubscriptionBuilder().addSecurity("B").addField(RealtimeField.BID).recoveryPriority(5));
+            sm.subscribe(new SubscriptionBuilder().addSecurity("C").addField(RealtimeField.BID).recoveryPriority(1));
+            assertTrue(sm.recover().get().isEmpty()); //the connection has not been lost
+
+            queue.add(new Data(new CorrelationID(0), "BID", 1.5));
+            for (int i = 0; i < 100 && events.size() < 1; i++) Thread.sleep(10);
+            sm.connectionStateChanged(session.getBloombergSession(), SessionState.CONNECTION_DOWN);
+            assertTrue(sm.getLastValues().isStale("A", RealtimeField.BID));
+            queue.add(new Data(new CorrelationID(0), "BID", 1.5)); //same value but the last value has been forgotten
+            for (int i = 0; i < 100 && events.size() < 2; i++) Thread.sleep(10);
+            assertEquals(events.size(), 2);
+            assertFalse(sm.getLastValues().isStale("A", RealtimeField.BID));
+
+            Map<String, SubscriptionStatus> statuses = sm.recover().get(1, TimeUnit.SECONDS);
+            assertEquals(statuses.size(), 3);
+            assertTrue(statuses.values().stream().allMatch(s -> s == SubscriptionStatus.SUBSCRIBED));
+            assertEquals(subscriptions.resubscribed, Arrays.asList("B", "C", "A"));
+            assertEquals(recoveries.size(), 1);
+            assertEquals(recoveries.get(0)[0], 3);
+            assertEquals(recoveries.get(0)[1], 0);
+            assertTrue(recoveries.get(0)[2] > 0);
+            assertTrue(recoveries.get(0)[3] >= TimeUnit.MILLISECONDS.toNanos(15), "resubscriptions not paced");
+            assertTrue(sm.recover().get().isEmpty());
+        } finally {
+            sm.stop(session);
+        }
+    }
+
+    @Test
+    public void testRecover_OnlyTheSessionThatDropped() throws Exception {
+        BlockingQueue<Data> queue = new LinkedBlockingQueue<>();
+        SubscriptionManager sm = new SubscriptionManager(queue, eventsManager, SessionMetrics.NO_OP,
+                new SubscriptionBatcher(Integer.MAX_VALUE, Double.POSITIVE_INFINITY, "test"), new SubscribedFields());
+        sm.recoverSubscriptions(new SubscriptionBatcher(10, 100, "test recovery"));
+        sm.cacheLastValues();
+        sm.start(session);
+        try {
+            sm.subscribe(new SubscriptionBuilder().addSecurity("A").addField(RealtimeField.BID));
+            queue.add(new Data(new CorrelationID(0), "BID", 1.5));
+            for (int i = 0; i < 100 && sm.getLastValues().get("A", RealtimeField.BID) == null; i++) Thread.sleep(10);
+
+            Session other = new Session(null, null); //e.g. the request session when the subscriptions are isolated
+            sm.connectionStateChanged(other, SessionState.CONNECTION_DOWN);
+            assertFalse(sm.getLastValues().isStale("A", RealtimeField.BID));
+            assertTrue(sm.recover(other).get().isEmpty());
+            assertTrue(sm.recover(session.getBloombergSession()).get().isEmpty()); //its connection was not lost
+            assertTrue(subscriptions.resubscribed.isEmpty());
+        } finally {
+            sm.stop(session);
+        }
+    }
+
     @Test
     public void testSubscribe_OneSecurityOneFieldThrottle() throws IOException {
         sm.subscribe(new SubscriptionBuilder().addSecurity("ABC").addField(RealtimeField.BID).throttle(5));
@@ -215,6 +469,17 @@ public class SubscriptionManagerTest {
         assertEquals(countEvent.get(), 0);
     }
 
+    @Test
+    public void testDispatch_DataRecycled() {
+        DataPool pool = new DataPool(1);
+        SubscriptionManager sm = new SubscriptionManager(queue, eventsManager);
+        sm.recycleData(pool);
+        Data data = new Data(new CorrelationID(0), "ASK", 123);
+        sm.dispatch(data);
+        assertNull(data.getValue());
+        assertSame(pool.claim(), data);
+    }
+
     @Test
     public void test1Listener2Securities_AddListeners() throws Exception {
         assertEquals(new CorrelationID(0), new CorrelationID(0)); //necessary for the test to pass
@@ -322,74 +587,3 @@ class Sessions {
         counter.set(0);
     }
 }
-
-/**
- *
- * a sort of stub for the SubscriptionList class to keep track of what has been sent.
- */
-class Subscriptions {
-
-    Map<String, Subscription> subscriptions = new HashMap<>();
-    int subs = 0;
-    int resubs = 0;
-
-    int getSubscriptionsReceived() {
-        return subs;
-    }
-
-    int getReSubscriptionsReceived() {
-        return resubs;
-    }
-
-    void add(Subscription s) {
-        subscriptions.put(getTicker(s), s);
-        subs++;
-    }
-
-    void replace(Subscription s) {
-        subscriptions.remove(getTicker(s));
-        subscriptions.put(getTicker(s), s);
-        resubs++;
-    }
-
-    void remove(String ticker) {
-        subscriptions.remove(ticker);
-    }
-
-    List<String> getTickers() {
-        return new ArrayList<>(subscriptions.keySet());
-    }
-
-    List<RealtimeField> getFields(String ticker) {
-        List<RealtimeField> fields = new ArrayList<>();
-        if (subscriptions.containsKey(ticker)) {
-            Subscription s = subscriptions.get(ticker);
-            String str = s.subscriptionString();
-            String[] s0 = str.split("fields=");
-            String[] s1 = s0[1].split("&");
-            String[] s2 = s1[0].split(",");
-            for (String field : s2) {
-                fields.add(RealtimeField.valueOf(field));
-            }
-        }
-        return fields;
-    }
-
-    double getThrottle(String ticker) {
-        if (subscriptions.containsKey(ticker)) {
-            String[] s = subscriptions.get(ticker).subscriptionString().split("interval=");
-            return s.length >= 2 ? Double.parseDouble(s[1].split(" ")[0]) : 0;
-        } else {
-            return 0;
-        }
-    }
-
-    Object getCorrelationId(String ticker) {
-        CorrelationID id = subscriptions.get(ticker).correlationID();
-        return id.isObject() ? id.object() : id.value();
-    }
-
-    static String getTicker(Subscription s) {
-        return s.subscriptionString().split("\\?")[0];
-    }
-}
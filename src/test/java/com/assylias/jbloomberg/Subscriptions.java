@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import com.bloomberglp.blpapi.CorrelationID;
+import com.bloomberglp.blpapi.Subscription;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ *
+ * a sort of stub for the SubscriptionList class to keep track of what has been sent.
+ */
+class Subscriptions {
+
+    Map<String, Subscription> subscriptions = new HashMap<>();
+    int subs = 0;
+    int resubs = 0;
+    List<String> resubscribed = new CopyOnWriteArrayList<>();
+
+    int getSubscriptionsReceived() {
+        return subs;
+    }
+
+    int getReSubscriptionsReceived() {
+        return resubs;
+    }
+
+    void add(Subscription s) {
+        subscriptions.put(getTicker(s), s);
+        subs++;
+    }
+
+    void replace(Subscription s) {
+        subscriptions.remove(getTicker(s));
+        subscriptions.put(getTicker(s), s);
+        resubscribed.add(getTicker(s));
+        resubs++;
+    }
+
+    void remove(String ticker) {
+        subscriptions.remove(ticker);
+    }
+
+    List<String> getTickers() {
+        return new ArrayList<>(subscriptions.keySet());
+    }
+
+    List<RealtimeField> getFields(String ticker) {
+        List<RealtimeField> fields = new ArrayList<>();
+        if (subscriptions.containsKey(ticker)) {
+            Subscription s = subscriptions.get(ticker);
+            String str = s.subscriptionString();
+            String[] s0 = str.split("fields=");
+            String[] s1 = s0[1].split("&");
+            String[] s2 = s1[0].split(",");
+            for (String field : s2) {
+                fields.add(RealtimeField.valueOf(field));
+            }
+        }
+        return fields;
+    }
+
+    double getThrottle(String ticker) {
+        if (subscriptions.containsKey(ticker)) {
+            String[] s = subscriptions.get(ticker).subscriptionString().split("interval=");
+            return s.length >= 2 ? Double.parseDouble(s[1].split(" ")[0]) : 0;
+        } else {
+            return 0;
+        }
+    }
+
+    Object getCorrelationId(String ticker) {
+        CorrelationID id = subscriptions.get(ticker).correlationID();
+        return id.isObject() ? id.object() : id.value();
+    }
+
+    static String getTicker(Subscription s) {
+        return s.subscriptionString().split("\\?")[0];
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import com.bloomberglp.blpapi.Datetime;
+import com.bloomberglp.blpapi.Element;
+import com.bloomberglp.blpapi.Name;
+import com.bloomberglp.blpapi.Schema;
+import mockit.MockUp;
+
+import java.util.List;
+
+/**
+ * An in-memory Element used to build large synthetic responses, typically for benchmarks where a jmockit fake per
+ * element would be too slow and would distort the measurements.
+ * <p>
+ * Only the methods used by the result parsers are implemented - the other abstract methods of Element are generated
+ * by jmockit with empty bodies. Instances are obtained by cloning a single jmockit generated prototype so that calls to
+ * the implemented methods are plain virtual calls (the class is public so that jmockit can subclass it).
+ */
+public abstract class SyntheticElement extends Element implements Cloneable {
+
+    private static final SyntheticElement PROTOTYPE = new MockUp<SyntheticElement>() {}.getMockInstance();
+
+    private Name name;
+    private Schema.Datatype datatype;
+    private Object value;
+    private SyntheticElement[] children;
+    private boolean isArray;
+
+    static SyntheticElement sequence(String name, SyntheticElement... elements) {
+        return create(name, Schema.Datatype.SEQUENCE, null, elements);
+    }
+
+    static SyntheticElement array(String name, List<SyntheticElement> values) {
+        return create(name, Schema.Datatype.SEQUENCE, null, values.toArray(new SyntheticElement[0])).asArray();
+    }
+
+    static SyntheticElement float64(String name, double value) {
+        return create(name, Schema.Datatype.FLOAT64, value, null);
+    }
+
+    static SyntheticElement int32(String name, int value) {
+        return create(name, Schema.Datatype.INT32, value, null);
+    }
+
+    static SyntheticElement int64(String name, long value) {
+        return create(name, Schema.Datatype.INT64, value, null);
+    }
+
+    static SyntheticElement string(String name, String value) {
+        return create(name, Schema.Datatype.STRING, value, null);
+    }
+
+    static SyntheticElement datetime(String name, Datetime value) {
+        return create(name, Schema.Datatype.DATETIME, value, null);
+    }
+
+    private static SyntheticElement create(String name, Schema.Datatype datatype, Object value, SyntheticElement[] children) {
+        try {
+            SyntheticElement e = (SyntheticElement) PROTOTYPE.clone();
+            e.name = new Name(name);
+            e.datatype = datatype;
+            e.value = value;
+            e.children = children == null ? new SyntheticElement[0] : children;
+            return e;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private SyntheticElement asArray() {
+        isArray = true;
+        return this;
+    }
+
+    @Override public Name name() {
+        return name;
+    }
+
+    @Override public Schema.Datatype datatype() {
+        return datatype;
+    }
+
+    @Override public boolean isNull() {
+        return value == null && children.length == 0;
+    }
+
+    @Override public boolean isArray() {
+        return isArray;
+    }
+
+    @Override public int numValues() {
+        return isArray ? children.length : 1;
+    }
+
+    @Override public int numElements() {
+        return isArray ? 0 : children.length;
+    }
+
+    @Override public Element getElement(int index) {
+        return children[index];
+    }
+
+    @Override public Element getElement(Name name) {
+        for (SyntheticElement e : children) {
+            if (e.name.equals(name)) return e;
+        }
+        throw new IllegalArgumentException("No element " + name + " in " + this.name);
+    }
+
+    @Override public boolean hasElement(Name name, boolean excludeNullElements) {
+        for (SyntheticElement e : children) {
+            if (e.name.equals(name)) return !excludeNullElements || !e.isNull();
+        }
+        return false;
+    }
+
+    @Override public Element getValueAsElement(int index) {
+        return children[index];
+    }
+
+    @Override public String getElementAsString(Name name) {
+        return getElement(name).getValueAsString();
+    }
+
+    @Override public double getValueAsFloat64() {
+        return (Double) value;
+    }
+
+    @Override public int getValueAsInt32() {
+        return (Integer) value;
+    }
+
+    @Override public long getValueAsInt64() {
+        return (Long) value;
+    }
+
+    @Override public String getValueAsString() {
+        return String.valueOf(value);
+    }
+
+    @Override public Datetime getValueAsDatetime() {
+        return (Datetime) value;
+    }
+
+    @Override public String toString() {
+        return name + "=" + (value == null ? children.length + " elements" : value);
+    }
+}
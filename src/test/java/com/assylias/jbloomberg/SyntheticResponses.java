@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import com.bloomberglp.blpapi.CorrelationID;
+import com.bloomberglp.blpapi.Datetime;
+import com.bloomberglp.blpapi.Element;
+import com.bloomberglp.blpapi.Message;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.assylias.jbloomberg.SyntheticElement.array;
+import static com.assylias.jbloomberg.SyntheticElement.datetime;
+import static com.assylias.jbloomberg.SyntheticElement.float64;
+import static com.assylias.jbloomberg.SyntheticElement.int32;
+import static com.assylias.jbloomberg.SyntheticElement.int64;
+import static com.assylias.jbloomberg.SyntheticElement.sequence;
+import static com.assylias.jbloomberg.SyntheticElement.string;
+
+/**
+ * Builds synthetic responses with the same structure as the ones sent by Bloomberg, so that the result parsers can be
+ * exercised on large data sets without a Bloomberg connection.
+ */
+final class SyntheticResponses {
+
+    private static final LocalDate START_DATE = LocalDate.of(2020, 1, 1);
+    private static final LocalDateTime START_DATE_TIME = LocalDateTime.of(2020, 1, 2, 8, 0);
+
+    private SyntheticResponses() {}
+
+    static String security(int i) {
+        return "SEC" + i + " Equity";
+    }
+
+    static String field(int i) {
+        return "FIELD_" + i;
+    }
+
+    static LocalDate date(int i) {
+        return START_DATE.plusDays(i);
+    }
+
+    /**
+     * One message per security, as returned by a HistoricalDataRequest.
+     */
+    static List<Message> historical(int securities, int days, int fields) {
+        List<Message> messages = new ArrayList<>(securities);
+        for (int s = 0; s < securities; s++) {
+            List<SyntheticElement> rows = new ArrayList<>(days);
+            for (int d = 0; d < days; d++) {
+                SyntheticElement[] row = new SyntheticElement[fields + 1];
+                row[0] = string("date", date(d).toString());
+                for (int f = 0; f < fields; f++) {
+                    row[f + 1] = float64(field(f), s + d + f / 100d);
+                }
+                rows.add(sequence("fieldData", row));
+            }
+            SyntheticElement securityData = sequence("securityData",
+                    string("security", security(s)),
+                    int32("sequenceNumber", s),
+                    array("fieldData", rows));
+            messages.add(message(sequence("HistoricalDataResponse", securityData)));
+        }
+        return messages;
+    }
+
+    /**
+     * One message containing all the securities, as returned by a ReferenceDataRequest.
+     */
+    static List<Message> reference(int securities, int fields) {
+        List<SyntheticElement> securityDataArray = new ArrayList<>(securities);
+        for (int s = 0; s < securities; s++) {
+            SyntheticElement[] fieldData = new SyntheticElement[fields];
+            for (int f = 0; f < fields; f++) {
+                fieldData[f] = float64(field(f), s + f / 100d);
+            }
+            securityDataArray.add(sequence("securityData",
+                    string("security", security(s)),
+                    int32("sequenceNumber", s),
+                    sequence("fieldData", fieldData)));
+        }
+        List<Message> messages = new ArrayList<>(1);
+        messages.add(message(sequence("ReferenceDataResponse", array("securityData", securityDataArray))));
+        return messages;
+    }
+
+    /**
+     * One message containing one bar per minute, as returned by an IntradayBarRequest.
+     */
+    static List<Message> intradayBars(int bars) {
+        List<SyntheticElement> barTickData = new ArrayList<>(bars);
+        for (int i = 0; i < bars; i++) {
+            double price = 100 + i % 50;
+            barTickData.add(sequence("barTickData",
+                    datetime("time", toDatetime(START_DATE_TIME.plusMinutes(i))),
+                    float64("open", price),
+                    float64("high", price + 1),
+                    float64("low", price - 1),
+                    float64("close", price + 0.5),
+                    int64("volume", 1000L + i),
+                    int32("numEvents", 10 + i % 10)));
+        }
+        List<Message> messages = new ArrayList<>(1);
+        messages.add(message(sequence("IntradayBarResponse", sequence("barData", array("barTickData", barTickData)))));
+        return messages;
+    }
+
+    /**
+     * One message containing one tick per second, as returned by an IntradayTickRequest.
+     */
+    static List<Message> intradayTicks(int ticks) {
+        List<SyntheticElement> tickData = new ArrayList<>(ticks);
+        for (int i = 0; i < ticks; i++) {
+            tickData.add(sequence("tickData",
+                    datetime("time", toDatetime(START_DATE_TIME.plusSeconds(i))),
+                    string("type", "TRADE"),
+                    float64("value", 100 + i % 50),
+                    int32("size", 100 + i % 1000)));
+        }
+        List<Message> messages = new ArrayList<>(1);
+        messages.add(message(sequence("IntradayTickResponse", sequence("tickData", array("tickData", tickData)))));
+        return messages;
+    }
+
+    /**
+     * One real time update containing the given fields, as received for a subscription.
+     */
+    static Message marketData(CorrelationID id, SyntheticElement... fields) {
+        return message(sequence("MarketDataEvents", fields)).setCorrelationID(id);
+    }
+
+    private static Datetime toDatetime(LocalDateTime ldt) {
+        return new Datetime(ldt.getYear(), ldt.getMonthValue(), ldt.getDayOfMonth(), ldt.getHour(), ldt.getMinute(), ldt.getSecond(), 0);
+    }
+
+    private static MockMessage message(Element root) {
+        return new MockMessage() {
+            @Override public Element asElement() {
+                return root;
+            }
+        };
+    }
+
+    /**
+     * Feeds the messages to the parser and returns the parsed result.
+     */
+    static <T extends RequestResult> T parse(ResultParser<T> parser, List<Message> messages) throws InterruptedException {
+        for (Message msg : messages) {
+            parser.addMessage(msg);
+        }
+        parser.noMoreMessages();
+        return parser.getResult();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import com.bloomberglp.blpapi.CorrelationID;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time from the reception of a real time update to its FlyweightListener with each {@link WaitStrategy}
+ * of the dispatching thread: the benchmark thread plays the Bloomberg event handler and queues an update, a
+ * dispatching thread takes it with the strategy and fires it through the EventsManager to a flyweight listener, which
+ * signals its reception. The benchmark thread waits for the listener before sending the next update, so that each
+ * update finds the dispatching thread waiting - which is the worst case for the blocking strategy.
+ * <p>
+ * Both threads are busy while an update is in flight: the polling strategies need at least two free cores, otherwise
+ * their latency is in milliseconds (the scheduling quantum of the operating system).
+ * <p>
+ * Run with: {@code mvn -P jmh test -Djmh.includes=WaitStrategyBenchmark}
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-Djdk.attach.allowAttachSelf"})
+@State(Scope.Benchmark)
+public class WaitStrategyBenchmark {
+
+    private static final CorrelationID ID = new CorrelationID(0);
+    private static final Double[] VALUES = {123.45, 123.46};
+
+    @Param({"BLOCKING", "SLEEPING", "YIELDING", "BUSY_SPIN"})
+    public String strategy;
+
+    private final BlockingQueue<Data> queue = new ArrayBlockingQueue<>(1 << 16);
+    private Thread dispatcher;
+    /**
+     * The number of updates received by the listener - written by the dispatching thread only
+     */
+    private volatile long received;
+    private long sent;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        WaitStrategy waitStrategy = waitStrategy(strategy);
+        ConcurrentConflatedEventsManager eventsManager = new ConcurrentConflatedEventsManager();
+        eventsManager.addFlyweightListener("SEC", ID, RealtimeField.BID, u -> received++);
+        dispatcher = new Thread(() -> {
+            try {
+                while (true) {
+                    Data data = waitStrategy.take(queue);
+                    eventsManager.fireEvent(ID, RealtimeField.BID, data.value(), data.getReceivedNanos(), false);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "Bloomberg EDT - " + strategy);
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dispatcher.interrupt();
+    }
+
+    private static WaitStrategy waitStrategy(String name) {
+        switch (name) {
+            case "SLEEPING": return WaitStrategy.sleeping(Duration.ofNanos(1));
+            case "YIELDING": return WaitStrategy.yielding();
+            case "BUSY_SPIN": return WaitStrategy.busySpin(Duration.ofSeconds(1));
+            default: return WaitStrategy.blocking();
+        }
+    }
+
+    @Benchmark
+    public long tickToListener() {
+        long n = ++sent;
+        queue.add(new Data(ID, "BID", VALUES[(int) (n & 1)], System.nanoTime(), false));
+        while (received != n) {
+            //wait for the listener
+        }
+        return n;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2012 - present by Yann Le Tallec.
+ * Please see distribution for license.
+ */
+package com.assylias.jbloomberg;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+@Test(groups = "unit")
+public class WaitStrategyTest {
+
+    @DataProvider(name = "strategies")
+    public Object[][] strategies() {
+        return new Object[][]{
+                {WaitStrategy.blocking()},
+                {WaitStrategy.sleeping(Duration.ofNanos(1))},
+                {WaitStrategy.yielding()},
+                {WaitStrategy.busySpin(Duration.ofMillis(1))},
+                {WaitStrategy.busySpin(Duration.ofSeconds(Long.MAX_VALUE))}
+        };
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testSleeping_Zero() {
+        WaitStrategy.sleeping(Duration.ZERO);
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void testBusySpin_Null() {
+        WaitStrategy.busySpin(null);
+    }
+
+    @Test(dataProvider = "strategies")
+    public void testTake_Available(WaitStrategy strategy) throws Exception {
+        BlockingQueue<String> queue = new LinkedBlockingQueue<>();
+        queue.add("a");
+        queue.add("b");
+        assertEquals(strategy.take(queue), "a");
+        assertEquals(strategy.take(queue), "b");
+    }
+
+    @Test(dataProvider = "strategies")
+    public void testTake_Waits(WaitStrategy strategy) throws Exception {
+        BlockingQueue<String> queue = new LinkedBlockingQueue<>();
+        CompletableFuture<String> taken = take(strategy, queue, new AtomicReference<>());
+        Thread.sleep(20); //busySpin(1ms) has backed off by then
+        assertFalse(taken.isDone());
+        queue.add("a");
+        assertEquals(taken.get(1, TimeUnit.SECONDS), "a");
+    }
+
+    @Test(dataProvider = "strategies")
+    public void testTake_Interrupted(WaitStrategy strategy) throws Exception {
+        AtomicReference<Thread> thread = new AtomicReference<>();
+        CompletableFuture<String> taken = take(strategy, new LinkedBlockingQueue<>(), thread);
+        Thread.sleep(20);
+        thread.get().interrupt();
+        try {
+            taken.get(1, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof InterruptedException);
+            return;
+        }
+        throw new AssertionError("Expected an InterruptedException");
+    }
+
+    public void testBusySpin_BacksOff() throws Exception {
+        AtomicReference<Thread> thread = new AtomicReference<>();
+        take(WaitStrategy.busySpin(Duration.ofMillis(1)), new LinkedBlockingQueue<>(), thread);
+        Thread.sleep(50);
+        assertEquals(thread.get().getState(), Thread.State.WAITING);
+        thread.get().interrupt();
+    }
+
+    private static CompletableFuture<String> take(WaitStrategy strategy, BlockingQueue<String> queue, AtomicReference<Thread> thread) {
+        CompletableFuture<String> taken = new CompletableFuture<>();
+        Thread t = new Thread(() -> {
+            try {
+                taken.complete(strategy.take(queue));
+            } catch (InterruptedException e) {
+                taken.completeExceptionally(e);
+            }
+        });
+        thread.set(t);
+        t.setDaemon(true);
+        t.start();
+        return taken;
+    }
+}